@@ -0,0 +1,133 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * The logic shared by the builders of block-compressed arrays: values are accumulated in a single uncompressed block,
+ * which is encoded with the smallest codec as soon as it is full.
+ * 
+ * @author Benoit Lacelle
+ *
+ * @see CompressedBlocks
+ */
+public abstract class ABlockCompressedArrayBuilder {
+	protected final int blockSize;
+
+	protected final ByteArrayList codecs = new ByteArrayList();
+	protected final LongArrayList blockFirstBits = new LongArrayList();
+	protected final PackedBitsWriter output = new PackedBitsWriter();
+
+	protected int blockLength = 0;
+
+	protected int size = 0;
+
+	protected boolean built = false;
+
+	// Re-used across blocks to evaluate each codec
+	protected PackedBitsWriter candidate = new PackedBitsWriter();
+	protected PackedBitsWriter best = new PackedBitsWriter();
+
+	protected ABlockCompressedArrayBuilder(int blockSize, int maxBlockSize) {
+		checkBlockSize(blockSize, maxBlockSize);
+		this.blockSize = blockSize;
+	}
+
+	static void checkBlockSize(int blockSize, int maxBlockSize) {
+		if (blockSize <= 0 || Integer.bitCount(blockSize) != 1 || blockSize > maxBlockSize) {
+			throw new IllegalArgumentException(
+					"blockSize has to be a power of 2 lower than " + maxBlockSize + ": " + blockSize);
+		}
+	}
+
+	protected void checkNotBuilt() {
+		if (built) {
+			throw new IllegalStateException("Can not accept values after .build()");
+		}
+	}
+
+	/**
+	 * Register values appended to the current block, and encode the block once it is full
+	 */
+	protected void onAppended(int nbAppended) {
+		blockLength += nbAppended;
+		size = Math.addExact(size, nbAppended);
+
+		if (blockLength == blockSize) {
+			flushBlock();
+		}
+	}
+
+	/**
+	 * 
+	 * @return the number of codecs, each being identified by its ordinal
+	 */
+	protected abstract int getNbCodecs();
+
+	/**
+	 * Encode the blockLength first values of the current block with given codec
+	 */
+	protected abstract void encodeBlock(int codecOrdinal, PackedBitsWriter output);
+
+	protected void flushBlock() {
+		// Encode with each codec, and keep the smallest encoding
+		int bestCodec = -1;
+		for (int codec = 0; codec < getNbCodecs(); codec++) {
+			candidate.clear();
+			encodeBlock(codec, candidate);
+
+			if (bestCodec < 0 || candidate.getPosition() < best.getPosition()) {
+				bestCodec = codec;
+
+				PackedBitsWriter swap = best;
+				best = candidate;
+				candidate = swap;
+			}
+		}
+
+		codecs.add((byte) bestCodec);
+		blockFirstBits.add(output.getPosition());
+		output.write(best);
+
+		blockLength = 0;
+	}
+
+	/**
+	 * 
+	 * @return the {@link CompressedBlocks} holding the accepted values. This builder can not accept values anymore
+	 */
+	protected CompressedBlocks buildBlocks() {
+		built = true;
+		if (blockLength > 0) {
+			flushBlock();
+		}
+
+		return new CompressedBlocks(size,
+				Integer.numberOfTrailingZeros(blockSize),
+				codecs.toByteArray(),
+				blockFirstBits.toLongArray(),
+				output.toWords());
+	}
+}
@@ -0,0 +1,151 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.util.NoSuchElementException;
+
+/**
+ * The index bookkeeping shared by the iterators decoding a list by chunks: the elements from bufferStart are decoded in
+ * a buffer, which is refilled each time the iteration moves out of it.
+ * 
+ * The underlying list is expected not to change while iterating.
+ * 
+ * @author Benoit Lacelle
+ *
+ * @see BufferedIntListIterator
+ * @see BufferedLongListIterator
+ */
+public abstract class ABufferedListIterator {
+	protected final int size;
+	protected final int bufferSize;
+
+	// The index of the element at buffer[0]
+	protected int bufferStart;
+	// The number of valid elements in buffer
+	protected int bufferLength;
+
+	// The index of the element returned by next call to next
+	protected int nextIndex;
+
+	protected ABufferedListIterator(int size, int index, int bufferSize) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException("index=" + index + " while size=" + size);
+		}
+		this.size = size;
+		this.bufferSize = bufferSize;
+		this.nextIndex = index;
+	}
+
+	public boolean hasNext() {
+		return nextIndex < size;
+	}
+
+	public boolean hasPrevious() {
+		return nextIndex > 0;
+	}
+
+	public int nextIndex() {
+		return nextIndex;
+	}
+
+	public int previousIndex() {
+		return nextIndex - 1;
+	}
+
+	public int skip(int n) {
+		if (n < 0) {
+			throw new IllegalArgumentException("Argument must be nonnegative: " + n);
+		}
+		int skipped = Math.min(n, size - nextIndex);
+		nextIndex += skipped;
+		return skipped;
+	}
+
+	/**
+	 * 
+	 * @return the index in the buffer of the element at nextIndex, decoding a new chunk if needed
+	 */
+	protected int bufferNext() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		int indexInBuffer = nextIndex - bufferStart;
+		if (indexInBuffer < 0 || indexInBuffer >= bufferLength) {
+			bufferStart = nextIndex;
+			bufferLength = Math.min(bufferSize, size - nextIndex);
+			decode(bufferStart, bufferLength);
+			indexInBuffer = 0;
+		}
+		return indexInBuffer;
+	}
+
+	/**
+	 * Move backward
+	 * 
+	 * @return the index in the buffer of the previous element, or -1 if it is not in the buffer
+	 */
+	protected int bufferPrevious() {
+		if (!hasPrevious()) {
+			throw new NoSuchElementException();
+		}
+
+		nextIndex--;
+
+		int indexInBuffer = nextIndex - bufferStart;
+		if (indexInBuffer >= 0 && indexInBuffer < bufferLength) {
+			return indexInBuffer;
+		} else {
+			// Iterating backward is not the main use-case: we do not decode chunks backward
+			return -1;
+		}
+	}
+
+	/**
+	 * Receives a range of the buffer
+	 * 
+	 * @author Benoit Lacelle
+	 *
+	 */
+	@FunctionalInterface
+	protected interface IChunkConsumer {
+		void accept(int fromInBuffer, int toInBuffer);
+	}
+
+	/**
+	 * Iterate over the remaining elements, a decoded chunk at a time
+	 */
+	protected void forEachRemainingChunk(IChunkConsumer chunkConsumer) {
+		while (hasNext()) {
+			int indexInBuffer = bufferNext();
+
+			chunkConsumer.accept(indexInBuffer, bufferLength);
+			nextIndex = bufferStart + bufferLength;
+		}
+	}
+
+	/**
+	 * Decode length elements from given index into the beginning of the buffer
+	 */
+	protected abstract void decode(int from, int length);
+}
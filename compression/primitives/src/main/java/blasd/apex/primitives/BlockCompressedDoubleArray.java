@@ -0,0 +1,152 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.DoubleStream;
+import java.util.stream.StreamSupport;
+
+import it.unimi.dsi.fastutil.doubles.AbstractDoubleList;
+import it.unimi.dsi.fastutil.doubles.DoubleListIterator;
+import it.unimi.dsi.fastutil.longs.LongListIterator;
+
+/**
+ * A compressed DoubleList implementation. It provides random read-access. The raw long bits of the doubles are held in
+ * a {@link BlockCompressedLongArray}, where measures typically get encoded by {@link LongBlockCodec#XOR}.
+ * 
+ * @author Benoit Lacelle
+ *
+ * @see BlockCompressedDoubleArrayBuilder
+ */
+public class BlockCompressedDoubleArray extends AbstractDoubleList implements Cloneable, java.io.Serializable {
+	private static final long serialVersionUID = 3436117165011957071L;
+
+	protected final BlockCompressedLongArray rawBits;
+
+	public BlockCompressedDoubleArray(BlockCompressedLongArray rawBits) {
+		this.rawBits = rawBits;
+	}
+
+	@Override
+	public double getDouble(int index) {
+		return Double.longBitsToDouble(rawBits.getLong(index));
+	}
+
+	@Override
+	public void getElements(int from, double[] a, int offset, int length) {
+		CompressedIntArrays.checkGetElements(size(), from, a.length, offset, length);
+
+		long[] bits = new long[Math.min(length, BufferedIntListIterator.DEFAULT_BUFFER_SIZE)];
+		for (int done = 0; done < length; done += bits.length) {
+			int chunk = Math.min(bits.length, length - done);
+			rawBits.getElements(from + done, bits, 0, chunk);
+
+			for (int i = 0; i < chunk; i++) {
+				a[offset + done + i] = Double.longBitsToDouble(bits[i]);
+			}
+		}
+	}
+
+	@Override
+	public DoubleListIterator listIterator(int index) {
+		return new RawBitsIterator(rawBits.listIterator(index));
+	}
+
+	/**
+	 * 
+	 * @return a sequential {@link DoubleStream} over this list, decoding values by chunks
+	 */
+	public DoubleStream doubleStream() {
+		return StreamSupport.doubleStream(Spliterators.spliterator(iterator(), size(), Spliterator.ORDERED), false);
+	}
+
+	@Override
+	public int size() {
+		return rawBits.size();
+	}
+
+	/**
+	 * 
+	 * @return the {@link BlockCompressedLongArray} holding the raw long bits of the doubles
+	 */
+	public BlockCompressedLongArray getRawBits() {
+		return rawBits;
+	}
+
+	/**
+	 * Convert the raw long bits of a {@link LongListIterator} into doubles
+	 * 
+	 * @author Benoit Lacelle
+	 *
+	 */
+	protected static class RawBitsIterator implements DoubleListIterator {
+		protected final LongListIterator rawBits;
+
+		protected RawBitsIterator(LongListIterator rawBits) {
+			this.rawBits = rawBits;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return rawBits.hasNext();
+		}
+
+		@Override
+		public boolean hasPrevious() {
+			return rawBits.hasPrevious();
+		}
+
+		@Override
+		public int nextIndex() {
+			return rawBits.nextIndex();
+		}
+
+		@Override
+		public int previousIndex() {
+			return rawBits.previousIndex();
+		}
+
+		@Override
+		public double nextDouble() {
+			return Double.longBitsToDouble(rawBits.nextLong());
+		}
+
+		@Override
+		public double previousDouble() {
+			return Double.longBitsToDouble(rawBits.previousLong());
+		}
+
+		@Override
+		public int skip(int n) {
+			return rawBits.skip(n);
+		}
+	}
+
+	/**
+	 * Java serialization goes through {@link CompressedArraysFormat}, as buffers are not serializable
+	 */
+	private Object writeReplace() {
+		return new CompressedArraysFormat.SerializedForm(this);
+	}
+}
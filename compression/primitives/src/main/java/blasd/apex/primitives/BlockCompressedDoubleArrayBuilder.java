@@ -0,0 +1,63 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.util.function.DoubleConsumer;
+
+/**
+ * Build a {@link BlockCompressedDoubleArray} from a stream of doubles
+ * 
+ * @author Benoit Lacelle
+ *
+ * @see BlockCompressedLongArrayBuilder
+ */
+public class BlockCompressedDoubleArrayBuilder implements DoubleConsumer {
+	protected final BlockCompressedLongArrayBuilder rawBits;
+
+	public BlockCompressedDoubleArrayBuilder() {
+		this(new BlockCompressedLongArrayBuilder());
+	}
+
+	public BlockCompressedDoubleArrayBuilder(int blockSize) {
+		this(new BlockCompressedLongArrayBuilder(blockSize));
+	}
+
+	protected BlockCompressedDoubleArrayBuilder(BlockCompressedLongArrayBuilder rawBits) {
+		this.rawBits = rawBits;
+	}
+
+	@Override
+	public void accept(double value) {
+		// Raw bits, so that NaN payloads are preserved
+		rawBits.accept(Double.doubleToRawLongBits(value));
+	}
+
+	/**
+	 * 
+	 * @return a {@link BlockCompressedDoubleArray} holding the accepted values. This builder can not accept values
+	 *         anymore
+	 */
+	public BlockCompressedDoubleArray build() {
+		return new BlockCompressedDoubleArray(rawBits.build());
+	}
+}
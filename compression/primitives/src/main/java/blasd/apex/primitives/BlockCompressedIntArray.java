@@ -0,0 +1,147 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import it.unimi.dsi.fastutil.ints.AbstractIntList;
+import it.unimi.dsi.fastutil.ints.IntListIterator;
+
+/**
+ * A compressed IntList implementation. It provides random read-access. Values are split in blocks of a fixed size, and
+ * each block is encoded with the {@link IntBlockCodec} leading to the smallest number of bits.
+ * 
+ * Sequential reads should go through {@link #getElements(int, int[], int, int)} or {@link #iterator()}, which decode
+ * whole blocks.
+ * 
+ * @author Benoit Lacelle
+ *
+ * @see CompressedIntArrays#compressByBlocks(IntStream, int)
+ */
+public class BlockCompressedIntArray extends AbstractIntList implements Cloneable, java.io.Serializable {
+	private static final long serialVersionUID = 6180924613826476301L;
+
+	public static final int DEFAULT_BLOCK_SIZE = 128;
+
+	/**
+	 * {@link IntBlockCodec} writes counts on 16 bits
+	 */
+	public static final int MAX_BLOCK_SIZE = 1 << 15;
+
+	protected final CompressedBlocks blocks;
+
+	public BlockCompressedIntArray(CompressedBlocks blocks) {
+		this.blocks = blocks;
+	}
+
+	public BlockCompressedIntArray(int size, int logBlockSize, byte[] codecs, long[] blockFirstBit, long[] words) {
+		this(new CompressedBlocks(size, logBlockSize, codecs, blockFirstBit, words));
+	}
+
+	/**
+	 * The buffers are not copied: they may be views over a memory-mapped file. Each buffer is read from its index 0.
+	 * 
+	 * @see CompressedArraysFormat
+	 */
+	public BlockCompressedIntArray(int size,
+			int logBlockSize,
+			ByteBuffer codecs,
+			LongBuffer blockFirstBit,
+			LongBuffer words) {
+		this(new CompressedBlocks(size, logBlockSize, codecs, blockFirstBit, words));
+	}
+
+	@Override
+	public int getInt(int index) {
+		int block = blocks.getBlock(index);
+
+		return getCodec(block).get(blocks.words,
+				blocks.getBlockFirstBit(block),
+				blocks.getBlockLength(block),
+				blocks.getIndexInBlock(index, block));
+	}
+
+	/**
+	 * Decode whole blocks: the blocks fully covered by the range are decoded directly in the output array
+	 */
+	@Override
+	public void getElements(int from, int[] a, int offset, int length) {
+		blocks.getElements(from, a, a.length, offset, length, int[]::new, this::decodeBlock);
+	}
+
+	protected void decodeBlock(int block, int blockLength, int[] output, int outputIndex) {
+		getCodec(block).decode(blocks.words, blocks.getBlockFirstBit(block), blockLength, output, outputIndex);
+	}
+
+	@Override
+	public IntListIterator listIterator(int index) {
+		return new BufferedIntListIterator(this,
+				index,
+				Math.max(BufferedIntListIterator.DEFAULT_BUFFER_SIZE, 1 << blocks.logBlockSize));
+	}
+
+	/**
+	 * 
+	 * @return a sequential {@link IntStream} over this list, decoding values by chunks
+	 */
+	public IntStream intStream() {
+		return StreamSupport.intStream(Spliterators.spliterator(iterator(), size(), Spliterator.ORDERED), false);
+	}
+
+	@Override
+	public int size() {
+		return blocks.size();
+	}
+
+	public CompressedBlocks getBlocks() {
+		return blocks;
+	}
+
+	public int getNbBlocks() {
+		return blocks.getNbBlocks();
+	}
+
+	public IntBlockCodec getCodec(int block) {
+		return IntBlockCodec.fromOrdinal(blocks.getCodecOrdinal(block));
+	}
+
+	/**
+	 * 
+	 * @return the number of bits used to encode the values, excluding the per-block index
+	 */
+	public long getNbBits() {
+		return blocks.getNbBits();
+	}
+
+	/**
+	 * Java serialization goes through {@link CompressedArraysFormat}, as buffers are not serializable
+	 */
+	private Object writeReplace() {
+		return new CompressedArraysFormat.SerializedForm(this);
+	}
+}
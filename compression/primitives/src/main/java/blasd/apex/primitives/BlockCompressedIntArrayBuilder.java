@@ -0,0 +1,105 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Build a {@link BlockCompressedIntArray} from a stream of ints: each block is encoded as soon as it is full, so that
+ * only a single uncompressed block is held in memory.
+ * 
+ * @author Benoit Lacelle
+ *
+ * @see ParallelCompressedIntArrayBuilder
+ */
+public class BlockCompressedIntArrayBuilder extends ABlockCompressedArrayBuilder implements IntConsumer {
+	private static final int NB_CODECS = IntBlockCodec.values().length;
+
+	protected final int[] block;
+
+	public BlockCompressedIntArrayBuilder() {
+		this(BlockCompressedIntArray.DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * 
+	 * @param blockSize
+	 *            a power of 2, typically 128 or 1024. Larger blocks amortize better the headers, but random reads are
+	 *            slower for some codecs (e.g. {@link IntBlockCodec#DELTA})
+	 */
+	public BlockCompressedIntArrayBuilder(int blockSize) {
+		super(blockSize, BlockCompressedIntArray.MAX_BLOCK_SIZE);
+		this.block = new int[blockSize];
+	}
+
+	static void checkBlockSize(int blockSize) {
+		checkBlockSize(blockSize, BlockCompressedIntArray.MAX_BLOCK_SIZE);
+	}
+
+	@Override
+	public void accept(int value) {
+		checkNotBuilt();
+
+		block[blockLength] = value;
+		onAppended(1);
+	}
+
+	/**
+	 * Accept a batch of ints, copied block by block
+	 */
+	public void accept(int[] values, int offset, int length) {
+		checkNotBuilt();
+		if (offset < 0 || length < 0 || offset > values.length - length) {
+			throw new ArrayIndexOutOfBoundsException(
+					"offset=" + offset + " and length=" + length + " while values.length=" + values.length);
+		}
+
+		int index = offset;
+		int end = offset + length;
+		while (index < end) {
+			int nbCopied = Math.min(end - index, blockSize - blockLength);
+			System.arraycopy(values, index, block, blockLength, nbCopied);
+
+			index += nbCopied;
+			onAppended(nbCopied);
+		}
+	}
+
+	@Override
+	protected int getNbCodecs() {
+		return NB_CODECS;
+	}
+
+	@Override
+	protected void encodeBlock(int codecOrdinal, PackedBitsWriter output) {
+		IntBlockCodec.fromOrdinal(codecOrdinal).encode(block, blockLength, output);
+	}
+
+	/**
+	 * 
+	 * @return a {@link BlockCompressedIntArray} holding the accepted values. This builder can not accept values anymore
+	 */
+	public BlockCompressedIntArray build() {
+		return new BlockCompressedIntArray(buildBlocks());
+	}
+}
@@ -0,0 +1,140 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+import it.unimi.dsi.fastutil.longs.AbstractLongList;
+import it.unimi.dsi.fastutil.longs.LongListIterator;
+
+/**
+ * A compressed LongList implementation. It provides random read-access. Values are split in blocks of a fixed size, and
+ * each block is encoded with the {@link LongBlockCodec} leading to the smallest number of bits.
+ * 
+ * Sequential reads should go through {@link #getElements(int, long[], int, int)} or {@link #iterator()}, which decode
+ * whole blocks.
+ * 
+ * @author Benoit Lacelle
+ *
+ * @see BlockCompressedLongArrayBuilder
+ */
+public class BlockCompressedLongArray extends AbstractLongList implements Cloneable, java.io.Serializable {
+	private static final long serialVersionUID = -1823517440360939183L;
+
+	protected final CompressedBlocks blocks;
+
+	public BlockCompressedLongArray(CompressedBlocks blocks) {
+		this.blocks = blocks;
+	}
+
+	public BlockCompressedLongArray(int size, int logBlockSize, byte[] codecs, long[] blockFirstBit, long[] words) {
+		this(new CompressedBlocks(size, logBlockSize, codecs, blockFirstBit, words));
+	}
+
+	/**
+	 * The buffers are not copied: they may be views over a memory-mapped file. Each buffer is read from its index 0.
+	 * 
+	 * @see CompressedArraysFormat
+	 */
+	public BlockCompressedLongArray(int size,
+			int logBlockSize,
+			ByteBuffer codecs,
+			LongBuffer blockFirstBit,
+			LongBuffer words) {
+		this(new CompressedBlocks(size, logBlockSize, codecs, blockFirstBit, words));
+	}
+
+	@Override
+	public long getLong(int index) {
+		int block = blocks.getBlock(index);
+
+		return getCodec(block).get(blocks.words,
+				blocks.getBlockFirstBit(block),
+				blocks.getBlockLength(block),
+				blocks.getIndexInBlock(index, block));
+	}
+
+	/**
+	 * Decode whole blocks: the blocks fully covered by the range are decoded directly in the output array
+	 */
+	@Override
+	public void getElements(int from, long[] a, int offset, int length) {
+		blocks.getElements(from, a, a.length, offset, length, long[]::new, this::decodeBlock);
+	}
+
+	protected void decodeBlock(int block, int blockLength, long[] output, int outputIndex) {
+		getCodec(block).decode(blocks.words, blocks.getBlockFirstBit(block), blockLength, output, outputIndex);
+	}
+
+	@Override
+	public LongListIterator listIterator(int index) {
+		return new BufferedLongListIterator(this,
+				index,
+				Math.max(BufferedIntListIterator.DEFAULT_BUFFER_SIZE, 1 << blocks.logBlockSize));
+	}
+
+	/**
+	 * 
+	 * @return a sequential {@link LongStream} over this list, decoding values by chunks
+	 */
+	public LongStream longStream() {
+		return StreamSupport.longStream(Spliterators.spliterator(iterator(), size(), Spliterator.ORDERED), false);
+	}
+
+	@Override
+	public int size() {
+		return blocks.size();
+	}
+
+	public CompressedBlocks getBlocks() {
+		return blocks;
+	}
+
+	public int getNbBlocks() {
+		return blocks.getNbBlocks();
+	}
+
+	public LongBlockCodec getCodec(int block) {
+		return LongBlockCodec.fromOrdinal(blocks.getCodecOrdinal(block));
+	}
+
+	/**
+	 * 
+	 * @return the number of bits of the packed array holding the encoded blocks, excluding the per-block index
+	 */
+	public long getNbBits() {
+		return blocks.getNbBits();
+	}
+
+	/**
+	 * Java serialization goes through {@link CompressedArraysFormat}, as buffers are not serializable
+	 */
+	private Object writeReplace() {
+		return new CompressedArraysFormat.SerializedForm(this);
+	}
+}
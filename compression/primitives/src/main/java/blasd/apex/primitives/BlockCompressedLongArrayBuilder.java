@@ -0,0 +1,85 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Build a {@link BlockCompressedLongArray} from a stream of longs: each block is encoded as soon as it is full, so that
+ * only a single uncompressed block is held in memory.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class BlockCompressedLongArrayBuilder extends ABlockCompressedArrayBuilder implements LongConsumer {
+	private static final int NB_CODECS = LongBlockCodec.values().length;
+
+	/**
+	 * {@link LongBlockCodec} has no limit on the number of values per block
+	 */
+	private static final int MAX_BLOCK_SIZE = 1 << 30;
+
+	protected final long[] block;
+
+	public BlockCompressedLongArrayBuilder() {
+		this(BlockCompressedIntArray.DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * 
+	 * @param blockSize
+	 *            a power of 2, typically 128 or 1024. Larger blocks amortize better the headers, but random reads are
+	 *            slower for codecs encoding each value relatively to the previous one
+	 */
+	public BlockCompressedLongArrayBuilder(int blockSize) {
+		super(blockSize, MAX_BLOCK_SIZE);
+		this.block = new long[blockSize];
+	}
+
+	@Override
+	public void accept(long value) {
+		checkNotBuilt();
+
+		block[blockLength] = value;
+		onAppended(1);
+	}
+
+	@Override
+	protected int getNbCodecs() {
+		return NB_CODECS;
+	}
+
+	@Override
+	protected void encodeBlock(int codecOrdinal, PackedBitsWriter output) {
+		LongBlockCodec.fromOrdinal(codecOrdinal).encode(block, blockLength, output);
+	}
+
+	/**
+	 * 
+	 * @return a {@link BlockCompressedLongArray} holding the accepted values. This builder can not accept values
+	 *         anymore
+	 */
+	public BlockCompressedLongArray build() {
+		return new BlockCompressedLongArray(buildBlocks());
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.util.function.IntConsumer;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntListIterator;
+
+/**
+ * An {@link IntListIterator} decoding the underlying {@link IntList} by chunks through
+ * {@link IntList#getElements(int, int[], int, int)}. It is useful for compressed {@link IntList}, for which the
+ * bulk-decoding of consecutive elements is much cheaper than decoding each element independently.
+ * 
+ * The underlying {@link IntList} is expected not to change while iterating.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class BufferedIntListIterator extends ABufferedListIterator implements IntListIterator {
+	public static final int DEFAULT_BUFFER_SIZE = 1024;
+
+	protected final IntList list;
+	protected final int[] buffer;
+
+	public BufferedIntListIterator(IntList list, int index) {
+		this(list, index, DEFAULT_BUFFER_SIZE);
+	}
+
+	public BufferedIntListIterator(IntList list, int index, int bufferSize) {
+		super(list.size(), index, bufferSize);
+		this.list = list;
+		this.buffer = new int[bufferSize];
+	}
+
+	@Override
+	protected void decode(int from, int length) {
+		list.getElements(from, buffer, 0, length);
+	}
+
+	@Override
+	public int nextInt() {
+		int indexInBuffer = bufferNext();
+
+		nextIndex++;
+		return buffer[indexInBuffer];
+	}
+
+	@Override
+	public int previousInt() {
+		int indexInBuffer = bufferPrevious();
+
+		if (indexInBuffer >= 0) {
+			return buffer[indexInBuffer];
+		} else {
+			return list.getInt(nextIndex);
+		}
+	}
+
+	@Override
+	public void forEachRemaining(IntConsumer action) {
+		forEachRemainingChunk((from, to) -> {
+			for (int i = from; i < to; i++) {
+				action.accept(buffer[i]);
+			}
+		});
+	}
+}
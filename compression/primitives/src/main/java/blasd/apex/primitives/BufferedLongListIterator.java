@@ -0,0 +1,82 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.util.function.LongConsumer;
+
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongListIterator;
+
+/**
+ * A {@link LongListIterator} decoding the underlying {@link LongList} by chunks through
+ * {@link LongList#getElements(int, long[], int, int)}
+ * 
+ * The underlying {@link LongList} is expected not to change while iterating.
+ * 
+ * @author Benoit Lacelle
+ *
+ * @see BufferedIntListIterator
+ */
+public class BufferedLongListIterator extends ABufferedListIterator implements LongListIterator {
+	protected final LongList list;
+	protected final long[] buffer;
+
+	public BufferedLongListIterator(LongList list, int index, int bufferSize) {
+		super(list.size(), index, bufferSize);
+		this.list = list;
+		this.buffer = new long[bufferSize];
+	}
+
+	@Override
+	protected void decode(int from, int length) {
+		list.getElements(from, buffer, 0, length);
+	}
+
+	@Override
+	public long nextLong() {
+		int indexInBuffer = bufferNext();
+
+		nextIndex++;
+		return buffer[indexInBuffer];
+	}
+
+	@Override
+	public long previousLong() {
+		int indexInBuffer = bufferPrevious();
+
+		if (indexInBuffer >= 0) {
+			return buffer[indexInBuffer];
+		} else {
+			return list.getLong(nextIndex);
+		}
+	}
+
+	@Override
+	public void forEachRemaining(LongConsumer action) {
+		forEachRemainingChunk((from, to) -> {
+			for (int i = from; i < to; i++) {
+				action.accept(buffer[i]);
+			}
+		});
+	}
+}
@@ -0,0 +1,437 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import com.google.common.annotations.Beta;
+
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.LongList;
+
+/**
+ * A compact and versioned binary format for the compressed lists of this package. A serialized list can be read back as
+ * zero-copy views: once a file is memory-mapped with {@link #map(Path)}, the packed words and the per-block index are
+ * read from the mapping, and opening a large column does not allocate on the heap nor decode anything. A heap
+ * {@link ByteBuffer} is read by copying the longs.
+ * 
+ * The layout is little-endian, and each section starts on a multiple of 8 bytes so that longs are aligned in the
+ * mapping:
+ * <ul>
+ * <li>a header: {@link #MAGIC}, {@link #VERSION}, the kind of list and its size, as 4 ints</li>
+ * <li>for a {@link RunningCompressedIntArray}: the number of blocks and the number of words, then the number of values,
+ * the constant bits and the constant mask of each block (as ints, padded to 8 bytes), then the packed words</li>
+ * <li>for {@link BlockCompressedIntArray}, {@link BlockCompressedLongArray} and {@link BlockCompressedDoubleArray}: the
+ * log of the block size, the number of blocks, the number of words and a padding int, then the first bit of each block
+ * (as longs), the packed words, and the codec of each block (as bytes)</li>
+ * </ul>
+ * 
+ * Java serialization of these lists goes through this format.
+ * 
+ * As a {@link ByteBuffer} is indexed by an int, a serialized list is limited to 2GB.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+@Beta
+public class CompressedArraysFormat {
+	/**
+	 * "APXC" in ASCII
+	 */
+	public static final int MAGIC = 0x41505843;
+
+	/**
+	 * The version written by this class. Readers reject later versions
+	 */
+	public static final int VERSION = 1;
+
+	protected static final int KIND_RUNNING_INT = 1;
+	protected static final int KIND_BLOCK_INT = 2;
+	protected static final int KIND_BLOCK_LONG = 3;
+	protected static final int KIND_BLOCK_DOUBLE = 4;
+
+	// Sections are aligned on longs
+	private static final int ALIGNMENT = Long.BYTES;
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	protected CompressedArraysFormat() {
+		// hidden
+	}
+
+	/**
+	 * 
+	 * @param compressed
+	 *            a {@link RunningCompressedIntArray} or a {@link BlockCompressedIntArray}
+	 */
+	public static void write(IntList compressed, WritableByteChannel channel) throws IOException {
+		writeAny(compressed, channel);
+	}
+
+	/**
+	 * 
+	 * @param compressed
+	 *            a {@link BlockCompressedLongArray}
+	 */
+	public static void write(LongList compressed, WritableByteChannel channel) throws IOException {
+		writeAny(compressed, channel);
+	}
+
+	/**
+	 * 
+	 * @param compressed
+	 *            a {@link BlockCompressedDoubleArray}
+	 */
+	public static void write(DoubleList compressed, WritableByteChannel channel) throws IOException {
+		writeAny(compressed, channel);
+	}
+
+	protected static void writeAny(Object compressed, WritableByteChannel channel) throws IOException {
+		ChunkWriter output = new ChunkWriter(channel);
+
+		if (compressed instanceof RunningCompressedIntArray) {
+			writeRunning((RunningCompressedIntArray) compressed, output);
+		} else if (compressed instanceof BlockCompressedIntArray) {
+			BlockCompressedIntArray array = (BlockCompressedIntArray) compressed;
+			writeHeader(output, KIND_BLOCK_INT, array.size());
+			writeBlocks(output, array.getBlocks());
+		} else if (compressed instanceof BlockCompressedLongArray) {
+			BlockCompressedLongArray array = (BlockCompressedLongArray) compressed;
+			writeHeader(output, KIND_BLOCK_LONG, array.size());
+			writeBlocks(output, array.getBlocks());
+		} else if (compressed instanceof BlockCompressedDoubleArray) {
+			BlockCompressedLongArray array = ((BlockCompressedDoubleArray) compressed).getRawBits();
+			writeHeader(output, KIND_BLOCK_DOUBLE, array.size());
+			writeBlocks(output, array.getBlocks());
+		} else {
+			throw new IllegalArgumentException("Not a compressed list: " + compressed.getClass());
+		}
+
+		output.flush();
+	}
+
+	protected static void writeHeader(ChunkWriter output, int kind, int size) throws IOException {
+		output.putInt(MAGIC);
+		output.putInt(VERSION);
+		output.putInt(kind);
+		output.putInt(size);
+	}
+
+	protected static void writeRunning(RunningCompressedIntArray array, ChunkWriter output) throws IOException {
+		writeHeader(output, KIND_RUNNING_INT, array.size());
+
+		int nbBlocks = array.nbConstant.length;
+		output.putInt(nbBlocks);
+		output.putInt(array.words.limit());
+
+		for (int block = 0; block < nbBlocks; block++) {
+			output.putInt(array.nbConstant[block]);
+			output.putInt(array.constantBits[block]);
+			output.putInt(array.constantMasks[block]);
+		}
+		output.pad();
+
+		putLongs(output, array.words);
+	}
+
+	protected static void writeBlocks(ChunkWriter output, CompressedBlocks blocks) throws IOException {
+		int nbBlocks = blocks.getNbBlocks();
+		output.putInt(blocks.logBlockSize);
+		output.putInt(nbBlocks);
+		output.putInt(blocks.words.limit());
+		// Padding
+		output.putInt(0);
+
+		putLongs(output, blocks.blockFirstBit);
+		putLongs(output, blocks.words);
+
+		for (int block = 0; block < nbBlocks; block++) {
+			output.put(blocks.codecs.get(block));
+		}
+		output.pad();
+	}
+
+	protected static void putLongs(ChunkWriter output, LongBuffer longs) throws IOException {
+		int nbLongs = longs.limit();
+		for (int i = 0; i < nbLongs; i++) {
+			output.putLong(longs.get(i));
+		}
+	}
+
+	/**
+	 * Memory-map given file, as written by one of the write methods. The file can be closed (but not modified) while
+	 * the mapping is in use.
+	 * 
+	 * @return a read-only little-endian {@link ByteBuffer}, to be given to {@link #readIntList(ByteBuffer)},
+	 *         {@link #readLongList(ByteBuffer)} or {@link #readDoubleList(ByteBuffer)}
+	 */
+	public static ByteBuffer map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return channel.map(MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	/**
+	 * 
+	 * @param serialized
+	 *            the serialized list, from its position. The returned list is a view over it: it must not be modified
+	 * @return a {@link RunningCompressedIntArray} or a {@link BlockCompressedIntArray}
+	 */
+	public static IntList readIntList(ByteBuffer serialized) {
+		return read(serialized, IntList.class);
+	}
+
+	/**
+	 * 
+	 * @param serialized
+	 *            the serialized list, from its position. The returned list is a view over it: it must not be modified
+	 * @return a {@link BlockCompressedLongArray}
+	 */
+	public static LongList readLongList(ByteBuffer serialized) {
+		return read(serialized, LongList.class);
+	}
+
+	/**
+	 * 
+	 * @param serialized
+	 *            the serialized list, from its position. The returned list is a view over it: it must not be modified
+	 * @return a {@link BlockCompressedDoubleArray}
+	 */
+	public static DoubleList readDoubleList(ByteBuffer serialized) {
+		return read(serialized, DoubleList.class);
+	}
+
+	protected static <T> T read(ByteBuffer serialized, Class<T> expectedClass) {
+		Object read = readAny(serialized);
+		if (!expectedClass.isInstance(read)) {
+			throw new IllegalArgumentException(
+					"Expected a " + expectedClass.getSimpleName() + " but read a " + read.getClass());
+		}
+		return expectedClass.cast(read);
+	}
+
+	protected static Object readAny(ByteBuffer serialized) {
+		// Offsets are relative to the beginning of the serialized list
+		ByteBuffer bytes = serialized.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+		int magic = bytes.getInt();
+		if (magic != MAGIC) {
+			throw new IllegalArgumentException("Not a compressed list: magic=" + Integer.toHexString(magic));
+		}
+		int version = bytes.getInt();
+		if (version <= 0 || version > VERSION) {
+			throw new IllegalArgumentException("Version " + version + " is not supported. Latest is " + VERSION);
+		}
+		int kind = bytes.getInt();
+		int size = bytes.getInt();
+
+		Object read;
+		if (kind == KIND_RUNNING_INT) {
+			read = readRunning(bytes);
+		} else if (kind == KIND_BLOCK_INT) {
+			read = new BlockCompressedIntArray(readBlocks(bytes, size));
+		} else if (kind == KIND_BLOCK_LONG) {
+			read = new BlockCompressedLongArray(readBlocks(bytes, size));
+		} else if (kind == KIND_BLOCK_DOUBLE) {
+			read = new BlockCompressedDoubleArray(new BlockCompressedLongArray(readBlocks(bytes, size)));
+		} else {
+			throw new IllegalArgumentException("Unknown kind of list: " + kind);
+		}
+
+		if (((List<?>) read).size() != size) {
+			throw new IllegalArgumentException(
+					"The header size=" + size + " does not match the read list size=" + ((List<?>) read).size());
+		}
+		return read;
+	}
+
+	protected static RunningCompressedIntArray readRunning(ByteBuffer bytes) {
+		int nbBlocks = bytes.getInt();
+		int nbWords = bytes.getInt();
+
+		int[] nbConstant = new int[nbBlocks];
+		int[] constantBits = new int[nbBlocks];
+		int[] constantMasks = new int[nbBlocks];
+		for (int block = 0; block < nbBlocks; block++) {
+			nbConstant[block] = bytes.getInt();
+			constantBits[block] = bytes.getInt();
+			constantMasks[block] = bytes.getInt();
+		}
+		skipPadding(bytes);
+
+		LongBuffer words = sliceLongs(bytes, nbWords);
+
+		return new RunningCompressedIntArray(nbConstant, constantBits, constantMasks, words);
+	}
+
+	/**
+	 * 
+	 * @return the blocks as a {@link BlockCompressedLongArray}, whatever the type of the values
+	 */
+	protected static CompressedBlocks readBlocks(ByteBuffer bytes, int size) {
+		int logBlockSize = bytes.getInt();
+		int nbBlocks = bytes.getInt();
+		int nbWords = bytes.getInt();
+		// Padding
+		bytes.getInt();
+
+		LongBuffer blockFirstBit = sliceLongs(bytes, nbBlocks);
+		LongBuffer words = sliceLongs(bytes, nbWords);
+		ByteBuffer codecs = sliceBytes(bytes, nbBlocks);
+
+		return new CompressedBlocks(size, logBlockSize, codecs, blockFirstBit, words);
+	}
+
+	/**
+	 * 
+	 * @return a view over the next nbLongs longs, moving the position of given buffer after them. Longs from a heap
+	 *         buffer are copied in a long[], as a long view over a heap {@link ByteBuffer} reads byte per byte
+	 */
+	protected static LongBuffer sliceLongs(ByteBuffer bytes, int nbLongs) {
+		LongBuffer view = sliceBytes(bytes, Math.multiplyExact(nbLongs, Long.BYTES)).asLongBuffer();
+
+		if (view.isDirect()) {
+			return view;
+		} else {
+			long[] copy = new long[nbLongs];
+			view.get(copy);
+			return LongBuffer.wrap(copy);
+		}
+	}
+
+	protected static ByteBuffer sliceBytes(ByteBuffer bytes, int nbBytes) {
+		if (nbBytes < 0 || nbBytes > bytes.remaining()) {
+			throw new IllegalArgumentException(
+					"Truncated input: " + nbBytes + " bytes are needed while " + bytes.remaining() + " remains");
+		}
+
+		ByteBuffer slice = bytes.slice();
+		slice.limit(nbBytes);
+		bytes.position(bytes.position() + nbBytes);
+
+		// A slice is always big-endian
+		return slice.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	protected static void skipPadding(ByteBuffer bytes) {
+		int misalignment = bytes.position() % ALIGNMENT;
+		if (misalignment != 0) {
+			bytes.position(bytes.position() + ALIGNMENT - misalignment);
+		}
+	}
+
+	/**
+	 * Write primitives to a {@link WritableByteChannel} through a fixed-size buffer
+	 * 
+	 * @author Benoit Lacelle
+	 *
+	 */
+	protected static class ChunkWriter {
+		protected final WritableByteChannel channel;
+		protected final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+		// The number of bytes written so far, to compute the padding
+		protected long position = 0;
+
+		protected ChunkWriter(WritableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		public void put(byte value) throws IOException {
+			ensureRemaining(Byte.BYTES);
+			buffer.put(value);
+		}
+
+		public void putInt(int value) throws IOException {
+			ensureRemaining(Integer.BYTES);
+			buffer.putInt(value);
+		}
+
+		public void putLong(long value) throws IOException {
+			ensureRemaining(Long.BYTES);
+			buffer.putLong(value);
+		}
+
+		/**
+		 * Write zeros up to the next multiple of 8 bytes
+		 */
+		public void pad() throws IOException {
+			while ((position + buffer.position()) % ALIGNMENT != 0) {
+				put((byte) 0);
+			}
+		}
+
+		protected void ensureRemaining(int nbBytes) throws IOException {
+			if (buffer.remaining() < nbBytes) {
+				flush();
+			}
+		}
+
+		public void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer);
+			}
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * The Java serialization form of the compressed lists: the bytes of the {@link CompressedArraysFormat}
+	 * 
+	 * @author Benoit Lacelle
+	 *
+	 */
+	protected static class SerializedForm implements java.io.Serializable {
+		private static final long serialVersionUID = -2961853447707460419L;
+
+		protected final byte[] bytes;
+
+		protected SerializedForm(Object compressed) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			try {
+				writeAny(compressed, Channels.newChannel(output));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			this.bytes = output.toByteArray();
+		}
+
+		protected Object readResolve() {
+			return readAny(ByteBuffer.wrap(bytes));
+		}
+	}
+}
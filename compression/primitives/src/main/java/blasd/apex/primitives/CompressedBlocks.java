@@ -0,0 +1,174 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.function.IntFunction;
+
+/**
+ * The layout shared by {@link BlockCompressedIntArray} and {@link BlockCompressedLongArray}: values are split in blocks
+ * of a fixed size, each block being encoded by a codec into a packed array of words.
+ * 
+ * The buffers are not copied: they may be views over a memory-mapped file. Each buffer is read from its index 0.
+ * 
+ * @author Benoit Lacelle
+ *
+ * @see CompressedArraysFormat
+ */
+public class CompressedBlocks {
+	protected final int size;
+	protected final int logBlockSize;
+
+	/**
+	 * The ordinal of the codec of each block
+	 */
+	protected final ByteBuffer codecs;
+
+	/**
+	 * The index of the first bit (in words) of each block
+	 */
+	protected final LongBuffer blockFirstBit;
+
+	protected final LongBuffer words;
+
+	public CompressedBlocks(int size, int logBlockSize, byte[] codecs, long[] blockFirstBit, long[] words) {
+		this(size, logBlockSize, ByteBuffer.wrap(codecs), LongBuffer.wrap(blockFirstBit), LongBuffer.wrap(words));
+	}
+
+	public CompressedBlocks(int size, int logBlockSize, ByteBuffer codecs, LongBuffer blockFirstBit, LongBuffer words) {
+		this.size = size;
+		this.logBlockSize = logBlockSize;
+		this.codecs = codecs;
+		this.blockFirstBit = blockFirstBit;
+		this.words = words;
+	}
+
+	/**
+	 * Decode one block, or the beginning of a block, into an output array
+	 * 
+	 * @param <A>
+	 *            the type of the output array, like int[] or long[]
+	 */
+	@FunctionalInterface
+	public interface IBlockDecoder<A> {
+		void decode(int block, int blockLength, A output, int outputIndex);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getLogBlockSize() {
+		return logBlockSize;
+	}
+
+	public int getNbBlocks() {
+		return codecs.limit();
+	}
+
+	public int getCodecOrdinal(int block) {
+		return codecs.get(block);
+	}
+
+	public long getBlockFirstBit(int block) {
+		return blockFirstBit.get(block);
+	}
+
+	public LongBuffer getWords() {
+		return words;
+	}
+
+	/**
+	 * 
+	 * @return the number of bits used to encode the values, excluding the per-block index
+	 */
+	public long getNbBits() {
+		return words.limit() * (long) Long.SIZE;
+	}
+
+	public int getBlockLength(int block) {
+		return Math.min(1 << logBlockSize, size - (block << logBlockSize));
+	}
+
+	/**
+	 * 
+	 * @return the block holding given index
+	 * @throws ArrayIndexOutOfBoundsException
+	 *             if the index is out of the values
+	 */
+	public int getBlock(int index) {
+		if (index < 0 || index >= size) {
+			throw new ArrayIndexOutOfBoundsException("index=" + index + " while size=" + size);
+		}
+
+		return index >>> logBlockSize;
+	}
+
+	public int getIndexInBlock(int index, int block) {
+		return index - (block << logBlockSize);
+	}
+
+	/**
+	 * Decode whole blocks: the blocks fully covered by the range are decoded directly in the output array
+	 * 
+	 * @param newBlock
+	 *            allocates an array with given length, used to decode the blocks partially covered by the range
+	 */
+	public <A> void getElements(int from,
+			A output,
+			int outputLength,
+			int offset,
+			int length,
+			IntFunction<A> newBlock,
+			IBlockDecoder<A> decoder) {
+		CompressedIntArrays.checkGetElements(size, from, outputLength, offset, length);
+
+		int index = from;
+		int end = from + length;
+		int outputIndex = offset;
+
+		A partialBlock = null;
+		while (index < end) {
+			int block = index >>> logBlockSize;
+			int blockLength = getBlockLength(block);
+
+			int indexInBlock = getIndexInBlock(index, block);
+			int nbElements = Math.min(end - index, blockLength - indexInBlock);
+
+			if (nbElements == blockLength) {
+				decoder.decode(block, blockLength, output, outputIndex);
+			} else {
+				// Only part of this block is requested
+				if (partialBlock == null) {
+					partialBlock = newBlock.apply(1 << logBlockSize);
+				}
+				decoder.decode(block, blockLength, partialBlock, 0);
+				System.arraycopy(partialBlock, indexInBlock, output, outputIndex, nbElements);
+			}
+
+			index += nbElements;
+			outputIndex += nbElements;
+		}
+	}
+}
@@ -22,16 +22,13 @@
  */
 package blasd.apex.primitives;
 
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
+import java.nio.LongBuffer;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.IntStream;
 
-import org.roaringbitmap.RoaringBitmap;
-
 import com.google.common.annotations.Beta;
 
-import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 
 /**
@@ -47,87 +44,123 @@ protected CompressedIntArrays() {
 		// hidden
 	}
 
+	/**
+	 * Compress given ints by detecting the bits which are constant over runs of values
+	 * 
+	 * @see RunningCompressedIntArrayBuilder
+	 */
 	public static IntList compress(IntStream input) {
-		AtomicBoolean firstDone = new AtomicBoolean();
-
-		AtomicInteger nbDifferentConstant = new AtomicInteger();
-		int[] nbConstant = new int[Integer.SIZE];
-		int[] constantBits = new int[Integer.SIZE];
-		int[] constantMasks = new int[Integer.SIZE];
-
-		RoaringBitmap bits = new RoaringBitmap();
-
-		// THis will be used when it appears there is not a single constant bit
-		AtomicReference<IntList> uncompressedTrail = new AtomicReference<>();
-
-		AtomicInteger index = new AtomicInteger();
-		input.forEach(i -> {
-			if (firstDone.compareAndSet(false, true)) {
-				// This is the first int
-				nbDifferentConstant.set(0);
-				nbConstant[0] = 1;
-				constantBits[0] = -1;
-				constantMasks[0] = i;
-			} else {
-				if (uncompressedTrail.get() != null) {
-					// We are not compressing anymore
-					uncompressedTrail.get().add(i);
-					return;
-				}
-
-				int currentConstantBits = constantBits[nbDifferentConstant.get()];
-				int currentMask = constantMasks[nbDifferentConstant.get()];
-
-				int differences = (i & currentConstantBits) ^ currentMask;
-				if (differences != 0) {
-					// The new value is not fitting the mask
-
-					int differentBitCount = Integer.bitCount(differences);
-					nbDifferentConstant.addAndGet(differentBitCount);
-
-					if (nbDifferentConstant.get() == Integer.SIZE) {
-						// There is not a single constant bit: stop compression
-						uncompressedTrail.set(new IntArrayList());
-
-						// We are not compressing anymore
-						uncompressedTrail.get().add(i);
-						return;
-					} else {
-						int newConstantBits = currentConstantBits ^ differences;
-						int newMask = i & newConstantBits;
-
-						constantBits[nbDifferentConstant.get()] = newConstantBits;
-						constantMasks[nbDifferentConstant.get()] = newMask;
-
-						currentConstantBits = newConstantBits;
-						currentMask = newMask;
-					}
-				}
-
-				nbConstant[nbDifferentConstant.get()]++;
-
-				// Constant bits remain stable
-				int bitsToWrite = ~currentConstantBits;
-
-				for (int bitIndex = 0; bitIndex < Integer.SIZE; bitIndex++) {
-					int isBitToWrite = bitsToWrite & Integer.rotateLeft(1, bitIndex);
-					if (isBitToWrite != 0) {
-						int newPosition = index.getAndIncrement();
-						if ((isBitToWrite & i) != 0) {
-							bits.add(newPosition);
-						}
-					}
-				}
+		RunningCompressedIntArrayBuilder builder = new RunningCompressedIntArrayBuilder();
+		input.forEachOrdered(builder);
+		return builder.build();
+	}
+
+	public static BlockCompressedIntArray compressByBlocks(IntStream input) {
+		return compressByBlocks(input, BlockCompressedIntArray.DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Compress given ints by blocks: each block is encoded with the {@link IntBlockCodec} leading to the smallest size
+	 * 
+	 * @param blockSize
+	 *            a power of 2, typically 128 or 1024. Larger blocks amortize better the headers, but random reads are
+	 *            slower for some codecs (e.g. {@link IntBlockCodec#DELTA})
+	 */
+	public static BlockCompressedIntArray compressByBlocks(IntStream input, int blockSize) {
+		BlockCompressedIntArrayBuilder builder = new BlockCompressedIntArrayBuilder(blockSize);
+		input.forEachOrdered(builder);
+		return builder.build();
+	}
+
+	/**
+	 * Compress given ints by blocks, with segments compressed concurrently in the {@link ForkJoinPool#commonPool()}
+	 * 
+	 * @see ParallelCompressedIntArrayBuilder
+	 */
+	public static BlockCompressedIntArray compressInParallel(int[] input) {
+		ParallelCompressedIntArrayBuilder builder = new ParallelCompressedIntArrayBuilder();
+		builder.accept(input, 0, input.length);
+		return builder.build();
+	}
+
+	/**
+	 * Concatenate {@link BlockCompressedIntArray} into a single {@link BlockCompressedIntArray}, without decoding the
+	 * blocks: the packed words are copied, and the block offsets are shifted.
+	 * 
+	 * @param arrays
+	 *            arrays with the same block size. All but the last one have to hold only full blocks
+	 */
+	public static BlockCompressedIntArray concat(List<BlockCompressedIntArray> arrays) {
+		if (arrays.isEmpty()) {
+			return new BlockCompressedIntArrayBuilder().build();
+		}
+
+		int logBlockSize = arrays.get(0).getBlocks().logBlockSize;
+		int blockMask = (1 << logBlockSize) - 1;
+
+		int size = 0;
+		int nbBlocks = 0;
+		int nbWords = 0;
+		for (int i = 0; i < arrays.size(); i++) {
+			CompressedBlocks array = arrays.get(i).getBlocks();
+			if (array.logBlockSize != logBlockSize) {
+				throw new IllegalArgumentException("Can not concatenate blocks of size " + (1 << array.logBlockSize)
+						+ " after blocks of size "
+						+ (1 << logBlockSize));
+			} else if (i < arrays.size() - 1 && (array.size & blockMask) != 0) {
+				throw new IllegalArgumentException(
+						"Only the last array may have a partial block. Not array #" + i + " with size=" + array.size);
+			}
+
+			size = Math.addExact(size, array.size);
+			nbBlocks += array.getNbBlocks();
+			nbWords = Math.addExact(nbWords, array.words.limit());
+		}
+
+		byte[] codecs = new byte[nbBlocks];
+		long[] blockFirstBit = new long[nbBlocks];
+		long[] words = new long[nbWords];
+
+		int blockOffset = 0;
+		int wordOffset = 0;
+		for (BlockCompressedIntArray compressed : arrays) {
+			CompressedBlocks array = compressed.getBlocks();
+			int arrayNbBlocks = array.getNbBlocks();
+			int arrayNbWords = array.words.limit();
+
+			// Each array starts on a new word
+			long bitOffset = wordOffset * (long) Long.SIZE;
+			for (int block = 0; block < arrayNbBlocks; block++) {
+				codecs[blockOffset + block] = array.codecs.get(block);
+				blockFirstBit[blockOffset + block] = bitOffset + array.blockFirstBit.get(block);
 			}
-		});
 
-		RunningCompressedIntArray compressed =
-				new RunningCompressedIntArray(nbConstant, constantBits, constantMasks, bits);
+			// Bulk copy from a duplicate, as the bulk get moves the position
+			LongBuffer arrayWords = array.words.duplicate();
+			arrayWords.position(0);
+			arrayWords.get(words, wordOffset, arrayNbWords);
+
+			blockOffset += arrayNbBlocks;
+			wordOffset += arrayNbWords;
+		}
+
+		return new BlockCompressedIntArray(size, logBlockSize, codecs, blockFirstBit, words);
+	}
 
-		if (uncompressedTrail.get() == null) {
-			return compressed;
-		} else {
-			return new ConcatIntList(compressed, uncompressedTrail.get());
+	/**
+	 * Check the arguments of a bulk read like {@link IntList#getElements(int, int[], int, int)}
+	 * 
+	 * @param size
+	 *            the size of the list
+	 * @param arrayLength
+	 *            the length of the output array
+	 */
+	static void checkGetElements(int size, int from, int arrayLength, int offset, int length) {
+		if (from < 0 || length < 0 || from > size - length) {
+			throw new ArrayIndexOutOfBoundsException("from=" + from + " and length=" + length + " while size=" + size);
+		} else if (offset < 0 || offset > arrayLength - length) {
+			throw new ArrayIndexOutOfBoundsException(
+					"offset=" + offset + " and length=" + length + " while a.length=" + arrayLength);
 		}
 	}
 }
@@ -0,0 +1,67 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.util.stream.DoubleStream;
+import java.util.stream.LongStream;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Provide helps to compressed long and double arrays
+ * 
+ * @author Benoit Lacelle
+ *
+ * @see CompressedIntArrays
+ */
+@Beta
+public class CompressedLongArrays {
+
+	protected CompressedLongArrays() {
+		// hidden
+	}
+
+	public static BlockCompressedLongArray compress(LongStream input) {
+		BlockCompressedLongArrayBuilder builder = new BlockCompressedLongArrayBuilder();
+		input.forEachOrdered(builder);
+		return builder.build();
+	}
+
+	public static BlockCompressedLongArray compress(LongStream input, int blockSize) {
+		BlockCompressedLongArrayBuilder builder = new BlockCompressedLongArrayBuilder(blockSize);
+		input.forEachOrdered(builder);
+		return builder.build();
+	}
+
+	public static BlockCompressedDoubleArray compress(DoubleStream input) {
+		BlockCompressedDoubleArrayBuilder builder = new BlockCompressedDoubleArrayBuilder();
+		input.forEachOrdered(builder);
+		return builder.build();
+	}
+
+	public static BlockCompressedDoubleArray compress(DoubleStream input, int blockSize) {
+		BlockCompressedDoubleArrayBuilder builder = new BlockCompressedDoubleArrayBuilder(blockSize);
+		input.forEachOrdered(builder);
+		return builder.build();
+	}
+}
@@ -23,15 +23,21 @@
 package blasd.apex.primitives;
 
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 import it.unimi.dsi.fastutil.ints.AbstractIntList;
 import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntListIterator;
 
 /**
  * Wraps multiple {@link IntList} in a single concatenated {@link IntList}
  * 
+ * The sizes of the wrapped {@link IntList} are cached on construction: they are expected not to change.
+ * 
  * @author Benoit Lacelle
  *
  */
@@ -39,38 +45,98 @@ public class ConcatIntList extends AbstractIntList {
 
 	protected final List<IntList> intLists;
 
+	/**
+	 * The index of the first element of each wrapped list, followed by the size of this list
+	 */
+	protected final int[] firstIndexes;
+
 	public ConcatIntList(IntList... intLists) {
 		this(Arrays.asList(intLists));
 	}
 
 	public ConcatIntList(List<IntList> intLists) {
 		this.intLists = intLists;
+
+		this.firstIndexes = new int[intLists.size() + 1];
+		for (int i = 0; i < intLists.size(); i++) {
+			firstIndexes[i + 1] = Math.addExact(firstIndexes[i], intLists.get(i).size());
+		}
 	}
 
 	@Override
 	public int getInt(final int index) {
-		Iterator<IntList> it = intLists.iterator();
+		if (index < 0 || index >= size()) {
+			throw new ArrayIndexOutOfBoundsException("index=" + index + " while size=" + size());
+		}
 
-		int previousSize = 0;
+		int listIndex = getListIndex(index);
+		return intLists.get(listIndex).getInt(index - firstIndexes[listIndex]);
+	}
 
-		while (it.hasNext()) {
-			IntList next = it.next();
-			int size = next.size();
+	/**
+	 * 
+	 * @return the index of the wrapped list holding given index, i.e. the highest list starting at or before given
+	 *         index. Empty lists are skipped as they start at the same index than the following list
+	 */
+	protected int getListIndex(int index) {
+		int low = 0;
+		int high = intLists.size() - 1;
 
-			if (index >= previousSize + size) {
-				previousSize += size;
-				continue;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (firstIndexes[middle] <= index) {
+				low = middle;
 			} else {
-				return next.getInt(index - previousSize);
+				high = middle - 1;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Delegates to {@link IntList#getElements(int, int[], int, int)} of each wrapped list, which may decode their
+	 * elements in bulk
+	 */
+	@Override
+	public void getElements(int from, int[] a, int offset, int length) {
+		CompressedIntArrays.checkGetElements(size(), from, a.length, offset, length);
+
+		int index = from;
+		int end = from + length;
+		int outputIndex = offset;
+
+		int listIndex = getListIndex(index);
+		while (index < end) {
+			int listEnd = Math.min(end, firstIndexes[listIndex + 1]);
+
+			int nbElements = listEnd - index;
+			if (nbElements > 0) {
+				intLists.get(listIndex).getElements(index - firstIndexes[listIndex], a, outputIndex, nbElements);
+				outputIndex += nbElements;
 			}
+
+			index = listEnd;
+			listIndex++;
 		}
+	}
+
+	@Override
+	public IntListIterator listIterator(int index) {
+		return new BufferedIntListIterator(this, index);
+	}
 
-		throw new ArrayIndexOutOfBoundsException("index=" + index + " while size=" + size());
+	/**
+	 * 
+	 * @return a sequential {@link IntStream} over this list, decoding values by chunks
+	 */
+	public IntStream intStream() {
+		return StreamSupport.intStream(Spliterators.spliterator(iterator(), size(), Spliterator.ORDERED), false);
 	}
 
 	@Override
 	public int size() {
-		return intLists.stream().mapToInt(IntList::size).sum();
+		return firstIndexes[intLists.size()];
 	}
 
 }
@@ -0,0 +1,473 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * The codecs available to encode a block of ints in a {@link BlockCompressedIntArray}. Each block is written as a small
+ * header followed by a payload, in a packed array of longs. Each codec provides random access to a single value of the
+ * block, and a bulk decoding of the whole block.
+ * 
+ * Counts are written on 16 bits: blocks are limited to {@link BlockCompressedIntArray#MAX_BLOCK_SIZE} values.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public enum IntBlockCodec {
+	/**
+	 * Frame-Of-Reference: each value is written as its offset from the minimum of the block, with the number of bits
+	 * needed by the largest offset
+	 */
+	FOR {
+		@Override
+		public void encode(int[] block, int length, PackedBitsWriter output) {
+			int min = min(block, length);
+			int width = bitsFor(Integer.toUnsignedLong(max(block, length) - min));
+
+			output.write(min, Integer.SIZE);
+			output.write(width, WIDTH_BITS);
+			for (int i = 0; i < length; i++) {
+				output.write(block[i] - min, width);
+			}
+		}
+
+		@Override
+		public int get(LongBuffer words, long blockBit, int length, int index) {
+			int base = readBits(words, blockBit, Integer.SIZE);
+			int width = readBits(words, blockBit + Integer.SIZE, WIDTH_BITS);
+
+			return base + readBits(words, blockBit + Integer.SIZE + WIDTH_BITS + index * (long) width, width);
+		}
+
+		@Override
+		public void decode(LongBuffer words, long blockBit, int length, int[] output, int offset) {
+			int base = readBits(words, blockBit, Integer.SIZE);
+			int width = readBits(words, blockBit + Integer.SIZE, WIDTH_BITS);
+
+			long bit = blockBit + Integer.SIZE + WIDTH_BITS;
+			for (int i = 0; i < length; i++) {
+				output[offset + i] = base + readBits(words, bit, width);
+				bit += width;
+			}
+		}
+	},
+
+	/**
+	 * Each value is written as its difference with the previous value, as a Frame-Of-Reference over these differences.
+	 * It fits sorted columns, like identifiers. A random read decodes the block up to given index.
+	 */
+	DELTA {
+		@Override
+		public void encode(int[] block, int length, PackedBitsWriter output) {
+			int minDelta = 0;
+			int maxDelta = 0;
+			for (int i = 1; i < length; i++) {
+				int delta = block[i] - block[i - 1];
+				if (i == 1 || delta < minDelta) {
+					minDelta = delta;
+				}
+				if (i == 1 || delta > maxDelta) {
+					maxDelta = delta;
+				}
+			}
+			int width = bitsFor(Integer.toUnsignedLong(maxDelta - minDelta));
+
+			output.write(block[0], Integer.SIZE);
+			output.write(minDelta, Integer.SIZE);
+			output.write(width, WIDTH_BITS);
+			for (int i = 1; i < length; i++) {
+				output.write(block[i] - block[i - 1] - minDelta, width);
+			}
+		}
+
+		@Override
+		public int get(LongBuffer words, long blockBit, int length, int index) {
+			int value = readBits(words, blockBit, Integer.SIZE);
+			int minDelta = readBits(words, blockBit + Integer.SIZE, Integer.SIZE);
+			int width = readBits(words, blockBit + 2 * Integer.SIZE, WIDTH_BITS);
+
+			value += index * minDelta;
+
+			long bit = blockBit + 2 * Integer.SIZE + WIDTH_BITS;
+			for (int i = 1; i <= index; i++) {
+				value += readBits(words, bit, width);
+				bit += width;
+			}
+			return value;
+		}
+
+		@Override
+		public void decode(LongBuffer words, long blockBit, int length, int[] output, int offset) {
+			int value = readBits(words, blockBit, Integer.SIZE);
+			int minDelta = readBits(words, blockBit + Integer.SIZE, Integer.SIZE);
+			int width = readBits(words, blockBit + 2 * Integer.SIZE, WIDTH_BITS);
+
+			output[offset] = value;
+
+			long bit = blockBit + 2 * Integer.SIZE + WIDTH_BITS;
+			for (int i = 1; i < length; i++) {
+				value += minDelta + readBits(words, bit, width);
+				bit += width;
+				output[offset + i] = value;
+			}
+		}
+	},
+
+	/**
+	 * Patched Frame-Of-Reference: like {@link #FOR}, but the base and the width are chosen so that most values fit in
+	 * the width. The high bits of the other values (the exceptions) are written after the packed values, with their
+	 * positions in the block.
+	 */
+	PFOR {
+		@Override
+		public void encode(int[] block, int length, PackedBitsWriter output) {
+			int positionBits = bitsFor(length - 1);
+
+			// As exceptions hold the high bits of the offset from the base, any base is valid. We consider low
+			// quantiles as candidates, as the minimum may be a (negative) exception
+			int[] sorted = Arrays.copyOf(block, length);
+			Arrays.sort(sorted);
+
+			int bestBase = sorted[0];
+			int bestWidth = Integer.SIZE;
+			long bestSize = Long.MAX_VALUE;
+			for (int quantile : new int[] { 0, length / 32, length / 16, length / 8 }) {
+				int base = sorted[quantile];
+
+				// How many values need given number of bits
+				int[] bitsHistogram = new int[Integer.SIZE + 1];
+				for (int i = 0; i < length; i++) {
+					bitsHistogram[bitsFor(Integer.toUnsignedLong(block[i] - base))]++;
+				}
+
+				// Find the width minimizing the number of bits
+				int nbExceptions = 0;
+				for (int width = Integer.SIZE; width >= 0; width--) {
+					long size = length * (long) width + nbExceptions * (long) (positionBits + Integer.SIZE - width);
+					if (size < bestSize) {
+						bestSize = size;
+						bestWidth = width;
+						bestBase = base;
+					}
+					// Values needing exactly width bits are exceptions for a lower width
+					nbExceptions += bitsHistogram[width];
+				}
+			}
+
+			int width = bestWidth;
+			int highWidth = Integer.SIZE - width;
+
+			int bestNbExceptions = 0;
+			for (int i = 0; i < length; i++) {
+				if (bitsFor(Integer.toUnsignedLong(block[i] - bestBase)) > width) {
+					bestNbExceptions++;
+				}
+			}
+
+			output.write(bestBase, Integer.SIZE);
+			output.write(width, WIDTH_BITS);
+			output.write(bestNbExceptions, COUNT_BITS);
+
+			for (int i = 0; i < length; i++) {
+				output.write(block[i] - bestBase, width);
+			}
+			for (int i = 0; i < length; i++) {
+				if (bitsFor(Integer.toUnsignedLong(block[i] - bestBase)) > width) {
+					output.write(i, positionBits);
+				}
+			}
+			for (int i = 0; i < length; i++) {
+				if (bitsFor(Integer.toUnsignedLong(block[i] - bestBase)) > width) {
+					output.write((block[i] - bestBase) >>> width, highWidth);
+				}
+			}
+		}
+
+		@Override
+		public int get(LongBuffer words, long blockBit, int length, int index) {
+			int base = readBits(words, blockBit, Integer.SIZE);
+			int width = readBits(words, blockBit + Integer.SIZE, WIDTH_BITS);
+			int nbExceptions = readBits(words, blockBit + Integer.SIZE + WIDTH_BITS, COUNT_BITS);
+
+			long lowStart = blockBit + Integer.SIZE + WIDTH_BITS + COUNT_BITS;
+			int value = readBits(words, lowStart + index * (long) width, width);
+
+			if (nbExceptions > 0) {
+				int positionBits = bitsFor(length - 1);
+				long positionStart = lowStart + length * (long) width;
+
+				// Binary search amongst the sorted positions of exceptions
+				int low = 0;
+				int high = nbExceptions - 1;
+				while (low <= high) {
+					int middle = (low + high) >>> 1;
+					int position = readBits(words, positionStart + middle * (long) positionBits, positionBits);
+					if (position < index) {
+						low = middle + 1;
+					} else if (position > index) {
+						high = middle - 1;
+					} else {
+						int highWidth = Integer.SIZE - width;
+						long highStart = positionStart + nbExceptions * (long) positionBits;
+						value |= readBits(words, highStart + middle * (long) highWidth, highWidth) << width;
+						break;
+					}
+				}
+			}
+
+			return base + value;
+		}
+
+		@Override
+		public void decode(LongBuffer words, long blockBit, int length, int[] output, int offset) {
+			int base = readBits(words, blockBit, Integer.SIZE);
+			int width = readBits(words, blockBit + Integer.SIZE, WIDTH_BITS);
+			int nbExceptions = readBits(words, blockBit + Integer.SIZE + WIDTH_BITS, COUNT_BITS);
+
+			long bit = blockBit + Integer.SIZE + WIDTH_BITS + COUNT_BITS;
+			for (int i = 0; i < length; i++) {
+				output[offset + i] = readBits(words, bit, width);
+				bit += width;
+			}
+
+			// Patch the exceptions
+			int positionBits = bitsFor(length - 1);
+			int highWidth = Integer.SIZE - width;
+			long highStart = bit + nbExceptions * (long) positionBits;
+			for (int i = 0; i < nbExceptions; i++) {
+				int position = readBits(words, bit + i * (long) positionBits, positionBits);
+				output[offset + position] |= readBits(words, highStart + i * (long) highWidth, highWidth) << width;
+			}
+
+			for (int i = 0; i < length; i++) {
+				output[offset + i] += base;
+			}
+		}
+	},
+
+	/**
+	 * The distinct values of the block are written once, and each value is written as its index in these distinct
+	 * values. It fits low-cardinality columns, like codes.
+	 */
+	DICTIONARY {
+		@Override
+		public void encode(int[] block, int length, PackedBitsWriter output) {
+			int[] dictionary = distinct(block, length);
+			int width = bitsFor(dictionary.length - 1);
+
+			output.write(dictionary.length, COUNT_BITS);
+			for (int value : dictionary) {
+				output.write(value, Integer.SIZE);
+			}
+			for (int i = 0; i < length; i++) {
+				output.write(Arrays.binarySearch(dictionary, block[i]), width);
+			}
+		}
+
+		@Override
+		public int get(LongBuffer words, long blockBit, int length, int index) {
+			int nbEntries = readBits(words, blockBit, COUNT_BITS);
+			int width = bitsFor(nbEntries - 1);
+
+			long indexesStart = blockBit + COUNT_BITS + nbEntries * (long) Integer.SIZE;
+			int entry = readBits(words, indexesStart + index * (long) width, width);
+
+			return readBits(words, blockBit + COUNT_BITS + entry * (long) Integer.SIZE, Integer.SIZE);
+		}
+
+		@Override
+		public void decode(LongBuffer words, long blockBit, int length, int[] output, int offset) {
+			int nbEntries = readBits(words, blockBit, COUNT_BITS);
+			int width = bitsFor(nbEntries - 1);
+
+			int[] dictionary = new int[nbEntries];
+			for (int i = 0; i < nbEntries; i++) {
+				dictionary[i] = readBits(words, blockBit + COUNT_BITS + i * (long) Integer.SIZE, Integer.SIZE);
+			}
+
+			long bit = blockBit + COUNT_BITS + nbEntries * (long) Integer.SIZE;
+			for (int i = 0; i < length; i++) {
+				output[offset + i] = dictionary[readBits(words, bit, width)];
+				bit += width;
+			}
+		}
+	},
+
+	/**
+	 * Run-Length Encoding: each run of equal values is written as its value and the position of its first value. It
+	 * fits columns with long runs, like sorted low-cardinality columns.
+	 */
+	RLE {
+		@Override
+		public void encode(int[] block, int length, PackedBitsWriter output) {
+			int nbRuns = 1;
+			for (int i = 1; i < length; i++) {
+				if (block[i] != block[i - 1]) {
+					nbRuns++;
+				}
+			}
+
+			output.write(nbRuns, COUNT_BITS);
+			for (int i = 0; i < length; i++) {
+				if (i == 0 || block[i] != block[i - 1]) {
+					output.write(block[i], Integer.SIZE);
+				}
+			}
+
+			// The first run always starts at 0: it is not written
+			int positionBits = bitsFor(length - 1);
+			for (int i = 1; i < length; i++) {
+				if (block[i] != block[i - 1]) {
+					output.write(i, positionBits);
+				}
+			}
+		}
+
+		@Override
+		public int get(LongBuffer words, long blockBit, int length, int index) {
+			int nbRuns = readBits(words, blockBit, COUNT_BITS);
+			int positionBits = bitsFor(length - 1);
+
+			long startsStart = blockBit + COUNT_BITS + nbRuns * (long) Integer.SIZE;
+
+			// Find the last run starting at or before index. Run i starts at position written at i - 1
+			int low = 0;
+			int high = nbRuns - 1;
+			while (low < high) {
+				int middle = (low + high + 1) >>> 1;
+				int runStart = readBits(words, startsStart + (middle - 1) * (long) positionBits, positionBits);
+				if (runStart <= index) {
+					low = middle;
+				} else {
+					high = middle - 1;
+				}
+			}
+
+			return readBits(words, blockBit + COUNT_BITS + low * (long) Integer.SIZE, Integer.SIZE);
+		}
+
+		@Override
+		public void decode(LongBuffer words, long blockBit, int length, int[] output, int offset) {
+			int nbRuns = readBits(words, blockBit, COUNT_BITS);
+			int positionBits = bitsFor(length - 1);
+
+			long startsStart = blockBit + COUNT_BITS + nbRuns * (long) Integer.SIZE;
+
+			for (int run = 0; run < nbRuns; run++) {
+				int runStart;
+				if (run == 0) {
+					runStart = 0;
+				} else {
+					runStart = readBits(words, startsStart + (run - 1) * (long) positionBits, positionBits);
+				}
+
+				int runEnd;
+				if (run == nbRuns - 1) {
+					runEnd = length;
+				} else {
+					runEnd = readBits(words, startsStart + run * (long) positionBits, positionBits);
+				}
+
+				int value = readBits(words, blockBit + COUNT_BITS + run * (long) Integer.SIZE, Integer.SIZE);
+				Arrays.fill(output, offset + runStart, offset + runEnd, value);
+			}
+		}
+	};
+
+	// A width is between 0 and 32
+	private static final int WIDTH_BITS = 6;
+
+	private static final int COUNT_BITS = 16;
+
+	private static final IntBlockCodec[] VALUES = values();
+
+	/**
+	 * Write given block. It is expected to hold at least one value.
+	 */
+	public abstract void encode(int[] block, int length, PackedBitsWriter output);
+
+	/**
+	 * 
+	 * @return the value at given index of the block starting at given bit
+	 */
+	public abstract int get(LongBuffer words, long blockBit, int length, int index);
+
+	/**
+	 * Write all the values of the block starting at given bit in output
+	 */
+	public abstract void decode(LongBuffer words, long blockBit, int length, int[] output, int offset);
+
+	public static IntBlockCodec fromOrdinal(int ordinal) {
+		return VALUES[ordinal];
+	}
+
+	/**
+	 * 
+	 * @return the number of bits needed to write given unsigned value
+	 */
+	static int bitsFor(long unsignedValue) {
+		return Long.SIZE - Long.numberOfLeadingZeros(unsignedValue);
+	}
+
+	/**
+	 * Similar to {@link RunningCompressedIntArray#readBits(LongBuffer, long, int)}, but accepts 0 bits
+	 */
+	static int readBits(LongBuffer words, long bitShift, int nbBits) {
+		if (nbBits == 0) {
+			return 0;
+		} else {
+			return RunningCompressedIntArray.readBits(words, bitShift, nbBits);
+		}
+	}
+
+	static int min(int[] block, int length) {
+		int min = block[0];
+		for (int i = 1; i < length; i++) {
+			min = Math.min(min, block[i]);
+		}
+		return min;
+	}
+
+	static int max(int[] block, int length) {
+		int max = block[0];
+		for (int i = 1; i < length; i++) {
+			max = Math.max(max, block[i]);
+		}
+		return max;
+	}
+
+	static int[] distinct(int[] block, int length) {
+		int[] sorted = Arrays.copyOf(block, length);
+		Arrays.sort(sorted);
+
+		int nbDistinct = 1;
+		for (int i = 1; i < length; i++) {
+			if (sorted[i] != sorted[nbDistinct - 1]) {
+				sorted[nbDistinct++] = sorted[i];
+			}
+		}
+		return Arrays.copyOf(sorted, nbDistinct);
+	}
+}
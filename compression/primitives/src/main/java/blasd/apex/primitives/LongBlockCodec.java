@@ -0,0 +1,390 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.nio.LongBuffer;
+
+/**
+ * The codecs available to encode a block of longs in a {@link BlockCompressedLongArray}. Doubles are encoded through
+ * their raw long bits. Each block is written as a small header followed by a payload, in a packed array of longs.
+ * 
+ * {@link #FOR} provides random access to a single value. The other codecs decode the block up to the requested value,
+ * as they encode each value relatively to the previous ones.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public enum LongBlockCodec {
+	/**
+	 * Frame-Of-Reference: each value is written as its offset from the minimum of the block, with the number of bits
+	 * needed by the largest offset
+	 */
+	FOR {
+		@Override
+		public void encode(long[] block, int length, PackedBitsWriter output) {
+			long min = block[0];
+			long max = block[0];
+			for (int i = 1; i < length; i++) {
+				min = Math.min(min, block[i]);
+				max = Math.max(max, block[i]);
+			}
+			int width = bitsFor(max - min);
+
+			output.writeLong(min, Long.SIZE);
+			output.write(width, WIDTH_BITS);
+			for (int i = 0; i < length; i++) {
+				output.writeLong(block[i] - min, width);
+			}
+		}
+
+		@Override
+		public long get(LongBuffer words, long blockBit, int length, int index) {
+			long base = readLongBits(words, blockBit, Long.SIZE);
+			int width = (int) readLongBits(words, blockBit + Long.SIZE, WIDTH_BITS);
+
+			return base + readLongBits(words, blockBit + Long.SIZE + WIDTH_BITS + index * (long) width, width);
+		}
+
+		@Override
+		public void decode(LongBuffer words, long blockBit, int length, long[] output, int offset) {
+			long base = readLongBits(words, blockBit, Long.SIZE);
+			int width = (int) readLongBits(words, blockBit + Long.SIZE, WIDTH_BITS);
+
+			long bit = blockBit + Long.SIZE + WIDTH_BITS;
+			for (int i = 0; i < length; i++) {
+				output[offset + i] = base + readLongBits(words, bit, width);
+				bit += width;
+			}
+		}
+	},
+
+	/**
+	 * Each value is written as its difference with the previous value, as a Frame-Of-Reference over these differences.
+	 * It fits sorted columns, like identifiers.
+	 */
+	DELTA {
+		@Override
+		public void encode(long[] block, int length, PackedBitsWriter output) {
+			long minDelta = 0;
+			long maxDelta = 0;
+			for (int i = 1; i < length; i++) {
+				long delta = block[i] - block[i - 1];
+				if (i == 1 || delta < minDelta) {
+					minDelta = delta;
+				}
+				if (i == 1 || delta > maxDelta) {
+					maxDelta = delta;
+				}
+			}
+			int width = bitsFor(maxDelta - minDelta);
+
+			output.writeLong(block[0], Long.SIZE);
+			output.writeLong(minDelta, Long.SIZE);
+			output.write(width, WIDTH_BITS);
+			for (int i = 1; i < length; i++) {
+				output.writeLong(block[i] - block[i - 1] - minDelta, width);
+			}
+		}
+
+		@Override
+		public long get(LongBuffer words, long blockBit, int length, int index) {
+			long value = readLongBits(words, blockBit, Long.SIZE);
+			long minDelta = readLongBits(words, blockBit + Long.SIZE, Long.SIZE);
+			int width = (int) readLongBits(words, blockBit + 2 * Long.SIZE, WIDTH_BITS);
+
+			value += index * minDelta;
+
+			long bit = blockBit + 2 * Long.SIZE + WIDTH_BITS;
+			for (int i = 1; i <= index; i++) {
+				value += readLongBits(words, bit, width);
+				bit += width;
+			}
+			return value;
+		}
+
+		@Override
+		public void decode(LongBuffer words, long blockBit, int length, long[] output, int offset) {
+			long value = readLongBits(words, blockBit, Long.SIZE);
+			long minDelta = readLongBits(words, blockBit + Long.SIZE, Long.SIZE);
+			int width = (int) readLongBits(words, blockBit + 2 * Long.SIZE, WIDTH_BITS);
+
+			output[offset] = value;
+
+			long bit = blockBit + 2 * Long.SIZE + WIDTH_BITS;
+			for (int i = 1; i < length; i++) {
+				value += minDelta + readLongBits(words, bit, width);
+				bit += width;
+				output[offset + i] = value;
+			}
+		}
+	},
+
+	/**
+	 * Gorilla-like encoding of timestamps: each value is written as the difference between its delta and the previous
+	 * delta, with a variable-length code. An unchanged delta takes a single bit. It fits timestamps sampled at a
+	 * (nearly) regular interval.
+	 */
+	DELTA_OF_DELTA {
+		@Override
+		public void encode(long[] block, int length, PackedBitsWriter output) {
+			long firstDelta = 0;
+			if (length >= 2) {
+				firstDelta = block[1] - block[0];
+			}
+
+			output.writeLong(block[0], Long.SIZE);
+			output.writeLong(firstDelta, Long.SIZE);
+			for (int i = 2; i < length; i++) {
+				long dod = (block[i] - block[i - 1]) - (block[i - 1] - block[i - 2]);
+
+				if (dod == 0) {
+					output.write(0, 1);
+				} else {
+					// Find the smallest signed width holding dod
+					int bucket = 0;
+					while (bucket < DOD_WIDTHS.length - 1 && !fitsSigned(dod, DOD_WIDTHS[bucket])) {
+						bucket++;
+					}
+
+					// '1' repeated (bucket + 1) times, then '0' except for the last bucket: 10, 110, 1110, 1111
+					int nbPrefixBits = Math.min(bucket + 2, DOD_WIDTHS.length);
+					output.write((1 << (bucket + 1)) - 1, nbPrefixBits);
+					output.writeLong(dod, DOD_WIDTHS[bucket]);
+				}
+			}
+		}
+
+		@Override
+		public long get(LongBuffer words, long blockBit, int length, int index) {
+			return decodeDod(words, blockBit, index + 1, null, 0);
+		}
+
+		@Override
+		public void decode(LongBuffer words, long blockBit, int length, long[] output, int offset) {
+			decodeDod(words, blockBit, length, output, offset);
+		}
+
+		/**
+		 * 
+		 * @param output
+		 *            if null, the values are decoded but not written
+		 * @return the last decoded value
+		 */
+		protected long decodeDod(LongBuffer words, long blockBit, int length, long[] output, int offset) {
+			long value = readLongBits(words, blockBit, Long.SIZE);
+			long delta = readLongBits(words, blockBit + Long.SIZE, Long.SIZE);
+			if (output != null) {
+				output[offset] = value;
+			}
+
+			long bit = blockBit + 2 * Long.SIZE;
+			for (int i = 1; i < length; i++) {
+				if (i >= 2 && readLongBits(words, bit++, 1) != 0) {
+					int bucket = 0;
+					while (bucket < DOD_WIDTHS.length - 1 && readLongBits(words, bit++, 1) != 0) {
+						bucket++;
+					}
+
+					int width = DOD_WIDTHS[bucket];
+					long dod = readLongBits(words, bit, width);
+					bit += width;
+
+					// Sign-extend
+					delta += (dod << (Long.SIZE - width)) >> (Long.SIZE - width);
+				}
+
+				value += delta;
+				if (output != null) {
+					output[offset + i] = value;
+				}
+			}
+
+			return value;
+		}
+	},
+
+	/**
+	 * Gorilla-like encoding: each value is XORed with the previous value. An unchanged value takes a single bit.
+	 * Otherwise, only the meaningful bits of the XOR are written, reusing the previous leading and trailing zeros when
+	 * they fit. It fits slowly-changing doubles, like measures.
+	 */
+	XOR {
+		@Override
+		public void encode(long[] block, int length, PackedBitsWriter output) {
+			output.writeLong(block[0], Long.SIZE);
+
+			// -1 means there is no previous window yet
+			int previousLeading = -1;
+			int previousTrailing = -1;
+
+			for (int i = 1; i < length; i++) {
+				long xor = block[i] ^ block[i - 1];
+
+				if (xor == 0) {
+					output.write(0, 1);
+				} else {
+					output.write(1, 1);
+
+					int leading = Long.numberOfLeadingZeros(xor);
+					int trailing = Long.numberOfTrailingZeros(xor);
+
+					if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+						// Reuse the previous window
+						output.write(0, 1);
+						output.writeLong(xor >>> previousTrailing, Long.SIZE - previousLeading - previousTrailing);
+					} else {
+						int meaningful = Long.SIZE - leading - trailing;
+
+						output.write(1, 1);
+						output.write(leading, WINDOW_BITS);
+						// meaningful is between 1 and 64: we write meaningful - 1 on 6 bits
+						output.write(meaningful - 1, WINDOW_BITS);
+						output.writeLong(xor >>> trailing, meaningful);
+
+						previousLeading = leading;
+						previousTrailing = trailing;
+					}
+				}
+			}
+		}
+
+		@Override
+		public long get(LongBuffer words, long blockBit, int length, int index) {
+			return decodeXor(words, blockBit, index + 1, null, 0);
+		}
+
+		@Override
+		public void decode(LongBuffer words, long blockBit, int length, long[] output, int offset) {
+			decodeXor(words, blockBit, length, output, offset);
+		}
+
+		/**
+		 * 
+		 * @param output
+		 *            if null, the values are decoded but not written
+		 * @return the last decoded value
+		 */
+		protected long decodeXor(LongBuffer words, long blockBit, int length, long[] output, int offset) {
+			long value = readLongBits(words, blockBit, Long.SIZE);
+			if (output != null) {
+				output[offset] = value;
+			}
+
+			long bit = blockBit + Long.SIZE;
+
+			int leading = 0;
+			int trailing = 0;
+
+			for (int i = 1; i < length; i++) {
+				if (readLongBits(words, bit++, 1) != 0) {
+					if (readLongBits(words, bit++, 1) != 0) {
+						leading = (int) readLongBits(words, bit, WINDOW_BITS);
+						bit += WINDOW_BITS;
+						int meaningful = (int) readLongBits(words, bit, WINDOW_BITS) + 1;
+						bit += WINDOW_BITS;
+						trailing = Long.SIZE - leading - meaningful;
+					}
+
+					int meaningful = Long.SIZE - leading - trailing;
+					value ^= readLongBits(words, bit, meaningful) << trailing;
+					bit += meaningful;
+				}
+
+				if (output != null) {
+					output[offset + i] = value;
+				}
+			}
+
+			return value;
+		}
+	};
+
+	// A width is between 0 and 64
+	private static final int WIDTH_BITS = 7;
+
+	// The widths of the signed delta-of-deltas, given their prefix code
+	private static final int[] DOD_WIDTHS = { 7, 9, 12, Long.SIZE };
+
+	// Leading zeros and meaningful bits are between 0 and 63 (meaningful bits are written minus 1)
+	private static final int WINDOW_BITS = 6;
+
+	private static final LongBlockCodec[] VALUES = values();
+
+	/**
+	 * Write given block. It is expected to hold at least one value.
+	 */
+	public abstract void encode(long[] block, int length, PackedBitsWriter output);
+
+	/**
+	 * 
+	 * @return the value at given index of the block starting at given bit
+	 */
+	public abstract long get(LongBuffer words, long blockBit, int length, int index);
+
+	/**
+	 * Write all the values of the block starting at given bit in output
+	 */
+	public abstract void decode(LongBuffer words, long blockBit, int length, long[] output, int offset);
+
+	public static LongBlockCodec fromOrdinal(int ordinal) {
+		return VALUES[ordinal];
+	}
+
+	/**
+	 * 
+	 * @return the number of bits needed to write given unsigned value
+	 */
+	static int bitsFor(long unsignedValue) {
+		return Long.SIZE - Long.numberOfLeadingZeros(unsignedValue);
+	}
+
+	static boolean fitsSigned(long value, int width) {
+		return value >= -(1L << (width - 1)) && value < (1L << (width - 1));
+	}
+
+	/**
+	 * 
+	 * @param nbBits
+	 *            the number of bits to read, between 0 and 64
+	 * @return the nbBits bits starting at given bit position, as the lowest bits of a long
+	 */
+	static long readLongBits(LongBuffer words, long bitShift, int nbBits) {
+		if (nbBits == 0) {
+			return 0;
+		}
+
+		int wordIndex = (int) (bitShift >>> 6);
+		int offset = (int) (bitShift & 63);
+
+		long packed = words.get(wordIndex) >>> offset;
+		if (offset + nbBits > Long.SIZE) {
+			packed |= words.get(wordIndex + 1) << (Long.SIZE - offset);
+		}
+
+		if (nbBits == Long.SIZE) {
+			return packed;
+		} else {
+			return packed & ((1L << nbBits) - 1);
+		}
+	}
+}
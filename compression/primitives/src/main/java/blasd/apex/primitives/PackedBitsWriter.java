@@ -0,0 +1,110 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.nio.LongBuffer;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+/**
+ * Append bits to a growing packed array of longs, in the layout read by
+ * {@link RunningCompressedIntArray#readBits(LongBuffer, long, int)}
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class PackedBitsWriter {
+	protected final LongArrayList words = new LongArrayList();
+
+	protected long position = 0;
+
+	/**
+	 * 
+	 * @return the number of bits written so far
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Append the lowest nbBits of value
+	 * 
+	 * @param nbBits
+	 *            between 0 and 32
+	 */
+	public void write(int value, int nbBits) {
+		if (nbBits == 0) {
+			return;
+		}
+
+		int nbWords = RunningCompressedIntArray.wordsForBits(position + nbBits);
+		while (words.size() < nbWords) {
+			// .add grows the underlying array geometrically, while .size(int) would grow it exactly
+			words.add(0L);
+		}
+
+		RunningCompressedIntArray.writeBits(words.elements(), position, value, nbBits);
+		position += nbBits;
+	}
+
+	/**
+	 * Append the lowest nbBits of value
+	 * 
+	 * @param nbBits
+	 *            between 0 and 64
+	 */
+	public void writeLong(long value, int nbBits) {
+		if (nbBits <= Integer.SIZE) {
+			write((int) value, nbBits);
+		} else {
+			write((int) value, Integer.SIZE);
+			write((int) (value >>> Integer.SIZE), nbBits - Integer.SIZE);
+		}
+	}
+
+	/**
+	 * Append the bits written in another {@link PackedBitsWriter}
+	 */
+	public void write(PackedBitsWriter other) {
+		LongBuffer otherWords = LongBuffer.wrap(other.words.elements());
+
+		long otherPosition = 0;
+		while (otherPosition < other.position) {
+			int nbBits = (int) Math.min(Integer.SIZE, other.position - otherPosition);
+			write(RunningCompressedIntArray.readBits(otherWords, otherPosition, nbBits), nbBits);
+			otherPosition += nbBits;
+		}
+	}
+
+	/**
+	 * Reset this writer, keeping the underlying array for later writes
+	 */
+	public void clear() {
+		words.clear();
+		position = 0;
+	}
+
+	public long[] toWords() {
+		return words.toLongArray();
+	}
+}
@@ -0,0 +1,212 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+
+import blasd.apex.core.thread.ApexExecutorsHelper;
+
+/**
+ * Build a {@link BlockCompressedIntArray} with multiple threads. Accepted ints are gathered in segments of a fixed
+ * size, each full segment is compressed by a task of given {@link Executor}, and the compressed segments are
+ * concatenated by {@link #build()} without decoding them.
+ * 
+ * Ints are typically provided by batches ({@link #accept(int[], int, int)} or {@link #accept(IntBuffer)}). This builder
+ * itself is not thread-safe: batches have to be accepted by a single thread, in order.
+ * 
+ * The number of segments pending compression is bounded, so that the uncompressed input is not accumulated in memory
+ * when the compression is slower than the input.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class ParallelCompressedIntArrayBuilder implements IntConsumer {
+	/**
+	 * 1M ints: large enough to amortize the task overhead, small enough to split a column among many threads
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+	protected final Executor executor;
+	protected final int blockSize;
+	protected final int segmentSize;
+	protected final int maxPendingSegments;
+
+	protected final List<CompletableFuture<BlockCompressedIntArray>> compressedSegments = new ArrayList<>();
+
+	// The segments before this index are known to be compressed
+	protected int nbDoneSegments = 0;
+
+	protected int[] segment;
+	protected int segmentLength = 0;
+
+	protected boolean built = false;
+
+	/**
+	 * Compress segments in the {@link ForkJoinPool#commonPool()}
+	 */
+	public ParallelCompressedIntArrayBuilder() {
+		this(ForkJoinPool.commonPool(),
+				BlockCompressedIntArray.DEFAULT_BLOCK_SIZE,
+				DEFAULT_SEGMENT_SIZE,
+				ApexExecutorsHelper.DEFAULT_ACTIVE_TASKS);
+	}
+
+	/**
+	 * 
+	 * @param executor
+	 *            the {@link Executor} compressing the segments
+	 * @param blockSize
+	 *            the block size of the {@link BlockCompressedIntArray}
+	 * @param segmentSize
+	 *            the number of ints compressed by each task. It has to be a multiple of the block size, so that only
+	 *            the last block of the last segment may be partial
+	 * @param maxPendingSegments
+	 *            the maximum number of full segments waiting for their compression. Accepting more ints blocks until
+	 *            the oldest segment is compressed
+	 */
+	public ParallelCompressedIntArrayBuilder(Executor executor,
+			int blockSize,
+			int segmentSize,
+			int maxPendingSegments) {
+		BlockCompressedIntArrayBuilder.checkBlockSize(blockSize);
+		if (segmentSize <= 0 || segmentSize % blockSize != 0) {
+			throw new IllegalArgumentException(
+					"segmentSize has to be a positive multiple of blockSize=" + blockSize + ": " + segmentSize);
+		} else if (maxPendingSegments <= 0) {
+			throw new IllegalArgumentException("maxPendingSegments has to be strictly positive: " + maxPendingSegments);
+		}
+
+		this.executor = executor;
+		this.blockSize = blockSize;
+		this.segmentSize = segmentSize;
+		this.maxPendingSegments = maxPendingSegments;
+
+		this.segment = new int[segmentSize];
+	}
+
+	@Override
+	public void accept(int value) {
+		checkNotBuilt();
+
+		segment[segmentLength++] = value;
+		if (segmentLength == segmentSize) {
+			submitSegment();
+		}
+	}
+
+	/**
+	 * Accept a batch of ints. Given array is not referenced after this call
+	 */
+	public void accept(int[] values, int offset, int length) {
+		accept(IntBuffer.wrap(values, offset, length));
+	}
+
+	/**
+	 * Accept the remaining ints of given {@link IntBuffer}, which is consumed up to its limit
+	 */
+	public void accept(IntBuffer values) {
+		checkNotBuilt();
+
+		while (values.hasRemaining()) {
+			int nbCopied = Math.min(values.remaining(), segmentSize - segmentLength);
+			values.get(segment, segmentLength, nbCopied);
+
+			segmentLength += nbCopied;
+
+			if (segmentLength == segmentSize) {
+				submitSegment();
+			}
+		}
+	}
+
+	protected void checkNotBuilt() {
+		if (built) {
+			throw new IllegalStateException("Can not accept values after .build()");
+		}
+	}
+
+	protected void submitSegment() {
+		int[] toCompress = segment;
+		int length = segmentLength;
+
+		compressedSegments.add(CompletableFuture.supplyAsync(() -> compressSegment(toCompress, length), executor));
+
+		// The submitted array is now owned by the task
+		segment = new int[segmentSize];
+		segmentLength = 0;
+
+		// Wait for the oldest segments, to bound the memory held by uncompressed segments
+		while (compressedSegments.size() - nbDoneSegments > maxPendingSegments) {
+			joinUnchecked(compressedSegments.get(nbDoneSegments));
+			nbDoneSegments++;
+		}
+	}
+
+	protected BlockCompressedIntArray compressSegment(int[] values, int length) {
+		BlockCompressedIntArrayBuilder builder = new BlockCompressedIntArrayBuilder(blockSize);
+		builder.accept(values, 0, length);
+		return builder.build();
+	}
+
+	/**
+	 * 
+	 * @return a {@link BlockCompressedIntArray} holding the accepted values. This builder can not accept values anymore
+	 */
+	public BlockCompressedIntArray build() {
+		checkNotBuilt();
+		built = true;
+
+		if (segmentLength > 0 || compressedSegments.isEmpty()) {
+			// The last segment is compressed by current thread, while previous segments may still be compressed
+			compressedSegments.add(CompletableFuture.completedFuture(compressSegment(segment, segmentLength)));
+		}
+		segment = null;
+
+		List<BlockCompressedIntArray> segments = new ArrayList<>(compressedSegments.size());
+		for (CompletableFuture<BlockCompressedIntArray> compressedSegment : compressedSegments) {
+			segments.add(joinUnchecked(compressedSegment));
+		}
+		compressedSegments.clear();
+
+		return CompressedIntArrays.concat(segments);
+	}
+
+	protected <T> T joinUnchecked(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			} else {
+				throw e;
+			}
+		}
+	}
+}
@@ -22,88 +22,346 @@
  */
 package blasd.apex.primitives;
 
+import java.nio.LongBuffer;
 import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
+import org.roaringbitmap.IntIterator;
 import org.roaringbitmap.RoaringBitmap;
 
-import com.google.common.primitives.Ints;
-
 import it.unimi.dsi.fastutil.ints.AbstractIntList;
+import it.unimi.dsi.fastutil.ints.IntListIterator;
 
 /**
  * A compressed IntList implementation. It provides random read-access. It is compressed by bit-packing
  * 
+ * Values are grouped in blocks: the block {@code b} holds values sharing the same {@code 32 - b} constant bits, and
+ * only the {@code b} variable bits of each value are stored, contiguously in a packed array of longs. The offset of
+ * each block (in number of values, and in number of bits) is precomputed, so that a random read is a lookup in a
+ * 32-entries table, the read of at most 2 longs, and the scatter of the variable bits between the constant bits.
+ * 
+ * Sequential reads should go through {@link #getElements(int, int[], int, int)} or {@link #iterator()}, which decode
+ * consecutive values in a single pass, without looking for the block of each value.
+ * 
  * TODO: Add append-behavior
  * 
  * @author Benoit Lacelle
  *
  */
 public class RunningCompressedIntArray extends AbstractIntList implements Cloneable, java.io.Serializable {
-	private static final long serialVersionUID = 2801769711578854510L;
+	private static final long serialVersionUID = -5416302658925409404L;
+
+	private static final int LOG_BITS_PER_WORD = 6;
+	private static final int BITS_PER_WORD = 1 << LOG_BITS_PER_WORD;
+	private static final long WORD_OFFSET_MASK = BITS_PER_WORD - 1;
 
 	protected final int[] nbConstant;
 	protected final int[] constantBits;
 	protected final int[] constantMasks;
-	protected final RoaringBitmap bits;
 
+	/**
+	 * The variable bits of all values, packed from the lowest bit of the first word. It may be a view over a
+	 * memory-mapped file
+	 */
+	protected final LongBuffer words;
+
+	/**
+	 * The index of the first value of each block, followed by the size of this list
+	 */
+	protected final int[] blockFirstIndex;
+
+	/**
+	 * The index of the first bit (in words) of each block, followed by the total number of bits
+	 */
+	protected final long[] blockFirstBit;
+
+	/**
+	 * For each block, the variable bits are scattered by runs of consecutive variable bits: each run is moved by
+	 * {@code (packed & runMasks[b][r]) << runShifts[b][r]}
+	 */
+	protected final int[][] runMasks;
+	protected final int[][] runShifts;
+
+	/**
+	 * 
+	 * @param nbConstant
+	 *            the number of values in each block
+	 * @param constantBits
+	 *            the constant bits of each block
+	 * @param constantMasks
+	 *            the value of the constant bits of each block
+	 * @param bits
+	 *            the variable bits of all values. They are copied in a packed array
+	 */
 	public RunningCompressedIntArray(int[] nbConstant, int[] constantBits, int[] constantMasks, RoaringBitmap bits) {
+		this(nbConstant, constantBits, constantMasks, toWords(nbConstant, bits));
+	}
+
+	/**
+	 * 
+	 * @param nbConstant
+	 *            the number of values in each block
+	 * @param constantBits
+	 *            the constant bits of each block
+	 * @param constantMasks
+	 *            the value of the constant bits of each block
+	 * @param words
+	 *            the variable bits of all values, as written by {@link #writeBits(long[], long, int, int)}
+	 */
+	public RunningCompressedIntArray(int[] nbConstant, int[] constantBits, int[] constantMasks, long[] words) {
+		this(nbConstant, constantBits, constantMasks, LongBuffer.wrap(words));
+	}
+
+	/**
+	 * 
+	 * @param words
+	 *            the variable bits of all values, from index 0. It is not copied: it may be a view over a memory-mapped
+	 *            file
+	 * @see CompressedArraysFormat
+	 */
+	public RunningCompressedIntArray(int[] nbConstant, int[] constantBits, int[] constantMasks, LongBuffer words) {
 		this.nbConstant = nbConstant;
 		this.constantBits = constantBits;
 		this.constantMasks = constantMasks;
-		this.bits = bits;
+		this.words = words;
+
+		int nbBlocks = nbConstant.length;
+		this.blockFirstIndex = new int[nbBlocks + 1];
+		this.blockFirstBit = new long[nbBlocks + 1];
+		this.runMasks = new int[nbBlocks][];
+		this.runShifts = new int[nbBlocks][];
+
+		for (int block = 0; block < nbBlocks; block++) {
+			blockFirstIndex[block + 1] = Math.addExact(blockFirstIndex[block], nbConstant[block]);
+			blockFirstBit[block + 1] = blockFirstBit[block] + (nbConstant[block] * 1L) * block;
+
+			computeRuns(block, ~constantBits[block]);
+		}
+
+		if (blockFirstBit[nbBlocks] > words.limit() * (long) BITS_PER_WORD) {
+			throw new IllegalArgumentException(
+					"We need " + blockFirstBit[nbBlocks] + " bits while words holds only " + words.limit() + " longs");
+		}
 	}
 
-	@Override
-	public int getInt(int index) {
-		int block = 0;
-		int previousSize = 0;
+	protected void computeRuns(int block, int variableBits) {
+		int nbRuns = 0;
+		int[] masks = new int[Integer.SIZE];
+		int[] shifts = new int[Integer.SIZE];
 
-		long bitShift = 0;
+		int remaining = variableBits;
+		int packedOffset = 0;
+		while (remaining != 0) {
+			int runStart = Integer.numberOfTrailingZeros(remaining);
+			// The run ends at the first constant bit after runStart
+			int runLength = Integer.numberOfTrailingZeros(~(remaining >>> runStart));
 
-		int indexInBlock = index;
-		while (block < Integer.SIZE) {
-			int blockSize = nbConstant[block];
-			if (index >= previousSize + blockSize) {
-				previousSize += blockSize;
-				indexInBlock -= blockSize;
+			int runMask;
+			if (runLength == Integer.SIZE) {
+				runMask = -1;
+			} else {
+				runMask = ((1 << runLength) - 1) << packedOffset;
+			}
 
-				bitShift += (blockSize * 1L) * block;
+			masks[nbRuns] = runMask;
+			shifts[nbRuns] = runStart - packedOffset;
+			nbRuns++;
 
-				block++;
+			packedOffset += runLength;
+			if (runStart + runLength == Integer.SIZE) {
+				remaining = 0;
 			} else {
-				break;
+				remaining &= -1 << (runStart + runLength);
 			}
 		}
 
-		if (nbConstant[block] == 0) {
+		runMasks[block] = Arrays.copyOf(masks, nbRuns);
+		runShifts[block] = Arrays.copyOf(shifts, nbRuns);
+	}
+
+	@Override
+	public int getInt(int index) {
+		if (index < 0 || index >= size()) {
 			throw new ArrayIndexOutOfBoundsException("index=" + index + " while size=" + size());
 		}
 
-		bitShift += indexInBlock * block;
+		int block = getBlock(index);
 
 		// Initialize the value given input mask
 		int value = constantMasks[block];
 
-		// Which bits have to be set out of the mask
-		int differentBits = ~constantBits[block];
+		if (block > 0) {
+			long bitShift = blockFirstBit[block] + (index - blockFirstIndex[block]) * (long) block;
+
+			int packed = readBits(words, bitShift, block);
+
+			int[] masks = runMasks[block];
+			int[] shifts = runShifts[block];
+			for (int run = 0; run < masks.length; run++) {
+				value |= (packed & masks[run]) << shifts[run];
+			}
+		}
+
+		return value;
+	}
+
+	/**
+	 * Decode consecutive values in a single pass: the block is looked-up once, then the bit position is incremented
+	 * from one value to the next one.
+	 */
+	@Override
+	public void getElements(int from, int[] a, int offset, int length) {
+		CompressedIntArrays.checkGetElements(size(), from, a.length, offset, length);
+
+		int index = from;
+		int end = from + length;
+		int outputIndex = offset;
 
-		for (int bitIndex = 0; bitIndex < Integer.SIZE; bitIndex++) {
-			if ((differentBits & Integer.rotateLeft(1, bitIndex)) != 0) {
+		int block = getBlock(index);
+		while (index < end) {
+			int blockEnd = Math.min(end, blockFirstIndex[block + 1]);
 
-				if (bits.contains(Ints.checkedCast(bitShift))) {
-					value |= Integer.rotateLeft(1, bitIndex);
+			int mask = constantMasks[block];
+			if (block == 0) {
+				Arrays.fill(a, outputIndex, outputIndex + blockEnd - index, mask);
+				outputIndex += blockEnd - index;
+			} else {
+				int[] masks = runMasks[block];
+				int[] shifts = runShifts[block];
+
+				long bitShift = blockFirstBit[block] + (index - blockFirstIndex[block]) * (long) block;
+
+				if (masks.length == 1 && shifts[0] == 0) {
+					// Typically the case when only the lowest bits are variable
+					for (int i = index; i < blockEnd; i++) {
+						a[outputIndex++] = mask | readBits(words, bitShift, block);
+						bitShift += block;
+					}
+				} else {
+					for (int i = index; i < blockEnd; i++) {
+						int packed = readBits(words, bitShift, block);
+						bitShift += block;
+
+						int value = mask;
+						for (int run = 0; run < masks.length; run++) {
+							value |= (packed & masks[run]) << shifts[run];
+						}
+						a[outputIndex++] = value;
+					}
 				}
+			}
+
+			index = blockEnd;
+			block++;
+		}
+	}
+
+	@Override
+	public IntListIterator listIterator(int index) {
+		return new BufferedIntListIterator(this, index);
+	}
+
+	/**
+	 * 
+	 * @return a sequential {@link IntStream} over this list, decoding values by chunks
+	 */
+	public IntStream intStream() {
+		return StreamSupport.intStream(Spliterators.spliterator(iterator(), size(), Spliterator.ORDERED), false);
+	}
+
+	/**
+	 * 
+	 * @return the block holding given index, i.e. the highest block starting at or before given index. Empty blocks are
+	 *         skipped as they start at the same index than the following block
+	 */
+	protected int getBlock(int index) {
+		int low = 0;
+		int high = nbConstant.length - 1;
 
-				bitShift++;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (blockFirstIndex[middle] <= index) {
+				low = middle;
+			} else {
+				high = middle - 1;
 			}
 		}
 
-		return value;
+		return low;
 	}
 
 	@Override
 	public int size() {
-		return Arrays.stream(nbConstant).sum();
+		return blockFirstIndex[nbConstant.length];
+	}
+
+	/**
+	 * 
+	 * @return the number of longs needed to hold given number of bits
+	 */
+	public static int wordsForBits(long nbBits) {
+		return Math.toIntExact((nbBits + WORD_OFFSET_MASK) >>> LOG_BITS_PER_WORD);
 	}
 
+	/**
+	 * Write the lowest nbBits of value at given bit position. The written bits are expected to be not set yet
+	 */
+	public static void writeBits(long[] words, long bitShift, int value, int nbBits) {
+		if (nbBits == 0) {
+			return;
+		}
+		long unsigned = value & (-1L >>> (Long.SIZE - nbBits));
+
+		int wordIndex = (int) (bitShift >>> LOG_BITS_PER_WORD);
+		int offset = (int) (bitShift & WORD_OFFSET_MASK);
+
+		words[wordIndex] |= unsigned << offset;
+		if (offset + nbBits > BITS_PER_WORD) {
+			words[wordIndex + 1] |= unsigned >>> (BITS_PER_WORD - offset);
+		}
+	}
+
+	/**
+	 * 
+	 * @param nbBits
+	 *            the number of bits to read, between 1 and 32
+	 * @return the nbBits bits starting at given bit position, as the lowest bits of an int
+	 */
+	public static int readBits(LongBuffer words, long bitShift, int nbBits) {
+		int wordIndex = (int) (bitShift >>> LOG_BITS_PER_WORD);
+		int offset = (int) (bitShift & WORD_OFFSET_MASK);
+
+		long packed = words.get(wordIndex) >>> offset;
+		if (offset + nbBits > BITS_PER_WORD) {
+			packed |= words.get(wordIndex + 1) << (BITS_PER_WORD - offset);
+		}
+
+		return (int) (packed & (-1L >>> (Long.SIZE - nbBits)));
+	}
+
+	protected static long[] toWords(int[] nbConstant, RoaringBitmap bits) {
+		long nbBits = 0;
+		for (int block = 0; block < nbConstant.length; block++) {
+			nbBits += (nbConstant[block] * 1L) * block;
+		}
+
+		long[] words = new long[wordsForBits(nbBits)];
+
+		IntIterator it = bits.getIntIterator();
+		while (it.hasNext()) {
+			int bit = it.next();
+			words[bit >>> LOG_BITS_PER_WORD] |= 1L << bit;
+		}
+		return words;
+	}
+
+	/**
+	 * Java serialization goes through {@link CompressedArraysFormat}, as buffers are not serializable
+	 */
+	private Object writeReplace() {
+		return new CompressedArraysFormat.SerializedForm(this);
+	}
 }
@@ -0,0 +1,143 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.util.function.IntConsumer;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+/**
+ * Build a {@link RunningCompressedIntArray} in a single pass: the constant bits are refined as ints are accepted, and
+ * only the variable bits are packed.
+ * 
+ * This is a plain (not thread-safe) {@link IntConsumer}: it has to receive ints in order, e.g. through
+ * {@link java.util.stream.IntStream#forEachOrdered(IntConsumer)}.
+ * 
+ * @author Benoit Lacelle
+ *
+ * @see CompressedIntArrays#compress(java.util.stream.IntStream)
+ */
+public class RunningCompressedIntArrayBuilder implements IntConsumer {
+	protected final int[] nbConstant = new int[Integer.SIZE];
+	protected final int[] constantBits = new int[Integer.SIZE];
+	protected final int[] constantMasks = new int[Integer.SIZE];
+
+	// The variable bits, packed
+	protected final PackedBitsWriter bits = new PackedBitsWriter();
+
+	protected boolean firstDone = false;
+	protected int nbDifferentConstant = 0;
+
+	// This will be used when it appears there is not a single constant bit
+	protected IntList uncompressedTrail;
+
+	protected boolean built = false;
+
+	@Override
+	public void accept(int i) {
+		if (built) {
+			throw new IllegalStateException("Can not accept values after .build()");
+		}
+
+		if (!firstDone) {
+			// This is the first int
+			firstDone = true;
+			nbConstant[0] = 1;
+			constantBits[0] = -1;
+			constantMasks[0] = i;
+			return;
+		} else if (uncompressedTrail != null) {
+			// We are not compressing anymore
+			uncompressedTrail.add(i);
+			return;
+		}
+
+		int currentConstantBits = constantBits[nbDifferentConstant];
+		int currentMask = constantMasks[nbDifferentConstant];
+
+		int differences = (i & currentConstantBits) ^ currentMask;
+		if (differences != 0) {
+			// The new value is not fitting the mask
+			nbDifferentConstant += Integer.bitCount(differences);
+
+			if (nbDifferentConstant == Integer.SIZE) {
+				// There is not a single constant bit: stop compression
+				uncompressedTrail = new IntArrayList();
+				uncompressedTrail.add(i);
+				return;
+			}
+
+			currentConstantBits ^= differences;
+			currentMask = i & currentConstantBits;
+
+			constantBits[nbDifferentConstant] = currentConstantBits;
+			constantMasks[nbDifferentConstant] = currentMask;
+		}
+
+		nbConstant[nbDifferentConstant]++;
+
+		// Constant bits remain stable
+		int bitsToWrite = ~currentConstantBits;
+		if (bitsToWrite != 0) {
+			// Gather the variable bits as the lowest bits of packed, iterating only over the variable bits
+			int packed = 0;
+			int packedIndex = 0;
+			for (int remaining = bitsToWrite; remaining != 0; remaining &= remaining - 1) {
+				int bit = Integer.numberOfTrailingZeros(remaining);
+				packed |= ((i >>> bit) & 1) << packedIndex;
+				packedIndex++;
+			}
+
+			bits.write(packed, packedIndex);
+		}
+	}
+
+	/**
+	 * Accept a batch of ints
+	 */
+	public void accept(int[] values, int offset, int length) {
+		for (int i = 0; i < length; i++) {
+			accept(values[offset + i]);
+		}
+	}
+
+	/**
+	 * 
+	 * @return an {@link IntList} holding the accepted values. It is a {@link RunningCompressedIntArray}, followed by
+	 *         the uncompressed trail if there was eventually no constant bit. This builder can not accept values
+	 *         anymore
+	 */
+	public IntList build() {
+		built = true;
+
+		RunningCompressedIntArray compressed =
+				new RunningCompressedIntArray(nbConstant, constantBits, constantMasks, bits.toWords());
+
+		if (uncompressedTrail == null) {
+			return compressed;
+		} else {
+			return new ConcatIntList(compressed, uncompressedTrail);
+		}
+	}
+}
@@ -22,45 +22,252 @@
  */
 package org.roaringbitmap;
 
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.ObjectInput;
 import java.util.Arrays;
 
 /**
- * Enable faster .rank and .select by caching the cardinality of underlying buckets
+ * Enable faster .rank and .select by caching the cumulated cardinality of underlying buckets
+ * 
+ * The cache is invalidated lazily and partially: a mutation only invalidates the cumulated cardinalities from the first
+ * container it may modify, and the cumulated cardinalities are recomputed on demand from the first invalid container.
+ * Interleaved add/rank workloads appending increasing values hence recompute only the last containers.
+ * 
+ * As the cache is filled on demand, .rankLong and .select may write into this bitmap: they are not thread-safe, even if
+ * there is no concurrent mutation. Call {@link #computeCumulatedCardinalities()} once the bitmap is built to read it
+ * from several threads.
  * 
  * @author Benoit Lacelle
  *
+ * @see org.roaringbitmap.longlong.FastRankRoaring64NavigableMap
  */
-public class FastRankRoaringBitmap extends RoaringBitmap {
-	private int[] highToCumulatedCardinality = null;
+// RoaringBitmap is already Cloneable, but PMD does not see it
+public class FastRankRoaringBitmap extends RoaringBitmap implements Cloneable {
+	private static final long[] EMPTY = new long[0];
+
+	// The cumulated cardinality of the containers up to each index, included
+	private long[] highToCumulatedCardinality = EMPTY;
+
+	// The cumulated cardinalities are valid for the containers strictly before this index
+	private int nbValidCumulatedCardinalities = 0;
+
+	/**
+	 * Invalidate the cumulated cardinalities from the container which would hold given value
+	 */
+	private void invalidateFrom(int x) {
+		if (nbValidCumulatedCardinalities == 0) {
+			return;
+		}
+
+		int index = highLowContainer.getIndex(Util.highbits(x));
+		if (index < 0) {
+			// A container would be inserted at this index: the following containers are shifted
+			index = -1 - index;
+		}
+		nbValidCumulatedCardinalities = Math.min(nbValidCumulatedCardinalities, index);
+	}
+
+	private void invalidateFrom(RoaringBitmap other) {
+		if (!other.isEmpty()) {
+			invalidateFrom(other.first());
+		}
+	}
+
+	private void invalidateAll() {
+		nbValidCumulatedCardinalities = 0;
+	}
 
 	@Override
 	public void add(long rangeStart, long rangeEnd) {
-		highToCumulatedCardinality = null;
+		invalidateFrom((int) rangeStart);
 
 		super.add(rangeStart, rangeEnd);
 	}
 
 	@Override
 	public void add(int x) {
-		highToCumulatedCardinality = null;
+		invalidateFrom(x);
 
 		super.add(x);
 	}
 
 	@Override
 	public void add(int... dat) {
-		highToCumulatedCardinality = null;
+		if (dat.length > 0) {
+			int min = dat[0];
+			for (int x : dat) {
+				if (Integer.compareUnsigned(x, min) < 0) {
+					min = x;
+				}
+			}
+			invalidateFrom(min);
+		}
 
 		super.add(dat);
 	}
 
 	@Override
-	public long rankLong(int x) {
-		ensureCardinalities();
-		if (highToCumulatedCardinality.length == 0) {
-			return 0;
+	public boolean checkedAdd(int x) {
+		invalidateFrom(x);
+
+		return super.checkedAdd(x);
+	}
+
+	@Override
+	public void remove(int x) {
+		invalidateFrom(x);
+
+		super.remove(x);
+	}
+
+	@Override
+	public void remove(long rangeStart, long rangeEnd) {
+		invalidateFrom((int) rangeStart);
+
+		super.remove(rangeStart, rangeEnd);
+	}
+
+	@Override
+	public boolean checkedRemove(int x) {
+		invalidateFrom(x);
+
+		return super.checkedRemove(x);
+	}
+
+	@Override
+	public void flip(int x) {
+		invalidateFrom(x);
+
+		super.flip(x);
+	}
+
+	@Override
+	public void flip(long rangeStart, long rangeEnd) {
+		invalidateFrom((int) rangeStart);
+
+		super.flip(rangeStart, rangeEnd);
+	}
+
+	@Override
+	public void and(RoaringBitmap x2) {
+		// Containers missing in x2 are removed, wherever they are
+		invalidateAll();
+
+		super.and(x2);
+	}
+
+	@Override
+	public void andNot(RoaringBitmap x2) {
+		invalidateFrom(x2);
+
+		super.andNot(x2);
+	}
+
+	@Override
+	public void or(RoaringBitmap x2) {
+		invalidateFrom(x2);
+
+		super.or(x2);
+	}
+
+	@Override
+	public void xor(RoaringBitmap x2) {
+		invalidateFrom(x2);
+
+		super.xor(x2);
+	}
+
+	@Override
+	protected void lazyor(RoaringBitmap x2) {
+		invalidateAll();
+
+		super.lazyor(x2);
+	}
+
+	@Override
+	protected void naivelazyor(RoaringBitmap x2) {
+		invalidateAll();
+
+		super.naivelazyor(x2);
+	}
+
+	@Override
+	protected void repairAfterLazy() {
+		invalidateAll();
+
+		super.repairAfterLazy();
+	}
+
+	@Override
+	public void clear() {
+		invalidateAll();
+
+		super.clear();
+	}
+
+	@Override
+	public void deserialize(DataInput in) throws IOException {
+		invalidateAll();
+
+		super.deserialize(in);
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		invalidateAll();
+
+		super.readExternal(in);
+	}
+
+	@Override
+	public FastRankRoaringBitmap clone() {
+		FastRankRoaringBitmap clone = (FastRankRoaringBitmap) super.clone();
+
+		// The clone must not write in the cache of this bitmap
+		clone.highToCumulatedCardinality = highToCumulatedCardinality.clone();
+
+		return clone;
+	}
+
+	/**
+	 * Compute the cumulated cardinalities of all containers. Until the next mutation, .rankLong and .select then only
+	 * read this bitmap: they can be called concurrently
+	 */
+	public void computeCumulatedCardinalities() {
+		ensureCardinalities(highLowContainer.size() - 1);
+	}
+
+	/**
+	 * Compute the cumulated cardinalities from the first invalid container up to given index, included
+	 */
+	private void ensureCardinalities(int upToIndex) {
+		if (upToIndex < nbValidCumulatedCardinalities) {
+			return;
+		}
+
+		if (highToCumulatedCardinality.length <= upToIndex) {
+			// Grow geometrically, as containers are typically appended one by one
+			int newLength = Math.max(upToIndex + 1, 2 * highToCumulatedCardinality.length);
+			highToCumulatedCardinality = Arrays.copyOf(highToCumulatedCardinality, newLength);
+		}
+
+		long cumulated;
+		if (nbValidCumulatedCardinalities == 0) {
+			cumulated = 0;
+		} else {
+			cumulated = highToCumulatedCardinality[nbValidCumulatedCardinalities - 1];
 		}
 
+		for (int i = nbValidCumulatedCardinalities; i <= upToIndex; i++) {
+			cumulated += highLowContainer.getContainerAtIndex(i).getCardinality();
+			highToCumulatedCardinality[i] = cumulated;
+		}
+		nbValidCumulatedCardinalities = upToIndex + 1;
+	}
+
+	@Override
+	public long rankLong(int x) {
 		short xhigh = Util.highbits(x);
 
 		int index = Util.hybridUnsignedBinarySearch(this.highLowContainer.keys, 0, this.highLowContainer.size(), xhigh);
@@ -75,6 +282,8 @@ public long rankLong(int x) {
 
 		long size = 0;
 		if (index > 0) {
+			// Only the containers before x have to be up-to-date
+			ensureCardinalities(index - 1);
 			size += highToCumulatedCardinality[index - 1];
 		}
 
@@ -88,63 +297,43 @@ public long rankLong(int x) {
 		return rank;
 	}
 
-	private void ensureCardinalities() {
-		if (highToCumulatedCardinality == null) {
-			highToCumulatedCardinality = new int[highLowContainer.size()];
-
-			if (highToCumulatedCardinality.length == 0) {
-				// This bitmap is empty
-				return;
-			}
-			highToCumulatedCardinality[0] = highLowContainer.getContainerAtIndex(0).getCardinality();
-
-			for (int i = 1; i < highToCumulatedCardinality.length; i++) {
-				highToCumulatedCardinality[i] =
-						highToCumulatedCardinality[i - 1] + highLowContainer.getContainerAtIndex(i).getCardinality();
-			}
-		}
-	}
-
 	@Override
 	public int select(int j) {
-		ensureCardinalities();
-		if (highToCumulatedCardinality.length == 0) {
-			throw new IllegalArgumentException("select " + j + " when the cardinality is " + this.getCardinality());
-		}
-
-		int index = Arrays.binarySearch(highToCumulatedCardinality, j);
-
-		int fixedIndex;
-
 		long leftover = Util.toUnsignedLong(j);
 
-		if (index == highToCumulatedCardinality.length - 1) {
-			return this.last();
-		} else if (index >= 0) {
-			int keycontrib = this.highLowContainer.getKeyAtIndex(index + 1) << 16;
+		int nbContainers = highLowContainer.size();
+		if (nbValidCumulatedCardinalities == 0
+				|| highToCumulatedCardinality[nbValidCumulatedCardinalities - 1] <= leftover) {
+			// The valid containers do not reach j
+			ensureCardinalities(nbContainers - 1);
 
-			// If first bucket has cardinality 1 and we select 1: we actual select the first item of second bucket
-			int output = keycontrib + this.highLowContainer.getContainerAtIndex(index + 1).first();
-
-			// assert output == super.select(j);
+			if (nbContainers == 0 || highToCumulatedCardinality[nbContainers - 1] <= leftover) {
+				throw new IllegalArgumentException("select " + j + " when the cardinality is " + this.getCardinality());
+			}
+		}
 
-			return output;
-		} else {
-			fixedIndex = -1 - index;
-			if (fixedIndex > 0) {
-				leftover -= highToCumulatedCardinality[fixedIndex - 1];
+		// Search the first container with a cumulated cardinality strictly greater than j
+		int low = 0;
+		int high = nbValidCumulatedCardinalities - 1;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (highToCumulatedCardinality[middle] > leftover) {
+				high = middle;
+			} else {
+				low = middle + 1;
 			}
 		}
 
-		int keycontrib = this.highLowContainer.getKeyAtIndex(fixedIndex) << 16;
-		int lowcontrib =
-				Util.toIntUnsigned(this.highLowContainer.getContainerAtIndex(fixedIndex).select((int) leftover));
+		if (low > 0) {
+			leftover -= highToCumulatedCardinality[low - 1];
+		}
+
+		int keycontrib = this.highLowContainer.getKeyAtIndex(low) << 16;
+		int lowcontrib = Util.toIntUnsigned(this.highLowContainer.getContainerAtIndex(low).select((int) leftover));
 		int value = lowcontrib + keycontrib;
 
 		// assert value == super.select(j);
 
 		return value;
-
-		// throw new IllegalArgumentException("select " + j + " when the cardinality is " + this.getCardinality());
 	}
 }
@@ -0,0 +1,74 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.roaringbitmap.longlong;
+
+import java.util.NavigableMap;
+
+import org.roaringbitmap.BitmapDataProvider;
+import org.roaringbitmap.FastRankRoaringBitmap;
+
+/**
+ * A {@link Roaring64NavigableMap} with fast .rankLong and .select: the cumulated cardinalities of the buckets are
+ * cached by {@link Roaring64NavigableMap}, and each bucket is a {@link FastRankRoaringBitmap} caching the cumulated
+ * cardinalities of its containers.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class FastRankRoaring64NavigableMap extends Roaring64NavigableMap {
+
+	/**
+	 * Consistently with {@link Roaring64NavigableMap#Roaring64NavigableMap()}, longs are ordered as unsigned longs
+	 */
+	public FastRankRoaring64NavigableMap() {
+		this(false);
+	}
+
+	/**
+	 * 
+	 * @param signedLongs
+	 *            true if longs has to be ordered as signed longs (e.g. -1 before 0)
+	 */
+	public FastRankRoaring64NavigableMap(boolean signedLongs) {
+		super(signedLongs, true, FastRankRoaringBitmap::new);
+	}
+
+	/**
+	 * Compute the cumulated cardinalities of all buckets, and of all containers in each bucket. Until the next
+	 * mutation, .rankLong and .select then only read this map: they can be called concurrently
+	 */
+	public void computeCumulatedCardinalities() {
+		NavigableMap<Integer, BitmapDataProvider> highToBitmap = getHighToBitmap();
+		if (highToBitmap.isEmpty()) {
+			return;
+		}
+
+		ensureCumulatives(highToBitmap.lastKey());
+
+		for (BitmapDataProvider bitmap : highToBitmap.values()) {
+			if (bitmap instanceof FastRankRoaringBitmap) {
+				((FastRankRoaringBitmap) bitmap).computeCumulatedCardinalities();
+			}
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.ints.IntListIterator;
+
+public class TestBlockCompressedIntArray {
+	private static final int SIZE = 10 * 1000;
+
+	@Test
+	public void testEmpty() {
+		BlockCompressedIntArray array = CompressedIntArrays.compressByBlocks(IntStream.empty());
+
+		Assert.assertTrue(array.isEmpty());
+		Assert.assertFalse(array.iterator().hasNext());
+	}
+
+	@Test
+	public void testSingleValue() {
+		checkCodecs(new int[] { 123 }, IntBlockCodec.FOR);
+	}
+
+	@Test
+	public void testConstant() {
+		checkCodecs(IntStream.range(0, SIZE).map(i -> -7).toArray(), IntBlockCodec.FOR);
+	}
+
+	@Test
+	public void testSmallValues() {
+		Random r = new Random(0);
+		checkCodecs(IntStream.range(0, SIZE).map(i -> 1000 + r.nextInt(16)).toArray(), IntBlockCodec.FOR);
+	}
+
+	@Test
+	public void testSortedIds() {
+		Random r = new Random(0);
+		int[] input = new int[SIZE];
+		for (int i = 1; i < input.length; i++) {
+			input[i] = input[i - 1] + 1 + r.nextInt(8);
+		}
+		checkCodecs(input, IntBlockCodec.DELTA);
+	}
+
+	@Test
+	public void testSmallValuesWithOutliers() {
+		Random r = new Random(0);
+		checkCodecs(IntStream.range(0, SIZE).map(i -> i % 50 == 0 ? r.nextInt() : r.nextInt(16)).toArray(),
+				IntBlockCodec.PFOR);
+	}
+
+	@Test
+	public void testLowCardinality() {
+		Random r = new Random(0);
+		int[] codes = { Integer.MIN_VALUE, -123456789, 42, 987654321 };
+		checkCodecs(IntStream.range(0, SIZE).map(i -> codes[r.nextInt(codes.length)]).toArray(),
+				IntBlockCodec.DICTIONARY);
+	}
+
+	@Test
+	public void testLongRuns() {
+		Random r = new Random(0);
+		int[] input = new int[SIZE];
+		for (int i = 0; i < input.length; i++) {
+			if (i % 40 == 0) {
+				input[i] = r.nextInt();
+			} else {
+				input[i] = input[i - 1];
+			}
+		}
+		checkCodecs(input, IntBlockCodec.RLE);
+	}
+
+	@Test
+	public void testRandom() {
+		Random r = new Random(0);
+		int[] input = IntStream.range(0, SIZE).map(i -> r.nextInt()).toArray();
+
+		checkRandomAccess(input, BlockCompressedIntArray.DEFAULT_BLOCK_SIZE);
+		checkRandomAccess(input, 1024);
+	}
+
+	@Test
+	public void testExtremeValues() {
+		int[] input = new int[] { Integer.MIN_VALUE, Integer.MAX_VALUE, 0, -1, 1, Integer.MAX_VALUE };
+
+		checkRandomAccess(input, BlockCompressedIntArray.DEFAULT_BLOCK_SIZE);
+		checkRandomAccess(input, 2);
+	}
+
+	@Test
+	public void testCompressionRatio() {
+		int[] input = IntStream.range(0, SIZE).toArray();
+
+		BlockCompressedIntArray array = CompressedIntArrays.compressByBlocks(IntStream.of(input));
+
+		// Consecutive ints are encoded by DELTA with a width of 0
+		Assert.assertTrue(array.getNbBits() < SIZE);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBlockSizeNotPowerOf2() {
+		CompressedIntArrays.compressByBlocks(IntStream.range(0, 10), 100);
+	}
+
+	@Test(expected = ArrayIndexOutOfBoundsException.class)
+	public void testOutOfBounds() {
+		CompressedIntArrays.compressByBlocks(IntStream.range(0, 10)).getInt(10);
+	}
+
+	protected void checkCodecs(int[] input, IntBlockCodec expectedCodec) {
+		BlockCompressedIntArray array = checkRandomAccess(input, BlockCompressedIntArray.DEFAULT_BLOCK_SIZE);
+		Assert.assertEquals(expectedCodec, array.getCodec(0));
+
+		checkRandomAccess(input, 1024);
+	}
+
+	protected BlockCompressedIntArray checkRandomAccess(int[] input, int blockSize) {
+		BlockCompressedIntArray array = CompressedIntArrays.compressByBlocks(IntStream.of(input), blockSize);
+
+		Assert.assertEquals(input.length, array.size());
+		Assert.assertArrayEquals(input, array.toIntArray());
+		Assert.assertArrayEquals(input, array.intStream().toArray());
+
+		for (int i = 0; i < input.length; i++) {
+			Assert.assertEquals(input[i], array.getInt(i));
+		}
+
+		IntListIterator it = array.iterator();
+		for (int i = 0; i < input.length; i++) {
+			Assert.assertEquals(input[i], it.nextInt());
+		}
+		Assert.assertFalse(it.hasNext());
+
+		Random r = new Random(0);
+		for (int i = 0; i < 100; i++) {
+			int from = r.nextInt(input.length);
+			int length = r.nextInt(input.length - from + 1);
+
+			int[] decoded = new int[length + 2];
+			array.getElements(from, decoded, 1, length);
+			Assert.assertArrayEquals(Arrays.copyOfRange(input, from, from + length),
+					Arrays.copyOfRange(decoded, 1, 1 + length));
+		}
+
+		return array;
+	}
+}
@@ -0,0 +1,200 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.doubles.DoubleListIterator;
+import it.unimi.dsi.fastutil.longs.LongListIterator;
+
+public class TestBlockCompressedLongArray {
+	private static final int SIZE = 10 * 1000;
+
+	@Test
+	public void testEmpty() {
+		Assert.assertTrue(CompressedLongArrays.compress(LongStream.empty()).isEmpty());
+		Assert.assertTrue(CompressedLongArrays.compress(DoubleStream.empty()).isEmpty());
+	}
+
+	@Test
+	public void testSmallLongs() {
+		Random r = new Random(0);
+		checkCodecs(LongStream.range(0, SIZE).map(i -> Long.MAX_VALUE - r.nextInt(1024)).toArray(), LongBlockCodec.FOR);
+	}
+
+	@Test
+	public void testSortedIds() {
+		Random r = new Random(0);
+		long[] input = new long[SIZE];
+		input[0] = Long.MIN_VALUE;
+		for (int i = 1; i < input.length; i++) {
+			input[i] = input[i - 1] + 1 + r.nextInt(1024);
+		}
+		checkCodecs(input, LongBlockCodec.DELTA);
+	}
+
+	@Test
+	public void testTimestamps() {
+		Random r = new Random(0);
+		long start = 1_500_000_000_000L;
+		// One timestamp per second, with an occasional jitter
+		checkCodecs(
+				LongStream.range(0, SIZE)
+						.map(i -> start + i * 1000 + (r.nextInt(10) == 0 ? r.nextInt(21) - 10 : 0))
+						.toArray(),
+				LongBlockCodec.DELTA_OF_DELTA);
+	}
+
+	@Test
+	public void testRegularTimestamps() {
+		long start = 1_500_000_000_000L;
+		long[] input = LongStream.range(0, SIZE).map(i -> start + i * 1000).toArray();
+
+		BlockCompressedLongArray array = checkLongs(input, BlockCompressedIntArray.DEFAULT_BLOCK_SIZE);
+
+		// Less than 2 bits per timestamp, including the headers
+		Assert.assertTrue(array.getNbBits() < 2 * SIZE);
+	}
+
+	@Test
+	public void testMeasures() {
+		Random r = new Random(0);
+		double[] input = new double[SIZE];
+		input[0] = 100;
+		for (int i = 1; i < input.length; i++) {
+			if (r.nextInt(4) == 0) {
+				input[i] = input[i - 1] + 0.25D * (r.nextInt(9) - 4);
+			} else {
+				input[i] = input[i - 1];
+			}
+		}
+
+		BlockCompressedDoubleArray array = checkDoubles(input, BlockCompressedIntArray.DEFAULT_BLOCK_SIZE);
+		Assert.assertEquals(LongBlockCodec.XOR, array.getRawBits().getCodec(0));
+		checkDoubles(input, 1024);
+	}
+
+	@Test
+	public void testSpecialDoubles() {
+		double[] input = new double[] { 0D,
+				-0D,
+				Double.NaN,
+				Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY,
+				Double.MIN_VALUE,
+				Double.MAX_VALUE,
+				Double.longBitsToDouble(0x7ff8_0000_0000_0001L) };
+
+		checkDoubles(input, BlockCompressedIntArray.DEFAULT_BLOCK_SIZE);
+		checkDoubles(input, 2);
+	}
+
+	@Test
+	public void testRandom() {
+		Random r = new Random(0);
+		long[] input = IntStream.range(0, SIZE).mapToLong(i -> r.nextLong()).toArray();
+
+		checkLongs(input, BlockCompressedIntArray.DEFAULT_BLOCK_SIZE);
+		checkLongs(input, 1024);
+		checkLongs(input, 1);
+
+		checkDoubles(IntStream.range(0, SIZE).mapToDouble(i -> r.nextGaussian()).toArray(),
+				BlockCompressedIntArray.DEFAULT_BLOCK_SIZE);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testAcceptAfterBuild() {
+		BlockCompressedLongArrayBuilder builder = new BlockCompressedLongArrayBuilder();
+		builder.accept(1L);
+		builder.build();
+		builder.accept(2L);
+	}
+
+	protected BlockCompressedLongArray checkCodecs(long[] input, LongBlockCodec expectedCodec) {
+		BlockCompressedLongArray array = checkLongs(input, BlockCompressedIntArray.DEFAULT_BLOCK_SIZE);
+		Assert.assertEquals(expectedCodec, array.getCodec(0));
+
+		checkLongs(input, 1024);
+
+		return array;
+	}
+
+	protected BlockCompressedLongArray checkLongs(long[] input, int blockSize) {
+		BlockCompressedLongArray array = CompressedLongArrays.compress(LongStream.of(input), blockSize);
+
+		Assert.assertEquals(input.length, array.size());
+		Assert.assertArrayEquals(input, array.toLongArray());
+		Assert.assertArrayEquals(input, array.longStream().toArray());
+
+		for (int i = 0; i < input.length; i++) {
+			Assert.assertEquals(input[i], array.getLong(i));
+		}
+
+		LongListIterator it = array.listIterator(input.length);
+		for (int i = input.length - 1; i >= 0; i--) {
+			Assert.assertEquals(input[i], it.previousLong());
+		}
+		Assert.assertFalse(it.hasPrevious());
+
+		Random r = new Random(0);
+		for (int i = 0; i < 100; i++) {
+			int from = r.nextInt(input.length);
+			int length = r.nextInt(input.length - from + 1);
+
+			long[] decoded = new long[length + 2];
+			array.getElements(from, decoded, 1, length);
+			Assert.assertArrayEquals(Arrays.copyOfRange(input, from, from + length),
+					Arrays.copyOfRange(decoded, 1, 1 + length));
+		}
+
+		return array;
+	}
+
+	protected BlockCompressedDoubleArray checkDoubles(double[] input, int blockSize) {
+		BlockCompressedDoubleArray array = CompressedLongArrays.compress(DoubleStream.of(input), blockSize);
+
+		Assert.assertEquals(input.length, array.size());
+		for (int i = 0; i < input.length; i++) {
+			Assert.assertEquals(Double.doubleToRawLongBits(input[i]), Double.doubleToRawLongBits(array.getDouble(i)));
+		}
+
+		DoubleListIterator it = array.iterator();
+		double[] iterated = new double[input.length];
+		for (int i = 0; i < input.length; i++) {
+			iterated[i] = it.nextDouble();
+		}
+		Assert.assertFalse(it.hasNext());
+		Assert.assertArrayEquals(input, iterated, 0D);
+		Assert.assertArrayEquals(input, array.doubleStream().toArray(), 0D);
+		Assert.assertArrayEquals(input, array.toDoubleArray(), 0D);
+
+		return array;
+	}
+}
@@ -0,0 +1,203 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.LongList;
+
+public class TestCompressedArraysFormat {
+	private static final int SIZE = 10 * 1000;
+
+	protected int[] makeInts() {
+		Random r = new Random(0);
+		return IntStream.range(0, SIZE).map(i -> i % 3 == 0 ? r.nextInt(1024) : i).toArray();
+	}
+
+	protected Path writeToTempFile(Object compressed) throws IOException {
+		Path path = Files.createTempFile("TestCompressedArraysFormat", ".bin");
+		path.toFile().deleteOnExit();
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			CompressedArraysFormat.writeAny(compressed, channel);
+		}
+		return path;
+	}
+
+	@Test
+	public void testRunningIntMapped() throws IOException {
+		int[] input = makeInts();
+		IntList compressed = CompressedIntArrays.compress(IntStream.of(input));
+		Assert.assertTrue(compressed instanceof RunningCompressedIntArray);
+
+		IntList read = CompressedArraysFormat.readIntList(CompressedArraysFormat.map(writeToTempFile(compressed)));
+
+		Assert.assertTrue(read instanceof RunningCompressedIntArray);
+		Assert.assertTrue(((RunningCompressedIntArray) read).words.isDirect());
+		Assert.assertArrayEquals(input, read.toIntArray());
+		Assert.assertEquals(input[SIZE / 2], read.getInt(SIZE / 2));
+	}
+
+	@Test
+	public void testBlockIntMapped() throws IOException {
+		int[] input = makeInts();
+		BlockCompressedIntArray compressed = CompressedIntArrays.compressByBlocks(IntStream.of(input));
+
+		IntList read = CompressedArraysFormat.readIntList(CompressedArraysFormat.map(writeToTempFile(compressed)));
+
+		Assert.assertTrue(read instanceof BlockCompressedIntArray);
+		BlockCompressedIntArray readBlocks = (BlockCompressedIntArray) read;
+		Assert.assertTrue(readBlocks.getBlocks().words.isDirect());
+		Assert.assertTrue(readBlocks.getBlocks().blockFirstBit.isDirect());
+		Assert.assertTrue(readBlocks.getBlocks().codecs.isDirect());
+
+		Assert.assertEquals(compressed.getNbBlocks(), readBlocks.getNbBlocks());
+		Assert.assertEquals(compressed.getNbBits(), readBlocks.getNbBits());
+		Assert.assertArrayEquals(input, read.toIntArray());
+	}
+
+	@Test
+	public void testBlockLongMapped() throws IOException {
+		long[] input = LongStream.range(0, SIZE).map(i -> 1_500_000_000_000L + i * 1000).toArray();
+		BlockCompressedLongArray compressed = CompressedLongArrays.compress(LongStream.of(input));
+
+		LongList read = CompressedArraysFormat.readLongList(CompressedArraysFormat.map(writeToTempFile(compressed)));
+
+		Assert.assertTrue(read instanceof BlockCompressedLongArray);
+		Assert.assertArrayEquals(input, read.toLongArray());
+	}
+
+	@Test
+	public void testBlockDoubleMapped() throws IOException {
+		Random r = new Random(0);
+		double[] input = DoubleStream.generate(() -> Math.round(r.nextGaussian() * 100) / 10D).limit(SIZE).toArray();
+		input[0] = Double.NaN;
+		input[1] = -0D;
+
+		BlockCompressedDoubleArray compressed = CompressedLongArrays.compress(DoubleStream.of(input));
+
+		DoubleList read =
+				CompressedArraysFormat.readDoubleList(CompressedArraysFormat.map(writeToTempFile(compressed)));
+
+		Assert.assertTrue(read instanceof BlockCompressedDoubleArray);
+		Assert.assertArrayEquals(input, read.toDoubleArray(), 0D);
+		Assert.assertEquals(Double.doubleToRawLongBits(-0D), Double.doubleToRawLongBits(read.getDouble(1)));
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		IntList read = CompressedArraysFormat.readIntList(
+				CompressedArraysFormat.map(writeToTempFile(CompressedIntArrays.compress(IntStream.empty()))));
+
+		Assert.assertTrue(read.isEmpty());
+	}
+
+	@Test
+	public void testReadFromPosition() throws IOException {
+		int[] input = makeInts();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		output.write(new byte[] { 1, 2, 3 });
+		CompressedArraysFormat.write(CompressedIntArrays.compressByBlocks(IntStream.of(input)),
+				Channels.newChannel(output));
+
+		// The serialized list is read from the position of the buffer, even if not aligned
+		ByteBuffer buffer = ByteBuffer.wrap(output.toByteArray());
+		buffer.position(3);
+
+		Assert.assertArrayEquals(input, CompressedArraysFormat.readIntList(buffer).toIntArray());
+	}
+
+	@Test
+	public void testJavaSerialization() throws IOException, ClassNotFoundException {
+		int[] input = makeInts();
+
+		for (Object compressed : new Object[] { CompressedIntArrays.compress(IntStream.of(input)),
+				CompressedIntArrays.compressByBlocks(IntStream.of(input)),
+				CompressedLongArrays.compress(IntStream.of(input).asLongStream()),
+				CompressedLongArrays.compress(IntStream.of(input).asDoubleStream()) }) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			try (ObjectOutputStream oos = new ObjectOutputStream(output)) {
+				oos.writeObject(compressed);
+			}
+
+			Object read;
+			try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+				read = ois.readObject();
+			}
+
+			Assert.assertEquals(compressed.getClass(), read.getClass());
+			Assert.assertEquals(compressed, read);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongMagic() {
+		CompressedArraysFormat.readIntList(ByteBuffer.allocate(64));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testLaterVersion() {
+		ByteBuffer buffer = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(CompressedArraysFormat.MAGIC).putInt(CompressedArraysFormat.VERSION + 1);
+		buffer.flip();
+
+		CompressedArraysFormat.readIntList(buffer);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReadLongsAsInts() throws IOException {
+		BlockCompressedLongArray compressed = CompressedLongArrays.compress(LongStream.range(0, SIZE));
+
+		CompressedArraysFormat.readIntList(CompressedArraysFormat.map(writeToTempFile(compressed)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTruncated() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		CompressedArraysFormat.write(CompressedIntArrays.compressByBlocks(IntStream.of(makeInts())),
+				Channels.newChannel(output));
+
+		byte[] bytes = output.toByteArray();
+		CompressedArraysFormat.readIntList(ByteBuffer.wrap(bytes, 0, bytes.length / 2));
+	}
+}
@@ -22,16 +22,20 @@
  */
 package blasd.apex.primitives;
 
+import java.util.Arrays;
 import java.util.Random;
 import java.util.stream.IntStream;
 
+import org.junit.Assert;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import blasd.apex.core.logging.ApexLogHelper;
 import blasd.apex.core.memory.ApexMemoryHelper;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntListIterator;
 
 public class TestCompressedIntArray {
 	protected static final Logger LOGGER = LoggerFactory.getLogger(TestCompressedIntArray.class);
@@ -82,4 +86,136 @@ public void testManyRandom() {
 				ApexLogHelper.getNiceMemory(ApexMemoryHelper.deepSize(IntStream.range(0, size).toArray())));
 	}
 
+	@Test
+	public void testRandomAccess_ManySmall() {
+		int[] input = IntStream.range(0, 100 * 1000).map(i -> i % 1024).toArray();
+
+		checkRandomAccess(input);
+	}
+
+	@Test
+	public void testRandomAccess_GrowingBy1() {
+		int[] input = IntStream.range(0, 100 * 1000).toArray();
+
+		checkRandomAccess(input);
+	}
+
+	@Test
+	public void testRandomAccess_HighBitsThenLowBits() {
+		// Variable bits are not contiguous: they form multiple runs
+		Random r = new Random(0);
+		int[] input = IntStream.range(0, 100 * 1000).map(i -> (r.nextInt(16) << 20) | (r.nextInt(256) << 4)).toArray();
+
+		checkRandomAccess(input);
+	}
+
+	@Test
+	public void testRandomAccess_Negative() {
+		Random r = new Random(0);
+		int[] input = IntStream.range(0, 100 * 1000).map(i -> -r.nextInt(1024 * 1024)).toArray();
+
+		checkRandomAccess(input);
+	}
+
+	@Test
+	public void testRandomAccess_Random() {
+		Random r = new Random(0);
+		int[] input = IntStream.range(0, 100 * 1000).map(i -> r.nextInt()).toArray();
+
+		checkRandomAccess(input);
+	}
+
+	@Test(expected = ArrayIndexOutOfBoundsException.class)
+	public void testOutOfBounds() {
+		CompressedIntArrays.compress(IntStream.range(0, 10)).getInt(10);
+	}
+
+	@Test(expected = ArrayIndexOutOfBoundsException.class)
+	public void testNegativeIndex() {
+		CompressedIntArrays.compress(IntStream.range(0, 10)).getInt(-1);
+	}
+
+	protected void checkRandomAccess(int[] input) {
+		IntList array = CompressedIntArrays.compress(IntStream.of(input));
+
+		Assert.assertEquals(input.length, array.size());
+		Assert.assertArrayEquals(input, array.toIntArray());
+
+		Random r = new Random(0);
+		for (int i = 0; i < input.length; i++) {
+			int index = r.nextInt(input.length);
+			Assert.assertEquals(input[index], array.getInt(index));
+		}
+
+		checkSequentialAccess(input, array);
+	}
+
+	protected void checkSequentialAccess(int[] input, IntList array) {
+		// Iterate through the buffered iterator
+		int[] iterated = new int[input.length];
+		IntListIterator it = array.iterator();
+		for (int i = 0; i < input.length; i++) {
+			Assert.assertTrue(it.hasNext());
+			iterated[i] = it.nextInt();
+		}
+		Assert.assertFalse(it.hasNext());
+		Assert.assertArrayEquals(input, iterated);
+
+		Assert.assertArrayEquals(input, invokeIntStream(array).toArray());
+
+		// Bulk-decode random ranges
+		Random r = new Random(0);
+		for (int i = 0; i < 100; i++) {
+			int from = r.nextInt(input.length);
+			int length = r.nextInt(input.length - from + 1);
+
+			int[] decoded = new int[length + 2];
+			array.getElements(from, decoded, 1, length);
+			Assert.assertArrayEquals(Arrays.copyOfRange(input, from, from + length),
+					Arrays.copyOfRange(decoded, 1, 1 + length));
+		}
+	}
+
+	protected IntStream invokeIntStream(IntList array) {
+		if (array instanceof RunningCompressedIntArray) {
+			return ((RunningCompressedIntArray) array).intStream();
+		} else {
+			return ((ConcatIntList) array).intStream();
+		}
+	}
+
+	@Test
+	public void testIterator_Backward() {
+		int[] input = IntStream.range(0, 5000).map(i -> i % 1024).toArray();
+		IntList array = CompressedIntArrays.compress(IntStream.of(input));
+
+		IntListIterator it = array.listIterator(input.length);
+		for (int i = input.length - 1; i >= 0; i--) {
+			Assert.assertTrue(it.hasPrevious());
+			Assert.assertEquals(input[i], it.previousInt());
+		}
+		Assert.assertFalse(it.hasPrevious());
+
+		// Go forward again, over the part decoded backward
+		Assert.assertEquals(input[0], it.nextInt());
+		Assert.assertEquals(input[1], it.nextInt());
+		Assert.assertEquals(input[1], it.previousInt());
+	}
+
+	@Test
+	public void testConcat_EmptyLists() {
+		ConcatIntList concat = new ConcatIntList(IntArrayList.wrap(new int[] { 1, 2 }),
+				new IntArrayList(),
+				IntArrayList.wrap(new int[] { 3 }),
+				new IntArrayList());
+
+		Assert.assertEquals(3, concat.size());
+		Assert.assertEquals(3, concat.getInt(2));
+		Assert.assertArrayEquals(new int[] { 1, 2, 3 }, concat.toIntArray());
+		Assert.assertArrayEquals(new int[] { 1, 2, 3 }, concat.intStream().toArray());
+
+		int[] decoded = new int[2];
+		concat.getElements(1, decoded, 0, 2);
+		Assert.assertArrayEquals(new int[] { 2, 3 }, decoded);
+	}
 }
@@ -0,0 +1,185 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestParallelCompressedIntArrayBuilder {
+	private static final int BLOCK_SIZE = 128;
+	private static final int SEGMENT_SIZE = 4 * BLOCK_SIZE;
+
+	protected final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	protected ParallelCompressedIntArrayBuilder makeBuilder() {
+		return new ParallelCompressedIntArrayBuilder(executor, BLOCK_SIZE, SEGMENT_SIZE, 2);
+	}
+
+	protected int[] makeInput(int size) {
+		Random r = new Random(0);
+
+		// Mix sorted, small and random values, so that blocks are encoded with various codecs
+		return IntStream.range(0, size).map(i -> {
+			if (i % 1000 < 300) {
+				return i;
+			} else if (i % 1000 < 600) {
+				return r.nextInt(16);
+			} else {
+				return r.nextInt();
+			}
+		}).toArray();
+	}
+
+	@Test
+	public void testEmpty() {
+		BlockCompressedIntArray array = makeBuilder().build();
+
+		Assert.assertTrue(array.isEmpty());
+		Assert.assertEquals(0, array.getNbBlocks());
+	}
+
+	@Test
+	public void testSameAsSequential() {
+		for (int size : new int[] { 1, BLOCK_SIZE, SEGMENT_SIZE - 1, SEGMENT_SIZE, 10 * SEGMENT_SIZE + 17 }) {
+			int[] input = makeInput(size);
+
+			ParallelCompressedIntArrayBuilder builder = makeBuilder();
+			builder.accept(input, 0, input.length);
+			BlockCompressedIntArray parallel = builder.build();
+
+			BlockCompressedIntArray sequential = CompressedIntArrays.compressByBlocks(IntStream.of(input), BLOCK_SIZE);
+
+			Assert.assertArrayEquals(input, parallel.toIntArray());
+			Assert.assertEquals(sequential.getNbBlocks(), parallel.getNbBlocks());
+			for (int block = 0; block < sequential.getNbBlocks(); block++) {
+				Assert.assertEquals(sequential.getCodec(block), parallel.getCodec(block));
+			}
+
+			// Random reads cross the segment boundaries
+			Random r = new Random(size);
+			for (int i = 0; i < 1000; i++) {
+				int index = r.nextInt(size);
+				Assert.assertEquals(input[index], parallel.getInt(index));
+			}
+		}
+	}
+
+	@Test
+	public void testBatchesOfVariousSizes() {
+		int[] input = makeInput(20 * SEGMENT_SIZE + 3);
+
+		ParallelCompressedIntArrayBuilder builder = makeBuilder();
+
+		Random r = new Random(0);
+		int index = 0;
+		while (index < input.length) {
+			int length = Math.min(input.length - index, r.nextInt(3 * SEGMENT_SIZE));
+
+			if (r.nextBoolean()) {
+				builder.accept(input, index, length);
+			} else if (r.nextBoolean()) {
+				builder.accept(IntBuffer.wrap(input, index, length));
+			} else {
+				for (int i = index; i < index + length; i++) {
+					builder.accept(input[i]);
+				}
+			}
+			index += length;
+		}
+
+		Assert.assertArrayEquals(input, builder.build().toIntArray());
+	}
+
+	@Test
+	public void testIntBufferIsConsumed() {
+		int[] input = makeInput(3 * SEGMENT_SIZE);
+		IntBuffer buffer = IntBuffer.wrap(input);
+
+		ParallelCompressedIntArrayBuilder builder = makeBuilder();
+		builder.accept(buffer);
+
+		Assert.assertFalse(buffer.hasRemaining());
+		Assert.assertArrayEquals(input, builder.build().toIntArray());
+	}
+
+	@Test
+	public void testCompressInParallel() {
+		int[] input = makeInput(3 * ParallelCompressedIntArrayBuilder.DEFAULT_SEGMENT_SIZE + 1);
+
+		Assert.assertArrayEquals(input, CompressedIntArrays.compressInParallel(input).toIntArray());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testAcceptAfterBuild() {
+		ParallelCompressedIntArrayBuilder builder = makeBuilder();
+		builder.build();
+
+		builder.accept(1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSegmentNotMultipleOfBlock() {
+		new ParallelCompressedIntArrayBuilder(executor, BLOCK_SIZE, BLOCK_SIZE + 1, 2);
+	}
+
+	@Test
+	public void testConcat() {
+		int[] input = makeInput(3 * BLOCK_SIZE + 5);
+
+		BlockCompressedIntArray first =
+				CompressedIntArrays.compressByBlocks(IntStream.of(input).limit(2 * BLOCK_SIZE), BLOCK_SIZE);
+		BlockCompressedIntArray second =
+				CompressedIntArrays.compressByBlocks(IntStream.of(input).skip(2 * BLOCK_SIZE), BLOCK_SIZE);
+
+		BlockCompressedIntArray concat = CompressedIntArrays.concat(Arrays.asList(first, second));
+		Assert.assertArrayEquals(input, concat.toIntArray());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConcatPartialBlockNotLast() {
+		BlockCompressedIntArray partial = CompressedIntArrays.compressByBlocks(IntStream.range(0, 3), BLOCK_SIZE);
+
+		CompressedIntArrays.concat(Arrays.asList(partial, partial));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testConcatDifferentBlockSizes() {
+		BlockCompressedIntArray small = CompressedIntArrays.compressByBlocks(IntStream.range(0, 128), 128);
+		BlockCompressedIntArray large = CompressedIntArrays.compressByBlocks(IntStream.range(0, 256), 256);
+
+		CompressedIntArrays.concat(Arrays.asList(small, large));
+	}
+}
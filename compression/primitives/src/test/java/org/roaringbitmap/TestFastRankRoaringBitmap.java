@@ -0,0 +1,291 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.roaringbitmap;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.roaringbitmap.longlong.FastRankRoaring64NavigableMap;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+public class TestFastRankRoaringBitmap {
+	private static final int SEED = 0;
+
+	protected void checkSameRankAndSelect(RoaringBitmap expected, FastRankRoaringBitmap actual) {
+		Assert.assertEquals(expected, actual);
+
+		int cardinality = expected.getCardinality();
+		Assert.assertEquals(cardinality, actual.getCardinality());
+
+		for (int j = 0; j < cardinality; j += Math.max(1, cardinality / 100)) {
+			int selected = expected.select(j);
+			Assert.assertEquals(selected, actual.select(j));
+			Assert.assertEquals(expected.rankLong(selected), actual.rankLong(selected));
+			Assert.assertEquals(expected.rankLong(selected - 1), actual.rankLong(selected - 1));
+		}
+
+		Assert.assertEquals(expected.rankLong(-1), actual.rankLong(-1));
+		Assert.assertEquals(expected.rankLong(0), actual.rankLong(0));
+	}
+
+	@Test
+	public void testEmpty() {
+		FastRankRoaringBitmap bitmap = new FastRankRoaringBitmap();
+
+		Assert.assertEquals(0, bitmap.rankLong(0));
+		Assert.assertEquals(0, bitmap.rankLong(-1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSelect_Empty() {
+		new FastRankRoaringBitmap().select(0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSelect_OutOfRange() {
+		FastRankRoaringBitmap bitmap = new FastRankRoaringBitmap();
+		bitmap.add(1, 1 << 17);
+
+		// Fill the cache
+		Assert.assertEquals(1 << 16, bitmap.select((1 << 16) - 1));
+
+		bitmap.select((1 << 17) - 1);
+	}
+
+	@Test
+	public void testAppend_InterleavedRank() {
+		RoaringBitmap expected = new RoaringBitmap();
+		FastRankRoaringBitmap actual = new FastRankRoaringBitmap();
+
+		for (int i = 0; i < 1000; i++) {
+			int value = i * 1024;
+			expected.add(value);
+			actual.add(value);
+
+			Assert.assertEquals(expected.rankLong(value), actual.rankLong(value));
+			Assert.assertEquals(value, actual.select(i));
+		}
+
+		checkSameRankAndSelect(expected, actual);
+	}
+
+	@Test
+	public void testInsertBeforeCachedContainers() {
+		RoaringBitmap expected = new RoaringBitmap();
+		FastRankRoaringBitmap actual = new FastRankRoaringBitmap();
+
+		expected.add(1 << 20, 1 << 21);
+		actual.add(1 << 20, 1 << 21);
+		checkSameRankAndSelect(expected, actual);
+
+		// A new container is inserted before the cached ones
+		expected.add(123);
+		actual.add(123);
+		checkSameRankAndSelect(expected, actual);
+
+		expected.add(-1);
+		actual.add(-1);
+		checkSameRankAndSelect(expected, actual);
+	}
+
+	@Test
+	public void testRandomMutations() {
+		Random r = new Random(SEED);
+
+		RoaringBitmap expected = new RoaringBitmap();
+		FastRankRoaringBitmap actual = new FastRankRoaringBitmap();
+
+		for (int i = 0; i < 200; i++) {
+			int value = r.nextInt(1 << 22) - (1 << 21);
+			long start = Util.toUnsignedLong(value);
+			long end = start + r.nextInt(1 << 17);
+
+			switch (r.nextInt(10)) {
+			case 0:
+				expected.add(value);
+				actual.add(value);
+				break;
+			case 1:
+				Assert.assertEquals(expected.checkedAdd(value), actual.checkedAdd(value));
+				break;
+			case 2:
+				expected.remove(value);
+				actual.remove(value);
+				break;
+			case 3:
+				Assert.assertEquals(expected.checkedRemove(value), actual.checkedRemove(value));
+				break;
+			case 4:
+				expected.add(start, end);
+				actual.add(start, end);
+				break;
+			case 5:
+				expected.remove(start, end);
+				actual.remove(start, end);
+				break;
+			case 6:
+				expected.flip(value);
+				actual.flip(value);
+				break;
+			case 7:
+				expected.flip(start, end);
+				actual.flip(start, end);
+				break;
+			case 8:
+				int[] values = { value, value + 70000, value - 70000 };
+				expected.add(values);
+				actual.add(values);
+				break;
+			default:
+				// Only read, to fill the cache
+				break;
+			}
+
+			if (!expected.isEmpty()) {
+				int j = r.nextInt(expected.getCardinality());
+				Assert.assertEquals(expected.select(j), actual.select(j));
+			}
+			Assert.assertEquals(expected.rankLong(value), actual.rankLong(value));
+		}
+
+		checkSameRankAndSelect(expected, actual);
+	}
+
+	@Test
+	public void testBitmapOperations() {
+		RoaringBitmap other = RoaringBitmap.bitmapOf(5, 1 << 17, (1 << 17) + 1, 1 << 20, 3 << 20);
+
+		RoaringBitmap expected = new RoaringBitmap();
+		expected.add(0L, 1L << 21);
+		FastRankRoaringBitmap actual = new FastRankRoaringBitmap();
+		actual.add(0L, 1L << 21);
+		checkSameRankAndSelect(expected, actual);
+
+		expected.andNot(other);
+		actual.andNot(other);
+		checkSameRankAndSelect(expected, actual);
+
+		expected.xor(other);
+		actual.xor(other);
+		checkSameRankAndSelect(expected, actual);
+
+		expected.or(RoaringBitmap.bitmapOf(7 << 20));
+		actual.or(RoaringBitmap.bitmapOf(7 << 20));
+		checkSameRankAndSelect(expected, actual);
+
+		expected.and(other);
+		actual.and(other);
+		checkSameRankAndSelect(expected, actual);
+
+		expected.clear();
+		actual.clear();
+		checkSameRankAndSelect(expected, actual);
+	}
+
+	@Test
+	public void testClone_DoesNotShareCache() {
+		FastRankRoaringBitmap original = new FastRankRoaringBitmap();
+		original.add(0L, 1L << 18);
+		Assert.assertEquals(1 << 17, original.rankLong((1 << 17) - 1));
+
+		FastRankRoaringBitmap clone = original.clone();
+		clone.remove(0L, 1L << 16);
+		Assert.assertEquals(1 << 16, clone.rankLong((1 << 17) - 1));
+
+		// The original cache is still valid
+		Assert.assertEquals(1 << 17, original.rankLong((1 << 17) - 1));
+		Assert.assertEquals((1 << 17) + 1, original.select((1 << 17) + 1));
+		Assert.assertEquals((1 << 17) + 1, clone.select((1 << 16) + 1));
+	}
+
+	@Test
+	public void testConcurrentReadsAfterComputeCumulatedCardinalities() {
+		Random r = new Random(SEED);
+
+		RoaringBitmap expected = new RoaringBitmap();
+		FastRankRoaringBitmap actual = new FastRankRoaringBitmap();
+
+		for (int i = 0; i < 100000; i++) {
+			int value = r.nextInt();
+			expected.add(value);
+			actual.add(value);
+		}
+
+		actual.computeCumulatedCardinalities();
+
+		int[] selected = IntStream.range(0, expected.getCardinality()).map(expected::select).toArray();
+
+		IntStream.range(0, selected.length).parallel().forEach(j -> {
+			Assert.assertEquals(selected[j], actual.select(j));
+			Assert.assertEquals(j + 1, actual.rankLong(selected[j]));
+		});
+	}
+
+	@Test
+	public void test64_RankAndSelect() {
+		Random r = new Random(SEED);
+
+		Roaring64NavigableMap expected = new Roaring64NavigableMap();
+		FastRankRoaring64NavigableMap actual = new FastRankRoaring64NavigableMap();
+
+		for (int i = 0; i < 1000; i++) {
+			long value = r.nextLong() >> 20;
+			expected.addLong(value);
+			actual.addLong(value);
+
+			Assert.assertEquals(expected.rankLong(value), actual.rankLong(value));
+		}
+
+		for (int j = 0; j < expected.getLongCardinality(); j += 7) {
+			long selected = expected.select(j);
+			Assert.assertEquals(selected, actual.select(j));
+			Assert.assertEquals(expected.rankLong(selected), actual.rankLong(selected));
+		}
+	}
+
+	@Test
+	public void test64_ConcurrentReadsAfterComputeCumulatedCardinalities() {
+		Random r = new Random(SEED);
+
+		Roaring64NavigableMap expected = new Roaring64NavigableMap(true);
+		FastRankRoaring64NavigableMap actual = new FastRankRoaring64NavigableMap(true);
+
+		for (int i = 0; i < 100000; i++) {
+			long value = r.nextLong() >> 28;
+			expected.addLong(value);
+			actual.addLong(value);
+		}
+
+		actual.computeCumulatedCardinalities();
+
+		long[] selected = LongStream.range(0, expected.getLongCardinality()).map(expected::select).toArray();
+
+		IntStream.range(0, selected.length).parallel().forEach(j -> {
+			Assert.assertEquals(selected[j], actual.select(j));
+			Assert.assertEquals(j + 1, actual.rankLong(selected[j]));
+		});
+	}
+}
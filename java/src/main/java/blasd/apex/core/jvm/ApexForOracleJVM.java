@@ -22,12 +22,18 @@
  */
 package blasd.apex.core.jvm;
 
+import java.lang.management.ManagementFactory;
 import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.RuntimeMXBean;
 import java.lang.management.ThreadMXBean;
 import java.lang.reflect.InvocationTargetException;
+import java.util.List;
 import java.util.OptionalDouble;
 
 import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+
+import blasd.apex.core.memory.ApexMemoryHelper;
 
 /**
  * Holds all call to methods/fields not in the Java spec but present in the Oracle jvm
@@ -45,6 +51,12 @@ protected ApexForOracleJVM() {
 	// com.sun.management.GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION
 	public static final String GARBAGE_COLLECTION_NOTIFICATION = "com.sun.management.gc.notification";
 
+	private static final String MAX_DIRECT_MEMORY_SIZE = "-XX:MaxDirectMemorySize=";
+
+	/**
+	 * 
+	 * @return the maximum number of bytes which can be allocated in direct memory
+	 */
 	public static long maxDirectMemory() {
 		try {
 			// return sun.misc.VM.maxDirectMemory();
@@ -53,8 +65,30 @@ public static long maxDirectMemory() {
 			return ((Long) VM.getMethod("maxDirectMemory").invoke(null)).longValue();
 		} catch (ClassNotFoundException | IllegalAccessException | IllegalArgumentException | InvocationTargetException
 				| NoSuchMethodException | SecurityException e) {
-			// JDK9?
-			return 0;
+			// JDK9 moved it to jdk.internal.misc.VM, which is not exported
+			return maxDirectMemory(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		}
+	}
+
+	/**
+	 * 
+	 * @param inputArguments
+	 *            the arguments of the JVM, as returned by {@link RuntimeMXBean#getInputArguments()}
+	 * @return the last -XX:MaxDirectMemorySize, else the maximum heap size, which is the default of the JVM
+	 */
+	@VisibleForTesting
+	static long maxDirectMemory(List<String> inputArguments) {
+		long maxDirectMemory = -1;
+		for (String argument : inputArguments) {
+			if (argument.startsWith(MAX_DIRECT_MEMORY_SIZE)) {
+				maxDirectMemory = ApexMemoryHelper.memoryAsLong(argument.substring(MAX_DIRECT_MEMORY_SIZE.length()));
+			}
+		}
+
+		if (maxDirectMemory < 0) {
+			return Runtime.getRuntime().maxMemory();
+		} else {
+			return maxDirectMemory;
 		}
 	}
 
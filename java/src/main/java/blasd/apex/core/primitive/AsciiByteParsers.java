@@ -0,0 +1,168 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.core.primitive;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parse primitives from ASCII bytes, without decoding them as chars. It is typically useful to parse numbers from a
+ * memory-mapped file, as digits are encoded with a single byte in UTF-8.
+ * 
+ * Only decimal representations are handled.
+ * 
+ * @author Benoit Lacelle
+ *
+ * @see Jdk9CharSequenceParsers
+ */
+// https://stackoverflow.com/questions/5767747/pmd-cpd-ignore-bits-of-code-using-comments
+@SuppressWarnings("CPD-START")
+public class AsciiByteParsers {
+	private static final int RADIX = 10;
+
+	protected AsciiByteParsers() {
+		// hidden
+	}
+
+	/**
+	 * Parses a decimal signed {@code int} from the bytes from {@code beginIndex} to {@code endIndex - 1}. Indexes are
+	 * absolute: the position and the limit of the {@link ByteBuffer} are not considered, nor modified.
+	 * 
+	 * @param bytes
+	 *            the {@code ByteBuffer} containing the ASCII representation of an {@code int}
+	 * @param beginIndex
+	 *            the beginning index, inclusive.
+	 * @param endIndex
+	 *            the ending index, exclusive.
+	 * @return the signed {@code int} represented by the bytes
+	 * @throws NumberFormatException
+	 *             if the bytes do not represent a decimal {@code int}
+	 */
+	public static int parseInt(ByteBuffer bytes, int beginIndex, int endIndex) throws NumberFormatException {
+		if (beginIndex < 0 || beginIndex > endIndex || endIndex > bytes.capacity()) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		boolean negative = false;
+		int i = beginIndex;
+		int limit = -Integer.MAX_VALUE;
+
+		if (i >= endIndex) {
+			throw Jdk9CharSequenceParsers.forInputString("");
+		}
+
+		byte firstByte = bytes.get(i);
+		if (firstByte < '0') { // Possible leading "+" or "-"
+			if (firstByte == '-') {
+				negative = true;
+				limit = Integer.MIN_VALUE;
+			} else if (firstByte != '+') {
+				throw forByteBuffer(bytes, beginIndex, endIndex, i);
+			}
+			i++;
+			if (i == endIndex) { // Cannot have lone "+" or "-"
+				throw forByteBuffer(bytes, beginIndex, endIndex, i);
+			}
+		}
+		int multmin = limit / RADIX;
+		int result = 0;
+		while (i < endIndex) {
+			// Accumulating negatively avoids surprises near MAX_VALUE
+			int digit = bytes.get(i) - '0';
+			if (digit < 0 || digit >= RADIX || result < multmin) {
+				throw forByteBuffer(bytes, beginIndex, endIndex, i);
+			}
+			result *= RADIX;
+			if (result < limit + digit) {
+				throw forByteBuffer(bytes, beginIndex, endIndex, i);
+			}
+			i++;
+			result -= digit;
+		}
+		return negative ? result : -result;
+	}
+
+	/**
+	 * Parses a decimal signed {@code long} from the bytes from {@code beginIndex} to {@code endIndex - 1}. Indexes are
+	 * absolute: the position and the limit of the {@link ByteBuffer} are not considered, nor modified.
+	 * 
+	 * @param bytes
+	 *            the {@code ByteBuffer} containing the ASCII representation of a {@code long}
+	 * @param beginIndex
+	 *            the beginning index, inclusive.
+	 * @param endIndex
+	 *            the ending index, exclusive.
+	 * @return the signed {@code long} represented by the bytes
+	 * @throws NumberFormatException
+	 *             if the bytes do not represent a decimal {@code long}
+	 */
+	public static long parseLong(ByteBuffer bytes, int beginIndex, int endIndex) throws NumberFormatException {
+		if (beginIndex < 0 || beginIndex > endIndex || endIndex > bytes.capacity()) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		boolean negative = false;
+		int i = beginIndex;
+		long limit = -Long.MAX_VALUE;
+
+		if (i >= endIndex) {
+			throw Jdk9CharSequenceParsers.forInputString("");
+		}
+
+		byte firstByte = bytes.get(i);
+		if (firstByte < '0') { // Possible leading "+" or "-"
+			if (firstByte == '-') {
+				negative = true;
+				limit = Long.MIN_VALUE;
+			} else if (firstByte != '+') {
+				throw forByteBuffer(bytes, beginIndex, endIndex, i);
+			}
+			i++;
+			if (i == endIndex) { // Cannot have lone "+" or "-"
+				throw forByteBuffer(bytes, beginIndex, endIndex, i);
+			}
+		}
+		long multmin = limit / RADIX;
+		long result = 0;
+		while (i < endIndex) {
+			// Accumulating negatively avoids surprises near MAX_VALUE
+			int digit = bytes.get(i) - '0';
+			if (digit < 0 || digit >= RADIX || result < multmin) {
+				throw forByteBuffer(bytes, beginIndex, endIndex, i);
+			}
+			result *= RADIX;
+			if (result < limit + digit) {
+				throw forByteBuffer(bytes, beginIndex, endIndex, i);
+			}
+			i++;
+			result -= digit;
+		}
+		return negative ? result : -result;
+	}
+
+	static NumberFormatException forByteBuffer(ByteBuffer bytes, int beginIndex, int endIndex, int errorIndex) {
+		return Jdk9CharSequenceParsers.forCharSequence(new UnsafeAsciiSubSequence(bytes, beginIndex, endIndex),
+				0,
+				endIndex - beginIndex,
+				errorIndex - beginIndex);
+	}
+}
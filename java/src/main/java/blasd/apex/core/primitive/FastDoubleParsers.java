@@ -0,0 +1,662 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.core.primitive;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Parse doubles and floats from decimal representations, with the same result as {@link Double#parseDouble(String)} and
+ * {@link Float#parseFloat(String)} (i.e. correctly rounded), but without allocating a {@link String}.
+ * 
+ * Up to 19 significant digits are accumulated in a long, then the value is computed with Clinger's fast-path when the
+ * mantissa and the power of 10 are both exactly representable, else with the Eisel-Lemire algorithm (as in fast_float).
+ * Inputs with more than 19 significant digits are resolved if rounding the truncated mantissa up and down gives the
+ * same value. Other inputs (e.g. "NaN", hexadecimal, type suffixes, ambiguous long inputs) fallback on the JDK.
+ * 
+ * @author Benoit Lacelle
+ * @see <a href="https://arxiv.org/abs/2101.11408">Number Parsing at a Gigabyte per Second</a>
+ *
+ */
+// https://stackoverflow.com/questions/5767747/pmd-cpd-ignore-bits-of-code-using-comments
+@SuppressWarnings("CPD-START")
+public class FastDoubleParsers {
+	private static final int MAX_MANTISSA_DIGITS = 19;
+	// Beyond this, the exponent is anyway out of range: it prevents int overflows
+	private static final int MAX_EXPONENT = 100_000;
+
+	private static final int SMALLEST_POWER_OF_TEN = -342;
+	private static final int LARGEST_POWER_OF_TEN = 308;
+
+	// For each power of 10 in [SMALLEST_POWER_OF_TEN, LARGEST_POWER_OF_TEN], the 128 most significant bits of 5^q
+	private static final long[] POWER_OF_FIVE_128 = computePowersOfFive();
+
+	private static final double[] DOUBLE_POWERS_OF_TEN = { 1e0,
+			1e1,
+			1e2,
+			1e3,
+			1e4,
+			1e5,
+			1e6,
+			1e7,
+			1e8,
+			1e9,
+			1e10,
+			1e11,
+			1e12,
+			1e13,
+			1e14,
+			1e15,
+			1e16,
+			1e17,
+			1e18,
+			1e19,
+			1e20,
+			1e21,
+			1e22 };
+	private static final float[] FLOAT_POWERS_OF_TEN =
+			{ 1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f };
+
+	/**
+	 * The parameters of the Eisel-Lemire algorithm for a binary floating-point format
+	 */
+	private static final BinaryFormat DOUBLE = new BinaryFormat(52, -1023, 0x7FF, -4, 23, -342, 308);
+	private static final BinaryFormat FLOAT = new BinaryFormat(23, -127, 0xFF, -17, 10, -65, 38);
+
+	// Used as a marker when the fast algorithms can not conclude
+	private static final long NO_BITS = -1L;
+
+	protected FastDoubleParsers() {
+		// hidden
+	}
+
+	/**
+	 * 
+	 * @return the double represented by given {@link CharSequence}, like {@link Double#parseDouble(String)}
+	 * @throws NumberFormatException
+	 *             if the {@link CharSequence} does not represent a double
+	 */
+	public static double parseDouble(CharSequence s) throws NumberFormatException {
+		return parseDouble(s, 0, s.length());
+	}
+
+	/**
+	 * 
+	 * @param beginIndex
+	 *            the beginning index, inclusive.
+	 * @param endIndex
+	 *            the ending index, exclusive.
+	 * @return the double represented by the chars from beginIndex to endIndex, like {@link Double#parseDouble(String)}
+	 * @throws NumberFormatException
+	 *             if the chars do not represent a double
+	 */
+	public static double parseDouble(CharSequence s, int beginIndex, int endIndex) throws NumberFormatException {
+		long bits = parseBits(s, beginIndex, endIndex, DOUBLE);
+		if (bits == NO_BITS) {
+			return Double.parseDouble(s.subSequence(beginIndex, endIndex).toString());
+		} else {
+			return Double.longBitsToDouble(bits);
+		}
+	}
+
+	/**
+	 * Indexes are absolute: the position and the limit of the {@link ByteBuffer} are not considered, nor modified.
+	 * 
+	 * @param bytes
+	 *            the {@code ByteBuffer} containing the ASCII representation of a {@code double}
+	 * @param beginIndex
+	 *            the beginning index, inclusive.
+	 * @param endIndex
+	 *            the ending index, exclusive.
+	 * @return the double represented by the bytes, like {@link Double#parseDouble(String)}
+	 * @throws NumberFormatException
+	 *             if the bytes do not represent a double
+	 */
+	public static double parseDouble(ByteBuffer bytes, int beginIndex, int endIndex) throws NumberFormatException {
+		long bits = parseBits(bytes, beginIndex, endIndex, DOUBLE);
+		if (bits == NO_BITS) {
+			return Double.parseDouble(new UnsafeAsciiSubSequence(bytes, beginIndex, endIndex).toString());
+		} else {
+			return Double.longBitsToDouble(bits);
+		}
+	}
+
+	/**
+	 * 
+	 * @return the float represented by given {@link CharSequence}, like {@link Float#parseFloat(String)}
+	 * @throws NumberFormatException
+	 *             if the {@link CharSequence} does not represent a float
+	 */
+	public static float parseFloat(CharSequence s) throws NumberFormatException {
+		return parseFloat(s, 0, s.length());
+	}
+
+	/**
+	 * 
+	 * @return the float represented by the chars from beginIndex to endIndex, like {@link Float#parseFloat(String)}
+	 * @throws NumberFormatException
+	 *             if the chars do not represent a float
+	 */
+	public static float parseFloat(CharSequence s, int beginIndex, int endIndex) throws NumberFormatException {
+		long bits = parseBits(s, beginIndex, endIndex, FLOAT);
+		if (bits == NO_BITS) {
+			return Float.parseFloat(s.subSequence(beginIndex, endIndex).toString());
+		} else {
+			return Float.intBitsToFloat((int) bits);
+		}
+	}
+
+	/**
+	 * 
+	 * @return the float represented by the ASCII bytes from beginIndex to endIndex, like
+	 *         {@link Float#parseFloat(String)}
+	 * @throws NumberFormatException
+	 *             if the bytes do not represent a float
+	 */
+	public static float parseFloat(ByteBuffer bytes, int beginIndex, int endIndex) throws NumberFormatException {
+		long bits = parseBits(bytes, beginIndex, endIndex, FLOAT);
+		if (bits == NO_BITS) {
+			return Float.parseFloat(new UnsafeAsciiSubSequence(bytes, beginIndex, endIndex).toString());
+		} else {
+			return Float.intBitsToFloat((int) bits);
+		}
+	}
+
+	/**
+	 * 
+	 * @return the bits of the value in given format, or NO_BITS if the fast algorithms can not conclude, or if the
+	 *         input is not a plain decimal
+	 */
+	private static long parseBits(CharSequence s, int beginIndex, int endIndex, BinaryFormat format) {
+		if (beginIndex < 0 || beginIndex > endIndex || endIndex > s.length()) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		int i = beginIndex;
+		boolean negative = false;
+		if (i < endIndex) {
+			char first = s.charAt(i);
+			if (first == '-') {
+				negative = true;
+				i++;
+			} else if (first == '+') {
+				i++;
+			}
+		}
+
+		long mantissa = 0;
+		int nbMantissaDigits = 0;
+		int exponent = 0;
+		boolean truncated = false;
+		boolean hasDigits = false;
+
+		// Integer part
+		for (; i < endIndex; i++) {
+			int digit = s.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				break;
+			}
+			hasDigits = true;
+
+			if (mantissa == 0 && digit == 0) {
+				// Leading zero
+				continue;
+			} else if (nbMantissaDigits < MAX_MANTISSA_DIGITS) {
+				mantissa = mantissa * 10 + digit;
+				nbMantissaDigits++;
+			} else {
+				// This digit is not in the mantissa: it scales the mantissa
+				exponent++;
+				truncated |= digit != 0;
+			}
+		}
+
+		// Fractional part
+		if (i < endIndex && s.charAt(i) == '.') {
+			i++;
+			for (; i < endIndex; i++) {
+				int digit = s.charAt(i) - '0';
+				if (digit < 0 || digit > 9) {
+					break;
+				}
+				hasDigits = true;
+
+				if (mantissa == 0 && digit == 0) {
+					// Leading zero
+					exponent--;
+				} else if (nbMantissaDigits < MAX_MANTISSA_DIGITS) {
+					mantissa = mantissa * 10 + digit;
+					nbMantissaDigits++;
+					exponent--;
+				} else {
+					truncated |= digit != 0;
+				}
+			}
+		}
+
+		if (!hasDigits) {
+			return NO_BITS;
+		}
+
+		// Exponent part
+		if (i < endIndex && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+			i++;
+
+			boolean negativeExponent = false;
+			if (i < endIndex && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+				negativeExponent = s.charAt(i) == '-';
+				i++;
+			}
+
+			int explicitExponent = 0;
+			boolean hasExponentDigits = false;
+			for (; i < endIndex; i++) {
+				int digit = s.charAt(i) - '0';
+				if (digit < 0 || digit > 9) {
+					break;
+				}
+				hasExponentDigits = true;
+
+				if (explicitExponent < MAX_EXPONENT) {
+					explicitExponent = explicitExponent * 10 + digit;
+				}
+			}
+
+			if (!hasExponentDigits) {
+				return NO_BITS;
+			} else if (negativeExponent) {
+				exponent -= explicitExponent;
+			} else {
+				exponent += explicitExponent;
+			}
+		}
+
+		if (i != endIndex) {
+			// Trailing chars, like a type suffix
+			return NO_BITS;
+		}
+
+		return toBits(negative, mantissa, exponent, truncated, format);
+	}
+
+	/**
+	 * Same as {@link #parseBits(CharSequence, int, int, BinaryFormat)}, over ASCII bytes
+	 */
+	private static long parseBits(ByteBuffer s, int beginIndex, int endIndex, BinaryFormat format) {
+		if (beginIndex < 0 || beginIndex > endIndex || endIndex > s.capacity()) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		int i = beginIndex;
+		boolean negative = false;
+		if (i < endIndex) {
+			byte first = s.get(i);
+			if (first == '-') {
+				negative = true;
+				i++;
+			} else if (first == '+') {
+				i++;
+			}
+		}
+
+		long mantissa = 0;
+		int nbMantissaDigits = 0;
+		int exponent = 0;
+		boolean truncated = false;
+		boolean hasDigits = false;
+
+		// Integer part
+		for (; i < endIndex; i++) {
+			int digit = s.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				break;
+			}
+			hasDigits = true;
+
+			if (mantissa == 0 && digit == 0) {
+				// Leading zero
+				continue;
+			} else if (nbMantissaDigits < MAX_MANTISSA_DIGITS) {
+				mantissa = mantissa * 10 + digit;
+				nbMantissaDigits++;
+			} else {
+				// This digit is not in the mantissa: it scales the mantissa
+				exponent++;
+				truncated |= digit != 0;
+			}
+		}
+
+		// Fractional part
+		if (i < endIndex && s.get(i) == '.') {
+			i++;
+			for (; i < endIndex; i++) {
+				int digit = s.get(i) - '0';
+				if (digit < 0 || digit > 9) {
+					break;
+				}
+				hasDigits = true;
+
+				if (mantissa == 0 && digit == 0) {
+					// Leading zero
+					exponent--;
+				} else if (nbMantissaDigits < MAX_MANTISSA_DIGITS) {
+					mantissa = mantissa * 10 + digit;
+					nbMantissaDigits++;
+					exponent--;
+				} else {
+					truncated |= digit != 0;
+				}
+			}
+		}
+
+		if (!hasDigits) {
+			return NO_BITS;
+		}
+
+		// Exponent part
+		if (i < endIndex && (s.get(i) == 'e' || s.get(i) == 'E')) {
+			i++;
+
+			boolean negativeExponent = false;
+			if (i < endIndex && (s.get(i) == '-' || s.get(i) == '+')) {
+				negativeExponent = s.get(i) == '-';
+				i++;
+			}
+
+			int explicitExponent = 0;
+			boolean hasExponentDigits = false;
+			for (; i < endIndex; i++) {
+				int digit = s.get(i) - '0';
+				if (digit < 0 || digit > 9) {
+					break;
+				}
+				hasExponentDigits = true;
+
+				if (explicitExponent < MAX_EXPONENT) {
+					explicitExponent = explicitExponent * 10 + digit;
+				}
+			}
+
+			if (!hasExponentDigits) {
+				return NO_BITS;
+			} else if (negativeExponent) {
+				exponent -= explicitExponent;
+			} else {
+				exponent += explicitExponent;
+			}
+		}
+
+		if (i != endIndex) {
+			// Trailing bytes, like a type suffix
+			return NO_BITS;
+		}
+
+		return toBits(negative, mantissa, exponent, truncated, format);
+	}
+
+	/**
+	 * 
+	 * @param mantissa
+	 *            an unsigned decimal mantissa, with at most 19 digits
+	 * @param exponent
+	 *            the power of 10 to apply to the mantissa
+	 * @param truncated
+	 *            true if non-zero digits have been dropped from the mantissa
+	 * @return the bits of the value, or NO_BITS if it can not be computed by the fast algorithms
+	 */
+	private static long toBits(boolean negative, long mantissa, int exponent, boolean truncated, BinaryFormat format) {
+		long signBit;
+		if (negative) {
+			signBit = 1L << format.signIndex;
+		} else {
+			signBit = 0L;
+		}
+
+		if (mantissa == 0) {
+			return signBit;
+		}
+
+		if (!truncated) {
+			// Clinger's fast-path: both the mantissa and the power of 10 are exact
+			if (format == DOUBLE && mantissa >= 0 && mantissa <= 1L << 53 && Math.abs(exponent) <= 22) {
+				double value = mantissa;
+				if (exponent < 0) {
+					value /= DOUBLE_POWERS_OF_TEN[-exponent];
+				} else {
+					value *= DOUBLE_POWERS_OF_TEN[exponent];
+				}
+				return signBit | Double.doubleToRawLongBits(value);
+			} else if (format == FLOAT && mantissa >= 0 && mantissa <= 1L << 24 && Math.abs(exponent) <= 10) {
+				float value = mantissa;
+				if (exponent < 0) {
+					value /= FLOAT_POWERS_OF_TEN[-exponent];
+				} else {
+					value *= FLOAT_POWERS_OF_TEN[exponent];
+				}
+				return signBit | Float.floatToRawIntBits(value);
+			}
+
+			return signBit | eiselLemire(mantissa, exponent, format);
+		} else {
+			// The actual mantissa is between mantissa and mantissa + 1: conclude only if both lead to the same value
+			long lower = eiselLemire(mantissa, exponent, format);
+			long upper = eiselLemire(mantissa + 1, exponent, format);
+			if (lower == upper) {
+				return signBit | lower;
+			} else {
+				return NO_BITS;
+			}
+		}
+	}
+
+	/**
+	 * The Eisel-Lemire algorithm, as implemented in fast_float. The 128-bit approximation of the power of 5 is always
+	 * sufficient for mantissas with at most 19 digits.
+	 * 
+	 * @param mantissa
+	 *            a non-zero unsigned mantissa
+	 * @return the bits of the positive value mantissa * 10^exponent
+	 */
+	private static long eiselLemire(long mantissa, int exponent, BinaryFormat format) {
+		if (exponent < format.smallestPowerOfTen) {
+			return 0L;
+		} else if (exponent > format.largestPowerOfTen) {
+			return (long) format.infinitePower << format.mantissaExplicitBits;
+		}
+
+		int leadingZeros = Long.numberOfLeadingZeros(mantissa);
+		long w = mantissa << leadingZeros;
+
+		// Compute the 128 most significant bits of w * 5^exponent, with a precision of mantissaExplicitBits + 3 bits
+		int index = 2 * (exponent - SMALLEST_POWER_OF_TEN);
+		long productHigh = unsignedMultiplyHigh(w, POWER_OF_FIVE_128[index]);
+		long productLow = w * POWER_OF_FIVE_128[index];
+
+		long precisionMask = 0xFFFFFFFFFFFFFFFFL >>> (format.mantissaExplicitBits + 3);
+		if ((productHigh & precisionMask) == precisionMask) {
+			// The first product may be inexact: refine with the lower part of the power of 5
+			long secondHigh = unsignedMultiplyHigh(w, POWER_OF_FIVE_128[index + 1]);
+			productLow += secondHigh;
+			if (Long.compareUnsigned(secondHigh, productLow) > 0) {
+				productHigh++;
+			}
+		}
+
+		int upperBit = (int) (productHigh >>> 63);
+		int shift = upperBit + 64 - format.mantissaExplicitBits - 3;
+		long resultMantissa = productHigh >>> shift;
+		int power2 = power(exponent) + upperBit - leadingZeros - format.minimumExponent;
+
+		if (power2 <= 0) {
+			// Subnormal
+			if (-power2 + 1 >= 64) {
+				return 0L;
+			}
+			resultMantissa >>>= -power2 + 1;
+			// Round to nearest, ties to even
+			resultMantissa += resultMantissa & 1;
+			resultMantissa >>>= 1;
+
+			// The rounding may have turned the subnormal into the smallest normal
+			if (resultMantissa < 1L << format.mantissaExplicitBits) {
+				power2 = 0;
+			} else {
+				power2 = 1;
+			}
+			return resultMantissa & ((1L << format.mantissaExplicitBits) - 1)
+					| (long) power2 << format.mantissaExplicitBits;
+		}
+
+		if (Long.compareUnsigned(productLow, 1) <= 0 && exponent >= format.minExponentRoundToEven
+				&& exponent <= format.maxExponentRoundToEven
+				&& (resultMantissa & 3) == 1) {
+			// We may be exactly between two values: round to even
+			if (resultMantissa << shift == productHigh) {
+				resultMantissa &= ~1L;
+			}
+		}
+
+		// Round to nearest
+		resultMantissa += resultMantissa & 1;
+		resultMantissa >>>= 1;
+		if (resultMantissa >= 2L << format.mantissaExplicitBits) {
+			resultMantissa = 1L << format.mantissaExplicitBits;
+			power2++;
+		}
+		resultMantissa &= ~(1L << format.mantissaExplicitBits);
+
+		if (power2 >= format.infinitePower) {
+			return (long) format.infinitePower << format.mantissaExplicitBits;
+		}
+
+		return resultMantissa | (long) power2 << format.mantissaExplicitBits;
+	}
+
+	/**
+	 * 
+	 * @return floor(log2(5^q)) + q + 63, a fast approximation valid for q in [-1500, 1500]
+	 */
+	private static int power(int q) {
+		return (((152170 + 65536) * q) >> 16) + 63;
+	}
+
+	/**
+	 * Java 8 has no Math.multiplyHigh, which would anyway be signed
+	 * 
+	 * @return the 64 most significant bits of the unsigned 128-bit product of x and y
+	 */
+	static long unsignedMultiplyHigh(long x, long y) {
+		long x0 = x & 0xFFFFFFFFL;
+		long x1 = x >>> 32;
+		long y0 = y & 0xFFFFFFFFL;
+		long y1 = y >>> 32;
+
+		long p11 = x1 * y1;
+		long p01 = x0 * y1;
+		long p10 = x1 * y0;
+		long p00 = x0 * y0;
+
+		// The middle terms, with the carry from the lower term
+		long middle = (p00 >>> 32) + (p01 & 0xFFFFFFFFL) + (p10 & 0xFFFFFFFFL);
+		return p11 + (p01 >>> 32) + (p10 >>> 32) + (middle >>> 32);
+	}
+
+	/**
+	 * Compute the table of fast_float: for q < 0, the 128 bits are an upper approximation of 2^b / 5^-q. For q >= 0,
+	 * they are the truncated 128 most significant bits of 5^q
+	 */
+	private static long[] computePowersOfFive() {
+		long[] table = new long[2 * (LARGEST_POWER_OF_TEN - SMALLEST_POWER_OF_TEN + 1)];
+
+		BigInteger two128 = BigInteger.ONE.shiftLeft(128);
+		for (int q = SMALLEST_POWER_OF_TEN; q <= LARGEST_POWER_OF_TEN; q++) {
+			BigInteger value;
+			if (q < 0) {
+				BigInteger power5 = BigInteger.valueOf(5).pow(-q);
+				// z is the number of bits of 5^-q, as 5^-q is never a power of 2
+				int z = power5.bitLength();
+
+				int b;
+				if (q >= -27) {
+					b = z + 127;
+				} else {
+					b = 2 * z + 2 * 64;
+				}
+				value = BigInteger.ONE.shiftLeft(b).divide(power5).add(BigInteger.ONE);
+				while (value.compareTo(two128) >= 0) {
+					value = value.shiftRight(1);
+				}
+			} else {
+				value = BigInteger.valueOf(5).pow(q);
+				// Move the most significant bit in position 127
+				int bitLength = value.bitLength();
+				if (bitLength < 128) {
+					value = value.shiftLeft(128 - bitLength);
+				} else {
+					value = value.shiftRight(bitLength - 128);
+				}
+			}
+
+			int index = 2 * (q - SMALLEST_POWER_OF_TEN);
+			table[index] = value.shiftRight(64).longValue();
+			table[index + 1] = value.longValue();
+		}
+
+		return table;
+	}
+
+	/**
+	 * The characteristics of IEEE-754 binary64 (double) or binary32 (float)
+	 * 
+	 * @author Benoit Lacelle
+	 *
+	 */
+	private static final class BinaryFormat {
+		final int mantissaExplicitBits;
+		final int minimumExponent;
+		final int infinitePower;
+		final int minExponentRoundToEven;
+		final int maxExponentRoundToEven;
+		final int smallestPowerOfTen;
+		final int largestPowerOfTen;
+		final int signIndex;
+
+		BinaryFormat(int mantissaExplicitBits,
+				int minimumExponent,
+				int infinitePower,
+				int minExponentRoundToEven,
+				int maxExponentRoundToEven,
+				int smallestPowerOfTen,
+				int largestPowerOfTen) {
+			this.mantissaExplicitBits = mantissaExplicitBits;
+			this.minimumExponent = minimumExponent;
+			this.infinitePower = infinitePower;
+			this.minExponentRoundToEven = minExponentRoundToEven;
+			this.maxExponentRoundToEven = maxExponentRoundToEven;
+			this.smallestPowerOfTen = smallestPowerOfTen;
+			this.largestPowerOfTen = largestPowerOfTen;
+			// The sign bit follows the exponent bits
+			this.signIndex = mantissaExplicitBits + Integer.bitCount(infinitePower);
+		}
+	}
+}
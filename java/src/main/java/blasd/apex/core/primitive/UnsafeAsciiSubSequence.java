@@ -0,0 +1,117 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.core.primitive;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link CharSequence} over a range of a {@link ByteBuffer} holding ASCII bytes. Each byte is considered as a single
+ * char, as in ISO-8859-1.
+ * 
+ * Not thread-safe, Mutable, no .hashcode/.equals, but does not allocate any memory
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class UnsafeAsciiSubSequence implements CharSequence {
+	protected ByteBuffer underlying;
+	protected int start;
+	protected int end;
+
+	public UnsafeAsciiSubSequence() {
+		this.underlying = null;
+		this.start = -1;
+		this.end = -1;
+	}
+
+	public UnsafeAsciiSubSequence(ByteBuffer underlying, int from, int to) {
+		this.underlying = underlying;
+		this.start = from;
+		this.end = to;
+	}
+
+	/**
+	 * Not-thread-safe
+	 * 
+	 * @param underlying
+	 *            the {@link ByteBuffer} read with absolute indexes
+	 * @param start
+	 *            the absolute index of the first byte, inclusive
+	 * @param end
+	 *            the absolute index of the last byte, exclusive
+	 */
+	public void resetWindow(ByteBuffer underlying, int start, int end) {
+		this.underlying = underlying;
+		this.start = start;
+		this.end = end;
+	}
+
+	public boolean isValid() {
+		return underlying != null && start >= 0 && end >= start;
+	}
+
+	@Override
+	public int length() {
+		return end - start;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= end - start) {
+			throw new IndexOutOfBoundsException(index + " is out of [0, " + (end - start) + "[");
+		}
+		return (char) (underlying.get(start + index) & 0xFF);
+	}
+
+	@Override
+	public CharSequence subSequence(int subStart, int subEnd) {
+		if (subStart < 0 || subStart > subEnd || subEnd > end - start) {
+			throw new IndexOutOfBoundsException(subStart + "-" + subEnd + " is out of [0, " + (end - start) + "]");
+		}
+		return new UnsafeAsciiSubSequence(underlying, start + subStart, start + subEnd);
+	}
+
+	@Override
+	public int hashCode() {
+		throw new RuntimeException("UNsafe");
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		throw new RuntimeException("UNsafe");
+	}
+
+	@Override
+	public String toString() {
+		if (isValid()) {
+			byte[] bytes = new byte[end - start];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = underlying.get(start + i);
+			}
+			return new String(bytes, StandardCharsets.ISO_8859_1);
+		} else {
+			return this.getClass() + " Not Initialized";
+		}
+	}
+}
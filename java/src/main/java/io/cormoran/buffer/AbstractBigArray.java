@@ -0,0 +1,266 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.cormoran.buffer;
+
+import java.nio.Buffer;
+import java.util.stream.LongStream;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Common logic for arrays indexed by a long, stitching the segments of a {@link CloseableSegmentedBuffer}. The number
+ * of elements per segment is a power of 2, so that an index is split in a segment and an index in the segment with
+ * shifts and masks.
+ * 
+ * @author Benoit Lacelle
+ *
+ * @param <B>
+ *            the type of {@link Buffer} viewing each segment
+ */
+@Beta
+public abstract class AbstractBigArray<B extends Buffer> implements AutoCloseable {
+	private static final int INSERTION_SORT_THRESHOLD = 16;
+
+	protected final CloseableSegmentedBuffer buffer;
+	protected final long size;
+
+	protected final B[] segments;
+	protected final int segmentShift;
+	protected final int segmentMask;
+
+	/**
+	 * Receives the [fromInSegment, toInSegment[ range of a segment
+	 * 
+	 * @param <B>
+	 *            the type of {@link Buffer} viewing each segment
+	 */
+	@FunctionalInterface
+	protected interface ISegmentRangeConsumer<B extends Buffer> {
+		/**
+		 * 
+		 * @param from
+		 *            the index in the array of the element at fromInSegment
+		 */
+		void accept(B segment, int fromInSegment, int toInSegment, long from);
+	}
+
+	/**
+	 * 
+	 * @param segments
+	 *            the views of the segments of buffer, with elements of elementBytes bytes
+	 */
+	protected AbstractBigArray(CloseableSegmentedBuffer buffer, int elementBytes, B[] segments) {
+		int segmentElements = buffer.getMaxSegmentBytes() / elementBytes;
+		if (Integer.bitCount(segmentElements) != 1) {
+			throw new IllegalArgumentException(
+					"The number of elements per segment has to be a power of 2: " + segmentElements);
+		} else if (buffer.getNbBytes() % elementBytes != 0) {
+			throw new IllegalArgumentException(
+					"The buffer holds " + buffer.getNbBytes() + " bytes, which is not a multiple of " + elementBytes);
+		}
+
+		this.buffer = buffer;
+		this.size = buffer.getNbBytes() / elementBytes;
+
+		this.segments = segments;
+		this.segmentShift = Integer.numberOfTrailingZeros(segmentElements);
+		this.segmentMask = segmentElements - 1;
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public BufferTier getTier() {
+		return buffer.getTier();
+	}
+
+	/**
+	 * 
+	 * @return the indexes of this array. Call .parallel() to iterate them concurrently
+	 */
+	public LongStream indexes() {
+		return LongStream.range(0, size);
+	}
+
+	protected void checkIndex(long index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+
+	protected void checkRange(long from, long to) {
+		if (from < 0 || from > to || to > size) {
+			throw new IndexOutOfBoundsException("From: " + from + ", To: " + to + ", Size: " + size);
+		}
+	}
+
+	protected int segmentIndex(long index) {
+		return (int) (index >> segmentShift);
+	}
+
+	protected int indexInSegment(long index) {
+		return (int) index & segmentMask;
+	}
+
+	/**
+	 * Split the range from index from, inclusive, to index to, exclusive, in the ranges of the segments holding it
+	 */
+	protected void forEachSegmentRange(long from, long to, ISegmentRangeConsumer<B> consumer) {
+		checkRange(from, to);
+
+		long current = from;
+		while (current < to) {
+			int fromInSegment = indexInSegment(current);
+			int toInSegment = (int) Math.min(segmentMask + 1L, fromInSegment + (to - current));
+
+			consumer.accept(segments[segmentIndex(current)], fromInSegment, toInSegment, current);
+			current += toInSegment - fromInSegment;
+		}
+	}
+
+	/**
+	 * Sort in ascending order the elements from index from, inclusive, to index to, exclusive. It is an in-place
+	 * introsort: it does not allocate a copy of the range, which may be larger than the heap.
+	 */
+	public void sort(long from, long to) {
+		checkRange(from, to);
+
+		// Fallback on heapsort beyond 2*log2(n) levels, to prevent the quadratic worst-case of quicksort
+		int maxDepth = 2 * (Long.SIZE - Long.numberOfLeadingZeros(to - from));
+		introSort(from, to, maxDepth);
+	}
+
+	public void sort() {
+		sort(0, size);
+	}
+
+	/**
+	 * 
+	 * @return a negative integer, zero, or a positive integer as the element at left is less than, equal to, or greater
+	 *         than the element at right
+	 */
+	protected abstract int compare(long left, long right);
+
+	protected abstract void swap(long left, long right);
+
+	private void introSort(long from, long to, int maxDepth) {
+		long currentFrom = from;
+		long currentTo = to;
+		int depth = maxDepth;
+
+		while (currentTo - currentFrom > INSERTION_SORT_THRESHOLD) {
+			if (depth == 0) {
+				heapSort(currentFrom, currentTo);
+				return;
+			}
+			depth--;
+
+			long pivot = partition(currentFrom, currentTo);
+
+			// Recurse on the smaller side, and loop on the larger one, to bound the stack
+			if (pivot - currentFrom < currentTo - pivot) {
+				introSort(currentFrom, pivot, depth);
+				currentFrom = pivot + 1;
+			} else {
+				introSort(pivot + 1, currentTo, depth);
+				currentTo = pivot;
+			}
+		}
+
+		insertionSort(currentFrom, currentTo);
+	}
+
+	/**
+	 * 
+	 * @return the index of the pivot, which is at its final position
+	 */
+	private long partition(long from, long to) {
+		long middle = from + (to - from) / 2;
+		long last = to - 1;
+
+		// Move the median of from, middle and last to last
+		if (compare(middle, from) < 0) {
+			swap(middle, from);
+		}
+		if (compare(last, from) < 0) {
+			swap(last, from);
+		}
+		if (compare(middle, last) < 0) {
+			swap(middle, last);
+		}
+
+		long store = from;
+		for (long i = from; i < last; i++) {
+			if (compare(i, last) < 0) {
+				swap(i, store);
+				store++;
+			}
+		}
+		swap(store, last);
+
+		return store;
+	}
+
+	private void insertionSort(long from, long to) {
+		for (long i = from + 1; i < to; i++) {
+			for (long j = i; j > from && compare(j, j - 1) < 0; j--) {
+				swap(j, j - 1);
+			}
+		}
+	}
+
+	private void heapSort(long from, long to) {
+		long n = to - from;
+		for (long i = n / 2 - 1; i >= 0; i--) {
+			siftDown(from, i, n);
+		}
+		for (long end = n - 1; end > 0; end--) {
+			swap(from, from + end);
+			siftDown(from, 0, end);
+		}
+	}
+
+	private void siftDown(long base, long root, long n) {
+		long current = root;
+		while (true) {
+			long child = 2 * current + 1;
+			if (child >= n) {
+				return;
+			}
+			if (child + 1 < n && compare(base + child, base + child + 1) < 0) {
+				child++;
+			}
+			if (compare(base + current, base + child) >= 0) {
+				return;
+			}
+			swap(base + current, base + child);
+			current = child;
+		}
+	}
+
+	@Override
+	public void close() {
+		buffer.close();
+	}
+}
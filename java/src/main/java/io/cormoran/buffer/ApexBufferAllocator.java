@@ -0,0 +1,259 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.cormoran.buffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+
+import blasd.apex.core.logging.ApexLogHelper;
+import blasd.apex.core.memory.IApexMemoryConstants;
+
+/**
+ * Allocate buffers off-heap, falling back from a {@link BufferTier} to the next one when the former has not enough room
+ * left. By default, we try direct memory (bounded by -XX:MaxDirectMemorySize), then a memory-mapped temporary file
+ * (bounded by the free disk-space), then the heap.
+ * 
+ * Buffers may be larger than 2GB, as they are split in segments of at most {@link #getMaxSegmentBytes()} bytes. The
+ * number of bytes held by each tier is accounted until the buffer is closed.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+@Beta
+public class ApexBufferAllocator {
+	protected static final Logger LOGGER = LoggerFactory.getLogger(ApexBufferAllocator.class);
+
+	// A multiple of Long.BYTES, so that no element overlaps 2 segments
+	public static final int DEFAULT_MAX_SEGMENT_BYTES = IApexMemoryConstants.GB_INT;
+
+	protected final List<BufferTier> tiers;
+	protected final int maxSegmentBytes;
+
+	protected final Map<BufferTier, AtomicLong> tierToAllocatedBytes = new EnumMap<>(BufferTier.class);
+
+	public ApexBufferAllocator() {
+		this(Arrays.asList(BufferTier.values()), DEFAULT_MAX_SEGMENT_BYTES);
+	}
+
+	/**
+	 * 
+	 * @param tiers
+	 *            the tiers to try, by order of preference
+	 * @param maxSegmentBytes
+	 *            the maximum number of bytes in a segment. It has to be a multiple of {@link Long#BYTES}
+	 */
+	public ApexBufferAllocator(List<BufferTier> tiers, int maxSegmentBytes) {
+		if (tiers.isEmpty()) {
+			throw new IllegalArgumentException("We need at least one tier");
+		} else if (maxSegmentBytes <= 0 || maxSegmentBytes % Long.BYTES != 0) {
+			throw new IllegalArgumentException(
+					"maxSegmentBytes has to be a strictly positive multiple of " + Long.BYTES + ": " + maxSegmentBytes);
+		}
+
+		this.tiers = ImmutableList.copyOf(tiers);
+		this.maxSegmentBytes = maxSegmentBytes;
+
+		for (BufferTier tier : BufferTier.values()) {
+			tierToAllocatedBytes.put(tier, new AtomicLong());
+		}
+	}
+
+	public int getMaxSegmentBytes() {
+		return maxSegmentBytes;
+	}
+
+	/**
+	 * 
+	 * @return the number of bytes currently held by the not-closed buffers allocated in given tier
+	 */
+	public long getAllocatedBytes(BufferTier tier) {
+		return tierToAllocatedBytes.get(tier).get();
+	}
+
+	public CloseableSegmentedBuffer allocateInts(long nbInts) throws IOException {
+		return allocate(Math.multiplyExact(nbInts, IApexMemoryConstants.INT));
+	}
+
+	public CloseableSegmentedBuffer allocateLongs(long nbLongs) throws IOException {
+		return allocate(Math.multiplyExact(nbLongs, IApexMemoryConstants.LONG));
+	}
+
+	public CloseableSegmentedBuffer allocateDoubles(long nbDoubles) throws IOException {
+		return allocate(Math.multiplyExact(nbDoubles, IApexMemoryConstants.DOUBLE));
+	}
+
+	/**
+	 * 
+	 * @param nbBytes
+	 *            the number of bytes to allocate
+	 * @return a {@link CloseableSegmentedBuffer} filled with 0, allocated in the first tier with enough room
+	 * @throws IllegalStateException
+	 *             if no tier has enough room
+	 */
+	public CloseableSegmentedBuffer allocate(long nbBytes) throws IOException {
+		if (nbBytes < 0) {
+			throw new IllegalArgumentException("Can not allocate a buffer with a negative size");
+		}
+
+		for (BufferTier tier : tiers) {
+			Optional<CloseableSegmentedBuffer> buffer = tryAllocate(tier, nbBytes);
+
+			if (buffer.isPresent()) {
+				LOGGER.debug("Allocated {} in {}", ApexLogHelper.getNiceMemory(nbBytes), tier);
+
+				return buffer.get();
+			}
+		}
+
+		throw new IllegalStateException(
+				"Neither of " + tiers + " has room left for " + ApexLogHelper.getNiceMemory(nbBytes));
+	}
+
+	protected Optional<CloseableSegmentedBuffer> tryAllocate(BufferTier tier, long nbBytes) throws IOException {
+		switch (tier) {
+		case DIRECT:
+			if (ApexBufferHelper.getAvailableDirectMemory() < nbBytes) {
+				return Optional.empty();
+			}
+			return tryAllocateInMemory(tier, nbBytes);
+		case MAPPED_FILE:
+			return tryAllocateInFile(nbBytes);
+		case HEAP:
+			if (ApexBufferHelper.getAvailableHeap() < nbBytes) {
+				return Optional.empty();
+			}
+			return tryAllocateInMemory(tier, nbBytes);
+		default:
+			throw new IllegalArgumentException("Not managed: " + tier);
+		}
+	}
+
+	protected Optional<CloseableSegmentedBuffer> tryAllocateInMemory(BufferTier tier, long nbBytes) {
+		List<ByteBuffer> segments = new ArrayList<>();
+
+		try {
+			for (long offset = 0; offset < nbBytes; offset += maxSegmentBytes) {
+				int segmentBytes = getSegmentBytes(nbBytes, offset);
+
+				ByteBuffer segment;
+				if (tier == BufferTier.DIRECT) {
+					segment = ByteBuffer.allocateDirect(segmentBytes);
+				} else {
+					segment = ByteBuffer.allocate(segmentBytes);
+				}
+				segments.add(segment.order(ByteOrder.nativeOrder()));
+			}
+		} catch (OutOfMemoryError e) {
+			// The available memory is only an estimation: other threads may have allocated concurrently
+			LOGGER.debug("Not enough " + tier + " for " + ApexLogHelper.getNiceMemory(nbBytes), e);
+
+			if (tier == BufferTier.DIRECT) {
+				segments.forEach(ApexBufferHelper::unmap);
+			}
+			return Optional.empty();
+		}
+
+		return Optional.of(newBuffer(tier, nbBytes, segments, null));
+	}
+
+	protected Optional<CloseableSegmentedBuffer> tryAllocateInFile(long nbBytes) throws IOException {
+		Optional<File> tmpFile = ApexBufferHelper.prepareFile(".SegmentedBuffer", nbBytes);
+
+		if (!tmpFile.isPresent()) {
+			return Optional.empty();
+		}
+
+		List<ByteBuffer> segments = new ArrayList<>();
+
+		// FileChannel can be closed as "mapping, once established, is not dependent upon the file channel that was
+		// used to create it". See FileChannel.map
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(tmpFile.get(), "rw");
+				FileChannel fc = randomAccessFile.getChannel()) {
+			for (long offset = 0; offset < nbBytes; offset += maxSegmentBytes) {
+				int segmentBytes = getSegmentBytes(nbBytes, offset);
+
+				segments.add(
+						fc.map(FileChannel.MapMode.READ_WRITE, offset, segmentBytes).order(ByteOrder.nativeOrder()));
+			}
+		} catch (IOException e) {
+			// Typically an address-space exhaustion: "Map failed"
+			LOGGER.debug("Issue mapping " + tmpFile.get(), e);
+
+			segments.forEach(ApexBufferHelper::unmap);
+			ApexBufferHelper.deleteFile(tmpFile.get());
+			return Optional.empty();
+		}
+
+		ApexBufferHelper.onMapped(nbBytes);
+		return Optional.of(newBuffer(BufferTier.MAPPED_FILE, nbBytes, segments, tmpFile.get()));
+	}
+
+	/**
+	 * 
+	 * @return a {@link CloseableSegmentedBuffer} accounted in given tier until it is closed
+	 */
+	protected CloseableSegmentedBuffer newBuffer(BufferTier tier,
+			long nbBytes,
+			List<ByteBuffer> segments,
+			File backingFile) {
+		return new CloseableSegmentedBuffer(tier,
+				nbBytes,
+				maxSegmentBytes,
+				segments,
+				backingFile,
+				onAllocated(tier, nbBytes));
+	}
+
+	/**
+	 * Account given bytes in given tier
+	 * 
+	 * @return the callback to run once these bytes are released
+	 */
+	protected Runnable onAllocated(BufferTier tier, long nbBytes) {
+		AtomicLong allocatedBytes = tierToAllocatedBytes.get(tier);
+		allocatedBytes.addAndGet(nbBytes);
+
+		return () -> allocatedBytes.addAndGet(-nbBytes);
+	}
+
+	protected int getSegmentBytes(long nbBytes, long offset) {
+		return (int) Math.min(maxSegmentBytes, nbBytes - offset);
+	}
+}
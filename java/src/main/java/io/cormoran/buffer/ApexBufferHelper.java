@@ -25,17 +25,27 @@
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.management.BufferPoolMXBean;
 import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.channels.FileChannel;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.annotations.Beta;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.primitives.Ints;
 
+import blasd.apex.core.jvm.ApexForOracleJVM;
 import blasd.apex.core.logging.ApexLogHelper;
 import blasd.apex.core.memory.IApexMemoryConstants;
 
@@ -44,6 +54,7 @@
  * file
  * 
  * @author Benoit Lacelle
+ * @see ApexBufferAllocator
  *
  */
 @Beta
@@ -55,6 +66,45 @@ public class ApexBufferHelper {
 	protected static boolean forceNoSpaceDisk = false;
 	@VisibleForTesting
 	protected static boolean forceNoHeap = false;
+	@VisibleForTesting
+	protected static boolean forceNoDirectMemory = false;
+
+	// The number of bytes currently mapped by the buffers allocated by this class and ApexBufferAllocator
+	private static final AtomicLong MAPPED_BYTES = new AtomicLong();
+
+	// Resolved once, as it depends only on the JDK
+	private static final Optional<Consumer<ByteBuffer>> CLEANER = makeCleaner();
+
+	private static final ApexBufferAllocator DEFAULT_ALLOCATOR = new ApexBufferAllocator();
+
+	protected ApexBufferHelper() {
+		// hidden
+	}
+
+	/**
+	 * 
+	 * @return the {@link ApexBufferAllocator} used by the static helpers, trying direct memory, then a memory-mapped
+	 *         file, then the heap
+	 */
+	public static ApexBufferAllocator getDefaultAllocator() {
+		return DEFAULT_ALLOCATOR;
+	}
+
+	public static CloseableSegmentedBuffer makeIntBuffers(long nbInts) throws IOException {
+		return DEFAULT_ALLOCATOR.allocateInts(nbInts);
+	}
+
+	public static CloseableSegmentedBuffer makeLongBuffers(long nbLongs) throws IOException {
+		return DEFAULT_ALLOCATOR.allocateLongs(nbLongs);
+	}
+
+	public static CloseableSegmentedBuffer makeDoubleBuffers(long nbDoubles) throws IOException {
+		return DEFAULT_ALLOCATOR.allocateDoubles(nbDoubles);
+	}
+
+	public static CloseableSegmentedBuffer makeByteBuffers(long nbBytes) throws IOException {
+		return DEFAULT_ALLOCATOR.allocate(nbBytes);
+	}
 
 	public static CloseableIntBuffer makeIntBuffer(int nbIntegers) throws IOException {
 		if (nbIntegers < 0) {
@@ -63,7 +113,7 @@ public static CloseableIntBuffer makeIntBuffer(int nbIntegers) throws IOExceptio
 
 		long targetNbBytes = IApexMemoryConstants.INT * nbIntegers;
 
-		Optional<File> tmpFile = prepareIntArrayInFile(".IntArray1NWriter", targetNbBytes);
+		Optional<File> tmpFile = prepareFile(".IntArray1NWriter", targetNbBytes);
 
 		if (tmpFile.isPresent()) {
 			// FileChannel can be closed as "mapping, once established, is not dependent upon the file channel that was
@@ -72,14 +122,33 @@ public static CloseableIntBuffer makeIntBuffer(int nbIntegers) throws IOExceptio
 					FileChannel fc = randomAccessFile.getChannel()) {
 
 				// https://stackoverflow.com/questions/2972986/how-to-unmap-a-file-from-memory-mapped-using-filechannel-in-java
-				return new CloseableIntBuffer(fc.map(FileChannel.MapMode.READ_WRITE, 0, fc.size()));
+				ByteBuffer mapped = fc.map(FileChannel.MapMode.READ_WRITE, 0, fc.size());
+				MAPPED_BYTES.addAndGet(targetNbBytes);
+
+				return new CloseableIntBuffer(mapped,
+						tmpFile.get(),
+						DEFAULT_ALLOCATOR.onAllocated(BufferTier.MAPPED_FILE, targetNbBytes));
+			} catch (IOException e) {
+				deleteFile(tmpFile.get());
+				throw e;
 			}
 		} else {
 			long availableHeap = getAvailableHeap();
 
 			if (availableHeap < targetNbBytes) {
-				// TODO: Try allocating in direct memory
-				throw new IllegalStateException("Not enough disk-space nor memory");
+				if (targetNbBytes > Integer.MAX_VALUE) {
+					// A single ByteBuffer is indexed by an int: larger buffers have to be segmented
+					throw new OutOfMemoryError("The disk and the heap seem full, and " + nbIntegers
+							+ " ints do not fit in a single direct buffer, limited to 2GB. Consider .makeIntBuffers");
+				} else if (getAvailableDirectMemory() < targetNbBytes) {
+					throw new IllegalStateException("Not enough disk-space nor memory");
+				}
+
+				LOGGER.warn("The disk and the heap seem full, allocating in direct memory");
+				ByteBuffer direct = ByteBuffer.allocateDirect(Ints.checkedCast(targetNbBytes));
+				return new CloseableIntBuffer(direct,
+						null,
+						DEFAULT_ALLOCATOR.onAllocated(BufferTier.DIRECT, targetNbBytes));
 			}
 
 			try {
@@ -97,7 +166,7 @@ public static CloseableIntBuffer makeIntBuffer(int nbIntegers) throws IOExceptio
 		}
 	}
 
-	private static long getAvailableHeap() {
+	protected static long getAvailableHeap() {
 		if (forceNoHeap) {
 			return 0;
 		} else {
@@ -109,7 +178,26 @@ private static long getAvailableHeap() {
 		}
 	}
 
-	private static Optional<File> prepareIntArrayInFile(String suffix, long targetNbBytes) throws IOException {
+	/**
+	 * 
+	 * @return the direct memory which can still be allocated before reaching -XX:MaxDirectMemorySize
+	 */
+	protected static long getAvailableDirectMemory() {
+		if (forceNoDirectMemory) {
+			return 0;
+		} else {
+			long maxDirectMemory = ApexForOracleJVM.maxDirectMemory();
+			long usedDirectMemory = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)
+					.stream()
+					.filter(b -> b.getName().equals("direct"))
+					.mapToLong(BufferPoolMXBean::getMemoryUsed)
+					.sum();
+
+			return Math.max(0, maxDirectMemory - usedDirectMemory);
+		}
+	}
+
+	protected static Optional<File> prepareFile(String suffix, long targetNbBytes) throws IOException {
 		File tmpFile = File.createTempFile("mat", suffix);
 		// We do not need the file to survive the JVM as the goal is just to spare heap
 		tmpFile.deleteOnExit();
@@ -130,7 +218,7 @@ private static Optional<File> prepareIntArrayInFile(String suffix, long targetNb
 		return Optional.of(tmpFile);
 	}
 
-	private static long getFreeSpace(File tmpFile) {
+	protected static long getFreeSpace(File tmpFile) {
 		if (forceNoSpaceDisk) {
 			return 0;
 		} else {
@@ -138,4 +226,118 @@ private static long getFreeSpace(File tmpFile) {
 		}
 	}
 
+	/**
+	 * 
+	 * @return the number of bytes currently mapped by the not-closed buffers allocated by {@link ApexBufferHelper} and
+	 *         {@link ApexBufferAllocator}
+	 */
+	public static long getMappedBytes() {
+		return MAPPED_BYTES.get();
+	}
+
+	protected static void onMapped(long nbBytes) {
+		MAPPED_BYTES.addAndGet(nbBytes);
+	}
+
+	/**
+	 * Unmap the segments of a memory-mapped file, then delete the file
+	 * 
+	 * @param nbBytes
+	 *            the number of bytes mapped by the segments
+	 */
+	protected static void releaseMapped(List<? extends ByteBuffer> segments, long nbBytes, File file) {
+		segments.forEach(ApexBufferHelper::unmap);
+		MAPPED_BYTES.addAndGet(-nbBytes);
+
+		// If the unmapping failed, some OS (e.g. Windows) would prevent the deletion of the file
+		deleteFile(file);
+	}
+
+	protected static void deleteFile(File file) {
+		if (!file.delete() && file.exists()) {
+			LOGGER.warn("We failed deleting {}. It will be deleted on exit", file);
+		}
+	}
+
+	/**
+	 * Release the memory held by a direct or a memory-mapped {@link ByteBuffer}. The buffer, and any view over it, must
+	 * not be accessed anymore.
+	 * 
+	 * @return true if the memory has been released. Else, it will be released when the buffer is garbage-collected
+	 */
+	// https://stackoverflow.com/questions/2972986/how-to-unmap-a-file-from-memory-mapped-using-filechannel-in-java
+	// Beware if buffer is re http://bugs.java.com/view_bug.do?bug_id=4724038
+	protected static boolean unmap(ByteBuffer buffer) {
+		if (!buffer.isDirect() || !CLEANER.isPresent()) {
+			return false;
+		}
+
+		try {
+			CLEANER.get().accept(buffer);
+			return true;
+		} catch (RuntimeException e) {
+			// Typically a duplicate or a slice, which does not own its memory
+			LOGGER.trace("Issue unmapping " + buffer, e);
+			return false;
+		}
+	}
+
+	/**
+	 * 
+	 * @return a {@link Consumer} invoking the cleaner of a direct {@link ByteBuffer}: sun.misc.Unsafe.invokeCleaner
+	 *         since JDK9, else sun.misc.Cleaner
+	 */
+	protected static Optional<Consumer<ByteBuffer>> makeCleaner() {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+
+			Optional<Method> invokeCleaner = getMethod(unsafeClass, "invokeCleaner", ByteBuffer.class);
+			if (invokeCleaner.isPresent()) {
+				// JDK9+: sun.misc.Unsafe is in the jdk.unsupported module, which is opened
+				Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+				Object unsafe = theUnsafe.get(null);
+
+				return Optional.of(buffer -> invoke(invokeCleaner.get(), unsafe, buffer));
+			} else {
+				// JDK8: sun.misc.Cleaner cleaner = ((DirectBuffer) buffer).cleaner(); cleaner.clean();
+				Method cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+				Method cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+
+				return Optional.of(buffer -> {
+					Object cleaner = invoke(cleanerMethod, buffer);
+					if (cleaner == null) {
+						// A duplicate or a slice has no cleaner
+						throw new IllegalArgumentException("There is no cleaner for " + buffer);
+					}
+					invoke(cleanMethod, cleaner);
+				});
+			}
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			LOGGER.warn("Buffers will be released only when garbage-collected", e);
+			return Optional.empty();
+		}
+	}
+
+	private static Optional<Method> getMethod(Class<?> clazz, String name, Class<?>... parameterTypes) {
+		try {
+			return Optional.of(clazz.getMethod(name, parameterTypes));
+		} catch (NoSuchMethodException e) {
+			return Optional.empty();
+		}
+	}
+
+	private static Object invoke(Method method, Object target, Object... args) {
+		try {
+			return method.invoke(target, args);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			} else {
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+	}
 }
@@ -0,0 +1,139 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.cormoran.buffer;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.function.LongToIntFunction;
+import java.util.stream.IntStream;
+
+import com.google.common.annotations.Beta;
+
+import blasd.apex.core.memory.IApexMemoryConstants;
+
+/**
+ * An int array indexed by a long, hence not limited to {@link Integer#MAX_VALUE} elements. It is backed by the segments
+ * of a {@link CloseableSegmentedBuffer}, typically allocated off-heap by {@link ApexBufferAllocator}.
+ * 
+ * Concurrent writes to different indexes are safe, but there is no happens-before relationship between a write and a
+ * read from another thread.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+@Beta
+public class BigIntArray extends AbstractBigArray<IntBuffer> {
+	private static final int ELEMENT_BYTES = (int) IApexMemoryConstants.INT;
+
+	public BigIntArray(CloseableSegmentedBuffer buffer) {
+		super(buffer, ELEMENT_BYTES, buffer.asIntBuffers());
+	}
+
+	/**
+	 * 
+	 * @return a {@link BigIntArray} filled with 0, allocated by {@link ApexBufferHelper#getDefaultAllocator()}
+	 */
+	public static BigIntArray allocate(long size) throws IOException {
+		return allocate(ApexBufferHelper.getDefaultAllocator(), size);
+	}
+
+	public static BigIntArray allocate(ApexBufferAllocator allocator, long size) throws IOException {
+		return new BigIntArray(allocator.allocateInts(size));
+	}
+
+	public int get(long index) {
+		checkIndex(index);
+
+		return segments[segmentIndex(index)].get(indexInSegment(index));
+	}
+
+	public void set(long index, int value) {
+		checkIndex(index);
+
+		segments[segmentIndex(index)].put(indexInSegment(index), value);
+	}
+
+	/**
+	 * Copy length elements, starting at index, into dst, starting at offset
+	 */
+	public void get(long index, int[] dst, int offset, int length) {
+		forEachSegmentRange(index, index + length, (segment, fromInSegment, toInSegment, from) -> {
+			IntBuffer duplicate = segment.duplicate();
+			duplicate.position(fromInSegment);
+			duplicate.get(dst, offset + (int) (from - index), toInSegment - fromInSegment);
+		});
+	}
+
+	/**
+	 * Copy length elements from src, starting at offset, into this array, starting at index
+	 */
+	public void put(long index, int[] src, int offset, int length) {
+		forEachSegmentRange(index, index + length, (segment, fromInSegment, toInSegment, from) -> {
+			IntBuffer duplicate = segment.duplicate();
+			duplicate.position(fromInSegment);
+			duplicate.put(src, offset + (int) (from - index), toInSegment - fromInSegment);
+		});
+	}
+
+	/**
+	 * Set value from index from, inclusive, to index to, exclusive
+	 */
+	public void fill(long from, long to, int value) {
+		forEachSegmentRange(from, to, (segment, fromInSegment, toInSegment, current) -> {
+			for (int i = fromInSegment; i < toInSegment; i++) {
+				segment.put(i, value);
+			}
+		});
+	}
+
+	public void fill(int value) {
+		fill(0, size, value);
+	}
+
+	/**
+	 * Set each element, concurrently, to the value computed from its index
+	 */
+	public void parallelSetAll(LongToIntFunction indexToValue) {
+		indexes().parallel().forEach(i -> set(i, indexToValue.applyAsInt(i)));
+	}
+
+	/**
+	 * 
+	 * @return the elements of this array. Call .parallel() to iterate them concurrently
+	 */
+	public IntStream stream() {
+		return indexes().mapToInt(this::get);
+	}
+
+	@Override
+	protected int compare(long left, long right) {
+		return Integer.compare(get(left), get(right));
+	}
+
+	@Override
+	protected void swap(long left, long right) {
+		int leftValue = get(left);
+		set(left, get(right));
+		set(right, leftValue);
+	}
+}
@@ -0,0 +1,45 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.cormoran.buffer;
+
+/**
+ * The kinds of memory in which {@link ApexBufferAllocator} can allocate a buffer
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public enum BufferTier {
+	/**
+	 * Direct memory, as allocated by {@link java.nio.ByteBuffer#allocateDirect(int)}. It is bounded by
+	 * -XX:MaxDirectMemorySize
+	 */
+	DIRECT,
+	/**
+	 * A memory-mapped temporary file. It is bounded by the free disk-space
+	 */
+	MAPPED_FILE,
+	/**
+	 * The heap, as allocated by {@link java.nio.ByteBuffer#allocate(int)}. It is bounded by -Xmx
+	 */
+	HEAP
+}
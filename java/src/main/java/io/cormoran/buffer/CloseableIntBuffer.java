@@ -22,54 +22,94 @@
  */
 package io.cormoran.buffer;
 
-import java.lang.reflect.InvocationTargetException;
+import java.io.File;
+import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
-import java.nio.MappedByteBuffer;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.Collections;
+import java.util.Optional;
 
 import com.google.common.annotations.Beta;
 
 @Beta
 public class CloseableIntBuffer implements AutoCloseable {
-	protected static final Logger LOGGER = LoggerFactory.getLogger(CloseableIntBuffer.class);
-
-	protected final MappedByteBuffer buffer;
+	protected final ByteBuffer buffer;
 	protected final IntBuffer heapBuffer;
 
-	public CloseableIntBuffer(MappedByteBuffer buffer) {
+	// The file mapped by buffer, if any
+	protected final File backingFile;
+
+	// Called once the memory is released, typically to update the accounting of an ApexBufferAllocator
+	protected final Runnable onClose;
+
+	// Unmapping twice would crash the JVM
+	protected boolean closed = false;
+
+	/**
+	 * 
+	 * @param buffer
+	 *            a direct {@link ByteBuffer}
+	 */
+	public CloseableIntBuffer(ByteBuffer buffer) {
+		this(buffer, null);
+	}
+
+	/**
+	 * 
+	 * @param buffer
+	 *            a buffer mapping backingFile
+	 * @param backingFile
+	 *            a temporary file, deleted on {@link #close()}
+	 */
+	public CloseableIntBuffer(ByteBuffer buffer, File backingFile) {
+		this(buffer, backingFile, () -> {
+		});
+	}
+
+	/**
+	 * 
+	 * @param buffer
+	 *            a direct {@link ByteBuffer}, or a buffer mapping backingFile
+	 * @param backingFile
+	 *            a temporary file, deleted on {@link #close()}. null if buffer is a direct {@link ByteBuffer}
+	 * @param onClose
+	 *            called once on {@link #close()}, after buffer has been released
+	 */
+	public CloseableIntBuffer(ByteBuffer buffer, File backingFile, Runnable onClose) {
 		this.buffer = buffer;
 		this.heapBuffer = null;
+		this.backingFile = backingFile;
+		this.onClose = onClose;
 	}
 
 	public CloseableIntBuffer(IntBuffer heapBuffer) {
 		this.heapBuffer = heapBuffer;
 		this.buffer = null;
+		this.backingFile = null;
+		this.onClose = () -> {
+		};
+	}
+
+	public Optional<File> getBackingFile() {
+		return Optional.ofNullable(backingFile);
 	}
 
-	// https://stackoverflow.com/questions/2972986/how-to-unmap-a-file-from-memory-mapped-using-filechannel-in-java
-	// Beware if buffer is re http://bugs.java.com/view_bug.do?bug_id=4724038
+	/**
+	 * Release the memory and the temporary file held by this buffer. It must not be accessed anymore.
+	 */
 	@Override
-	public void close() {
+	public synchronized void close() {
 		// We clean the hook to the mapped file, else even a shutdown-hook would not remove the mapped-file
-		if (this.buffer != null) {
-			try {
-				// sun.misc.Cleaner cleaner = ((DirectBuffer) buffer).cleaner();
-				// cleaner.clean();
-				Class<?> directBufferClass = Class.forName("sun.nio.ch.DirectBuffer");
-				Object cleaner = directBufferClass.getMethod("cleaner").invoke(buffer);
-
-				Class<?> cleanerClass = Class.forName("sun.misc.Cleaner");
-				cleanerClass.getMethod("clean").invoke(cleaner);
-			} catch (ClassNotFoundException | IllegalAccessException | IllegalArgumentException
-					| InvocationTargetException | NoSuchMethodException | SecurityException e) {
-				LOGGER.trace("Ouch", e);
-				// JDK9?
-				return;
-			}
+		if (this.buffer == null || closed) {
+			return;
+		}
+		closed = true;
 
+		if (backingFile == null) {
+			ApexBufferHelper.unmap(buffer);
+		} else {
+			ApexBufferHelper.releaseMapped(Collections.singletonList(buffer), buffer.capacity(), backingFile);
 		}
+		onClose.run();
 	}
 
 	public IntBuffer asIntBuffer() {
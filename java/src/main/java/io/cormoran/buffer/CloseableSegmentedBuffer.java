@@ -0,0 +1,154 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.cormoran.buffer;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A buffer which may be larger than 2GB, as it is split in segments. Each segment holds {@link #getMaxSegmentBytes()}
+ * bytes, but the last one which may be smaller: the element at a given index is in segment
+ * {@code index * elementBytes / getMaxSegmentBytes()}.
+ * 
+ * Segments are in the native byte-order. Once closed, the segments must not be accessed anymore: their memory is
+ * released and the backing file, if any, is deleted.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+@Beta
+public class CloseableSegmentedBuffer implements AutoCloseable {
+	protected final BufferTier tier;
+	protected final long nbBytes;
+	protected final int maxSegmentBytes;
+	protected final List<ByteBuffer> segments;
+
+	// The file mapped by the segments, if any
+	protected final File backingFile;
+
+	// Typically releases the bytes from the accounting of the allocator
+	protected final Runnable onClose;
+
+	protected final AtomicBoolean closed = new AtomicBoolean();
+
+	public CloseableSegmentedBuffer(BufferTier tier,
+			long nbBytes,
+			int maxSegmentBytes,
+			List<ByteBuffer> segments,
+			File backingFile,
+			Runnable onClose) {
+		this.tier = tier;
+		this.nbBytes = nbBytes;
+		this.maxSegmentBytes = maxSegmentBytes;
+		this.segments = ImmutableList.copyOf(segments);
+		this.backingFile = backingFile;
+		this.onClose = onClose;
+	}
+
+	public BufferTier getTier() {
+		return tier;
+	}
+
+	public long getNbBytes() {
+		return nbBytes;
+	}
+
+	public int getMaxSegmentBytes() {
+		return maxSegmentBytes;
+	}
+
+	public Optional<File> getBackingFile() {
+		return Optional.ofNullable(backingFile);
+	}
+
+	public int getNbSegments() {
+		return segments.size();
+	}
+
+	/**
+	 * 
+	 * @return a new view over the segment at given index, with independent position and limit
+	 */
+	public ByteBuffer getSegment(int index) {
+		// .duplicate() resets the byte-order to BIG_ENDIAN
+		return segments.get(index).duplicate().order(ByteOrder.nativeOrder());
+	}
+
+	public IntBuffer[] asIntBuffers() {
+		IntBuffer[] buffers = new IntBuffer[segments.size()];
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = getSegment(i).asIntBuffer();
+		}
+		return buffers;
+	}
+
+	public LongBuffer[] asLongBuffers() {
+		LongBuffer[] buffers = new LongBuffer[segments.size()];
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = getSegment(i).asLongBuffer();
+		}
+		return buffers;
+	}
+
+	public DoubleBuffer[] asDoubleBuffers() {
+		DoubleBuffer[] buffers = new DoubleBuffer[segments.size()];
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = getSegment(i).asDoubleBuffer();
+		}
+		return buffers;
+	}
+
+	@Override
+	public void close() {
+		if (closed.compareAndSet(false, true)) {
+			if (backingFile != null) {
+				ApexBufferHelper.releaseMapped(segments, nbBytes, backingFile);
+			} else if (tier != BufferTier.HEAP) {
+				// Heap buffers are released by the GC
+				segments.forEach(ApexBufferHelper::unmap);
+			}
+
+			onClose.run();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "CloseableSegmentedBuffer [tier=" + tier
+				+ ", nbBytes="
+				+ nbBytes
+				+ ", nbSegments="
+				+ segments.size()
+				+ "]";
+	}
+}
@@ -0,0 +1,55 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.core.jvm;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import blasd.apex.core.memory.IApexMemoryConstants;
+
+public class TestApexForOracleJVM {
+	@Test
+	public void testMaxDirectMemory() {
+		Assert.assertTrue(ApexForOracleJVM.maxDirectMemory() > 0);
+	}
+
+	@Test
+	public void testMaxDirectMemory_fromArguments() {
+		Assert.assertEquals(512 * IApexMemoryConstants.MB,
+				ApexForOracleJVM.maxDirectMemory(Arrays.asList("-Xmx1g", "-XX:MaxDirectMemorySize=512m")));
+
+		// The last occurrence wins
+		Assert.assertEquals(2 * IApexMemoryConstants.GB,
+				ApexForOracleJVM
+						.maxDirectMemory(Arrays.asList("-XX:MaxDirectMemorySize=512m", "-XX:MaxDirectMemorySize=2G")));
+	}
+
+	@Test
+	public void testMaxDirectMemory_defaultToMaxHeap() {
+		Assert.assertEquals(Runtime.getRuntime().maxMemory(),
+				ApexForOracleJVM.maxDirectMemory(Collections.singletonList("-Xmx1g")));
+	}
+}
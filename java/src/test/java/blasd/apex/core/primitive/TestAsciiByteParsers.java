@@ -0,0 +1,76 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.core.primitive;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestAsciiByteParsers {
+	protected ByteBuffer toBytes(String string) {
+		return ByteBuffer.wrap(string.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	public void testParseInt() {
+		Assert.assertEquals(0, AsciiByteParsers.parseInt(toBytes("0"), 0, 1));
+		Assert.assertEquals(-123, AsciiByteParsers.parseInt(toBytes("a,-123,b"), 2, 6));
+		Assert.assertEquals(123, AsciiByteParsers.parseInt(toBytes("+123"), 0, 4));
+		Assert.assertEquals(Integer.MAX_VALUE,
+				AsciiByteParsers.parseInt(toBytes(Integer.toString(Integer.MAX_VALUE)), 0, 10));
+		Assert.assertEquals(Integer.MIN_VALUE,
+				AsciiByteParsers.parseInt(toBytes(Integer.toString(Integer.MIN_VALUE)), 0, 11));
+	}
+
+	@Test
+	public void testParseLong() {
+		String asString = Long.toString(Long.MIN_VALUE);
+		Assert.assertEquals(Long.MIN_VALUE, AsciiByteParsers.parseLong(toBytes(asString), 0, asString.length()));
+		Assert.assertEquals(9876543210L, AsciiByteParsers.parseLong(toBytes("x9876543210"), 1, 11));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testParseInt_overflow() {
+		AsciiByteParsers.parseInt(toBytes("2147483648"), 0, 10);
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testParseInt_notADigit() {
+		AsciiByteParsers.parseInt(toBytes("12a"), 0, 3);
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testParseLong_loneMinus() {
+		AsciiByteParsers.parseLong(toBytes("-"), 0, 1);
+	}
+
+	@Test
+	public void testAsciiSubSequence() {
+		UnsafeAsciiSubSequence sub = new UnsafeAsciiSubSequence(toBytes("abcde"), 1, 4);
+
+		Assert.assertEquals("bcd", sub.toString());
+		Assert.assertEquals("c", sub.subSequence(1, 2).toString());
+	}
+}
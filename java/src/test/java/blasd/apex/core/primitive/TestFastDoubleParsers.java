@@ -0,0 +1,166 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.core.primitive;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestFastDoubleParsers {
+	protected void checkDouble(String asString) {
+		long expected = Double.doubleToRawLongBits(Double.parseDouble(asString));
+
+		Assert.assertEquals(asString, expected, Double.doubleToRawLongBits(FastDoubleParsers.parseDouble(asString)));
+
+		ByteBuffer bytes = ByteBuffer.wrap(("#" + asString + "#").getBytes(StandardCharsets.US_ASCII));
+		Assert.assertEquals(asString,
+				expected,
+				Double.doubleToRawLongBits(FastDoubleParsers.parseDouble(bytes, 1, asString.length() + 1)));
+	}
+
+	protected void checkFloat(String asString) {
+		int expected = Float.floatToRawIntBits(Float.parseFloat(asString));
+
+		Assert.assertEquals(asString, expected, Float.floatToRawIntBits(FastDoubleParsers.parseFloat(asString)));
+
+		ByteBuffer bytes = ByteBuffer.wrap(asString.getBytes(StandardCharsets.US_ASCII));
+		Assert.assertEquals(asString,
+				expected,
+				Float.floatToRawIntBits(FastDoubleParsers.parseFloat(bytes, 0, asString.length())));
+	}
+
+	@Test
+	public void testSimple() {
+		for (String s : new String[] { "0",
+				"-0",
+				"0.0",
+				"+1",
+				"-1.5",
+				"123",
+				"1.",
+				".5",
+				"0.1",
+				"3.14159",
+				"1e10",
+				"1E-10",
+				"-2.5e+3",
+				"000123.4500",
+				"9007199254740993",
+				"1.7976931348623157e308",
+				"1.7976931348623159e308",
+				"4.9e-324",
+				"2.4703282292062327e-324",
+				"2.4703282292062328e-324",
+				"2.2250738585072011e-308",
+				"2.2250738585072012e-308",
+				"1e-400",
+				"1e400",
+				"123456789012345678901234567890",
+				"0.1000000000000000055511151231257827021181583404541015625",
+				"7.2057594037927933e16",
+				"NaN",
+				"-Infinity",
+				"1.5d",
+				"0x1p3" }) {
+			checkDouble(s);
+			checkFloat(s);
+		}
+	}
+
+	@Test
+	public void testRange() {
+		Assert.assertEquals(-12.5D, FastDoubleParsers.parseDouble("a,-12.5,b", 2, 7), 0D);
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testInvalid() {
+		FastDoubleParsers.parseDouble("1.2.3");
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testInvalid_noExponentDigits() {
+		FastDoubleParsers.parseDouble("1e");
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testInvalid_empty() {
+		FastDoubleParsers.parseDouble("");
+	}
+
+	@Test
+	public void testRandomDoubles() {
+		Random r = new Random(0);
+
+		for (int i = 0; i < 100_000; i++) {
+			double d = Double.longBitsToDouble(r.nextLong());
+			if (Double.isFinite(d)) {
+				checkDouble(Double.toString(d));
+			}
+			checkDouble(Double.toString(r.nextDouble() * Math.pow(10, r.nextInt(40) - 20)));
+			checkFloat(Float.toString(Float.intBitsToFloat(r.nextInt())));
+		}
+	}
+
+	@Test
+	public void testRandomDigits() {
+		Random r = new Random(0);
+
+		for (int i = 0; i < 100_000; i++) {
+			StringBuilder sb = new StringBuilder();
+			if (r.nextBoolean()) {
+				sb.append('-');
+			}
+			int nbDigits = 1 + r.nextInt(30);
+			int dotIndex = r.nextInt(nbDigits + 1);
+			for (int j = 0; j < nbDigits; j++) {
+				if (j == dotIndex) {
+					sb.append('.');
+				}
+				sb.append((char) ('0' + r.nextInt(10)));
+			}
+			if (r.nextBoolean()) {
+				sb.append('e').append(r.nextInt(700) - 350);
+			}
+
+			checkDouble(sb.toString());
+			checkFloat(sb.toString());
+		}
+	}
+
+	@Test
+	public void testUnsignedMultiplyHigh() {
+		Random r = new Random(0);
+		for (int i = 0; i < 10_000; i++) {
+			long x = r.nextLong();
+			long y = r.nextLong();
+
+			java.math.BigInteger expected = new java.math.BigInteger(Long.toUnsignedString(x))
+					.multiply(new java.math.BigInteger(Long.toUnsignedString(y)))
+					.shiftRight(64);
+			Assert.assertEquals(expected.longValue(), FastDoubleParsers.unsignedMultiplyHigh(x, y));
+		}
+	}
+}
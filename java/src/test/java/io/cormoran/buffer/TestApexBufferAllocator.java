@@ -0,0 +1,162 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.cormoran.buffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestApexBufferAllocator {
+	@Before
+	public void resetConstants() {
+		ApexBufferHelper.forceNoSpaceDisk = false;
+		ApexBufferHelper.forceNoHeap = false;
+		ApexBufferHelper.forceNoDirectMemory = false;
+	}
+
+	@Test
+	public void testDefault_Direct() throws IOException {
+		ApexBufferAllocator allocator = new ApexBufferAllocator();
+
+		try (CloseableSegmentedBuffer buffer = allocator.allocateInts(123)) {
+			Assert.assertEquals(BufferTier.DIRECT, buffer.getTier());
+			Assert.assertEquals(1, buffer.getNbSegments());
+			Assert.assertEquals(123 * Integer.BYTES, buffer.getNbBytes());
+			Assert.assertEquals(123, buffer.asIntBuffers()[0].capacity());
+
+			Assert.assertEquals(123 * Integer.BYTES, allocator.getAllocatedBytes(BufferTier.DIRECT));
+		}
+
+		Assert.assertEquals(0, allocator.getAllocatedBytes(BufferTier.DIRECT));
+	}
+
+	@Test
+	public void testFallback_MappedFile() throws IOException {
+		ApexBufferHelper.forceNoDirectMemory = true;
+
+		ApexBufferAllocator allocator = new ApexBufferAllocator();
+		long mappedBefore = ApexBufferHelper.getMappedBytes();
+
+		File file;
+		try (CloseableSegmentedBuffer buffer = allocator.allocateLongs(123)) {
+			Assert.assertEquals(BufferTier.MAPPED_FILE, buffer.getTier());
+			Assert.assertEquals(0, buffer.asLongBuffers()[0].get(122));
+
+			Assert.assertEquals(0, allocator.getAllocatedBytes(BufferTier.DIRECT));
+			Assert.assertEquals(123 * Long.BYTES, allocator.getAllocatedBytes(BufferTier.MAPPED_FILE));
+			Assert.assertEquals(mappedBefore + 123 * Long.BYTES, ApexBufferHelper.getMappedBytes());
+
+			file = buffer.getBackingFile().get();
+			Assert.assertTrue(file.exists());
+		}
+
+		Assert.assertEquals(0, allocator.getAllocatedBytes(BufferTier.MAPPED_FILE));
+		Assert.assertEquals(mappedBefore, ApexBufferHelper.getMappedBytes());
+		Assert.assertFalse(file.exists());
+	}
+
+	@Test
+	public void testFallback_Heap() throws IOException {
+		ApexBufferHelper.forceNoDirectMemory = true;
+		ApexBufferHelper.forceNoSpaceDisk = true;
+
+		ApexBufferAllocator allocator = new ApexBufferAllocator();
+
+		try (CloseableSegmentedBuffer buffer = allocator.allocateDoubles(123)) {
+			Assert.assertEquals(BufferTier.HEAP, buffer.getTier());
+			Assert.assertEquals(123 * Double.BYTES, allocator.getAllocatedBytes(BufferTier.HEAP));
+		}
+
+		Assert.assertEquals(0, allocator.getAllocatedBytes(BufferTier.HEAP));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testNoRoom() throws IOException {
+		ApexBufferHelper.forceNoDirectMemory = true;
+		ApexBufferHelper.forceNoSpaceDisk = true;
+		ApexBufferHelper.forceNoHeap = true;
+
+		new ApexBufferAllocator().allocate(123);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testOnlyDirect_NoDirect() throws IOException {
+		ApexBufferHelper.forceNoDirectMemory = true;
+
+		new ApexBufferAllocator(Collections.singletonList(BufferTier.DIRECT), Long.BYTES).allocate(123);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSegmentNotAligned() {
+		new ApexBufferAllocator(Arrays.asList(BufferTier.values()), 12);
+	}
+
+	@Test
+	public void testSegmented() throws IOException {
+		// 100 longs with 16 longs per segment
+		int segmentBytes = 16 * Long.BYTES;
+
+		for (BufferTier tier : BufferTier.values()) {
+			ApexBufferAllocator allocator = new ApexBufferAllocator(Collections.singletonList(tier), segmentBytes);
+
+			try (CloseableSegmentedBuffer buffer = allocator.allocateLongs(100)) {
+				Assert.assertEquals(tier, buffer.getTier());
+				Assert.assertEquals(7, buffer.getNbSegments());
+
+				LongBuffer[] longs = buffer.asLongBuffers();
+				Assert.assertEquals(16, longs[0].capacity());
+				Assert.assertEquals(4, longs[6].capacity());
+
+				for (int i = 0; i < 100; i++) {
+					longs[i / 16].put(i % 16, i);
+				}
+
+				// Check through a fresh view
+				DoubleBuffer[] doubles = buffer.asDoubleBuffers();
+				LongBuffer[] otherLongs = buffer.asLongBuffers();
+				for (int i = 0; i < 100; i++) {
+					Assert.assertEquals(i, otherLongs[i / 16].get(i % 16));
+					Assert.assertEquals(Double.longBitsToDouble(i), doubles[i / 16].get(i % 16), 0D);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testStaticHelpers() throws IOException {
+		try (CloseableSegmentedBuffer buffer = ApexBufferHelper.makeByteBuffers(0)) {
+			Assert.assertEquals(0, buffer.getNbSegments());
+		}
+
+		try (CloseableSegmentedBuffer buffer = ApexBufferHelper.makeIntBuffers(123)) {
+			Assert.assertEquals(123 * Integer.BYTES, buffer.getNbBytes());
+		}
+	}
+}
@@ -22,7 +22,11 @@
  */
 package io.cormoran.buffer;
 
+import java.io.File;
 import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 
 import org.assertj.core.api.Assertions;
@@ -35,6 +39,7 @@ public class TestApexBufferHelper {
 	public void resetConstants() {
 		ApexBufferHelper.forceNoSpaceDisk = false;
 		ApexBufferHelper.forceNoHeap = false;
+		ApexBufferHelper.forceNoDirectMemory = false;
 	}
 
 	@Test
@@ -65,11 +70,108 @@ public void testBuffer_noDiskButHeap() throws IOException {
 		}
 	}
 
+	@Test
+	public void testBuffer_noDiskNoHeapButDirect() throws IOException {
+		ApexBufferHelper.forceNoSpaceDisk = true;
+		ApexBufferHelper.forceNoHeap = true;
+
+		ApexBufferAllocator allocator = ApexBufferHelper.getDefaultAllocator();
+		long directBefore = allocator.getAllocatedBytes(BufferTier.DIRECT);
+
+		try (CloseableIntBuffer buffer = ApexBufferHelper.makeIntBuffer(123)) {
+			IntBuffer intBuffer = buffer.asIntBuffer();
+
+			Assertions.assertThat(intBuffer.getClass().getSimpleName()).contains("Direct");
+
+			Assert.assertEquals(0, intBuffer.get(0));
+			Assert.assertEquals(directBefore + 123 * Integer.BYTES, allocator.getAllocatedBytes(BufferTier.DIRECT));
+		}
+
+		Assert.assertEquals(directBefore, allocator.getAllocatedBytes(BufferTier.DIRECT));
+	}
+
+	@Test
+	public void testBuffer_noDiskNoHeap_tooLargeForDirect() throws IOException {
+		ApexBufferHelper.forceNoSpaceDisk = true;
+		ApexBufferHelper.forceNoHeap = true;
+
+		try {
+			ApexBufferHelper.makeIntBuffer(Integer.MAX_VALUE / Integer.BYTES + 1);
+			Assert.fail("A direct ByteBuffer is limited to 2GB");
+		} catch (OutOfMemoryError e) {
+			Assertions.assertThat(e.getMessage()).contains("2GB");
+		}
+	}
+
 	@Test(expected = IllegalStateException.class)
-	public void testBuffer_noDiskNoHeap() throws IOException {
+	public void testBuffer_noDiskNoHeapNoDirect() throws IOException {
 		ApexBufferHelper.forceNoSpaceDisk = true;
 		ApexBufferHelper.forceNoHeap = true;
+		ApexBufferHelper.forceNoDirectMemory = true;
 
 		ApexBufferHelper.makeIntBuffer(123);
 	}
+
+	@Test
+	public void testBuffer_closeDeletesFile() throws IOException {
+		long mappedBefore = ApexBufferHelper.getMappedBytes();
+
+		File file;
+		try (CloseableIntBuffer buffer = ApexBufferHelper.makeIntBuffer(123)) {
+			file = buffer.getBackingFile().get();
+
+			Assert.assertTrue(file.exists());
+			Assert.assertEquals(mappedBefore + 123 * Integer.BYTES, ApexBufferHelper.getMappedBytes());
+
+			// Closing twice must not crash the JVM
+			buffer.close();
+		}
+
+		Assert.assertFalse(file.exists());
+		Assert.assertEquals(mappedBefore, ApexBufferHelper.getMappedBytes());
+	}
+
+	@Test
+	public void testUnmap() {
+		Assert.assertFalse(ApexBufferHelper.unmap(ByteBuffer.allocate(16)));
+
+		ByteBuffer direct = ByteBuffer.allocateDirect(16);
+
+		// A duplicate does not own its memory
+		Assert.assertFalse(ApexBufferHelper.unmap(direct.duplicate()));
+		Assert.assertTrue(ApexBufferHelper.unmap(direct));
+	}
+
+	private static long getBufferPoolMemoryUsed(String poolName) {
+		return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)
+				.stream()
+				.filter(b -> b.getName().equals(poolName))
+				.mapToLong(BufferPoolMXBean::getMemoryUsed)
+				.sum();
+	}
+
+	@Test
+	public void testUnmap_releasesDirectMemory() {
+		int nbBytes = 1024 * 1024;
+		ByteBuffer direct = ByteBuffer.allocateDirect(nbBytes);
+		long usedBefore = getBufferPoolMemoryUsed("direct");
+
+		Assert.assertTrue(ApexBufferHelper.unmap(direct));
+
+		// The memory is released right away, without waiting for the buffer to be garbage-collected
+		Assert.assertEquals(usedBefore - nbBytes, getBufferPoolMemoryUsed("direct"));
+	}
+
+	@Test
+	public void testClose_releasesMappedMemory() throws IOException {
+		int nbInts = 1024 * 1024;
+
+		long usedBefore;
+		try (CloseableIntBuffer buffer = ApexBufferHelper.makeIntBuffer(nbInts)) {
+			Assert.assertTrue(buffer.getBackingFile().isPresent());
+			usedBefore = getBufferPoolMemoryUsed("mapped");
+		}
+
+		Assert.assertEquals(usedBefore - nbInts * Integer.BYTES, getBufferPoolMemoryUsed("mapped"));
+	}
 }
@@ -0,0 +1,166 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.cormoran.buffer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBigIntArray {
+	// 16 ints per segment, so that small arrays span many segments
+	private static final int SEGMENT_BYTES = 16 * Integer.BYTES;
+
+	@Before
+	public void resetConstants() {
+		ApexBufferHelper.forceNoSpaceDisk = false;
+		ApexBufferHelper.forceNoHeap = false;
+		ApexBufferHelper.forceNoDirectMemory = false;
+	}
+
+	protected BigIntArray allocate(long size) throws IOException {
+		ApexBufferAllocator allocator =
+				new ApexBufferAllocator(Collections.singletonList(BufferTier.DIRECT), SEGMENT_BYTES);
+		return BigIntArray.allocate(allocator, size);
+	}
+
+	@Test
+	public void testGetSet() throws IOException {
+		try (BigIntArray array = allocate(100)) {
+			Assert.assertEquals(100, array.size());
+			Assert.assertEquals(0, array.get(99));
+
+			for (int i = 0; i < 100; i++) {
+				array.set(i, i * 3);
+			}
+			for (int i = 0; i < 100; i++) {
+				Assert.assertEquals(i * 3, array.get(i));
+			}
+		}
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGet_OutOfBounds() throws IOException {
+		try (BigIntArray array = allocate(100)) {
+			array.get(100);
+		}
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGet_Negative() throws IOException {
+		try (BigIntArray array = allocate(100)) {
+			array.get(-1);
+		}
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGet_FarOutOfBounds() throws IOException {
+		try (BigIntArray array = allocate(100)) {
+			// The segment index would overflow an int into a valid segment
+			array.get(1L << 36);
+		}
+	}
+
+	@Test
+	public void testBulk() throws IOException {
+		try (BigIntArray array = allocate(100)) {
+			int[] src = new int[50];
+			Arrays.setAll(src, i -> i + 1);
+
+			// Spans 4 segments
+			array.put(7, src, 0, 50);
+
+			Assert.assertEquals(0, array.get(6));
+			Assert.assertEquals(1, array.get(7));
+			Assert.assertEquals(50, array.get(56));
+			Assert.assertEquals(0, array.get(57));
+
+			int[] dst = new int[60];
+			array.get(2, dst, 5, 55);
+			Assert.assertEquals(0, dst[9]);
+			Assert.assertEquals(1, dst[10]);
+			Assert.assertEquals(50, dst[59]);
+		}
+	}
+
+	@Test
+	public void testFill() throws IOException {
+		try (BigIntArray array = allocate(100)) {
+			array.fill(-1);
+			array.fill(10, 90, 7);
+
+			Assert.assertEquals(-1, array.get(9));
+			Assert.assertEquals(7, array.get(10));
+			Assert.assertEquals(7, array.get(89));
+			Assert.assertEquals(-1, array.get(90));
+		}
+	}
+
+	@Test
+	public void testSort() throws IOException {
+		Random r = new Random(0);
+
+		for (int size : new int[] { 0, 1, 15, 100, 10000 }) {
+			try (BigIntArray array = allocate(size)) {
+				int[] expected = new int[size];
+				for (int i = 0; i < size; i++) {
+					// Many duplicates
+					expected[i] = r.nextInt(size / 2 + 1) - size / 4;
+				}
+				array.put(0, expected, 0, size);
+
+				array.sort();
+				Arrays.sort(expected);
+
+				Assert.assertArrayEquals(expected, array.stream().toArray());
+			}
+		}
+	}
+
+	@Test
+	public void testSort_Range() throws IOException {
+		try (BigIntArray array = allocate(100)) {
+			array.parallelSetAll(i -> (int) (100 - i));
+
+			array.sort(10, 20);
+
+			Assert.assertEquals(100, array.get(0));
+			Assert.assertEquals(81, array.get(10));
+			Assert.assertEquals(90, array.get(19));
+			Assert.assertEquals(80, array.get(20));
+		}
+	}
+
+	@Test
+	public void testParallel() throws IOException {
+		try (BigIntArray array = allocate(10000)) {
+			array.parallelSetAll(i -> (int) i);
+
+			Assert.assertEquals(10000L * 9999 / 2, array.stream().parallel().asLongStream().sum());
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.cormoran.buffer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBigLongArray {
+	// 16 longs per segment, so that small arrays span many segments
+	private static final int SEGMENT_BYTES = 16 * Long.BYTES;
+
+	@Before
+	public void resetConstants() {
+		ApexBufferHelper.forceNoSpaceDisk = false;
+		ApexBufferHelper.forceNoHeap = false;
+		ApexBufferHelper.forceNoDirectMemory = false;
+	}
+
+	protected BigLongArray allocate(long size) throws IOException {
+		ApexBufferAllocator allocator =
+				new ApexBufferAllocator(Collections.singletonList(BufferTier.MAPPED_FILE), SEGMENT_BYTES);
+		return BigLongArray.allocate(allocator, size);
+	}
+
+	@Test
+	public void testGetSet() throws IOException {
+		try (BigLongArray array = allocate(100)) {
+			Assert.assertEquals(BufferTier.MAPPED_FILE, array.getTier());
+
+			for (int i = 0; i < 100; i++) {
+				array.set(i, Long.MAX_VALUE - i);
+			}
+			for (int i = 0; i < 100; i++) {
+				Assert.assertEquals(Long.MAX_VALUE - i, array.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void testBulk() throws IOException {
+		try (BigLongArray array = allocate(100)) {
+			long[] src = new long[50];
+			Arrays.setAll(src, i -> i + 1L << 40);
+			array.put(30, src, 0, 50);
+
+			long[] dst = new long[50];
+			array.get(30, dst, 0, 50);
+			Assert.assertArrayEquals(src, dst);
+		}
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testBulk_OutOfBounds() throws IOException {
+		try (BigLongArray array = allocate(100)) {
+			array.put(60, new long[50], 0, 50);
+		}
+	}
+
+	@Test
+	public void testSort() throws IOException {
+		Random r = new Random(0);
+
+		try (BigLongArray array = allocate(5000)) {
+			array.parallelSetAll(i -> r.nextLong());
+			long[] expected = array.stream().toArray();
+
+			array.sort();
+			Arrays.sort(expected);
+
+			Assert.assertArrayEquals(expected, array.stream().toArray());
+		}
+	}
+
+	@Test
+	public void testSort_AlreadySorted() throws IOException {
+		try (BigLongArray array = allocate(5000)) {
+			array.parallelSetAll(i -> i);
+			array.sort();
+
+			Assert.assertArrayEquals(array.indexes().toArray(), array.stream().toArray());
+		}
+	}
+
+	@Test
+	public void testFill() throws IOException {
+		try (BigLongArray array = allocate(100)) {
+			array.fill(Long.MIN_VALUE);
+
+			Assert.assertEquals(100, array.stream().filter(l -> l == Long.MIN_VALUE).count());
+		}
+	}
+}
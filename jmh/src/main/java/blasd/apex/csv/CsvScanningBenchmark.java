@@ -0,0 +1,241 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compare the char-by-char scanning of separators and end-of-rows, as done historically by {@link ZeroCopyCSVParser},
+ * with the bulk scanning of {@link CsvScanners}, over narrow rows (few short columns) and wide rows (many long columns)
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CsvScanningBenchmark {
+	private static final int NB_CHARS = 16 * 1024 * 1024;
+
+	/**
+	 * Holds the CSV contents
+	 * 
+	 * @author Benoit Lacelle
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class CsvContents {
+		@Param({ "narrow", "wide" })
+		public String rowShape;
+
+		String csv;
+		char[] chars;
+		ByteBuffer bytes;
+		int nbColumns;
+
+		@Setup(Level.Trial)
+		public void generate() {
+			Random r = new Random(0);
+
+			int columnLength;
+			if ("narrow".equals(rowShape)) {
+				nbColumns = 3;
+				columnLength = 4;
+			} else {
+				nbColumns = 100;
+				columnLength = 24;
+			}
+
+			StringBuilder sb = new StringBuilder(NB_CHARS + 1024);
+			while (sb.length() < NB_CHARS) {
+				for (int c = 0; c < nbColumns; c++) {
+					if (c > 0) {
+						sb.append(',');
+					}
+					// Variable-length columns, with an average length of columnLength
+					int length = 1 + r.nextInt(2 * columnLength - 1);
+					for (int i = 0; i < length; i++) {
+						sb.append((char) ('a' + r.nextInt(26)));
+					}
+				}
+				sb.append('\n');
+			}
+
+			csv = sb.toString();
+			chars = csv.toCharArray();
+
+			byte[] asBytes = csv.getBytes(StandardCharsets.US_ASCII);
+			bytes = ByteBuffer.allocateDirect(asBytes.length);
+			bytes.put(asBytes).flip();
+		}
+	}
+
+	/**
+	 * The loop used by {@link ZeroCopyCSVParser} before {@link CsvScanners}
+	 */
+	@Benchmark
+	public long scan_charBuffer_charByChar(CsvContents state) {
+		CharBuffer charBuffer = CharBuffer.wrap(state.chars);
+
+		long nbSpecials = 0;
+		while (charBuffer.hasRemaining()) {
+			char nextChar = charBuffer.get();
+			if (nextChar == ',' || nextChar == '\r' || nextChar == '\n' || nextChar == '"') {
+				nbSpecials++;
+			}
+		}
+		return nbSpecials;
+	}
+
+	@Benchmark
+	public long scan_charArray_bulk(CsvContents state) {
+		char[] chars = state.chars;
+
+		long nbSpecials = 0;
+		int i = CsvScanners.indexOfSpecial(chars, 0, chars.length, ',', '"');
+		while (i < chars.length) {
+			nbSpecials++;
+			i = CsvScanners.indexOfSpecial(chars, i + 1, chars.length, ',', '"');
+		}
+		return nbSpecials;
+	}
+
+	/**
+	 * The loop used by {@link ByteBufferZeroCopyCSVParser} before {@link CsvScanners}
+	 */
+	@Benchmark
+	public long scan_byteBuffer_byteByByte(CsvContents state) {
+		ByteBuffer bytes = state.bytes;
+		int limit = bytes.limit();
+
+		long nbSpecials = 0;
+		for (int i = 0; i < limit; i++) {
+			byte b = bytes.get(i);
+			if (b == ',' || b == '\r' || b == '\n') {
+				nbSpecials++;
+			}
+		}
+		return nbSpecials;
+	}
+
+	@Benchmark
+	public long scan_byteBuffer_swar(CsvContents state) {
+		ByteBuffer bytes = state.bytes;
+		int limit = bytes.limit();
+
+		long nbSpecials = 0;
+		int i = CsvScanners.indexOfSeparatorOrEndOfRow(bytes, 0, limit, (byte) ',');
+		while (i < limit) {
+			nbSpecials++;
+			i = CsvScanners.indexOfSeparatorOrEndOfRow(bytes, i + 1, limit, (byte) ',');
+		}
+		return nbSpecials;
+	}
+
+	@Benchmark
+	public long parse_chars(CsvContents state) throws IOException {
+		LongAdder nbChars = new LongAdder();
+
+		new ZeroCopyCSVParser().parse(new StringReader(state.csv), ',', makeConsumers(state, nbChars));
+
+		return nbChars.sum();
+	}
+
+	@Benchmark
+	public long parse_bytes(CsvContents state) {
+		LongAdder nbChars = new LongAdder();
+
+		new ByteBufferZeroCopyCSVParser().parse(state.bytes.duplicate(), ',', makeConsumers(state, nbChars));
+
+		return nbChars.sum();
+	}
+
+	protected List<IZeroCopyConsumer> makeConsumers(CsvContents state, LongAdder nbChars) {
+		List<IZeroCopyConsumer> consumers = new ArrayList<>();
+		for (int i = 0; i < state.nbColumns; i++) {
+			consumers.add(new CharsCounter(nbChars));
+		}
+		return consumers;
+	}
+
+	/**
+	 * Count the chars of a column, without copying them
+	 * 
+	 * @author Benoit Lacelle
+	 *
+	 */
+	protected static class CharsCounter implements IZeroCopyConsumer, Consumer<CharSequence> {
+		protected final LongAdder nbChars;
+
+		protected CharsCounter(LongAdder nbChars) {
+			this.nbChars = nbChars;
+		}
+
+		@Override
+		public void accept(CharSequence t) {
+			nbChars.add(t.length());
+		}
+
+		@Override
+		public void nextRowIsMissing() {
+			// nothing to count
+		}
+
+		@Override
+		public void nextRowIsInvalid(CharSequence charSequence) {
+			// nothing to count
+		}
+	}
+
+	public static void main(String... args) throws Exception {
+		Options opts = new OptionsBuilder().include(CsvScanningBenchmark.class.getName())
+				.warmupIterations(3)
+				.measurementIterations(3)
+				.forks(1)
+				.build();
+
+		new Runner(opts).run();
+	}
+}
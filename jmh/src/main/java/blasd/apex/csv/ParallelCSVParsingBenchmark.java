@@ -0,0 +1,125 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import blasd.apex.core.memory.IApexMemoryConstants;
+
+/**
+ * Compare the throughput of {@link ParallelZeroCopyCSVParser} given different number of threads, on a synthetic 1GB
+ * file with an int, a long and a double column
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParallelCSVParsingBenchmark {
+
+	private static final long FILE_SIZE = IApexMemoryConstants.GB;
+
+	/**
+	 * Holds the synthetic file, generated once for all benchmarks
+	 * 
+	 * @author Benoit Lacelle
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class SyntheticFile {
+		@Param({ "1", "2", "4", "8", "16" })
+		public int nbThreads;
+
+		Path path;
+
+		@Setup(Level.Trial)
+		public void writeFile() throws IOException {
+			path = Files.createTempFile("ParallelCSVParsingBenchmark", ".csv");
+			path.toFile().deleteOnExit();
+
+			Random r = new Random(0);
+			try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+				long written = 0;
+				while (written < FILE_SIZE) {
+					String row = r.nextInt() + "," + r.nextLong() + "," + r.nextDouble() + "\n";
+					writer.write(row);
+					written += row.length();
+				}
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void deleteFile() throws IOException {
+			Files.deleteIfExists(path);
+		}
+	}
+
+	@Benchmark
+	public long parseIntLongDouble(SyntheticFile state) throws IOException {
+		LongAdder nbRows = new LongAdder();
+
+		new ParallelZeroCopyCSVParser(state.nbThreads).parse(state.path,
+				StandardCharsets.UTF_8,
+				',',
+				firstRowIndex -> Arrays.asList(ZeroCopyConsumers.intBinaryOperator((rowIndex, value) -> {
+					nbRows.increment();
+					return rowIndex;
+				}, firstRowIndex),
+						ZeroCopyConsumers.longBinaryOperator((rowIndex, value) -> value, firstRowIndex),
+						ZeroCopyConsumers.doubleBinaryOperator((rowIndex, value) -> value, firstRowIndex)));
+
+		return nbRows.sum();
+	}
+
+	public static void main(String... args) throws Exception {
+		Options opts = new OptionsBuilder().include(ParallelCSVParsingBenchmark.class.getName())
+				.warmupIterations(1)
+				.measurementIterations(3)
+				.forks(1)
+				.build();
+
+		new Runner(opts).run();
+	}
+}
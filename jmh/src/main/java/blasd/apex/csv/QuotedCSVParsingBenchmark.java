@@ -0,0 +1,129 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Check the handling of quoted columns in {@link ZeroCopyCSVParser} does not slow-down the parsing of unquoted columns,
+ * by comparing with a parser with quotes disabled
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class QuotedCSVParsingBenchmark {
+	private static final int NB_ROWS = 100000;
+
+	/**
+	 * Holds the CSV contents
+	 * 
+	 * @author Benoit Lacelle
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class CsvContents {
+		String unquoted;
+		String quoted;
+
+		@Setup(Level.Trial)
+		public void generate() {
+			Random r = new Random(0);
+
+			StringBuilder unquotedBuilder = new StringBuilder();
+			StringBuilder quotedBuilder = new StringBuilder();
+			for (int i = 0; i < NB_ROWS; i++) {
+				int first = r.nextInt();
+				long second = r.nextLong();
+				double third = r.nextDouble();
+
+				unquotedBuilder.append(first).append(',').append(second).append(',').append(third).append('\n');
+				quotedBuilder.append('"')
+						.append(first)
+						.append("\",\"")
+						.append(second)
+						.append("\",\"")
+						.append(third)
+						.append("\"\n");
+			}
+
+			unquoted = unquotedBuilder.toString();
+			quoted = quotedBuilder.toString();
+		}
+	}
+
+	protected long parse(ZeroCopyCSVParser parser, String csv) throws IOException {
+		LongAdder nbRows = new LongAdder();
+
+		List<IZeroCopyConsumer> consumers = Arrays.asList(ZeroCopyConsumers.intConsumer(i -> nbRows.increment()),
+				ZeroCopyConsumers.longBinaryOperator((rowIndex, value) -> value),
+				ZeroCopyConsumers.doubleBinaryOperator((rowIndex, value) -> value));
+		parser.parse(new StringReader(csv), ',', consumers);
+
+		return nbRows.sum();
+	}
+
+	@Benchmark
+	public long unquoted_noQuote(CsvContents state) throws IOException {
+		return parse(new ZeroCopyCSVParser(1024, ZeroCopyCSVParser.NO_QUOTE), state.unquoted);
+	}
+
+	@Benchmark
+	public long unquoted_defaultQuote(CsvContents state) throws IOException {
+		return parse(new ZeroCopyCSVParser(), state.unquoted);
+	}
+
+	@Benchmark
+	public long quoted_defaultQuote(CsvContents state) throws IOException {
+		return parse(new ZeroCopyCSVParser(), state.quoted);
+	}
+
+	public static void main(String... args) throws Exception {
+		Options opts = new OptionsBuilder().include(QuotedCSVParsingBenchmark.class.getName())
+				.warmupIterations(3)
+				.measurementIterations(3)
+				.forks(1)
+				.build();
+
+		new Runner(opts).run();
+	}
+}
@@ -0,0 +1,202 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+/**
+ * Compare sequential and random {@link IntList#getInt(int)}, iteration and bulk
+ * {@link IntList#getElements(int, int[], int, int)} over {@link CompressedIntArrays} (bit-packing and block codecs)
+ * with a plain {@link IntArrayList}
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CompressedIntArrayBenchmark {
+	private static final int SIZE = 8 * 1024 * 1024;
+	private static final int BUFFER_SIZE = 1024;
+
+	/**
+	 * Holds the compressed and the raw lists, and the indexes of the random reads
+	 * 
+	 * @author Benoit Lacelle
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class IntLists {
+		@Param({ "small", "growing" })
+		public String values;
+
+		IntList compressed;
+		IntList blockCompressed;
+		IntList raw;
+		int[] randomIndexes;
+
+		@Setup(Level.Trial)
+		public void generate() {
+			int[] input;
+			if ("small".equals(values)) {
+				input = IntStream.range(0, SIZE).map(i -> i % 1024).toArray();
+			} else {
+				input = IntStream.range(0, SIZE).toArray();
+			}
+
+			compressed = CompressedIntArrays.compress(IntStream.of(input));
+			blockCompressed = CompressedIntArrays.compressByBlocks(IntStream.of(input));
+			raw = new IntArrayList(input);
+
+			randomIndexes = new Random(0).ints(SIZE, 0, SIZE).toArray();
+		}
+	}
+
+	@Benchmark
+	public long sequential_compressed(IntLists state) {
+		return sumSequential(state.compressed);
+	}
+
+	@Benchmark
+	public long sequential_blockCompressed(IntLists state) {
+		return sumSequential(state.blockCompressed);
+	}
+
+	@Benchmark
+	public long sequential_intArrayList(IntLists state) {
+		return sumSequential(state.raw);
+	}
+
+	@Benchmark
+	public long iterator_compressed(IntLists state) {
+		return sumIterator(state.compressed);
+	}
+
+	@Benchmark
+	public long iterator_blockCompressed(IntLists state) {
+		return sumIterator(state.blockCompressed);
+	}
+
+	@Benchmark
+	public long iterator_intArrayList(IntLists state) {
+		return sumIterator(state.raw);
+	}
+
+	@Benchmark
+	public long getElements_compressed(IntLists state) {
+		return sumGetElements(state.compressed);
+	}
+
+	@Benchmark
+	public long getElements_blockCompressed(IntLists state) {
+		return sumGetElements(state.blockCompressed);
+	}
+
+	@Benchmark
+	public long getElements_intArrayList(IntLists state) {
+		return sumGetElements(state.raw);
+	}
+
+	@Benchmark
+	public long random_compressed(IntLists state) {
+		return sumRandom(state.compressed, state.randomIndexes);
+	}
+
+	@Benchmark
+	public long random_blockCompressed(IntLists state) {
+		return sumRandom(state.blockCompressed, state.randomIndexes);
+	}
+
+	@Benchmark
+	public long random_intArrayList(IntLists state) {
+		return sumRandom(state.raw, state.randomIndexes);
+	}
+
+	protected long sumSequential(IntList list) {
+		long sum = 0;
+		int size = list.size();
+		for (int i = 0; i < size; i++) {
+			sum += list.getInt(i);
+		}
+		return sum;
+	}
+
+	protected long sumIterator(IntList list) {
+		long sum = 0;
+		IntIterator it = list.iterator();
+		while (it.hasNext()) {
+			sum += it.nextInt();
+		}
+		return sum;
+	}
+
+	protected long sumGetElements(IntList list) {
+		long sum = 0;
+		int size = list.size();
+		int[] buffer = new int[BUFFER_SIZE];
+		for (int from = 0; from < size; from += BUFFER_SIZE) {
+			int length = Math.min(BUFFER_SIZE, size - from);
+			list.getElements(from, buffer, 0, length);
+			for (int i = 0; i < length; i++) {
+				sum += buffer[i];
+			}
+		}
+		return sum;
+	}
+
+	protected long sumRandom(IntList list, int[] indexes) {
+		long sum = 0;
+		for (int index : indexes) {
+			sum += list.getInt(index);
+		}
+		return sum;
+	}
+
+	public static void main(String... args) throws Exception {
+		Options opts = new OptionsBuilder().include(CompressedIntArrayBenchmark.class.getName())
+				.warmupIterations(3)
+				.measurementIterations(3)
+				.forks(1)
+				.build();
+
+		new Runner(opts).run();
+	}
+}
@@ -0,0 +1,246 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.DoubleStream;
+import java.util.stream.LongStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleIterator;
+import it.unimi.dsi.fastutil.doubles.DoubleList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongList;
+
+/**
+ * Compare sequential and random reads, and iteration, over {@link CompressedLongArrays} with a plain
+ * {@link LongArrayList} and {@link DoubleArrayList}. {@link #main(String...)} also logs the size of each list.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CompressedLongArrayBenchmark {
+	protected static final Logger LOGGER = LoggerFactory.getLogger(CompressedLongArrayBenchmark.class);
+
+	private static final int SIZE = 8 * 1024 * 1024;
+
+	/**
+	 * Holds the compressed and the raw lists, and the indexes of the random reads
+	 * 
+	 * @author Benoit Lacelle
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class LongDoubleLists {
+		// timestamps: a sample every second with some jitter. ids: sorted with random gaps
+		@Param({ "timestamps", "ids" })
+		public String values;
+
+		LongList compressed;
+		LongList raw;
+
+		DoubleList compressedMeasures;
+		DoubleList rawMeasures;
+
+		int[] randomIndexes;
+
+		@Setup(Level.Trial)
+		public void generate() {
+			long[] input = generateLongs(values);
+			compressed = CompressedLongArrays.compress(LongStream.of(input));
+			raw = new LongArrayList(input);
+
+			double[] measures = generateMeasures();
+			compressedMeasures = CompressedLongArrays.compress(DoubleStream.of(measures));
+			rawMeasures = new DoubleArrayList(measures);
+
+			randomIndexes = new Random(0).ints(SIZE, 0, SIZE).toArray();
+		}
+	}
+
+	protected static long[] generateLongs(String values) {
+		Random r = new Random(0);
+		long[] input = new long[SIZE];
+
+		long current = 1_500_000_000_000L;
+		for (int i = 0; i < SIZE; i++) {
+			if ("timestamps".equals(values)) {
+				current += 1000;
+				// Most samples are on time
+				if (r.nextInt(16) == 0) {
+					input[i] = current + r.nextInt(64) - 32;
+				} else {
+					input[i] = current;
+				}
+			} else {
+				current += 1 + r.nextInt(16);
+				input[i] = current;
+			}
+		}
+		return input;
+	}
+
+	protected static double[] generateMeasures() {
+		Random r = new Random(0);
+		double[] measures = new double[SIZE];
+
+		// A slowly moving measure, like a temperature
+		double current = 20D;
+		for (int i = 0; i < SIZE; i++) {
+			if (r.nextInt(8) == 0) {
+				current += 0.5D * (r.nextInt(3) - 1);
+			}
+			measures[i] = current;
+		}
+		return measures;
+	}
+
+	@Benchmark
+	public long sequential_compressedLong(LongDoubleLists state) {
+		return sumSequential(state.compressed);
+	}
+
+	@Benchmark
+	public long sequential_longArrayList(LongDoubleLists state) {
+		return sumSequential(state.raw);
+	}
+
+	@Benchmark
+	public long iterator_compressedLong(LongDoubleLists state) {
+		return sumIterator(state.compressed);
+	}
+
+	@Benchmark
+	public long iterator_longArrayList(LongDoubleLists state) {
+		return sumIterator(state.raw);
+	}
+
+	@Benchmark
+	public long random_compressedLong(LongDoubleLists state) {
+		return sumRandom(state.compressed, state.randomIndexes);
+	}
+
+	@Benchmark
+	public long random_longArrayList(LongDoubleLists state) {
+		return sumRandom(state.raw, state.randomIndexes);
+	}
+
+	@Benchmark
+	public double iterator_compressedDouble(LongDoubleLists state) {
+		return sumIterator(state.compressedMeasures);
+	}
+
+	@Benchmark
+	public double iterator_doubleArrayList(LongDoubleLists state) {
+		return sumIterator(state.rawMeasures);
+	}
+
+	@Benchmark
+	public double random_compressedDouble(LongDoubleLists state) {
+		return sumRandom(state.compressedMeasures, state.randomIndexes);
+	}
+
+	@Benchmark
+	public double random_doubleArrayList(LongDoubleLists state) {
+		return sumRandom(state.rawMeasures, state.randomIndexes);
+	}
+
+	protected long sumSequential(LongList list) {
+		long sum = 0;
+		int size = list.size();
+		for (int i = 0; i < size; i++) {
+			sum += list.getLong(i);
+		}
+		return sum;
+	}
+
+	protected long sumIterator(LongList list) {
+		long sum = 0;
+		LongIterator it = list.iterator();
+		while (it.hasNext()) {
+			sum += it.nextLong();
+		}
+		return sum;
+	}
+
+	protected long sumRandom(LongList list, int[] indexes) {
+		long sum = 0;
+		for (int index : indexes) {
+			sum += list.getLong(index);
+		}
+		return sum;
+	}
+
+	protected double sumIterator(DoubleList list) {
+		double sum = 0;
+		DoubleIterator it = list.iterator();
+		while (it.hasNext()) {
+			sum += it.nextDouble();
+		}
+		return sum;
+	}
+
+	protected double sumRandom(DoubleList list, int[] indexes) {
+		double sum = 0;
+		for (int index : indexes) {
+			sum += list.getDouble(index);
+		}
+		return sum;
+	}
+
+	public static void main(String... args) throws Exception {
+		for (String values : new String[] { "timestamps", "ids" }) {
+			BlockCompressedLongArray compressed = CompressedLongArrays.compress(LongStream.of(generateLongs(values)));
+			LOGGER.info("{}: {} bits per long", values, compressed.getNbBits() / (double) SIZE);
+		}
+		BlockCompressedDoubleArray measures = CompressedLongArrays.compress(DoubleStream.of(generateMeasures()));
+		LOGGER.info("measures: {} bits per double", measures.getRawBits().getNbBits() / (double) SIZE);
+
+		Options opts = new OptionsBuilder().include(CompressedLongArrayBenchmark.class.getName())
+				.warmupIterations(3)
+				.measurementIterations(3)
+				.forks(1)
+				.build();
+
+		new Runner(opts).run();
+	}
+}
@@ -0,0 +1,214 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.primitives;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.roaringbitmap.FastRankRoaringBitmap;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.longlong.FastRankRoaring64NavigableMap;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+/**
+ * Compare .rankLong and .select over {@link FastRankRoaringBitmap} and {@link FastRankRoaring64NavigableMap} with the
+ * stock {@link RoaringBitmap} and {@link Roaring64NavigableMap}, on a read-only bitmap and on an interleaved
+ * add-then-rank workload, like the one of an index being built.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FastRankRoaringBitmapBenchmark {
+	// Given a gap of 16 on average, we have about 4K values per container and 1K containers
+	private static final int SIZE = 4 * 1024 * 1024;
+	private static final int MAX_GAP = 32;
+
+	private static final int NB_QUERIES = 1024;
+
+	private static final int NB_INTERLEAVED = 64 * 1024;
+
+	/**
+	 * Holds the bitmaps and the queried values
+	 * 
+	 * @author Benoit Lacelle
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class Bitmaps {
+		RoaringBitmap stock;
+		FastRankRoaringBitmap fast;
+
+		Roaring64NavigableMap stock64;
+		FastRankRoaring64NavigableMap fast64;
+
+		int[] values;
+		int[] ranks;
+
+		@Setup(Level.Trial)
+		public void generate() {
+			Random r = new Random(0);
+
+			stock = new RoaringBitmap();
+			fast = new FastRankRoaringBitmap();
+			stock64 = new Roaring64NavigableMap();
+			fast64 = new FastRankRoaring64NavigableMap();
+
+			int value = 0;
+			for (int i = 0; i < SIZE; i++) {
+				value += 1 + r.nextInt(MAX_GAP);
+				stock.add(value);
+				fast.add(value);
+
+				// Spread the values over several 32-bits buckets
+				long value64 = ((long) (i % 4) << 32) + value;
+				stock64.addLong(value64);
+				fast64.addLong(value64);
+			}
+
+			values = new int[NB_QUERIES];
+			ranks = new int[NB_QUERIES];
+			for (int i = 0; i < NB_QUERIES; i++) {
+				values[i] = r.nextInt(value);
+				ranks[i] = r.nextInt(SIZE);
+			}
+		}
+	}
+
+	@Benchmark
+	public long rank_stock(Bitmaps state) {
+		long sum = 0;
+		for (int value : state.values) {
+			sum += state.stock.rankLong(value);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long rank_fast(Bitmaps state) {
+		long sum = 0;
+		for (int value : state.values) {
+			sum += state.fast.rankLong(value);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long select_stock(Bitmaps state) {
+		long sum = 0;
+		for (int rank : state.ranks) {
+			sum += state.stock.select(rank);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long select_fast(Bitmaps state) {
+		long sum = 0;
+		for (int rank : state.ranks) {
+			sum += state.fast.select(rank);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long rank64_stock(Bitmaps state) {
+		long sum = 0;
+		for (int value : state.values) {
+			sum += state.stock64.rankLong(value);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long rank64_fast(Bitmaps state) {
+		long sum = 0;
+		for (int value : state.values) {
+			sum += state.fast64.rankLong(value);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long select64_stock(Bitmaps state) {
+		long sum = 0;
+		for (int rank : state.ranks) {
+			sum += state.stock64.select(rank);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long select64_fast(Bitmaps state) {
+		long sum = 0;
+		for (int rank : state.ranks) {
+			sum += state.fast64.select(rank);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long interleaved_stock() {
+		return addThenRank(new RoaringBitmap());
+	}
+
+	@Benchmark
+	public long interleaved_fast() {
+		return addThenRank(new FastRankRoaringBitmap());
+	}
+
+	/**
+	 * Append increasing values, and rank each of them right after it is added
+	 */
+	protected long addThenRank(RoaringBitmap bitmap) {
+		long sum = 0;
+		for (int i = 0; i < NB_INTERLEAVED; i++) {
+			int value = i * MAX_GAP;
+			bitmap.add(value);
+			sum += bitmap.rankLong(value);
+		}
+		return sum;
+	}
+
+	public static void main(String... args) throws Exception {
+		Options opts = new OptionsBuilder().include(FastRankRoaringBitmapBenchmark.class.getName())
+				.warmupIterations(3)
+				.measurementIterations(3)
+				.forks(1)
+				.build();
+
+		new Runner(opts).run();
+	}
+}
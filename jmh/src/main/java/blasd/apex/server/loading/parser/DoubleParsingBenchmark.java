@@ -22,16 +22,22 @@
  */
 package blasd.apex.server.loading.parser;
 
+import java.util.Locale;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 
 import blasd.apex.core.primitive.ApexParserHelper;
+import blasd.apex.core.primitive.FastDoubleParsers;
 import javolution.text.TypeFormat;
 
 /**
@@ -64,6 +70,102 @@ public static class SharedCounters {
 		StringToDouble jdk = s -> Double.parseDouble(s.toString());
 		StringToDouble javolution = s -> TypeFormat.parseDouble(s);
 		StringToDouble apex = s -> ApexParserHelper.parseDouble(s);
+		StringToDouble fast = s -> FastDoubleParsers.parseDouble(s);
+	}
+
+	/**
+	 * Holds a batch of inputs in a real-world format
+	 * 
+	 * @author Benoit Lacelle
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class Formats {
+		private static final int NB_INPUTS = 1024;
+
+		@Param({ "integers", "shortDecimals", "negativeDecimals", "exponents", "manyDigits", "toString" })
+		public String format;
+
+		CharSequence[] inputs;
+
+		@Setup(Level.Trial)
+		public void generate() {
+			Random r = new Random(0);
+
+			inputs = new CharSequence[NB_INPUTS];
+			for (int i = 0; i < NB_INPUTS; i++) {
+				inputs[i] = generate(r);
+			}
+		}
+
+		protected String generate(Random r) {
+			switch (format) {
+			case "integers":
+				return Integer.toString(r.nextInt(1_000_000));
+			case "shortDecimals":
+				// Typically prices: 2 decimals. Locale.ROOT for '.' as decimal separator
+				return String.format(Locale.ROOT, "%.2f", r.nextDouble() * 1000);
+			case "negativeDecimals":
+				return String.format(Locale.ROOT, "%.4f", -r.nextDouble() * 1000);
+			case "exponents":
+				return String.format(Locale.ROOT, "%.6e", r.nextDouble() * Math.pow(10, r.nextInt(600) - 300));
+			case "manyDigits":
+				// More than the 17 digits needed to round-trip a double
+				return String.format(Locale.ROOT, "%.22f", r.nextDouble());
+			case "toString":
+				return Double.toString(r.nextGaussian() * 1_000_000);
+			default:
+				throw new IllegalArgumentException("Unknown format: " + format);
+			}
+		}
+	}
+
+	@Benchmark
+	public double measureApexFormats(SharedCounters state, Formats formats) {
+		return parseAll(state.apex, formats);
+	}
+
+	@Benchmark
+	public double measureJdkFormats(SharedCounters state, Formats formats) {
+		return parseAll(state.jdk, formats);
+	}
+
+	@Benchmark
+	public double measureFastFormats(SharedCounters state, Formats formats) {
+		return parseAll(state.fast, formats);
+	}
+
+	protected double parseAll(StringToDouble parser, Formats formats) {
+		double sum = 0D;
+		for (CharSequence input : formats.inputs) {
+			sum += parser.parseDouble(input);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double measureFastDoubleFromInteger(SharedCounters state) {
+		return state.fast.parseDouble(PARSE_SMALL_INTEGER);
+	}
+
+	@Benchmark
+	public double measureFastDoubleFromLong(SharedCounters state) {
+		return state.fast.parseDouble(PARSE_BIG_LONG);
+	}
+
+	@Benchmark
+	public double measureFastDoubleFromZero(SharedCounters state) {
+		return state.fast.parseDouble(PARSE_ZERO);
+	}
+
+	@Benchmark
+	public double measureFastDoubleFromWideFloat(SharedCounters state) {
+		return state.fast.parseDouble(PARSE_WIDE_FLOAT);
+	}
+
+	@Benchmark
+	public double measureFastDoubleFromWideDouble(SharedCounters state) {
+		return state.fast.parseDouble(PARSE_WIDE_DOUBLE);
 	}
 
 	@Benchmark
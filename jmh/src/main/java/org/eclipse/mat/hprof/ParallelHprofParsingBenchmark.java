@@ -0,0 +1,156 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.eclipse.mat.hprof;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.SnapshotFactory;
+import org.eclipse.mat.util.VoidProgressListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * Compare the time to open a synthetic heap-dump given different number of threads extracting the objects (i.e.
+ * {@link Pass2Parser}). The dump is generated from this JVM, after having allocated a graph of 2M nodes (i.e. 8M
+ * objects)
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParallelHprofParsingBenchmark {
+
+	private static final int NB_NODES = 2 * 1000 * 1000;
+
+	/**
+	 * An object with a few references, so that the dump has as many references as objects
+	 * 
+	 * @author Benoit Lacelle
+	 *
+	 */
+	protected static class Node {
+		protected final int index;
+		protected final Node previous;
+		protected final Object[] children;
+
+		protected Node(int index, Node previous) {
+			this.index = index;
+			this.previous = previous;
+			this.children = new Object[] { previous, Integer.toString(index) };
+		}
+	}
+
+	/**
+	 * Holds the synthetic heap-dump, generated once for all benchmarks
+	 * 
+	 * @author Benoit Lacelle
+	 *
+	 */
+	@State(Scope.Benchmark)
+	public static class SyntheticDump {
+		@Param({ "1", "2", "4", "8", "16" })
+		public int nbThreads;
+
+		Path folder;
+		File dump;
+
+		@Setup(Level.Trial)
+		public void writeDump() throws IOException {
+			folder = Files.createTempDirectory("ParallelHprofParsingBenchmark");
+			dump = folder.resolve("synthetic.hprof").toFile();
+
+			Node last = null;
+			for (int i = 0; i < NB_NODES; i++) {
+				last = new Node(i, last);
+			}
+
+			ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class).dumpHeap(dump.getAbsolutePath(), true);
+
+			// Keep the graph reachable until the dump is written
+			if (last.index != NB_NODES - 1) {
+				throw new IllegalStateException("Unexpected last index: " + last.index);
+			}
+		}
+
+		@TearDown(Level.Invocation)
+		public void deleteIndexes() throws IOException {
+			// Else the next invocation would re-use the indexes instead of parsing the dump
+			try (Stream<Path> files = Files.list(folder)) {
+				files.filter(p -> !p.toFile().equals(dump)).forEach(p -> p.toFile().delete());
+			}
+		}
+
+		@TearDown(Level.Trial)
+		public void deleteDump() throws IOException {
+			try (Stream<Path> files = Files.walk(folder)) {
+				files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+			}
+		}
+	}
+
+	@Benchmark
+	public int openSnapshot(SyntheticDump state) throws SnapshotException {
+		ISnapshot snapshot = SnapshotFactory.openSnapshot(state.dump,
+				Collections.singletonMap(HprofIndexBuilder.PARSING_THREADS, Integer.toString(state.nbThreads)),
+				new VoidProgressListener());
+		try {
+			return snapshot.getSnapshotInfo().getNumberOfObjects();
+		} finally {
+			SnapshotFactory.dispose(snapshot);
+		}
+	}
+
+	public static void main(String... args) throws Exception {
+		Options opts = new OptionsBuilder().include(ParallelHprofParsingBenchmark.class.getName())
+				.warmupIterations(1)
+				.measurementIterations(3)
+				.forks(1)
+				.build();
+
+		new Runner(opts).run();
+	}
+}
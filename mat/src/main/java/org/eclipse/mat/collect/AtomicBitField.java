@@ -0,0 +1,69 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.eclipse.mat.collect;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A {@link BitField} which can be set concurrently by multiple threads. Out of performance reasons no method does any
+ * parameter checking, i.e. only valid values are expected.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public final class AtomicBitField {
+	private final AtomicIntegerArray bits;
+
+	/**
+	 * Creates a bit field with the given number of bits. Size is expected to be positive
+	 */
+	public AtomicBitField(int size) {
+		bits = new AtomicIntegerArray((((size) - 1) >>> 0x5) + 1);
+	}
+
+	/**
+	 * Sets the bit on the given index.
+	 * 
+	 * @return true if the bit was clear: only one of the threads setting concurrently the same bit receives true
+	 */
+	public boolean setIfClear(int index) {
+		int wordIndex = index >>> 0x5;
+		int mask = 1 << (index & 0x1f);
+
+		int word = bits.get(wordIndex);
+		while ((word & mask) == 0) {
+			if (bits.compareAndSet(wordIndex, word, word | mask)) {
+				return true;
+			}
+			word = bits.get(wordIndex);
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the bit on the given index.
+	 */
+	public boolean get(int index) {
+		return (bits.get(index >>> 0x5) & (1 << (index & 0x1f))) != 0;
+	}
+}
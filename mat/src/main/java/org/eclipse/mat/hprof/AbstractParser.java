@@ -13,13 +13,20 @@
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import org.eclipse.mat.SnapshotException;
 import org.eclipse.mat.hprof.ui.HprofPreferences;
+import org.eclipse.mat.parser.io.BlockCompressedFile;
+import org.eclipse.mat.parser.io.FileChannelRangeInputStream;
 import org.eclipse.mat.parser.io.PositionInputStream;
 import org.eclipse.mat.snapshot.ISnapshot;
 import org.eclipse.mat.snapshot.model.IObject;
 import org.eclipse.mat.snapshot.model.IPrimitiveArray;
 import org.eclipse.mat.snapshot.model.ObjectReference;
+import org.eclipse.mat.util.IProgressListener;
 import org.eclipse.mat.util.IProgressListener.Severity;
 import org.eclipse.mat.util.MessageUtil;
 import org.eclipse.mat.util.SimpleMonitor.Listener;
@@ -180,6 +187,90 @@ protected void skipValue(int type) throws IOException {
 			in.skipBytes(IPrimitiveArray.ELEMENT_SIZE[type]);
 	}
 
+	/**
+	 * Skip the body of a GC root heap sub-record
+	 * 
+	 * @return false if given heap sub-record is not a GC root
+	 */
+	protected boolean skipGCRoot(int segmentType) throws IOException {
+		switch (segmentType) {
+		case Constants.DumpSegment.ROOT_UNKNOWN:
+		case Constants.DumpSegment.ROOT_STICKY_CLASS:
+		case Constants.DumpSegment.ROOT_MONITOR_USED:
+			in.skipBytes(idSize);
+			return true;
+		case Constants.DumpSegment.ROOT_JNI_GLOBAL:
+			in.skipBytes(idSize * 2);
+			return true;
+		case Constants.DumpSegment.ROOT_NATIVE_STACK:
+		case Constants.DumpSegment.ROOT_THREAD_BLOCK:
+			in.skipBytes(idSize + 4);
+			return true;
+		case Constants.DumpSegment.ROOT_THREAD_OBJECT:
+		case Constants.DumpSegment.ROOT_JNI_LOCAL:
+		case Constants.DumpSegment.ROOT_JAVA_FRAME:
+			in.skipBytes(idSize + 8);
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	protected void skipClassDump() throws IOException {
+		in.skipBytes(7 * idSize + 8);
+
+		int constantPoolSize = in.readUnsignedShort();
+		for (int ii = 0; ii < constantPoolSize; ii++) {
+			in.skipBytes(2);
+			skipValue();
+		}
+
+		int numStaticFields = in.readUnsignedShort();
+		for (int i = 0; i < numStaticFields; i++) {
+			in.skipBytes(idSize);
+			skipValue();
+		}
+
+		int numInstanceFields = in.readUnsignedShort();
+		in.skipBytes((idSize + 1) * numInstanceFields);
+	}
+
+	/**
+	 * @return a stream over the [start, end[ range of the dump, which may be block compressed
+	 */
+	protected static InputStream openChunk(FileChannel channel,
+			BlockCompressedFile compressedFile,
+			long start,
+			long end) throws IOException {
+		if (compressedFile == null) {
+			return new FileChannelRangeInputStream(channel, start, end);
+		} else {
+			return compressedFile.newInputStream(start, end);
+		}
+	}
+
+	/**
+	 * Wait for a chunk parsed concurrently, rethrowing the exception which failed its parsing
+	 */
+	protected static <T> T getUnchecked(Future<T> future) throws SnapshotException, IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IProgressListener.OperationCanceledException();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof SnapshotException) {
+				throw (SnapshotException) e.getCause();
+			} else if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			} else {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+	}
+
 	/**
 	 * Usually the HPROF file contains exactly one heap dump. However, when acquiring heap dumps via the legacy HPROF
 	 * agent, the dump file can possibly contain multiple heap dumps. Currently there is no API and no UI to determine
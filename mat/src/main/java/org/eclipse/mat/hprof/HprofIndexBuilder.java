@@ -25,6 +25,7 @@
 import org.eclipse.mat.parser.IPreliminaryIndex;
 import org.eclipse.mat.parser.index.IIndexReader.IOne2LongIndex;
 import org.eclipse.mat.parser.index.IndexWriter;
+import org.eclipse.mat.parser.io.BlockCompressedFile;
 import org.eclipse.mat.util.IProgressListener;
 import org.eclipse.mat.util.MessageUtil;
 import org.eclipse.mat.util.SimpleMonitor;
@@ -35,6 +36,13 @@ public class HprofIndexBuilder implements IIndexBuilder {
 
 	protected static final Logger LOGGER = LoggerFactory.getLogger(HprofIndexBuilder.class);
 
+	/**
+	 * The snapshot argument setting the number of threads reading the dump, both when scanning the records (i.e. in
+	 * pass 1) and when extracting the objects (i.e. in pass 2). It defaults to the system property
+	 * 'mat.parsingThreads', else to 1: the dump is then read sequentially
+	 */
+	public static final String PARSING_THREADS = "parsing_threads";
+
 	private File file;
 	private String prefix;
 	private IOne2LongIndex id2position;
@@ -67,9 +75,15 @@ public void fill(IPreliminaryIndex preliminary, IProgressListener listener) thro
 		IHprofParserHandler handler = new HprofParserHandlerImpl();
 		handler.beforePass1(preliminary.getSnapshotInfo());
 
+		// Once parsed, objects are read randomly, even in a compressed dump: fail before parsing if they can not be
+		BlockCompressedFile.checkRandomAccess(file);
+
+		// The length of the decompressed content, if the dump is compressed
+		long fileLength = BlockCompressedFile.length(file);
+
 		SimpleMonitor.Listener mon = (SimpleMonitor.Listener) monitor.nextMonitor();
 		mon.beginTask(MessageUtil.format(Messages.HprofIndexBuilder_Scanning, new Object[] { file.getAbsolutePath() }),
-				(int) (file.length() / 1000));
+				(int) (fileLength / 1000));
 		Pass1Parser pass1 = new Pass1Parser(handler, mon, strictnessPreference);
 		Serializable id = preliminary.getSnapshotInfo().getProperty("$runtimeId");
 		String dumpNrToRead;
@@ -78,7 +92,11 @@ public void fill(IPreliminaryIndex preliminary, IProgressListener listener) thro
 		} else {
 			dumpNrToRead = pass1.determineDumpNumber();
 		}
-		pass1.read(file, dumpNrToRead);
+		int nbThreads = getParsingThreads(preliminary);
+		if (nbThreads > 1) {
+			LOGGER.info("Scan {} with {} threads", file, nbThreads);
+		}
+		pass1.read(file, dumpNrToRead, nbThreads);
 
 		if (listener.isCanceled())
 			throw new IProgressListener.OperationCanceledException();
@@ -91,10 +109,15 @@ public void fill(IPreliminaryIndex preliminary, IProgressListener listener) thro
 		mon.beginTask(
 				MessageUtil.format(Messages.HprofIndexBuilder_ExtractingObjects,
 						new Object[] { file.getAbsolutePath() }),
-				(int) (file.length() / 1000));
+				(int) (fileLength / 1000));
 
 		Pass2Parser pass2 = new Pass2Parser(handler, mon, strictnessPreference);
-		pass2.read(file, dumpNrToRead);
+		if (nbThreads > 1) {
+			LOGGER.info("Extract objects from {} with {} threads", file, nbThreads);
+			pass2.read(file, pass1.getHeapChunkBounds(), nbThreads);
+		} else {
+			pass2.read(file, dumpNrToRead);
+		}
 
 		if (listener.isCanceled())
 			throw new IProgressListener.OperationCanceledException();
@@ -110,6 +133,15 @@ public void fill(IPreliminaryIndex preliminary, IProgressListener listener) thro
 		id2position = handler.fillIn(preliminary);
 	}
 
+	protected int getParsingThreads(IPreliminaryIndex preliminary) {
+		Serializable nbThreads = preliminary.getSnapshotInfo().getProperty(PARSING_THREADS);
+		if (nbThreads instanceof Integer) {
+			return (Integer) nbThreads;
+		} else {
+			return Integer.getInteger("mat.parsingThreads", 1);
+		}
+	}
+
 	@Override
 	public void clean(final int[] purgedMapping, IProgressListener listener) throws IOException {
 
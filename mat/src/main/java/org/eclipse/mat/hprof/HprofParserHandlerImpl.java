@@ -14,6 +14,7 @@
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -31,6 +32,7 @@
 import org.eclipse.mat.parser.index.IIndexReader.IOne2LongIndex;
 import org.eclipse.mat.parser.index.IndexManager.Index;
 import org.eclipse.mat.parser.index.IndexWriter;
+import org.eclipse.mat.parser.io.BlockCompressedFile;
 import org.eclipse.mat.parser.model.ClassImpl;
 import org.eclipse.mat.parser.model.PrimitiveArrayImpl;
 import org.eclipse.mat.parser.model.XGCRootInfo;
@@ -148,7 +150,7 @@ public void beforePass2(IProgressListener monitor) throws IOException, SnapshotE
 		outbound = new IndexWriter.IntArray1NWriter(nbIds, Index.OUTBOUND.getFile(info.getPrefix() + "temp."));
 		object2classId = new IndexWriter.IntIndexCollector(nbIds, classIndexToClassId);
 		object2position = new IndexWriter.LongIndexCollector(nbIds,
-				IndexWriter.mostSignificantBit(new File(this.info.getPath()).length()));
+				IndexWriter.mostSignificantBit(BlockCompressedFile.length(new File(this.info.getPath()))));
 		array2size = new IndexWriter.SizeIndexCollectorUncompressed(nbIds);
 
 		// java.lang.Class needs some special treatment so that object2classId
@@ -196,6 +198,11 @@ public void beforePass2(IProgressListener monitor) throws IOException, SnapshotE
 		heapObject.references.add(classLoaderClass.getObjectAddress());
 		this.addObject(heapObject, 0);
 
+		// Resolve all hierarchies now, so that .resolveClassHierarchy only reads during pass 2, which may be concurrent
+		for (Iterator<?> e = classesByAddress.values(); e.hasNext();) {
+			resolveClassHierarchy(((ClassImpl) e.next()).getObjectAddress());
+		}
+
 		constantPool = null;
 	}
 
@@ -523,9 +530,7 @@ public void addClass(ClassImpl clazz, long filePosition) throws IOException {
 	}
 
 	@Override
-	public void addObject(HeapObject object, long filePosition) throws IOException {
-		int index = object.objectId;
-
+	public void prepareObject(HeapObject object) {
 		// check if some thread to local variables references have to be added
 		HashMapLongObject<List<XGCRootInfo>> localVars = threadAddressToLocals.get(object.objectAddress);
 		if (localVars != null) {
@@ -535,8 +540,24 @@ public void addObject(HeapObject object, long filePosition) throws IOException {
 			}
 		}
 
+		int[] objectIds = new int[object.references.size()];
+		int length = IndexWriter.IntArray1NWriter.mapReferences(identifiers, object.references, objectIds);
+		if (length < objectIds.length) {
+			objectIds = Arrays.copyOf(objectIds, length);
+		}
+		object.referenceIds = objectIds;
+	}
+
+	@Override
+	public void addObject(HeapObject object, long filePosition) throws IOException {
+		int index = object.objectId;
+
+		if (object.referenceIds == null) {
+			prepareObject(object);
+		}
+
 		// log references
-		outbound.log(identifiers, index, object.references);
+		outbound.log(index, object.referenceIds);
 
 		int classIndex = object.clazz.getObjectId();
 		object.clazz.addInstance(object.usedHeapSize);
@@ -555,6 +576,11 @@ public void reportInstance(long id, long filePosition) {
 		this.identifiers.add(id);
 	}
 
+	@Override
+	public void reportInstances(IndexWriter.Identifier ids) {
+		this.identifiers.addAll(ids);
+	}
+
 	@Override
 	public void reportRequiredObjectArray(long arrayClassID) {
 		requiredArrayClassIDs.add(arrayClassID);
@@ -624,6 +650,10 @@ public List<IClass> resolveClassHierarchy(long classId) {
 
 			while (clazz.hasSuperClass()) {
 				clazz = classesByAddress.get(clazz.getSuperClassAddress());
+				if (clazz == null) {
+					// The super class is not in the dump: the fields of the instances will not be fully read
+					break;
+				}
 				answer.add(clazz);
 			}
 
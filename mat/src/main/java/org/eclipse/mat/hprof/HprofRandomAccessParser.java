@@ -19,8 +19,10 @@
 
 import org.eclipse.mat.SnapshotException;
 import org.eclipse.mat.hprof.ui.HprofPreferences;
+import org.eclipse.mat.parser.io.BlockCompressedFile;
 import org.eclipse.mat.parser.io.BufferedRandomAccessInputStream;
 import org.eclipse.mat.parser.io.PositionInputStream;
+import org.eclipse.mat.parser.io.SeekableDecompressingInputStream;
 import org.eclipse.mat.parser.model.ClassImpl;
 import org.eclipse.mat.parser.model.ClassLoaderImpl;
 import org.eclipse.mat.parser.model.InstanceImpl;
@@ -43,7 +45,14 @@ public HprofRandomAccessParser(File file,
 			int identifierSize,
 			HprofPreferences.HprofStrictness strictnessPreference) throws IOException {
 		super(strictnessPreference);
-		this.in = new PositionInputStream(new BufferedRandomAccessInputStream(new RandomAccessFile(file, "r"), 512));
+		if (BlockCompressedFile.isBlockCompressed(file)) {
+			BlockCompressedFile compressedFile = BlockCompressedFile.open(file);
+			this.in = new PositionInputStream(
+					new SeekableDecompressingInputStream(compressedFile, 0, compressedFile.length(), compressedFile));
+		} else {
+			this.in =
+					new PositionInputStream(new BufferedRandomAccessInputStream(new RandomAccessFile(file, "r"), 512));
+		}
 		this.version = version;
 		this.idSize = identifierSize;
 	}
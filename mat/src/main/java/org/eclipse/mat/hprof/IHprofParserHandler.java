@@ -19,6 +19,7 @@
 import org.eclipse.mat.collect.HashMapLongObject;
 import org.eclipse.mat.parser.IPreliminaryIndex;
 import org.eclipse.mat.parser.index.IIndexReader.IOne2LongIndex;
+import org.eclipse.mat.parser.index.IndexWriter;
 import org.eclipse.mat.parser.model.ClassImpl;
 import org.eclipse.mat.parser.model.XSnapshotInfo;
 import org.eclipse.mat.snapshot.model.IClass;
@@ -38,6 +39,8 @@ class HeapObject {
 
 		// TODO Could we reserve capacity depending on class fields?
 		public ArrayLong references = new ArrayLong();
+		// The references resolved to object ids, pseudo reference first. null until resolved by .prepareObject
+		public int[] referenceIds;
 		public boolean isArray = false;
 
 		public HeapObject(int objectId, long objectAddress, ClassImpl clazz, long usedHeapSize) {
@@ -71,10 +74,21 @@ public HeapObject(int objectId, long objectAddress, ClassImpl clazz, long usedHe
 
 	void addClass(ClassImpl clazz, long filePosition) throws IOException;
 
+	/**
+	 * Resolve the references of given object to object ids. It does not modify the handler, hence it can be called
+	 * concurrently during pass 2, before the object is given to {@link #addObject(HeapObject, long)}
+	 */
+	void prepareObject(HeapObject object);
+
 	void addObject(HeapObject object, long filePosition) throws IOException;
 
 	void reportInstance(long id, long filePosition);
 
+	/**
+	 * Report at once the instances collected while reading a chunk of the dump concurrently
+	 */
+	void reportInstances(IndexWriter.Identifier ids);
+
 	void reportRequiredObjectArray(long arrayClassID);
 
 	void reportRequiredPrimitiveArray(int arrayType);
@@ -13,21 +13,31 @@
 
 import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.collect.ArrayLong;
 import org.eclipse.mat.collect.HashMapLongObject;
+import org.eclipse.mat.collect.IteratorLong;
+import org.eclipse.mat.collect.SetLong;
 import org.eclipse.mat.hprof.ui.HprofPreferences;
+import org.eclipse.mat.parser.index.IndexWriter;
+import org.eclipse.mat.parser.io.BlockCompressedFile;
 import org.eclipse.mat.parser.io.PositionInputStream;
 import org.eclipse.mat.parser.model.ClassImpl;
 import org.eclipse.mat.snapshot.MultipleSnapshotsException;
@@ -41,9 +51,12 @@
 import org.eclipse.mat.util.MessageUtil;
 import org.eclipse.mat.util.SimpleMonitor;
 
+import blasd.apex.core.thread.ApexExecutorsHelper;
+
 public class Pass1Parser extends AbstractParser {
 	private static final Pattern PATTERN_OBJ_ARRAY = Pattern.compile("^(\\[+)L(.*);$");
 	private static final Pattern PATTERN_PRIMITIVE_ARRAY = Pattern.compile("^(\\[+)(.)$");
+	private static final int CHUNK_BUFFER_SIZE = 64 * 1024;
 
 	private HashMapLongObject<String> class2name = new HashMapLongObject<String>();
 	private HashMapLongObject<Long> thread2id = new HashMapLongObject<Long>();
@@ -58,6 +71,27 @@ public class Pass1Parser extends AbstractParser {
 	private boolean foundCompressed;
 	private final boolean verbose = Boolean.getBoolean("mat.verbose");
 
+	/**
+	 * The heap sub-records of the dump to read are split in chunks of roughly this number of bytes
+	 */
+	public static final long DEFAULT_HEAP_CHUNK_SIZE = 8 * 1024 * 1024;
+
+	private final long heapChunkSize = Long.getLong("mat.hprofChunkSize", DEFAULT_HEAP_CHUNK_SIZE);
+	// Successive [start, end[ pairs of positions. Each chunk starts and ends on a heap sub-record boundary
+	private final ArrayLong heapChunkBounds = new ArrayLong();
+
+	// Not null while reading the heap sub-records with multiple threads: the objects are then read by chunk parsers,
+	// while this parser reads the GC roots and the classes
+	private ForkJoinPool chunkPool;
+	private FileChannel channel;
+	private BlockCompressedFile compressedFile;
+	private int maxPendingChunks;
+	private final Deque<Future<ParsedChunk>> pendingChunks = new ArrayDeque<>();
+
+	// Not null while reading a chunk concurrently: the objects are then buffered instead of being reported to the
+	// handler
+	private ParsedChunk parsedChunk;
+
 	public Pass1Parser(IHprofParserHandler handler,
 			SimpleMonitor.Listener monitor,
 			HprofPreferences.HprofStrictness strictnessPreference) {
@@ -67,8 +101,28 @@ public Pass1Parser(IHprofParserHandler handler,
 	}
 
 	public void read(File file, String dumpNrToRead) throws SnapshotException, IOException {
+		read(file, dumpNrToRead, 1);
+	}
+
+	/**
+	 * 
+	 * @param nbThreads
+	 *            the number of threads reading the objects. If greater than 1, the heap sub-records are split in chunks
+	 *            whose objects are read concurrently, then reported to the handler by the calling thread in the order
+	 *            of the file. The GC roots and the classes are always read by the calling thread.
+	 */
+	public void read(File file, String dumpNrToRead, int nbThreads) throws SnapshotException, IOException {
 		// See http://java.net/downloads/heap-snapshot/hprof-binary-format.html
-		in = new PositionInputStream(new BufferedInputStream(new FileInputStream(file)));
+		in = new PositionInputStream(new BufferedInputStream(BlockCompressedFile.newInputStream(file)));
+
+		if (nbThreads > 1) {
+			// Chunks of a compressed dump are read from its decompressed content
+			compressedFile = BlockCompressedFile.isBlockCompressed(file) ? BlockCompressedFile.open(file) : null;
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			chunkPool = ApexExecutorsHelper.newForkJoinPool("mat-hprof-pass1", nbThreads);
+			// Bound the number of parsed chunks waiting to be reported to the handler
+			maxPendingChunks = 2 * nbThreads;
+		}
 
 		int currentDumpNr = 0;
 		List<MultipleSnapshotsException.Context> ctxs = new ArrayList<MultipleSnapshotsException.Context>();
@@ -91,7 +145,7 @@ public void read(File file, String dumpNrToRead) throws SnapshotException, IOExc
 			long prevTimeOffset = 0;
 			long timeWrap = 0;
 
-			long fileSize = file.length();
+			long fileSize = BlockCompressedFile.length(file);
 			long curPos = in.position();
 
 			while (curPos < fileSize) {
@@ -218,11 +272,17 @@ public void read(File file, String dumpNrToRead) throws SnapshotException, IOExc
 
 				curPos = in.position();
 			}
+
+			while (!pendingChunks.isEmpty()) {
+				reportChunk(getUnchecked(pendingChunks.poll()));
+			}
 		} finally {
 			try {
 				in.close();
 			} catch (IOException ignore) {
 			}
+
+			closeChunkReading();
 		}
 
 		if (!foundDump)
@@ -253,6 +313,34 @@ public void read(File file, String dumpNrToRead) throws SnapshotException, IOExc
 
 	}
 
+	private void closeChunkReading() throws IOException {
+		if (chunkPool != null) {
+			chunkPool.shutdownNow();
+			chunkPool = null;
+		}
+		pendingChunks.clear();
+		try {
+			if (channel != null) {
+				channel.close();
+				channel = null;
+			}
+		} finally {
+			if (compressedFile != null) {
+				compressedFile.close();
+				compressedFile = null;
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @return the chunks of heap sub-records of the read dump, as successive [start, end[ pairs of positions. These
+	 *         chunks can be read concurrently by {@link Pass2Parser#read(File, long[], int)}
+	 */
+	public long[] getHeapChunkBounds() {
+		return heapChunkBounds.toArray();
+	}
+
 	private void readString(long length) throws IOException {
 		long id = readID();
 		byte[] chars = new byte[(int) (length - idSize)];
@@ -307,19 +395,39 @@ private void readDumpSegments(long length) throws IOException, SnapshotException
 		long segmentStartPos = in.position();
 		long segmentsEndPos = segmentStartPos + length;
 
+		long chunkStartPos = segmentStartPos;
+
 		while (segmentStartPos < segmentsEndPos) {
 			long workDone = segmentStartPos / 1000;
-			if (this.monitor.getWorkDone() < workDone) {
+			// Progress is reported by the reading thread when reading chunks concurrently
+			if (parsedChunk == null && this.monitor.getWorkDone() < workDone) {
 				if (this.monitor.isProbablyCanceled())
 					throw new IProgressListener.OperationCanceledException();
 				this.monitor.totalWorkDone(workDone);
 			}
 
+			if (parsedChunk == null && segmentStartPos - chunkStartPos >= heapChunkSize) {
+				addHeapChunk(chunkStartPos, segmentStartPos);
+				chunkStartPos = segmentStartPos;
+			}
+
 			int segmentType = in.readUnsignedByte();
 			if (verbose)
 				System.out.println("    Read heap sub-record type " + segmentType
 						+ " at position 0x"
 						+ Long.toHexString(segmentStartPos));
+
+			boolean isObject = segmentType == Constants.DumpSegment.INSTANCE_DUMP
+					|| segmentType == Constants.DumpSegment.OBJECT_ARRAY_DUMP
+					|| segmentType == Constants.DumpSegment.PRIMITIVE_ARRAY_DUMP;
+			if (isObject ? chunkPool != null : parsedChunk != null) {
+				// When reading concurrently, the objects are read by the chunk parsers, and the other heap sub-records
+				// by the calling thread
+				skipDumpSegment(segmentType, segmentStartPos);
+				segmentStartPos = in.position();
+				continue;
+			}
+
 			switch (segmentType) {
 			case Constants.DumpSegment.ROOT_UNKNOWN:
 				readGC(GCRootInfo.Type.UNKNOWN, 0);
@@ -367,6 +475,10 @@ private void readDumpSegments(long length) throws IOException, SnapshotException
 
 			segmentStartPos = in.position();
 		}
+		if (parsedChunk == null && segmentStartPos > chunkStartPos) {
+			addHeapChunk(chunkStartPos, segmentStartPos);
+		}
+
 		if (verbose)
 			System.out.println("    Finished heap sub-records.");
 		if (segmentStartPos != segmentsEndPos) {
@@ -394,6 +506,110 @@ private void readDumpSegments(long length) throws IOException, SnapshotException
 		}
 	}
 
+	private void addHeapChunk(long start, long end) throws SnapshotException, IOException {
+		heapChunkBounds.add(start);
+		heapChunkBounds.add(end);
+
+		if (chunkPool != null) {
+			while (pendingChunks.size() >= maxPendingChunks) {
+				reportChunk(getUnchecked(pendingChunks.poll()));
+			}
+			pendingChunks.add(chunkPool.submit(() -> readChunk(start, end)));
+		}
+	}
+
+	private ParsedChunk readChunk(long start, long end) throws SnapshotException, IOException {
+		Pass1Parser chunkParser = new Pass1Parser(handler, monitor, strictnessPreference);
+		chunkParser.version = version;
+		chunkParser.idSize = idSize;
+		chunkParser.parsedChunk = new ParsedChunk();
+
+		chunkParser.in = new PositionInputStream(
+				new BufferedInputStream(openChunk(channel, compressedFile, start, end), CHUNK_BUFFER_SIZE),
+				start);
+		try {
+			chunkParser.readDumpSegments(end - start);
+		} finally {
+			try {
+				chunkParser.in.close();
+			} catch (IOException ignore) {
+			}
+		}
+
+		ParsedChunk chunk = chunkParser.parsedChunk;
+		chunk.previousArrayStart = chunkParser.previousArrayStart;
+		chunk.previousArrayUncompressedEnd = chunkParser.previousArrayUncompressedEnd;
+		return chunk;
+	}
+
+	/**
+	 * Report the objects of a chunk read concurrently. The required classes are checked once the chunk is parsed: the
+	 * classes read meanwhile by the calling thread are not reported as missing.
+	 */
+	private void reportChunk(ParsedChunk chunk) throws IOException {
+		handler.reportInstances(chunk.identifiers);
+
+		for (Iterator<HashMapLongObject.Entry<Integer>> it = chunk.requiredClasses.entries(); it.hasNext();) {
+			HashMapLongObject.Entry<Integer> e = it.next();
+			if (handler.lookupClass(e.getKey()) == null)
+				handler.reportRequiredClass(e.getKey(), e.getValue());
+		}
+
+		for (IteratorLong it = chunk.requiredArrayClasses.iterator(); it.hasNext();) {
+			long arrayClassID = it.next();
+			if (handler.lookupClass(arrayClassID) == null)
+				handler.reportRequiredObjectArray(arrayClassID);
+		}
+
+		for (int elementType = 0; elementType < chunk.requiredPrimitiveArrays.length; elementType++) {
+			if (chunk.requiredPrimitiveArrays[elementType]
+					&& handler.lookupClassByName(IPrimitiveArray.TYPE[elementType], true) == null)
+				handler.reportRequiredPrimitiveArray(elementType);
+		}
+
+		if (chunk.firstArrayAddress != 0) {
+			if (!foundCompressed && isAfterUncompressedArray(chunk.firstArrayAddress)) {
+				// The first array of the chunk may overlap the last array of the previous chunk
+				reportCompressedReferences(chunk.firstArrayAddress, previousArrayStart);
+			} else if (!foundCompressed && chunk.compressedArrayAddress != 0) {
+				reportCompressedReferences(chunk.compressedArrayAddress, chunk.compressedPreviousArrayStart);
+			}
+
+			previousArrayStart = chunk.previousArrayStart;
+			previousArrayUncompressedEnd = chunk.previousArrayUncompressedEnd;
+		}
+	}
+
+	private void skipDumpSegment(int segmentType, long segmentStartPos) throws SnapshotException, IOException {
+		switch (segmentType) {
+		case Constants.DumpSegment.CLASS_DUMP:
+			skipClassDump();
+			break;
+		case Constants.DumpSegment.INSTANCE_DUMP:
+			in.skipBytes(2 * idSize + 4);
+			in.skipBytes(in.readInt());
+			break;
+		case Constants.DumpSegment.OBJECT_ARRAY_DUMP:
+			in.skipBytes(idSize + 4);
+			int size = in.readInt();
+			in.skipBytes(idSize + (long) size * idSize);
+			break;
+		case Constants.DumpSegment.PRIMITIVE_ARRAY_DUMP:
+			in.skipBytes(idSize + 4);
+			int length = in.readInt();
+			byte elementType = in.readByte();
+			if ((elementType < IPrimitiveArray.Type.BOOLEAN) || (elementType > IPrimitiveArray.Type.LONG))
+				throw new SnapshotException(Messages.Pass1Parser_Error_IllegalType);
+			in.skipBytes((long) IPrimitiveArray.ELEMENT_SIZE[elementType] * length);
+			break;
+		default:
+			if (!skipGCRoot(segmentType)) {
+				throw new SnapshotException(MessageUtil
+						.format(Messages.Pass1Parser_Error_InvalidHeapDumpFile, segmentType, segmentStartPos));
+			}
+		}
+	}
+
 	private void readGCThreadObject(int gcType) throws IOException {
 		long id = readID();
 		int threadSerialNo = in.readInt();
@@ -521,49 +737,88 @@ private void readClassDump(long segmentStartPos) throws IOException {
 
 	private void readInstanceDump(long segmentStartPos) throws IOException {
 		long address = readID();
-		handler.reportInstance(address, segmentStartPos);
+		reportInstance(address, segmentStartPos);
 		in.skipBytes(4);
 		long classID = readID();
 		int payload = in.readInt();
 		// check if class needs to be created
-		IClass instanceType = handler.lookupClass(classID);
-		if (instanceType == null)
-			handler.reportRequiredClass(classID, payload);
+		if (parsedChunk != null) {
+			// Checked once the chunk is parsed, keeping the minimum size as the handler
+			Integer size = parsedChunk.requiredClasses.get(classID);
+			if (size == null || size > payload)
+				parsedChunk.requiredClasses.put(classID, payload);
+		} else {
+			IClass instanceType = handler.lookupClass(classID);
+			if (instanceType == null)
+				handler.reportRequiredClass(classID, payload);
+		}
 
 		in.skipBytes(payload);
 	}
 
 	private void readObjectArrayDump(long segmentStartPos) throws IOException {
 		long address = readID();
-		if (!foundCompressed && idSize == 8 && address > previousArrayStart && address < previousArrayUncompressedEnd) {
-			monitor.sendUserMessage(Severity.INFO,
-					MessageUtil.format(Messages.Pass1Parser_DetectedCompressedReferences,
-							Long.toHexString(address),
-							Long.toHexString(previousArrayStart)),
-					null);
-			handler.addProperty(IHprofParserHandler.REFERENCE_SIZE, "4");
-			foundCompressed = true;
+		if (parsedChunk != null && parsedChunk.firstArrayAddress == 0) {
+			// Compared with the last array of the previous chunk once the chunk is parsed
+			parsedChunk.firstArrayAddress = address;
+		} else if (!foundCompressed && isAfterUncompressedArray(address)) {
+			reportCompressedReferences(address, previousArrayStart);
 		}
 
-		handler.reportInstance(address, segmentStartPos);
+		reportInstance(address, segmentStartPos);
 
 		in.skipBytes(4);
 		int size = in.readInt();
 		long arrayClassObjectID = readID();
 
 		// check if class needs to be created
-		IClass arrayType = handler.lookupClass(arrayClassObjectID);
-		if (arrayType == null)
-			handler.reportRequiredObjectArray(arrayClassObjectID);
+		if (parsedChunk != null) {
+			parsedChunk.requiredArrayClasses.add(arrayClassObjectID);
+		} else {
+			IClass arrayType = handler.lookupClass(arrayClassObjectID);
+			if (arrayType == null)
+				handler.reportRequiredObjectArray(arrayClassObjectID);
+		}
 
 		in.skipBytes((long) size * idSize);
 		previousArrayStart = address;
 		previousArrayUncompressedEnd = address + 16 + (long) size * 8;
 	}
 
+	/**
+	 * @return true if given array address is within the previous array, if its references were 8 bytes long
+	 */
+	private boolean isAfterUncompressedArray(long address) {
+		return idSize == 8 && address > previousArrayStart && address < previousArrayUncompressedEnd;
+	}
+
+	private void reportCompressedReferences(long address, long overlappedArrayStart) throws IOException {
+		if (parsedChunk != null) {
+			// Reported once the chunk is parsed, if not detected in a previous chunk
+			parsedChunk.compressedArrayAddress = address;
+			parsedChunk.compressedPreviousArrayStart = overlappedArrayStart;
+		} else {
+			monitor.sendUserMessage(Severity.INFO,
+					MessageUtil.format(Messages.Pass1Parser_DetectedCompressedReferences,
+							Long.toHexString(address),
+							Long.toHexString(overlappedArrayStart)),
+					null);
+			handler.addProperty(IHprofParserHandler.REFERENCE_SIZE, "4");
+		}
+		foundCompressed = true;
+	}
+
+	private void reportInstance(long address, long segmentStartPos) {
+		if (parsedChunk != null) {
+			parsedChunk.identifiers.add(address);
+		} else {
+			handler.reportInstance(address, segmentStartPos);
+		}
+	}
+
 	private void readPrimitiveArrayDump(long segmentStartPos) throws SnapshotException, IOException {
 		long address = readID();
-		handler.reportInstance(address, segmentStartPos);
+		reportInstance(address, segmentStartPos);
 
 		in.skipBytes(4);
 		int size = in.readInt();
@@ -573,10 +828,14 @@ private void readPrimitiveArrayDump(long segmentStartPos) throws SnapshotExcepti
 			throw new SnapshotException(Messages.Pass1Parser_Error_IllegalType);
 
 		// check if class needs to be created
-		String name = IPrimitiveArray.TYPE[elementType];
-		IClass clazz = handler.lookupClassByName(name, true);
-		if (clazz == null)
-			handler.reportRequiredPrimitiveArray(elementType);
+		if (parsedChunk != null) {
+			parsedChunk.requiredPrimitiveArrays[elementType] = true;
+		} else {
+			String name = IPrimitiveArray.TYPE[elementType];
+			IClass clazz = handler.lookupClassByName(name, true);
+			if (clazz == null)
+				handler.reportRequiredPrimitiveArray(elementType);
+		}
 
 		int elementSize = IPrimitiveArray.ELEMENT_SIZE[elementType];
 		in.skipBytes((long) elementSize * size);
@@ -737,4 +996,23 @@ public int getType() {
 			return type;
 		}
 	}
+
+	/**
+	 * The objects read from a chunk, waiting to be reported to the handler
+	 */
+	private static class ParsedChunk {
+		private final IndexWriter.Identifier identifiers = IndexWriter.newIdentifier();
+		// The minimum payload of the instances of each class
+		private final HashMapLongObject<Integer> requiredClasses = new HashMapLongObject<Integer>();
+		private final SetLong requiredArrayClasses = new SetLong();
+		private final boolean[] requiredPrimitiveArrays = new boolean[IPrimitiveArray.Type.LONG + 1];
+
+		// 0 if the chunk has no object array
+		private long firstArrayAddress;
+		// 0 if compressed references are not detected within the chunk
+		private long compressedArrayAddress;
+		private long compressedPreviousArrayStart;
+		private long previousArrayStart;
+		private long previousArrayUncompressedEnd;
+	}
 }
@@ -13,14 +13,23 @@
 
 import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.collect.ArrayLong;
 import org.eclipse.mat.hprof.IHprofParserHandler.HeapObject;
 import org.eclipse.mat.hprof.ui.HprofPreferences;
 import org.eclipse.mat.hprof.ui.HprofPreferences.HprofStrictness;
+import org.eclipse.mat.parser.io.BlockCompressedFile;
 import org.eclipse.mat.parser.io.PositionInputStream;
 import org.eclipse.mat.parser.model.ClassImpl;
 import org.eclipse.mat.snapshot.model.FieldDescriptor;
@@ -32,14 +41,21 @@
 import org.eclipse.mat.util.MessageUtil;
 import org.eclipse.mat.util.SimpleMonitor;
 
+import blasd.apex.core.thread.ApexExecutorsHelper;
+
 /**
  * Parser used to read the hprof formatted heap dump
  */
 
 public class Pass2Parser extends AbstractParser {
+	private static final int CHUNK_BUFFER_SIZE = 64 * 1024;
+
 	private IHprofParserHandler handler;
 	private SimpleMonitor.Listener monitor;
 
+	// Not null while reading a chunk concurrently: the objects are then buffered instead of being added to the handler
+	private ParsedChunk parsedChunk;
+
 	public Pass2Parser(IHprofParserHandler handler,
 			SimpleMonitor.Listener monitor,
 			HprofPreferences.HprofStrictness strictnessPreference) {
@@ -49,18 +65,14 @@ public Pass2Parser(IHprofParserHandler handler,
 	}
 
 	public void read(File file, String dumpNrToRead) throws SnapshotException, IOException {
-		in = new PositionInputStream(new BufferedInputStream(new FileInputStream(file)));
+		in = new PositionInputStream(new BufferedInputStream(BlockCompressedFile.newInputStream(file)));
 
 		int currentDumpNr = 0;
 
 		try {
-			version = readVersion(in);
-			idSize = in.readInt();
-			if (idSize != 4 && idSize != 8)
-				throw new SnapshotException(Messages.Pass1Parser_Error_SupportedDumps);
-			in.skipBytes(8); // creation date
+			readHeader();
 
-			long fileSize = file.length();
+			long fileSize = BlockCompressedFile.length(file);
 			long curPos = in.position();
 
 			while (curPos < fileSize) {
@@ -110,13 +122,102 @@ public void read(File file, String dumpNrToRead) throws SnapshotException, IOExc
 		}
 	}
 
+	/**
+	 * Read the heap sub-records of given chunks with multiple threads. Each chunk is parsed by its own
+	 * {@link Pass2Parser}, then its objects are added to the handler by the calling thread, in the order of the file:
+	 * the handler receives exactly the same calls as with {@link #read(File, String)}.
+	 * 
+	 * @param heapChunkBounds
+	 *            successive [start, end[ pairs, as computed by {@link Pass1Parser#getHeapChunkBounds()}
+	 * @param nbThreads
+	 *            the number of threads parsing chunks concurrently
+	 */
+	public void read(File file, long[] heapChunkBounds, int nbThreads) throws SnapshotException, IOException {
+		in = new PositionInputStream(new BufferedInputStream(BlockCompressedFile.newInputStream(file)));
+		try {
+			readHeader();
+		} finally {
+			try {
+				in.close();
+			} catch (IOException ignore) {
+			}
+		}
+
+		// Chunks of a compressed dump are read from its decompressed content, sharing the cache of decompressed blocks
+		BlockCompressedFile compressedFile =
+				BlockCompressedFile.isBlockCompressed(file) ? BlockCompressedFile.open(file) : null;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ForkJoinPool pool = ApexExecutorsHelper.newForkJoinPool("mat-hprof-pass2", nbThreads);
+			try {
+				// Bound the number of parsed chunks waiting to be added to the handler
+				int maxPendingChunks = 2 * nbThreads;
+				Deque<Future<ParsedChunk>> pendingChunks = new ArrayDeque<>();
+
+				int nbChunks = heapChunkBounds.length / 2;
+				int nextChunk = 0;
+				while (nextChunk < nbChunks || !pendingChunks.isEmpty()) {
+					while (nextChunk < nbChunks && pendingChunks.size() < maxPendingChunks) {
+						long start = heapChunkBounds[2 * nextChunk];
+						long end = heapChunkBounds[2 * nextChunk + 1];
+						pendingChunks.add(pool
+								.submit(() -> readChunk(openChunk(channel, compressedFile, start, end), start, end)));
+						nextChunk++;
+					}
+
+					ParsedChunk chunk = getUnchecked(pendingChunks.poll());
+					for (int i = 0; i < chunk.objects.size(); i++) {
+						handler.addObject(chunk.objects.get(i), chunk.positions.get(i));
+					}
+
+					if (monitor.isProbablyCanceled())
+						throw new IProgressListener.OperationCanceledException();
+					monitor.totalWorkDone(chunk.end / 1000);
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+		} finally {
+			if (compressedFile != null) {
+				compressedFile.close();
+			}
+		}
+	}
+
+	private ParsedChunk readChunk(InputStream chunkStream, long start, long end) throws SnapshotException, IOException {
+		Pass2Parser chunkParser = new Pass2Parser(handler, monitor, strictnessPreference);
+		chunkParser.version = version;
+		chunkParser.idSize = idSize;
+		chunkParser.parsedChunk = new ParsedChunk(end);
+
+		chunkParser.in = new PositionInputStream(new BufferedInputStream(chunkStream, CHUNK_BUFFER_SIZE), start);
+		try {
+			chunkParser.readDumpSegments(end - start);
+		} finally {
+			try {
+				chunkParser.in.close();
+			} catch (IOException ignore) {
+			}
+		}
+
+		return chunkParser.parsedChunk;
+	}
+
+	private void readHeader() throws SnapshotException, IOException {
+		version = readVersion(in);
+		idSize = in.readInt();
+		if (idSize != 4 && idSize != 8)
+			throw new SnapshotException(Messages.Pass1Parser_Error_SupportedDumps);
+		in.skipBytes(8); // creation date
+	}
+
 	private void readDumpSegments(long length) throws SnapshotException, IOException {
 		long segmentStartPos = in.position();
 		long segmentsEndPos = segmentStartPos + length;
 
 		while (segmentStartPos < segmentsEndPos) {
 			long workDone = segmentStartPos / 1000;
-			if (this.monitor.getWorkDone() < workDone) {
+			// Progress is reported by the reading thread when reading chunks concurrently
+			if (parsedChunk == null && this.monitor.getWorkDone() < workDone) {
 				if (this.monitor.isProbablyCanceled())
 					throw new IProgressListener.OperationCanceledException();
 				this.monitor.totalWorkDone(workDone);
@@ -124,23 +225,6 @@ private void readDumpSegments(long length) throws SnapshotException, IOException
 
 			int segmentType = in.readUnsignedByte();
 			switch (segmentType) {
-			case Constants.DumpSegment.ROOT_UNKNOWN:
-			case Constants.DumpSegment.ROOT_STICKY_CLASS:
-			case Constants.DumpSegment.ROOT_MONITOR_USED:
-				in.skipBytes(idSize);
-				break;
-			case Constants.DumpSegment.ROOT_JNI_GLOBAL:
-				in.skipBytes(idSize * 2);
-				break;
-			case Constants.DumpSegment.ROOT_NATIVE_STACK:
-			case Constants.DumpSegment.ROOT_THREAD_BLOCK:
-				in.skipBytes(idSize + 4);
-				break;
-			case Constants.DumpSegment.ROOT_THREAD_OBJECT:
-			case Constants.DumpSegment.ROOT_JNI_LOCAL:
-			case Constants.DumpSegment.ROOT_JAVA_FRAME:
-				in.skipBytes(idSize + 8);
-				break;
 			case Constants.DumpSegment.CLASS_DUMP:
 				skipClassDump();
 				break;
@@ -154,32 +238,15 @@ private void readDumpSegments(long length) throws SnapshotException, IOException
 				readPrimitiveArrayDump(segmentStartPos);
 				break;
 			default:
-				throw new SnapshotException(MessageUtil
-						.format(Messages.Pass1Parser_Error_InvalidHeapDumpFile, segmentType, segmentStartPos));
+				if (!skipGCRoot(segmentType)) {
+					throw new SnapshotException(MessageUtil
+							.format(Messages.Pass1Parser_Error_InvalidHeapDumpFile, segmentType, segmentStartPos));
+				}
 			}
 			segmentStartPos = in.position();
 		}
 	}
 
-	private void skipClassDump() throws IOException {
-		in.skipBytes(7 * idSize + 8);
-
-		int constantPoolSize = in.readUnsignedShort();
-		for (int ii = 0; ii < constantPoolSize; ii++) {
-			in.skipBytes(2);
-			skipValue();
-		}
-
-		int numStaticFields = in.readUnsignedShort();
-		for (int i = 0; i < numStaticFields; i++) {
-			in.skipBytes(idSize);
-			skipValue();
-		}
-
-		int numInstanceFields = in.readUnsignedShort();
-		in.skipBytes((idSize + 1) * numInstanceFields);
-	}
-
 	private void readInstanceDump(long segmentStartPos) throws IOException {
 		long id = readID();
 		in.skipBytes(4);
@@ -235,7 +302,7 @@ private void readInstanceDump(long segmentStartPos) throws IOException {
 			}
 		}
 
-		handler.addObject(heapObject, segmentStartPos);
+		addObject(heapObject, segmentStartPos);
 	}
 
 	private void readObjectArrayDump(long segmentStartPos) throws IOException {
@@ -262,7 +329,7 @@ private void readObjectArrayDump(long segmentStartPos) throws IOException {
 				heapObject.references.add(refId);
 		}
 
-		handler.addObject(heapObject, segmentStartPos);
+		addObject(heapObject, segmentStartPos);
 	}
 
 	private void readPrimitiveArrayDump(long segmentStartPost) throws SnapshotException, IOException {
@@ -286,10 +353,36 @@ private void readPrimitiveArrayDump(long segmentStartPost) throws SnapshotExcept
 		heapObject.references.add(clazz.getObjectAddress());
 		heapObject.isArray = true;
 
-		handler.addObject(heapObject, segmentStartPost);
+		addObject(heapObject, segmentStartPost);
 
 		int elementSize = IPrimitiveArray.ELEMENT_SIZE[elementType];
 		in.skipBytes((long) elementSize * size);
 	}
 
+	private void addObject(HeapObject heapObject, long filePosition) throws IOException {
+		if (parsedChunk == null) {
+			handler.addObject(heapObject, filePosition);
+		} else {
+			// Resolve the references in this thread, as it is the most expensive part of .addObject
+			handler.prepareObject(heapObject);
+			// The raw references are not needed anymore: do not retain them until the chunk is added
+			heapObject.references = null;
+
+			parsedChunk.objects.add(heapObject);
+			parsedChunk.positions.add(filePosition);
+		}
+	}
+
+	/**
+	 * The objects parsed from a chunk, waiting to be added to the handler
+	 */
+	private static class ParsedChunk {
+		private final long end;
+		private final List<HeapObject> objects = new ArrayList<>();
+		private final ArrayLong positions = new ArrayLong();
+
+		private ParsedChunk(long end) {
+			this.end = end;
+		}
+	}
 }
@@ -47,7 +47,7 @@
 import org.eclipse.mat.parser.io.BitOutputStream;
 import org.eclipse.mat.util.IProgressListener;
 import org.eclipse.mat.util.MessageUtil;
-import org.roaringbitmap.FastRankRoaringBitmap;
+import org.roaringbitmap.longlong.FastRankRoaring64NavigableMap;
 import org.roaringbitmap.longlong.LongIterator;
 import org.roaringbitmap.longlong.Roaring64NavigableMap;
 import org.slf4j.Logger;
@@ -85,6 +85,15 @@ public static interface Identifier extends IIndexReader.IOne2LongIndex {
 
 		void add(long objectAddress);
 
+		/**
+		 * Add all the addresses of given identifier, typically filled concurrently by another thread
+		 */
+		default void addAll(Identifier other) {
+			for (IteratorLong it = other.iterator(); it.hasNext();) {
+				add(it.next());
+			}
+		}
+
 		IteratorLong iterator();
 
 		void sort();
@@ -205,22 +214,33 @@ public static class RoaringIdentifier implements Identifier {
 		RawIdentifier guarantee;
 
 		boolean addedAfterSort = false;
-		Long2IntMap reverseCache = new Long2IntOpenHashMap(10000);
 
-		{
-			reverseCache.defaultReturnValue(-1);
-		}
+		// .reverse may be called concurrently once sorted (e.g. by Pass2Parser): each thread has its own cache. The
+		// ThreadLocal is replaced on .sort as previously cached ranks may have been shifted by later .add
+		ThreadLocal<Long2IntMap> reverseCache = makeReverseCache();
 
-		@Override
-		public void add(long id) {
-			addedAfterSort = true;
+		protected static ThreadLocal<Long2IntMap> makeReverseCache() {
+			return ThreadLocal.withInitial(() -> {
+				Long2IntMap cache = new Long2IntOpenHashMap(10000);
+				cache.defaultReturnValue(-1);
+				return cache;
+			});
+		}
 
+		protected void ensureIdentifiers() {
 			if (identifiers == null) {
-				identifiers = new Roaring64NavigableMap(true, () -> new FastRankRoaringBitmap());
+				identifiers = new FastRankRoaring64NavigableMap(true);
 				if (Boolean.getBoolean("mat.assert")) {
 					guarantee = new RawIdentifier();
 				}
 			}
+		}
+
+		@Override
+		public void add(long id) {
+			addedAfterSort = true;
+
+			ensureIdentifiers();
 
 			identifiers.addLong(id);
 
@@ -229,6 +249,33 @@ public void add(long id) {
 			}
 		}
 
+		@Override
+		public void addAll(Identifier other) {
+			if (!(other instanceof RoaringIdentifier)) {
+				Identifier.super.addAll(other);
+				return;
+			}
+
+			Roaring64NavigableMap otherIdentifiers = ((RoaringIdentifier) other).identifiers;
+			if (otherIdentifiers == null) {
+				// Nothing has been added to the other identifier
+				return;
+			}
+
+			addedAfterSort = true;
+
+			ensureIdentifiers();
+
+			// Merge the containers at once instead of adding the addresses one by one
+			identifiers.or(otherIdentifiers);
+
+			if (guarantee != null) {
+				for (IteratorLong it = other.iterator(); it.hasNext();) {
+					guarantee.add(it.next());
+				}
+			}
+		}
+
 		@Override
 		public int size() {
 			long cardinality = identifiers.getLongCardinality();
@@ -254,6 +301,7 @@ public long get(int index) {
 
 		@Override
 		public int reverse(long val) {
+			Long2IntMap reverseCache = this.reverseCache.get();
 			int reverse = reverseCache.get(val);
 			if (reverse >= 0) {
 				return reverse;
@@ -380,6 +428,12 @@ public void sort() {
 					ApexLogHelper.getNiceMemory(bytesAfter),
 					ApexLogHelper.getNiceMemory(IApexMemoryConstants.LONG * identifiers.getLongCardinality()));
 
+			if (identifiers instanceof FastRankRoaring64NavigableMap) {
+				// Enable concurrent .reverse and .get, as ranks are not lazily computed anymore
+				((FastRankRoaring64NavigableMap) identifiers).computeCumulatedCardinalities();
+			}
+			reverseCache = makeReverseCache();
+
 			addedAfterSort = false;
 
 			// no-op as Roaring is already sorted
@@ -922,18 +976,32 @@ public void log(Identifier identifier, int index, ArrayLong references) throws I
 		 * @since 1.2
 		 */
 		public void log(IIndexReader.IOne2LongIndex identifier, int index, ArrayLong references) throws IOException {
-			// remove duplicates and convert to identifiers
-			// keep pseudo reference as first one
+			int[] objectIds = new int[references.size()];
+			int length = mapReferences(identifier, references, objectIds);
+
+			this.set(index, objectIds, 0, length);
+		}
 
+		/**
+		 * Remove duplicates and convert the addresses to object ids, keeping the pseudo reference (i.e. the first one)
+		 * as first one. This does not write anything, hence it can be called concurrently as long as the identifier
+		 * supports concurrent reads
+		 * 
+		 * @param references
+		 *            the referenced addresses. It is sorted in place
+		 * @param objectIds
+		 *            receives the object ids. Its length has to be at least the number of references
+		 * @return the number of object ids written in objectIds
+		 */
+		public static int mapReferences(IIndexReader.IOne2LongIndex identifier, ArrayLong references, int[] objectIds) {
 			final long pseudo = references.firstElement();
 
 			references.sort();
 
-			int[] objectIds = new int[references.size()];
 			int length = 1;
 
 			long current = 0, last = references.firstElement() - 1;
-			for (int ii = 0; ii < objectIds.length; ii++) {
+			for (int ii = 0; ii < references.size(); ii++) {
 				current = references.get(ii);
 				if (last != current) {
 					int objectId = identifier.reverse(current);
@@ -948,7 +1016,7 @@ public void log(IIndexReader.IOne2LongIndex identifier, int index, ArrayLong ref
 				last = current;
 			}
 
-			this.set(index, objectIds, 0, length);
+			return length;
 		}
 
 		/**
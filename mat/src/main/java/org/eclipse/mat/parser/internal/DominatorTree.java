@@ -12,8 +12,14 @@
 package org.eclipse.mat.parser.internal;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
 
 import org.eclipse.mat.SnapshotException;
 import org.eclipse.mat.collect.ArrayIntCompressed;
@@ -28,16 +34,43 @@
 import org.eclipse.mat.util.IProgressListener;
 import org.eclipse.mat.util.SimpleMonitor;
 
+import blasd.apex.core.thread.ApexExecutorsHelper;
+
 public class DominatorTree {
+	/**
+	 * The snapshot argument selecting the algorithm computing the dominator tree
+	 */
+	public static final String ARG_ALGORITHM = "dominator_algorithm";
+
+	/**
+	 * The default algorithm: single-threaded Lengauer-Tarjan
+	 */
+	public static final String ALGORITHM_LENGAUER_TARJAN = "lengauer_tarjan";
+
+	/**
+	 * Iterative dataflow (Cooper, Harvey and Kennedy) with each pass over the vertices done by multiple threads. The
+	 * retained sizes are also aggregated with multiple threads
+	 */
+	public static final String ALGORITHM_PARALLEL_ITERATIVE = "parallel_iterative";
 
 	public static void calculate(SnapshotImpl snapshot, IProgressListener listener)
 			throws SnapshotException, IOException {
-		new Calculator(snapshot, listener).compute();
+		Serializable algorithm = snapshot.getSnapshotInfo().getProperty(ARG_ALGORITHM);
+
+		if (ALGORITHM_PARALLEL_ITERATIVE.equals(algorithm)) {
+			new Calculator(snapshot, listener, ApexExecutorsHelper.getDefaultNbThreads()).compute();
+		} else {
+			new Calculator(snapshot, listener).compute();
+		}
 	}
 
 	static class Calculator {
 		SnapshotImpl snapshot;
 		SimpleMonitor monitor;
+		IProgressListener progressListener0;
+		// If 0, dominators are computed by Lengauer-Tarjan. Else by the parallel iterative algorithm with this many
+		// threads
+		final int nbThreads;
 		IIndexReader.IOne2ManyIndex inboundIndex;
 		IIndexReader.IOne2ManyIndex outboundIndex;
 
@@ -54,13 +87,19 @@ static class Calculator {
 		private ArrayIntCompressed compressedVertex;
 		private int[] label;
 		private int[] semi;
+		// Computed along the dominators by the parallel algorithm. Else computed by FlatDominatorTree
+		private long[] totalSizes;
 
 		private static int ROOT_VALUE = -1;
 		private static int[] ROOT_VALUE_ARR = new int[] { ROOT_VALUE };
 
 		public Calculator(SnapshotImpl snapshot, IProgressListener listener) throws SnapshotException {
+			this(snapshot, listener, 0);
+		}
 
+		public Calculator(SnapshotImpl snapshot, IProgressListener listener, int nbThreads) throws SnapshotException {
 			this.snapshot = snapshot;
+			this.nbThreads = nbThreads;
 			inboundIndex = snapshot.getIndexManager().inbound();
 			outboundIndex = snapshot.getIndexManager().outbound();
 			this.monitor = new SimpleMonitor(Messages.DominatorTree_CalculatingDominatorTree,
@@ -84,8 +123,11 @@ public Calculator(SnapshotImpl snapshot, IProgressListener listener) throws Snap
 			n = snapshot.getSnapshotInfo().getNumberOfObjects() + 1;
 			r = 1;
 
-			anchestor = new int[n + 1];
-			label = new int[n + 1];
+			if (nbThreads == 0) {
+				// Only Lengauer-Tarjan needs the forest
+				anchestor = new int[n + 1];
+				label = new int[n + 1];
+			}
 			semi = new int[n + 1];
 
 			/*
@@ -103,7 +145,7 @@ public Calculator(SnapshotImpl snapshot, IProgressListener listener) throws Snap
 		}
 
 		public void compute() throws IOException, SnapshotException, IProgressListener.OperationCanceledException {
-			IProgressListener progressListener0 = this.monitor.nextMonitor();
+			progressListener0 = this.monitor.nextMonitor();
 			progressListener0.beginTask(Messages.DominatorTree_DominatorTreeCalculation, 3);
 
 			n = 0;
@@ -115,6 +157,19 @@ public void compute() throws IOException, SnapshotException, IProgressListener.O
 
 			outboundIndex.unload();
 
+			if (nbThreads == 0) {
+				computeDominatorsLengauerTarjan();
+			} else {
+				computeDominatorsParallel();
+			}
+
+			if (progressListener0.isCanceled())
+				throw new IProgressListener.OperationCanceledException();
+
+			writeDominatorIndexes();
+		}
+
+		private void computeDominatorsLengauerTarjan() throws IOException {
 			IProgressListener progressListener = this.monitor.nextMonitor();
 			progressListener.beginTask(Messages.DominatorTree_ComputingDominators, n / 1000);
 
@@ -177,10 +232,176 @@ public void compute() throws IOException, SnapshotException, IProgressListener.O
 			compressedVertex = null;
 			compressedParent = null;
 			inboundIndex.unload();
+		}
 
-			if (progressListener0.isCanceled())
+		/**
+		 * Compute the dominators with the iterative algorithm from "A Simple, Fast Dominance Algorithm" (Cooper, Harvey
+		 * and Kennedy), where each pass over the vertices is split between threads. Vertices are identified by their
+		 * preorder number, as a dominator is an ancestor in the DFS tree: it has a smaller preorder number.
+		 * 
+		 * Each immediate dominator is initialized with the parent in the DFS tree, which is dominated by the actual
+		 * immediate dominator. Then dominators only move up in the DFS tree, and always have a smaller preorder number.
+		 * Immediate dominators are read and written concurrently: a vertex may be updated given stale dominators of its
+		 * predecessors. This does not prevent convergence, and the last pass, which changes nothing, guarantees all
+		 * vertices are consistent with their predecessors.
+		 * 
+		 * The retained sizes are computed along, by accumulating the sizes from the last vertex in preorder.
+		 */
+		private void computeDominatorsParallel() throws SnapshotException, IOException {
+			IProgressListener progressListener = this.monitor.nextMonitor();
+			progressListener.beginTask(Messages.DominatorTree_ComputingDominators, n / 1000);
+
+			int nbVertices = n;
+
+			// The immediate dominator of each vertex, by preorder number. The root is its own dominator
+			AtomicIntegerArray idoms = new AtomicIntegerArray(nbVertices + 1);
+			idoms.set(1, 1);
+
+			ForkJoinPool pool = ApexExecutorsHelper.newForkJoinPool("mat-dominator", nbThreads);
+			try {
+				invoke(pool, () -> {
+					IntStream.rangeClosed(2, nbVertices).parallel().forEach(
+							i -> idoms.set(i, semi[compressedParent.get(compressedVertex.get(i))]));
+					return null;
+				});
+
+				boolean changed = true;
+				boolean firstPass = true;
+				while (changed) {
+					changed = invoke(pool,
+							() -> IntStream.rangeClosed(2, nbVertices)
+									.parallel()
+									.map(i -> updateImmediateDominator(idoms, i) ? 1 : 0)
+									.sum() > 0);
+
+					if (progressListener.isCanceled())
+						throw new IProgressListener.OperationCanceledException();
+					// The number of passes is not known in advance: report the whole work after the first pass
+					if (firstPass) {
+						progressListener.worked(nbVertices / 1000);
+						firstPass = false;
+					}
+				}
+				progressListener.done();
+
+				IProgressListener retainedListener = this.monitor.nextMonitor();
+				retainedListener.beginTask(Messages.DominatorTree_CalculateRetainedSizes, 2);
+
+				// Own sizes are read from indexes: fetch them concurrently
+				long[] preorderSizes = new long[nbVertices + 1];
+				invoke(pool, () -> {
+					IntStream.rangeClosed(2, nbVertices).parallel().forEach(i -> {
+						try {
+							preorderSizes[i] = snapshot.getHeapSize(compressedVertex.get(i) - 2);
+						} catch (SnapshotException e) {
+							throw new IllegalStateException(e);
+						}
+					});
+					return null;
+				});
+				retainedListener.worked(1);
+
+				// A vertex is visited after all the vertices it dominates
+				for (int i = nbVertices; i >= 2; i--) {
+					preorderSizes[idoms.get(i)] += preorderSizes[i];
+				}
+
+				int numberOfObjects = snapshot.getSnapshotInfo().getNumberOfObjects();
+				IndexWriter.LongIndexCollector retained = new IndexWriter.LongIndexCollector(numberOfObjects,
+						IndexWriter.mostSignificantBit(snapshot.getSnapshotInfo().getUsedHeapSize()));
+
+				dom = new int[numberOfObjects + 2];
+				totalSizes = new long[numberOfObjects + 2];
+				totalSizes[r] = preorderSizes[1];
+				for (int i = 2; i <= nbVertices; i++) {
+					int w = compressedVertex.get(i);
+					dom[w] = compressedVertex.get(idoms.get(i));
+					totalSizes[w] = preorderSizes[i];
+					retained.set(w - 2, preorderSizes[i]);
+				}
+				dom[r] = 0;
+
+				snapshot.getIndexManager().setReader(Index.O2RETAINED,
+						retained.writeTo(
+								IndexManager.Index.O2RETAINED.getFile(snapshot.getSnapshotInfo().getPrefix())));
+				retainedListener.done();
+			} finally {
+				pool.shutdownNow();
+			}
+
+			semi = null;
+			compressedVertex = null;
+			compressedParent = null;
+			inboundIndex.unload();
+		}
+
+		/**
+		 * 
+		 * @param i
+		 *            the preorder number of a vertex
+		 * @return true if the immediate dominator of this vertex has changed
+		 */
+		private boolean updateImmediateDominator(AtomicIntegerArray idoms, int i) {
+			int w = compressedVertex.get(i);
+
+			// The parent in the DFS tree is one of the predecessors
+			int newIdom = semi[compressedParent.get(w)];
+			for (int v : getPredecessors(w)) {
+				v += 2;
+				if (v < 0)
+					continue;
+
+				int predecessor = semi[v];
+				// Skip the predecessors not reached by the DFS
+				if (predecessor == 0)
+					continue;
+
+				newIdom = intersect(idoms, predecessor, newIdom);
+			}
+
+			if (newIdom != idoms.get(i)) {
+				idoms.set(i, newIdom);
+				return true;
+			} else {
+				return false;
+			}
+		}
+
+		/**
+		 * 
+		 * @return the nearest common ancestor of both vertices in the current dominator tree
+		 */
+		private int intersect(AtomicIntegerArray idoms, int finger1, int finger2) {
+			while (finger1 != finger2) {
+				while (finger1 > finger2) {
+					finger1 = idoms.get(finger1);
+				}
+				while (finger2 > finger1) {
+					finger2 = idoms.get(finger2);
+				}
+			}
+			return finger1;
+		}
+
+		private <T> T invoke(ForkJoinPool pool, Callable<T> task) throws SnapshotException {
+			try {
+				return pool.submit(task).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
 				throw new IProgressListener.OperationCanceledException();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IllegalStateException
+						&& e.getCause().getCause() instanceof SnapshotException) {
+					throw (SnapshotException) e.getCause().getCause();
+				} else if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				} else {
+					throw new SnapshotException(e.getCause());
+				}
+			}
+		}
 
+		private void writeDominatorIndexes() throws IOException, SnapshotException {
 			// pre-condition for index writing:
 			// retainedSetIdx is still sorted by object id
 			snapshot.getIndexManager().setReader(IndexManager.Index.DOMINATOR,
@@ -212,7 +433,8 @@ public int next() {
 			ArrayUtils.sort(dom, objectIds, 2, dom.length - 2);
 			progressListener0.worked(1);
 
-			FlatDominatorTree tree = new FlatDominatorTree(snapshot, dom, objectIds, ROOT_VALUE);
+			FlatDominatorTree tree = new FlatDominatorTree(snapshot, dom, objectIds, ROOT_VALUE, totalSizes);
+			totalSizes = null;
 
 			if (progressListener0.isCanceled())
 				throw new IProgressListener.OperationCanceledException();
@@ -257,8 +479,10 @@ private void dfs(int root) throws UnsupportedOperationException {
 					n = n + 1;
 					semi[v] = n;
 					vertex[n] = v;
-					label[v] = v;
-					anchestor[v] = 0;
+					if (label != null) {
+						label[v] = v;
+						anchestor[v] = 0;
+					}
 				}
 
 				if (currentSuccessor < successors.length) {
@@ -400,14 +624,22 @@ public class FlatDominatorTree {
 			long[] tempLongArray = new long[TEMP_ARR_LENGTH];
 			int[] tempIntArray = new int[TEMP_ARR_LENGTH];
 
-			FlatDominatorTree(SnapshotImpl dump, int[] dom, int[] elements, int root)
+			/**
+			 * @param ts
+			 *            the retained sizes indexed by object id + 2, if already computed and written in the O2RETAINED
+			 *            index. Else null
+			 */
+			FlatDominatorTree(SnapshotImpl dump, int[] dom, int[] elements, int root, long[] ts)
 					throws SnapshotException, IOException {
 				this.dump = dump;
 				this.dom = dom;
 				this.elements = elements;
-				this.ts = new long[dom.length];
-				calculateTotalSizesIterative(root);
-
+				if (ts == null) {
+					this.ts = new long[dom.length];
+					calculateTotalSizesIterative(root);
+				} else {
+					this.ts = ts;
+				}
 			}
 
 			public SuccessorsEnum getSuccessorsEnum(int i) {
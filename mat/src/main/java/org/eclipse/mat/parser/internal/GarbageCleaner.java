@@ -13,11 +13,19 @@
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
 
 import org.eclipse.mat.collect.ArrayInt;
 import org.eclipse.mat.collect.BitField;
@@ -41,7 +49,17 @@
 import org.eclipse.mat.util.MessageUtil;
 import org.eclipse.mat.util.SilentProgressListener;
 
+import blasd.apex.core.thread.ApexExecutorsHelper;
+
 /* package */class GarbageCleaner {
+	// Indexes are re-mapped concurrently by ranges of this many old object ids
+	private static final int RANGE_SIZE = 64 * 1024;
+
+	/**
+	 * The snapshot argument setting the number of threads re-mapping the indexes. Defaults to
+	 * {@link ApexExecutorsHelper#getDefaultNbThreads()}
+	 */
+	public static final String ARG_THREADS = "garbage_cleaner_threads";
 
 	public static int[] clean(final PreliminaryIndexImpl idx,
 			final SnapshotImplBuilder builder,
@@ -49,6 +67,9 @@ public static int[] clean(final PreliminaryIndexImpl idx,
 			IProgressListener listener) throws IOException {
 		IndexManager idxManager = new IndexManager();
 
+		String nbThreads = arguments.get(ARG_THREADS);
+		ForkJoinPool pool = ApexExecutorsHelper.newForkJoinPool("mat-garbage-cleaner",
+				nbThreads == null ? ApexExecutorsHelper.getDefaultNbThreads() : Integer.parseInt(nbThreads));
 		try {
 			listener.beginTask(Messages.GarbageCleaner_RemovingUnreachableObjects, 11);
 			listener.subTask(Messages.GarbageCleaner_SearchingForUnreachableObjects);
@@ -66,36 +87,20 @@ public static int[] clean(final PreliminaryIndexImpl idx,
 			HashMapIntObject<ClassImpl> classesById = idx.classesById;
 
 			/*
-			 * START - marking objects use ObjectMarker to mark the reachable objects if more than 1 CPUs are available
-			 * - use multithreading
+			 * START - marking objects use ObjectMarker to mark the reachable objects, with a work-stealing pool sized
+			 * for all available cores
 			 */
+			long phaseStart = System.currentTimeMillis();
 			ObjectMarker marker =
 					new ObjectMarker(newRoots, reachable, preOutbound, new SilentProgressListener(listener));
-			int numProcessors = Runtime.getRuntime().availableProcessors();
-			if (numProcessors > 1) {
-				try {
-					marker.markMultiThreaded(numProcessors);
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-					IOException ioe = new IOException(e.getMessage());
-					ioe.initCause(e);
-					throw ioe;
-				}
-
-				// find the number of new objects. It's not returned by marker
-				for (boolean b : reachable)
-					if (b)
-						newNoOfObjects++;
-
-			} else {
-				try {
-					newNoOfObjects = marker.markSingleThreaded();
-				} catch (OperationCanceledException e) {
-					// $JL-EXC$
-					return null;
-				}
+			try {
+				newNoOfObjects = marker.markMultiThreaded(pool);
+			} catch (OperationCanceledException e) {
+				// $JL-EXC$
+				return null;
 			}
 			marker = null;
+			reportDuration(listener, Messages.GarbageCleaner_SearchingForUnreachableObjects, phaseStart);
 			/* END - marking objects */
 
 			// check if unreachable objects exist, then either mark as GC root
@@ -119,20 +124,46 @@ public static int[] clean(final PreliminaryIndexImpl idx,
 			listener.subTask(Messages.GarbageCleaner_ReIndexingObjects);
 
 			// create re-index map
+			phaseStart = System.currentTimeMillis();
 			final int[] map = new int[oldNoOfObjects];
 			final long[] id2a = new long[newNoOfObjects];
 
+			// The new id of the first reachable object of each range
+			int nbRanges = (oldNoOfObjects + RANGE_SIZE - 1) / RANGE_SIZE;
+			final int[] rangeToNewId = new int[nbRanges + 1];
+			final boolean[] reachableF = reachable;
+			invoke(pool, () -> IntStream.range(0, nbRanges).parallel().forEach(range -> {
+				int nbReachable = 0;
+				for (int ii = range * RANGE_SIZE; ii < Math.min(oldNoOfObjects, (range + 1) * RANGE_SIZE); ii++) {
+					if (reachableF[ii])
+						nbReachable++;
+				}
+				rangeToNewId[range + 1] = nbReachable;
+			}));
+			for (int range = 0; range < nbRanges; range++) {
+				rangeToNewId[range + 1] += rangeToNewId[range];
+			}
+
+			final IOne2LongIndex preIdentifiers = identifiers;
+			invoke(pool, () -> IntStream.range(0, nbRanges).parallel().forEach(range -> {
+				int jj = rangeToNewId[range];
+				for (int ii = range * RANGE_SIZE; ii < Math.min(oldNoOfObjects, (range + 1) * RANGE_SIZE); ii++) {
+					if (reachableF[ii]) {
+						map[ii] = jj;
+						id2a[jj++] = preIdentifiers.get(ii);
+					} else {
+						map[ii] = -1;
+					}
+				}
+			}));
+
 			List<ClassImpl> classes2remove = new ArrayList<ClassImpl>();
 
 			final IOne2SizeIndex preA2size = idx.array2size;
 			long memFree = 0;
-			for (int ii = 0, jj = 0; ii < oldNoOfObjects; ii++) {
-				if (reachable[ii]) {
-					map[ii] = jj;
-					id2a[jj++] = identifiers.get(ii);
-				} else {
-					map[ii] = -1;
-
+			// ClassImpl are not thread-safe: unreachable objects are removed from their classes by a single thread
+			for (int ii = 0; newNoOfObjects < oldNoOfObjects && ii < oldNoOfObjects; ii++) {
+				if (!reachable[ii]) {
 					int classId = object2classId.get(ii);
 					ClassImpl clazz = classesById.get(classId);
 
@@ -176,6 +207,7 @@ public static int[] clean(final PreliminaryIndexImpl idx,
 			}
 
 			reachable = null; // early gc...
+			reportDuration(listener, Messages.GarbageCleaner_ReIndexingObjects, phaseStart);
 
 			identifiers.close();
 			identifiers.delete();
@@ -185,6 +217,7 @@ public static int[] clean(final PreliminaryIndexImpl idx,
 				throw new IProgressListener.OperationCanceledException();
 			listener.worked(1); // 4
 			listener.subTask(Messages.GarbageCleaner_ReIndexingClasses);
+			phaseStart = System.currentTimeMillis();
 
 			// fix classes
 			HashMapIntObject<ClassImpl> classesByNewId = new HashMapIntObject<ClassImpl>(classesById.size());
@@ -201,6 +234,7 @@ public static int[] clean(final PreliminaryIndexImpl idx,
 			}
 
 			idx.getSnapshotInfo().setNumberOfClasses(classesByNewId.size());
+			reportDuration(listener, Messages.GarbageCleaner_ReIndexingClasses, phaseStart);
 
 			if (listener.isCanceled())
 				throw new IProgressListener.OperationCanceledException();
@@ -212,7 +246,11 @@ public static int[] clean(final PreliminaryIndexImpl idx,
 
 			File indexFile = Index.IDENTIFIER.getFile(idx.snapshotInfo.getPrefix());
 			listener.subTask(MessageUtil.format(Messages.GarbageCleaner_Writing, indexFile.getAbsolutePath()));
+			phaseStart = System.currentTimeMillis();
 			idxManager.setReader(Index.IDENTIFIER, new IndexWriter.LongIndexStreamer().writeTo(indexFile, id2a));
+			reportDuration(listener,
+					MessageUtil.format(Messages.GarbageCleaner_Writing, indexFile.getName()),
+					phaseStart);
 
 			if (listener.isCanceled())
 				throw new IProgressListener.OperationCanceledException();
@@ -224,20 +262,13 @@ public static int[] clean(final PreliminaryIndexImpl idx,
 
 			indexFile = Index.O2CLASS.getFile(idx.snapshotInfo.getPrefix());
 			listener.subTask(MessageUtil.format(Messages.GarbageCleaner_Writing, indexFile.getAbsolutePath()));
+			phaseStart = System.currentTimeMillis();
+			final IOne2OneIndex preObject2classId = object2classId;
 			idxManager.setReader(Index.O2CLASS,
-					new IndexWriter.IntIndexStreamer().writeTo(indexFile, new NewObjectIntIterator() {
-						@Override
-						int doGetNextInt(int index) {
-							return map[idx.object2classId.get(nextIndex)];
-							// return
-							// map[object2classId.get(nextIndex)];
-						}
-
-						@Override
-						int[] getMap() {
-							return map;
-						}
-					}));
+					remapTo(indexFile, pool, map, ii -> map[preObject2classId.get(ii)], null));
+			reportDuration(listener,
+					MessageUtil.format(Messages.GarbageCleaner_Writing, indexFile.getName()),
+					phaseStart);
 
 			object2classId.close();
 			object2classId.delete();
@@ -254,29 +285,15 @@ int[] getMap() {
 			indexFile = Index.A2SIZE.getFile(idx.snapshotInfo.getPrefix());
 			listener.subTask(
 					MessageUtil.format(Messages.GarbageCleaner_Writing, new Object[] { indexFile.getAbsolutePath() }));
+			phaseStart = System.currentTimeMillis();
+			// Get the compressed size, 0 means 0
 			final BitField arrayObjects = new BitField(newNoOfObjects);
-			// arrayObjects
-			IOne2OneIndex newIdx = new IndexWriter.IntIndexStreamer().writeTo(indexFile, new NewObjectIntIterator() {
-				IOne2SizeIndex a2size = preA2size;
-				int newIndex = 0;
-
-				@Override
-				int doGetNextInt(int index) {
-					int size = a2size.get(nextIndex);
-					// Get the compressed size, 0 means 0
-					if (size != 0)
-						arrayObjects.set(newIndex);
-					newIndex++;
-					return size;
-				}
-
-				@Override
-				int[] getMap() {
-					return map;
-				}
-			});
+			IOne2OneIndex newIdx = remapTo(indexFile, pool, map, ii -> preA2size.get(ii), arrayObjects);
 
 			idxManager.setReader(Index.A2SIZE, new SizeIndexReader(newIdx));
+			reportDuration(listener,
+					MessageUtil.format(Messages.GarbageCleaner_Writing, indexFile.getName()),
+					phaseStart);
 
 			preA2size.close();
 			preA2size.delete();
@@ -296,24 +313,34 @@ int[] getMap() {
 			IndexWriter.InboundWriter w_in = new IndexWriter.InboundWriter(newNoOfObjects,
 					IndexManager.Index.INBOUND.getFile(idx.snapshotInfo.getPrefix()));
 
-			for (int ii = 0; ii < oldNoOfObjects; ii++) {
-				int k = map[ii];
-				if (k < 0)
+			phaseStart = System.currentTimeMillis();
+
+			// Ranges are re-mapped concurrently, but logged in order as the writers are sequential
+			final IOne2ManyIndex preOutboundF = preOutbound;
+			int maxPendingRanges = 2 * pool.getParallelism();
+			Deque<Future<int[][]>> pendingRanges = new ArrayDeque<>();
+			int loggedRanges = 0;
+			for (int range = 0; range < nbRanges || !pendingRanges.isEmpty();) {
+				if (range < nbRanges && pendingRanges.size() < maxPendingRanges) {
+					int rangeStart = range * RANGE_SIZE;
+					int rangeEnd = Math.min(oldNoOfObjects, rangeStart + RANGE_SIZE);
+					pendingRanges.add(pool.submit(() -> remapOutbound(preOutboundF, map, rangeStart, rangeEnd)));
+					range++;
 					continue;
+				}
 
-				int[] a = preOutbound.get(ii);
-				int[] tl = new int[a.length];
-				for (int jj = 0; jj < a.length; jj++) {
-					int t = map[a[jj]];
+				// Reachable objects of a range have consecutive new ids
+				int k = rangeToNewId[loggedRanges++];
+				for (int[] tl : getUnchecked(pendingRanges.poll())) {
+					for (int jj = 0; jj < tl.length; jj++) {
+						w_in.log(tl[jj], k, jj == 0);
+					}
 
-					/* No check if the referenced objects are alive */
-					/* The garbage can't be reached from a live object */
-					// removed if (t >= 0) ...
-					tl[jj] = t;
-					w_in.log(t, k, jj == 0);
+					w_out.log(k++, tl);
 				}
 
-				w_out.log(k, tl);
+				if (listener.isCanceled())
+					break;
 			}
 
 			preOutbound.close();
@@ -326,11 +353,16 @@ int[] getMap() {
 				throw new IProgressListener.OperationCanceledException();
 			}
 			listener.worked(1); // 10
+			reportDuration(listener, Messages.GarbageCleaner_ReIndexingOutboundIndex, phaseStart);
 
 			listener.subTask(
 					MessageUtil.format(Messages.GarbageCleaner_Writing, w_in.getIndexFile().getAbsolutePath()));
 
+			phaseStart = System.currentTimeMillis();
 			idxManager.setReader(Index.INBOUND, w_in.flush(listener, new KeyWriterImpl(classesByNewId)));
+			reportDuration(listener,
+					MessageUtil.format(Messages.GarbageCleaner_Writing, w_in.getIndexFile().getName()),
+					phaseStart);
 			w_in = null;
 			if (listener.isCanceled()) {
 				w_out.cancel();
@@ -341,7 +373,11 @@ int[] getMap() {
 
 			listener.subTask(MessageUtil.format(Messages.GarbageCleaner_Writing,
 					new Object[] { w_out.getIndexFile().getAbsolutePath() }));
+			phaseStart = System.currentTimeMillis();
 			idxManager.setReader(Index.OUTBOUND, w_out.flush());
+			reportDuration(listener,
+					MessageUtil.format(Messages.GarbageCleaner_Writing, w_out.getIndexFile().getName()),
+					phaseStart);
 			w_out = null;
 			if (listener.isCanceled())
 				throw new IProgressListener.OperationCanceledException();
@@ -372,6 +408,8 @@ int[] getMap() {
 
 			return map;
 		} finally {
+			pool.shutdownNow();
+
 			// delete all temporary indices
 			idx.delete();
 
@@ -381,6 +419,123 @@ int[] getMap() {
 		}
 	}
 
+	private static void reportDuration(IProgressListener listener, String phase, long phaseStart) {
+		listener.sendUserMessage(Severity.INFO,
+				MessageUtil
+						.format(Messages.GarbageCleaner_PhaseDuration, phase, System.currentTimeMillis() - phaseStart),
+				null);
+	}
+
+	/**
+	 * Ranges are re-mapped concurrently, but streamed in order in the index: only the pending ranges are in memory, not
+	 * the values of all reachable objects
+	 * 
+	 * @param oldIdToValue
+	 *            computes the value of a reachable object given its old id. It is called concurrently
+	 * @param nonZero
+	 *            if not null, the new ids of the objects with a non-zero value are set in this {@link BitField}
+	 * @return the index of the values of reachable objects, indexed by their new id
+	 */
+	private static IOne2OneIndex remapTo(File indexFile,
+			ForkJoinPool pool,
+			int[] map,
+			IntUnaryOperator oldIdToValue,
+			BitField nonZero) throws IOException {
+		int nbRanges = (map.length + RANGE_SIZE - 1) / RANGE_SIZE;
+		int maxPendingRanges = 2 * pool.getParallelism();
+
+		return new IndexWriter.IntIndexStreamer().writeTo(indexFile, new IteratorInt() {
+			final Deque<ForkJoinTask<int[]>> pendingRanges = new ArrayDeque<>();
+			int nextRange = 0;
+
+			int[] values = new int[0];
+			int nextValue = 0;
+			int newId = 0;
+
+			@Override
+			public boolean hasNext() {
+				while (nextValue == values.length) {
+					while (nextRange < nbRanges && pendingRanges.size() < maxPendingRanges) {
+						int rangeStart = nextRange++ * RANGE_SIZE;
+						int rangeEnd = Math.min(map.length, rangeStart + RANGE_SIZE);
+						pendingRanges.add(pool.submit(() -> remapRange(map, rangeStart, rangeEnd, oldIdToValue)));
+					}
+
+					if (pendingRanges.isEmpty())
+						return false;
+
+					values = pendingRanges.poll().join();
+					nextValue = 0;
+				}
+				return true;
+			}
+
+			@Override
+			public int next() {
+				int value = values[nextValue++];
+				if (nonZero != null && value != 0)
+					nonZero.set(newId);
+				newId++;
+				return value;
+			}
+		});
+	}
+
+	/**
+	 * 
+	 * @return the values of the reachable objects of the range, ordered by their new id
+	 */
+	private static int[] remapRange(int[] map, int rangeStart, int rangeEnd, IntUnaryOperator oldIdToValue) {
+		ArrayInt values = new ArrayInt();
+		for (int ii = rangeStart; ii < rangeEnd; ii++) {
+			if (map[ii] >= 0)
+				values.add(oldIdToValue.applyAsInt(ii));
+		}
+		return values.toArray();
+	}
+
+	/**
+	 * 
+	 * @return for each reachable object of the range, the new ids of its outbound references
+	 */
+	private static int[][] remapOutbound(IOne2ManyIndex preOutbound, int[] map, int rangeStart, int rangeEnd) {
+		ArrayList<int[]> remapped = new ArrayList<>();
+		for (int ii = rangeStart; ii < rangeEnd; ii++) {
+			if (map[ii] < 0)
+				continue;
+
+			int[] a = preOutbound.get(ii);
+			int[] tl = new int[a.length];
+			for (int jj = 0; jj < a.length; jj++) {
+				/* No check if the referenced objects are alive */
+				/* The garbage can't be reached from a live object */
+				// removed if (t >= 0) ...
+				tl[jj] = map[a[jj]];
+			}
+			remapped.add(tl);
+		}
+		return remapped.toArray(new int[remapped.size()][]);
+	}
+
+	private static void invoke(ForkJoinPool pool, Runnable task) throws IOException {
+		getUnchecked(pool.submit(task));
+	}
+
+	private static <T> T getUnchecked(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IProgressListener.OperationCanceledException();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			} else {
+				throw new IOException(e.getCause());
+			}
+		}
+	}
+
 	private static HashMapIntObject<XGCRootInfo[]> fix(HashMapIntObject<List<XGCRootInfo>> roots, final int[] map) {
 		HashMapIntObject<XGCRootInfo[]> answer = new HashMapIntObject<XGCRootInfo[]>(roots.size());
 		for (Iterator<List<XGCRootInfo>> iter = roots.values(); iter.hasNext();) {
@@ -398,40 +553,6 @@ private static HashMapIntObject<XGCRootInfo[]> fix(HashMapIntObject<List<XGCRoot
 		return answer;
 	}
 
-	private static abstract class NewObjectIterator {
-		int nextIndex = -1;
-		int[] $map;
-
-		public NewObjectIterator() {
-			$map = getMap();
-			findNext();
-		}
-
-		protected void findNext() {
-			nextIndex++;
-			while (nextIndex < $map.length && $map[nextIndex] < 0)
-				nextIndex++;
-		}
-
-		public boolean hasNext() {
-			return nextIndex < $map.length;
-		}
-
-		abstract int[] getMap();
-	}
-
-	private static abstract class NewObjectIntIterator extends NewObjectIterator implements IteratorInt {
-		@Override
-		public int next() {
-			int answer = doGetNextInt(nextIndex);
-			findNext();
-			return answer;
-		}
-
-		abstract int doGetNextInt(int nextIndex);
-
-	}
-
 	private static class KeyWriterImpl implements IndexWriter.KeyWriter {
 		HashMapIntObject<ClassImpl> classesByNewId;
 
@@ -563,26 +684,10 @@ private static int markUnreachableAsGCRoots(final PreliminaryIndexImpl idx, //
 		// See what else is now reachable
 		ObjectMarker marker2 =
 				new ObjectMarker(unref.toArray(), reachable, preOutbound, new SilentProgressListener(listener));
-		int numProcessors = Runtime.getRuntime().availableProcessors();
-		if (numProcessors > 1 && unref.size() > 1) {
-			try {
-				marker2.markMultiThreaded(numProcessors);
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				OperationCanceledException oc = new IProgressListener.OperationCanceledException();
-				oc.initCause(e);
-				throw oc;
-			}
-
-			// find the number of new objects. It's not returned by marker
-			int newNoOfObjects = 0;
-			for (boolean b : reachable)
-				if (b)
-					newNoOfObjects++;
-			noReachableObjects = newNoOfObjects;
+		if (unref.size() > 1) {
+			noReachableObjects += marker2.markMultiThreaded();
 		} else {
-			int marked2 = marker2.markSingleThreaded();
-			noReachableObjects += marked2;
+			noReachableObjects += marker2.markSingleThreaded();
 		}
 
 		// find remaining unreachable objects
@@ -32,6 +32,7 @@ public class Messages {
 	public static final String Function_ErrorNoFunction =
 			"''{0}'' yields ''{1}'' of type ''{2}'' which is not supported by the built-in function ''{3}''.";
 	public static final String Function_unknown = "unknown";
+	public static final String GarbageCleaner_PhaseDuration = "{0} took {1} ms";
 	public static final String GarbageCleaner_ReIndexingClasses = "Re-indexing classes";
 	public static final String GarbageCleaner_ReIndexingObjects = "Re-indexing objects";
 	public static final String GarbageCleaner_ReIndexingOutboundIndex = "Re-indexing outbound index";
@@ -27,6 +27,7 @@
 import org.eclipse.mat.SnapshotException;
 import org.eclipse.mat.collect.HashMapIntObject;
 import org.eclipse.mat.collect.IteratorInt;
+import org.eclipse.mat.hprof.HprofIndexBuilder;
 import org.eclipse.mat.parser.IIndexBuilder;
 import org.eclipse.mat.parser.internal.util.ParserRegistry;
 import org.eclipse.mat.parser.internal.util.ParserRegistry.Parser;
@@ -177,6 +178,16 @@ private final ISnapshot parse(File file, String prefix, Map<String, String> args
 					snapshotInfo.setProperty("$runtimeId", snapshot_identifier);
 				}
 
+				String parsing_threads = args.get(HprofIndexBuilder.PARSING_THREADS);
+				if (parsing_threads != null) {
+					snapshotInfo.setProperty(HprofIndexBuilder.PARSING_THREADS, Integer.parseInt(parsing_threads));
+				}
+
+				String dominator_algorithm = args.get(DominatorTree.ARG_ALGORITHM);
+				if (dominator_algorithm != null) {
+					snapshotInfo.setProperty(DominatorTree.ARG_ALGORITHM, dominator_algorithm);
+				}
+
 				PreliminaryIndexImpl idx = new PreliminaryIndexImpl(snapshotInfo);
 
 				indexBuilder.fill(idx, listener);
@@ -588,11 +588,7 @@ int[] getRetainedSetSingleThreaded(int[] objectIds, IProgressListener progressMo
 		 * The dfs() will start from the GC roots, follow the outbound references, and mark all unmarked objects. The
 		 * retained set will contain the unmarked objects
 		 */
-		ObjectMarker marker = new ObjectMarker(roots.getAllKeys(),
-				reachable,
-				indexManager.outbound(),
-				IndexManager.Index.OUTBOUND.getFile(getSnapshotInfo().getPrefix()).length(),
-				progressMonitor);
+		ObjectMarker marker = new ObjectMarker(roots.getAllKeys(), reachable, indexManager.outbound(), progressMonitor);
 		int numReached;
 		try {
 			numReached = marker.markSingleThreaded();
@@ -622,9 +618,8 @@ int[] getRetainedSetSingleThreaded(int[] objectIds, IProgressListener progressMo
 
 	}
 
-	private int[] getRetainedSetMultiThreaded(int[] objectIds,
-			int availableProcessors,
-			IProgressListener progressMonitor) throws SnapshotException {
+	private int[] getRetainedSetMultiThreaded(int[] objectIds, IProgressListener progressMonitor)
+			throws SnapshotException {
 		/* for empty initial set - return immediately an empty retained set */
 		if (objectIds.length == 0) {
 			return new int[0];
@@ -658,16 +653,13 @@ private int[] getRetainedSetMultiThreaded(int[] objectIds,
 		 * roots and do the marking from them
 		 */
 		int[] gcRoots = roots.getAllKeys();
-		ObjectMarker marker = new ObjectMarker(gcRoots,
-				reachable,
-				indexManager.outbound(),
-				IndexManager.Index.OUTBOUND.getFile(getSnapshotInfo().getPrefix()).length(),
-				progressMonitor);
+		ObjectMarker marker = new ObjectMarker(gcRoots, reachable, indexManager.outbound(), progressMonitor);
 		try {
-			marker.markMultiThreaded(availableProcessors);
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
-			throw new SnapshotException(e);
+			// The marking pool is shared by the calls, instead of a pool per retained set
+			marker.markMultiThreaded();
+		} catch (OperationCanceledException e) {
+			// $JL-EXC$
+			return null;
 		}
 
 		/*
@@ -696,7 +688,7 @@ private int[] getRetainedSetMultiThreaded(int[] objectIds,
 	public int[] getRetainedSet(int[] objectIds, IProgressListener progressMonitor) throws SnapshotException {
 		int availableProcessors = Runtime.getRuntime().availableProcessors();
 		if (availableProcessors > 1) {
-			return getRetainedSetMultiThreaded(objectIds, availableProcessors, progressMonitor);
+			return getRetainedSetMultiThreaded(objectIds, progressMonitor);
 		} else {
 			return getRetainedSetSingleThreaded(objectIds, progressMonitor);
 		}
@@ -749,11 +741,8 @@ public int[] getRetainedSet(int[] objectIds,
 		for (int objId : objectIds) {
 			firstPass[objId] = true;
 		}
-		ObjectMarker marker = new ObjectMarker(getGCRoots(),
-				firstPass,
-				getIndexManager().outbound,
-				IndexManager.Index.OUTBOUND.getFile(getSnapshotInfo().getPrefix()).length(),
-				new VoidProgressListener());
+		ObjectMarker marker =
+				new ObjectMarker(getGCRoots(), firstPass, getIndexManager().outbound, new VoidProgressListener());
 		marker.markSingleThreaded(excludedReferences, this);
 
 		// un-mark initial - they have to go into the retained set
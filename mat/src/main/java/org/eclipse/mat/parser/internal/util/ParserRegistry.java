@@ -28,7 +28,7 @@ public class ParserRegistry {
 	public static final String OBJECT_READER = "objectReader";
 
 	private static final List<Parser> parsers = Arrays.asList(new Parser("hprof",
-			new SnapshotFormat("hprof", new String[] { "hprof", "bin" }),
+			new SnapshotFormat("hprof", new String[] { "hprof", "bin", "hprof.gz", "hprof.snappy" }),
 			() -> new org.eclipse.mat.hprof.HprofHeapObjectReader(),
 			() -> new org.eclipse.mat.hprof.HprofIndexBuilder()));
 
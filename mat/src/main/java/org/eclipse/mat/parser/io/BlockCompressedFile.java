@@ -0,0 +1,327 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.eclipse.mat.parser.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xerial.snappy.Snappy;
+import org.xerial.snappy.SnappyInputStream;
+
+/**
+ * Random reads in a gzip or snappy compressed file, without decompressing it to disk. A {@link BlockIndex} is built
+ * once per file, and recently decompressed blocks are kept in a cache shared by all streams of this file. Random reads
+ * are possible only if each block is at most {@link #getMaxBlockSize()} bytes long: a single-member gzip file can only
+ * be read sequentially, with {@link #newInputStream(File)}.
+ * 
+ * This class is thread-safe: streams over the same {@link BlockCompressedFile} can be read concurrently.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class BlockCompressedFile implements Closeable {
+	protected static final Logger LOGGER = LoggerFactory.getLogger(BlockCompressedFile.class);
+
+	/**
+	 * The default maximum number of decompressed bytes kept in the cache of each file
+	 */
+	public static final long DEFAULT_CACHE_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * The default maximum number of bytes of a block, compressed or decompressed, for a file to be read randomly
+	 */
+	public static final int DEFAULT_MAX_BLOCK_SIZE = 64 * 1024 * 1024;
+
+	// Indexes are kept between files opened successively on the same dump: pass1, pass2, then random reads
+	private static final int MAX_INDEXES = 16;
+	private static final Map<String, SoftReference<BlockIndex>> INDEXES =
+			new LinkedHashMap<String, SoftReference<BlockIndex>>(16, 0.75F, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, SoftReference<BlockIndex>> eldest) {
+					// Only the dumps being parsed or opened need their index: forget the least recently used ones
+					return size() > MAX_INDEXES || eldest.getValue().get() == null;
+				}
+			};
+
+	private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+	protected final FileChannel channel;
+	protected final BlockIndex index;
+
+	protected final long maxCacheSize = Long.getLong("mat.compressedBlockCacheSize", DEFAULT_CACHE_SIZE);
+	protected final LinkedHashMap<Integer, byte[]> blockCache = new LinkedHashMap<>(16, 0.75F, true);
+	protected long cacheSize = 0;
+
+	protected BlockCompressedFile(FileChannel channel, BlockIndex index) {
+		this.channel = channel;
+		this.index = index;
+	}
+
+	/**
+	 * 
+	 * @return true if given file is gzip or snappy compressed
+	 */
+	public static boolean isBlockCompressed(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return BlockIndex.detectFormat(channel) != null;
+		}
+	}
+
+	/**
+	 * 
+	 * @return the maximum number of bytes of a block, compressed or decompressed, for a file to be read randomly.
+	 *         Defaults to {@link #DEFAULT_MAX_BLOCK_SIZE}
+	 */
+	public static int getMaxBlockSize() {
+		// Blocks are decompressed in a byte[]
+		return (int) Math.min(Integer.MAX_VALUE - 8,
+				Long.getLong("mat.compressedMaxBlockSize", DEFAULT_MAX_BLOCK_SIZE));
+	}
+
+	/**
+	 * Check given file can be read randomly: it is not compressed, or compressed with blocks of at most
+	 * {@link #getMaxBlockSize()} bytes. Nothing is decompressed if the file has already been indexed.
+	 * 
+	 * @throws IOException
+	 *             if given file has a block larger than {@link #getMaxBlockSize()}, as each random read would
+	 *             decompress the whole block
+	 */
+	public static void checkRandomAccess(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (BlockIndex.detectFormat(channel) != null) {
+				checkRandomAccess(file, getIndex(file, channel));
+			}
+		}
+	}
+
+	protected static void checkRandomAccess(File file, BlockIndex index) throws IOException {
+		if (index.getMaxBlockLength() > getMaxBlockSize()) {
+			throw new IOException(file + " can not be read randomly, as one of its "
+					+ index.getFormat()
+					+ " blocks holds "
+					+ index.getMaxBlockLength()
+					+ " bytes while mat.compressedMaxBlockSize="
+					+ getMaxBlockSize()
+					+ ". A single-member gzip file has to be re-compressed with a member per block"
+					+ " (e.g. with bgzip), or with snappy, or decompressed");
+		}
+	}
+
+	/**
+	 * 
+	 * @return a {@link BlockCompressedFile} for random reads in given file
+	 * @throws IOException
+	 *             if given file can not be read randomly, see {@link #checkRandomAccess(File)}
+	 */
+	public static BlockCompressedFile open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			BlockIndex index = getIndex(file, channel);
+			checkRandomAccess(file, index);
+			return new BlockCompressedFile(channel, index);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	protected static BlockIndex getIndex(File file, FileChannel channel) throws IOException {
+		String key = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+
+		synchronized (INDEXES) {
+			SoftReference<BlockIndex> ref = INDEXES.get(key);
+			BlockIndex index = ref == null ? null : ref.get();
+			if (index != null) {
+				return index;
+			}
+		}
+
+		long start = System.currentTimeMillis();
+		BlockIndex index = BlockIndex.build(channel);
+		if (LOGGER.isInfoEnabled()) {
+			LOGGER.info("Indexed {} {} blocks of {} ({}B once decompressed) in {}ms",
+					index.getNbBlocks(),
+					index.getFormat(),
+					file,
+					index.length(),
+					System.currentTimeMillis() - start);
+		}
+
+		synchronized (INDEXES) {
+			INDEXES.put(key, new SoftReference<>(index));
+		}
+		return index;
+	}
+
+	/**
+	 * The content is decompressed as a stream: blocks are neither indexed nor cached, and may be of any size
+	 * 
+	 * @return the content of given file, decompressed if it is gzip or snappy compressed
+	 */
+	public static InputStream newInputStream(File file) throws IOException {
+		BlockIndex.Format format;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			format = BlockIndex.detectFormat(channel);
+		}
+
+		InputStream in = new FileInputStream(file);
+		try {
+			if (format == BlockIndex.Format.GZIP) {
+				// Concatenated members are read one after the other
+				return new GZIPInputStream(in, STREAM_BUFFER_SIZE);
+			} else if (format == BlockIndex.Format.SNAPPY) {
+				return new SnappyInputStream(in);
+			} else {
+				return in;
+			}
+		} catch (IOException | RuntimeException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * 
+	 * @return the length of the content of given file, decompressed if it is gzip or snappy compressed
+	 */
+	public static long length(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (BlockIndex.detectFormat(channel) == null) {
+				return channel.size();
+			} else {
+				return getIndex(file, channel).length();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of bytes once decompressed
+	 */
+	public long length() {
+		return index.length();
+	}
+
+	public BlockIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * 
+	 * @return a stream over given range of the decompressed content. Closing it does not close this file
+	 */
+	public SeekableDecompressingInputStream newInputStream(long start, long end) {
+		return new SeekableDecompressingInputStream(this, start, end, null);
+	}
+
+	/**
+	 * 
+	 * @return the decompressed content of given block. It must not be modified, as it may be shared through the cache
+	 */
+	protected byte[] getBlock(int block) throws IOException {
+		synchronized (blockCache) {
+			byte[] cached = blockCache.get(block);
+			if (cached != null) {
+				return cached;
+			}
+		}
+
+		// Decompress out of the lock: a block may be decompressed concurrently by several threads
+		byte[] decompressed = decompress(block);
+
+		synchronized (blockCache) {
+			if (blockCache.put(block, decompressed) == null) {
+				cacheSize += decompressed.length;
+			}
+
+			Iterator<byte[]> eldests = blockCache.values().iterator();
+			while (cacheSize > maxCacheSize && blockCache.size() > 1) {
+				cacheSize -= eldests.next().length;
+				eldests.remove();
+			}
+		}
+
+		return decompressed;
+	}
+
+	protected byte[] decompress(int block) throws IOException {
+		// The lengths are checked by open: this fails instead of overflowing if the check is bypassed
+		int compressedLength = Math.toIntExact(index.getCompressedLength(block));
+		int uncompressedLength = Math.toIntExact(index.getUncompressedLength(block));
+
+		// One more byte: an Inflater without wrap may need an extra byte after the deflated data
+		ByteBuffer compressed = ByteBuffer.allocate(compressedLength + 1);
+		BlockIndex.readAtMost(channel, compressed, index.compressedStarts[block]);
+		if (compressed.position() < compressedLength) {
+			throw new EOFException("Truncated block " + block);
+		}
+
+		byte[] decompressed = new byte[uncompressedLength];
+		if (index.format == BlockIndex.Format.SNAPPY) {
+			Snappy.uncompress(compressed.array(), 0, compressedLength, decompressed, 0);
+		} else {
+			Inflater inflater = new Inflater(true);
+			try {
+				inflater.setInput(compressed.array(), 0, compressed.position());
+				int nbInflated = 0;
+				while (nbInflated < decompressed.length && !inflater.finished()) {
+					int nbNew = inflater.inflate(decompressed, nbInflated, decompressed.length - nbInflated);
+					if (nbNew == 0 && inflater.needsDictionary()) {
+						throw new IOException("Invalid gzip block " + block + ": a dictionary is required");
+					} else if (nbNew == 0 && inflater.needsInput()) {
+						// The whole compressed block is already in the Inflater: it is truncated or corrupt
+						throw new EOFException("Truncated gzip block " + block);
+					}
+					nbInflated += nbNew;
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("Invalid gzip block " + block, e);
+			} finally {
+				inflater.end();
+			}
+		}
+		return decompressed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
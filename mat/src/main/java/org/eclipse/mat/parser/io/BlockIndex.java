@@ -0,0 +1,374 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.eclipse.mat.parser.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.eclipse.mat.collect.ArrayLong;
+
+/**
+ * Maps the uncompressed offsets of a block-compressed file to its compressed blocks. Each block can be decompressed
+ * independently of the others, which enables random reads in the uncompressed content.
+ * 
+ * Supported formats are the stream of {@link org.xerial.snappy.SnappyOutputStream} (one block per chunk) and gzip (one
+ * block per member). A single-member gzip file is a single block: its length is known, but it can not be read randomly
+ * if it is larger than {@link BlockCompressedFile#getMaxBlockSize()}.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public final class BlockIndex {
+	public enum Format {
+		GZIP, SNAPPY
+	}
+
+	private static final byte[] GZIP_MAGIC = { 0x1f, (byte) 0x8b };
+	// org.xerial.snappy.SnappyCodec.MAGIC_HEADER, followed by 2 int for versions
+	private static final byte[] SNAPPY_MAGIC = { (byte) 0x82, 'S', 'N', 'A', 'P', 'P', 'Y', 0 };
+	private static final int SNAPPY_HEADER_SIZE = SNAPPY_MAGIC.length + 4 + 4;
+
+	private static final int GZIP_FLAG_HCRC = 2;
+	private static final int GZIP_FLAG_EXTRA = 4;
+	private static final int GZIP_FLAG_NAME = 8;
+	private static final int GZIP_FLAG_COMMENT = 16;
+	private static final int GZIP_TRAILER_SIZE = 8;
+
+	private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+	final Format format;
+
+	// Block i holds the uncompressed bytes from uncompressedStarts[i] to uncompressedStarts[i + 1]
+	final long[] uncompressedStarts;
+	final long[] compressedStarts;
+	// A gzip member may be larger than 2GB, even once compressed
+	final long[] compressedLengths;
+
+	BlockIndex(Format format, long[] uncompressedStarts, long[] compressedStarts, long[] compressedLengths) {
+		this.format = format;
+		this.uncompressedStarts = uncompressedStarts;
+		this.compressedStarts = compressedStarts;
+		this.compressedLengths = compressedLengths;
+	}
+
+	/**
+	 * 
+	 * @return the format of given file, or null if it is not a supported block-compressed format
+	 */
+	public static Format detectFormat(FileChannel channel) throws IOException {
+		ByteBuffer magic = ByteBuffer.allocate(SNAPPY_MAGIC.length);
+		readAtMost(channel, magic, 0);
+
+		if (startsWith(magic, SNAPPY_MAGIC)) {
+			return Format.SNAPPY;
+		} else if (startsWith(magic, GZIP_MAGIC)) {
+			return Format.GZIP;
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Scan the whole file once. Snappy chunks are not decompressed, as their header holds their uncompressed length.
+	 * gzip members are inflated, without keeping the inflated bytes, to find where each member ends.
+	 */
+	public static BlockIndex build(FileChannel channel) throws IOException {
+		Format format = detectFormat(channel);
+		if (format == Format.SNAPPY) {
+			return buildSnappy(channel);
+		} else if (format == Format.GZIP) {
+			return buildGzip(channel);
+		} else {
+			throw new IOException("Not a gzip nor a snappy stream");
+		}
+	}
+
+	private static BlockIndex buildSnappy(FileChannel channel) throws IOException {
+		ArrayLong uncompressedStarts = new ArrayLong();
+		ArrayLong compressedStarts = new ArrayLong();
+		ArrayLong compressedLengths = new ArrayLong();
+
+		// The chunk length, followed by the uncompressed length as a varint of at most 5 bytes
+		ByteBuffer chunkHeader = ByteBuffer.allocate(4 + 5);
+
+		long size = channel.size();
+		long position = SNAPPY_HEADER_SIZE;
+		long uncompressedPosition = 0;
+		while (position < size) {
+			chunkHeader.clear();
+			readAtMost(channel, chunkHeader, position);
+
+			if (startsWith(chunkHeader, SNAPPY_MAGIC)) {
+				// Concatenated streams: skip the header of the next stream
+				position += SNAPPY_HEADER_SIZE;
+				continue;
+			} else if (chunkHeader.position() < 4) {
+				throw new EOFException("Truncated snappy chunk at " + position);
+			}
+
+			int chunkLength = chunkHeader.getInt(0);
+			if (chunkLength < 0 || position + 4 + chunkLength > size) {
+				throw new IOException("Invalid snappy chunk length=" + chunkLength + " at " + position);
+			}
+
+			uncompressedStarts.add(uncompressedPosition);
+			compressedStarts.add(position + 4);
+			compressedLengths.add(chunkLength);
+
+			uncompressedPosition += readVarInt(chunkHeader, 4);
+			position += 4 + chunkLength;
+		}
+		uncompressedStarts.add(uncompressedPosition);
+
+		return new BlockIndex(Format.SNAPPY,
+				uncompressedStarts.toArray(),
+				compressedStarts.toArray(),
+				compressedLengths.toArray());
+	}
+
+	private static BlockIndex buildGzip(FileChannel channel) throws IOException {
+		ArrayLong uncompressedStarts = new ArrayLong();
+		ArrayLong compressedStarts = new ArrayLong();
+		ArrayLong compressedLengths = new ArrayLong();
+
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+		byte[] inflated = new byte[SCAN_BUFFER_SIZE];
+		Inflater inflater = new Inflater(true);
+		try {
+			long size = channel.size();
+			long position = 0;
+			long uncompressedPosition = 0;
+			while (position < size) {
+				buffer.clear();
+				readAtMost(channel, buffer, position);
+				if (!startsWith(buffer, GZIP_MAGIC)) {
+					// Some writers pad the file after the last member
+					break;
+				}
+
+				long dataStart = position + gzipHeaderLength(channel, position);
+
+				// Inflate the member to find where its deflated data ends
+				inflater.reset();
+				long uncompressedLength = 0;
+				long inputPosition = dataStart;
+				while (!inflater.finished()) {
+					if (inflater.needsInput()) {
+						buffer.clear();
+						int nbRead = readAtMost(channel, buffer, inputPosition);
+						if (nbRead <= 0) {
+							throw new EOFException("Truncated gzip member starting at " + position);
+						}
+						inflater.setInput(buffer.array(), 0, nbRead);
+						inputPosition += nbRead;
+					}
+
+					int nbInflated;
+					try {
+						nbInflated = inflater.inflate(inflated);
+					} catch (DataFormatException e) {
+						throw new IOException("Invalid gzip member starting at " + position, e);
+					}
+					if (nbInflated == 0 && inflater.needsDictionary()) {
+						// Raw deflate streams never carry a dictionary: this member can not be inflated
+						throw new IOException(
+								"Invalid gzip member starting at " + position + ": a dictionary is required");
+					}
+					uncompressedLength += nbInflated;
+				}
+
+				long dataEnd = inputPosition - inflater.getRemaining();
+
+				uncompressedStarts.add(uncompressedPosition);
+				compressedStarts.add(dataStart);
+				compressedLengths.add(dataEnd - dataStart);
+
+				uncompressedPosition += uncompressedLength;
+				position = dataEnd + GZIP_TRAILER_SIZE;
+			}
+			uncompressedStarts.add(uncompressedPosition);
+		} finally {
+			inflater.end();
+		}
+
+		return new BlockIndex(Format.GZIP,
+				uncompressedStarts.toArray(),
+				compressedStarts.toArray(),
+				compressedLengths.toArray());
+	}
+
+	/**
+	 * See RFC 1952
+	 * 
+	 * @return the number of bytes of the header of the member starting at given position
+	 */
+	private static long gzipHeaderLength(FileChannel channel, long memberStart) throws IOException {
+		ByteBuffer fixed = ByteBuffer.allocate(10);
+		readFully(channel, fixed, memberStart);
+		int flags = fixed.get(3) & 0xFF;
+
+		long position = memberStart + 10;
+		if ((flags & GZIP_FLAG_EXTRA) != 0) {
+			ByteBuffer extraLength = ByteBuffer.allocate(2);
+			readFully(channel, extraLength, position);
+			position += 2 + ((extraLength.get(0) & 0xFF) | ((extraLength.get(1) & 0xFF) << 8));
+		}
+		if ((flags & GZIP_FLAG_NAME) != 0) {
+			position = skipZeroTerminated(channel, position);
+		}
+		if ((flags & GZIP_FLAG_COMMENT) != 0) {
+			position = skipZeroTerminated(channel, position);
+		}
+		if ((flags & GZIP_FLAG_HCRC) != 0) {
+			position += 2;
+		}
+		return position - memberStart;
+	}
+
+	private static long skipZeroTerminated(FileChannel channel, long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(256);
+		while (true) {
+			buffer.clear();
+			int nbRead = readAtMost(channel, buffer, position);
+			if (nbRead <= 0) {
+				throw new EOFException();
+			}
+			for (int i = 0; i < nbRead; i++) {
+				if (buffer.get(i) == 0) {
+					return position + i + 1;
+				}
+			}
+			position += nbRead;
+		}
+	}
+
+	private static long readVarInt(ByteBuffer buffer, int offset) throws IOException {
+		long value = 0;
+		for (int i = 0; i < 5 && offset + i < buffer.position(); i++) {
+			int b = buffer.get(offset + i) & 0xFF;
+			value |= (long) (b & 0x7F) << (7 * i);
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Invalid snappy uncompressed length");
+	}
+
+	private static boolean startsWith(ByteBuffer buffer, byte[] prefix) {
+		if (buffer.position() < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (buffer.get(i) != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Fill given buffer, except if the end of the channel is reached
+	 * 
+	 * @return the number of bytes read
+	 */
+	static int readAtMost(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		int total = 0;
+		while (buffer.hasRemaining()) {
+			int nbRead = channel.read(buffer, position + total);
+			if (nbRead <= 0) {
+				break;
+			}
+			total += nbRead;
+		}
+		return total;
+	}
+
+	static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		int expected = buffer.remaining();
+		if (readAtMost(channel, buffer, position) < expected) {
+			throw new EOFException();
+		}
+	}
+
+	public Format getFormat() {
+		return format;
+	}
+
+	public int getNbBlocks() {
+		return compressedStarts.length;
+	}
+
+	/**
+	 * @return the number of bytes once decompressed
+	 */
+	public long length() {
+		return uncompressedStarts[uncompressedStarts.length - 1];
+	}
+
+	/**
+	 * 
+	 * @return the index of the block holding given uncompressed offset
+	 */
+	public int findBlock(long uncompressedPosition) {
+		int index = Arrays.binarySearch(uncompressedStarts, 0, compressedStarts.length, uncompressedPosition);
+		if (index >= 0) {
+			// Skip empty blocks
+			while (index + 1 < compressedStarts.length && uncompressedStarts[index + 1] == uncompressedPosition) {
+				index++;
+			}
+			return index;
+		} else {
+			return -index - 2;
+		}
+	}
+
+	public long getUncompressedStart(int block) {
+		return uncompressedStarts[block];
+	}
+
+	public long getUncompressedLength(int block) {
+		return uncompressedStarts[block + 1] - uncompressedStarts[block];
+	}
+
+	public long getCompressedLength(int block) {
+		return compressedLengths[block];
+	}
+
+	/**
+	 * 
+	 * @return the largest number of bytes of a block, either compressed or decompressed: a random read may need to hold
+	 *         this many bytes in memory
+	 */
+	public long getMaxBlockLength() {
+		long max = 0;
+		for (int i = 0; i < getNbBlocks(); i++) {
+			max = Math.max(max, Math.max(getCompressedLength(i), getUncompressedLength(i)));
+		}
+		return max;
+	}
+}
@@ -24,7 +24,16 @@ public class PositionInputStream extends FilterInputStream implements DataInput
 	private long position = 0L;
 
 	public PositionInputStream(InputStream in) {
+		this(in, 0L);
+	}
+
+	/**
+	 * @param position
+	 *            the position of the first byte of given stream, typically when it starts in the middle of a file
+	 */
+	public PositionInputStream(InputStream in, long position) {
 		super(in);
+		this.position = position;
 	}
 
 	@Override
@@ -115,6 +124,9 @@ public void seek(long pos) throws IOException {
 		} else if (in instanceof SimpleBufferedRandomAccessInputStream) {
 			position = pos;
 			((SimpleBufferedRandomAccessInputStream) in).seek(pos);
+		} else if (in instanceof SeekableDecompressingInputStream) {
+			position = pos;
+			((SeekableDecompressingInputStream) in).seek(pos);
 		} else {
 			throw new UnsupportedOperationException(Messages.PositionInputStream_seek);
 		}
@@ -0,0 +1,121 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.eclipse.mat.parser.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link InputStream} over a range of the decompressed content of a {@link BlockCompressedFile}. It can seek to any
+ * position: only the block holding this position is decompressed, if it is not cached yet.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class SeekableDecompressingInputStream extends InputStream {
+	protected final BlockCompressedFile file;
+	protected final long end;
+	// Closed with this stream, if not null
+	protected final Closeable owned;
+
+	protected long position;
+
+	protected byte[] block;
+	protected long blockStart;
+
+	public SeekableDecompressingInputStream(BlockCompressedFile file, long start, long end, Closeable owned) {
+		this.file = file;
+		this.position = start;
+		this.end = end;
+		this.owned = owned;
+	}
+
+	/**
+	 * 
+	 * @return the offset of the current position in the current block
+	 */
+	protected int ensureBlock() throws IOException {
+		if (block == null || position < blockStart || position >= blockStart + block.length) {
+			int blockIndex = file.index.findBlock(position);
+			block = file.getBlock(blockIndex);
+			blockStart = file.index.getUncompressedStart(blockIndex);
+		}
+		return (int) (position - blockStart);
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (position >= end) {
+			return -1;
+		}
+
+		int offset = ensureBlock();
+		position++;
+		return block[offset] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		} else if (position >= end) {
+			return -1;
+		} else if (len == 0) {
+			return 0;
+		}
+
+		int offset = ensureBlock();
+		int length = (int) Math.min(Math.min(len, block.length - offset), end - position);
+		System.arraycopy(block, offset, b, off, length);
+		position += length;
+		return length;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = Math.max(0, Math.min(n, end - position));
+		position += skipped;
+		return skipped;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (int) Math.min(Integer.MAX_VALUE, end - position);
+	}
+
+	public void seek(long pos) throws IOException {
+		position = pos;
+	}
+
+	public long getFilePointer() {
+		return position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (owned != null) {
+			owned.close();
+		}
+	}
+}
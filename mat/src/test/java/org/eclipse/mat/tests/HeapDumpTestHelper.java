@@ -0,0 +1,90 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.eclipse.mat.tests;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.SnapshotFactory;
+import org.eclipse.mat.util.VoidProgressListener;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * Helps tests comparing the snapshots opened with different options from a same heap-dump
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class HeapDumpTestHelper {
+	protected HeapDumpTestHelper() {
+		// hidden
+	}
+
+	/**
+	 * 
+	 * @param directory
+	 *            the folder in which the heap-dump is written
+	 * @return an hprof heap-dump of the live objects of the current JVM
+	 */
+	public static File dumpCurrentJvm(File directory) throws IOException {
+		return dumpCurrentJvm(directory, true);
+	}
+
+	/**
+	 * 
+	 * @param directory
+	 *            the folder in which the heap-dump is written
+	 * @param live
+	 *            if false, the heap-dump also holds the unreachable objects
+	 * @return an hprof heap-dump of the current JVM
+	 */
+	public static File dumpCurrentJvm(File directory, boolean live) throws IOException {
+		File dump = new File(directory, "current.hprof");
+		ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class).dumpHeap(dump.getAbsolutePath(), live);
+		return dump;
+	}
+
+	/**
+	 * Each snapshot has its own index files, next to its own copy of the dump
+	 * 
+	 * @param dump
+	 *            the heap-dump to open
+	 * @param directory
+	 *            an empty folder receiving the copy of the heap-dump and its index files
+	 * @param args
+	 *            the arguments given to {@link SnapshotFactory}
+	 */
+	public static ISnapshot openCopy(File dump, File directory, Map<String, String> args)
+			throws IOException, SnapshotException {
+		File copy = new File(directory, dump.getName());
+		Files.copy(dump.toPath(), copy.toPath());
+
+		return SnapshotFactory.openSnapshot(copy, args, new VoidProgressListener());
+	}
+}
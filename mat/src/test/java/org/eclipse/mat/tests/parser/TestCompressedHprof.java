@@ -0,0 +1,253 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.eclipse.mat.tests.parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.mat.hprof.HprofIndexBuilder;
+import org.eclipse.mat.parser.io.BlockCompressedFile;
+import org.eclipse.mat.parser.io.BlockIndex;
+import org.eclipse.mat.parser.io.SeekableDecompressingInputStream;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.SnapshotFactory;
+import org.eclipse.mat.snapshot.model.IObject;
+import org.eclipse.mat.snapshot.model.NamedReference;
+import org.eclipse.mat.tests.HeapDumpTestHelper;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.xerial.snappy.SnappyOutputStream;
+
+import com.google.common.io.ByteStreams;
+
+public class TestCompressedHprof {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	protected void writeSnappy(File input, File output) throws IOException {
+		try (InputStream in = new FileInputStream(input);
+				OutputStream out = new SnappyOutputStream(new FileOutputStream(output))) {
+			ByteStreams.copy(in, out);
+		}
+	}
+
+	/**
+	 * Write a gzip file with a member per blockSize bytes, so that each member can be decompressed independently
+	 */
+	protected void writeChunkedGzip(File input, File output, int blockSize) throws IOException {
+		byte[] block = new byte[blockSize];
+		try (InputStream in = new FileInputStream(input); OutputStream out = new FileOutputStream(output)) {
+			int nbRead;
+			while ((nbRead = ByteStreams.read(in, block, 0, blockSize)) > 0) {
+				GZIPOutputStream member = new GZIPOutputStream(out) {
+					@Override
+					public void close() throws IOException {
+						// Do not close the underlying stream
+						finish();
+					}
+				};
+				member.write(block, 0, nbRead);
+				member.close();
+			}
+		}
+	}
+
+	@Test
+	public void testRandomReads() throws IOException {
+		byte[] content = new byte[1024 * 1024];
+		Random random = new Random(0);
+		// Repeated patterns, so that the content is compressible
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i % 251 + random.nextInt(3));
+		}
+
+		File plain = folder.newFile();
+		Files.write(plain.toPath(), content);
+
+		File snappy = folder.newFile();
+		writeSnappy(plain, snappy);
+		File gzip = folder.newFile();
+		writeChunkedGzip(plain, gzip, 100 * 1000);
+
+		Assert.assertFalse(BlockCompressedFile.isBlockCompressed(plain));
+
+		for (File compressed : Arrays.asList(snappy, gzip)) {
+			Assert.assertTrue(BlockCompressedFile.isBlockCompressed(compressed));
+			Assert.assertEquals(content.length, BlockCompressedFile.length(compressed));
+
+			// Sequential read
+			try (InputStream in = BlockCompressedFile.newInputStream(compressed)) {
+				Assert.assertArrayEquals(content, ByteStreams.toByteArray(in));
+			}
+
+			try (BlockCompressedFile file = BlockCompressedFile.open(compressed)) {
+				Assert.assertTrue(file.getIndex().getNbBlocks() > 1);
+
+				// Random reads, including reads overlapping blocks
+				SeekableDecompressingInputStream in = file.newInputStream(0, file.length());
+				for (int i = 0; i < 1000; i++) {
+					int position = random.nextInt(content.length);
+					int length = Math.min(content.length - position, random.nextInt(100 * 1000));
+
+					in.seek(position);
+					byte[] read = new byte[length];
+					ByteStreams.readFully(in, read);
+					Assert.assertArrayEquals(Arrays.copyOfRange(content, position, position + length), read);
+				}
+
+				in.seek(content.length);
+				Assert.assertEquals(-1, in.read());
+			}
+		}
+
+		try (BlockCompressedFile file = BlockCompressedFile.open(gzip)) {
+			Assert.assertEquals(BlockIndex.Format.GZIP, file.getIndex().getFormat());
+			Assert.assertEquals(11, file.getIndex().getNbBlocks());
+		}
+	}
+
+	@Test
+	public void testSingleMemberGzip() throws IOException {
+		byte[] content = new byte[1024 * 1024];
+		Random random = new Random(0);
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i % 251 + random.nextInt(3));
+		}
+
+		File plain = folder.newFile();
+		Files.write(plain.toPath(), content);
+		File gzip = folder.newFile();
+		try (InputStream in = new FileInputStream(plain);
+				OutputStream out = new GZIPOutputStream(new FileOutputStream(gzip))) {
+			ByteStreams.copy(in, out);
+		}
+
+		String previousMaxBlockSize = System.setProperty("mat.compressedMaxBlockSize", "65536");
+		try {
+			// The single member is larger than a block: it is still read sequentially
+			Assert.assertEquals(content.length, BlockCompressedFile.length(gzip));
+			try (InputStream in = BlockCompressedFile.newInputStream(gzip)) {
+				Assert.assertArrayEquals(content, ByteStreams.toByteArray(in));
+			}
+
+			// but it can not be read randomly
+			try {
+				BlockCompressedFile.checkRandomAccess(gzip);
+				Assert.fail("The single member is larger than a block");
+			} catch (IOException e) {
+				Assert.assertTrue(e.getMessage().contains("mat.compressedMaxBlockSize"));
+			}
+			try {
+				BlockCompressedFile.open(gzip).close();
+				Assert.fail("The single member is larger than a block");
+			} catch (IOException e) {
+				Assert.assertTrue(e.getMessage().contains("mat.compressedMaxBlockSize"));
+			}
+
+			// Plain files can always be read randomly
+			BlockCompressedFile.checkRandomAccess(plain);
+		} finally {
+			if (previousMaxBlockSize == null) {
+				System.clearProperty("mat.compressedMaxBlockSize");
+			} else {
+				System.setProperty("mat.compressedMaxBlockSize", previousMaxBlockSize);
+			}
+		}
+
+		// A small enough member is a single block, which can be read randomly
+		try (BlockCompressedFile file = BlockCompressedFile.open(gzip)) {
+			Assert.assertEquals(1, file.getIndex().getNbBlocks());
+
+			SeekableDecompressingInputStream in = file.newInputStream(0, file.length());
+			in.seek(content.length / 2);
+			Assert.assertEquals(content[content.length / 2] & 0xFF, in.read());
+		}
+	}
+
+	protected ISnapshot openSnapshot(File dump, int nbThreads) throws Exception {
+		return HeapDumpTestHelper.openCopy(dump,
+				folder.newFolder(),
+				Collections.singletonMap(HprofIndexBuilder.PARSING_THREADS, Integer.toString(nbThreads)));
+	}
+
+	@Test
+	public void testSameSnapshotAsPlain() throws Exception {
+		File plain = HeapDumpTestHelper.dumpCurrentJvm(folder.newFolder());
+
+		File snappy = new File(folder.newFolder(), "current.hprof.snappy");
+		writeSnappy(plain, snappy);
+		File gzip = new File(folder.newFolder(), "current.hprof.gz");
+		writeChunkedGzip(plain, gzip, 1024 * 1024);
+
+		ISnapshot plainSnapshot = openSnapshot(plain, 1);
+		try {
+			// The gzip dump is also parsed by multiple threads
+			for (ISnapshot compressedSnapshot : Arrays.asList(openSnapshot(snappy, 1), openSnapshot(gzip, 4))) {
+				try {
+					Assert.assertEquals(plainSnapshot.getSnapshotInfo().getNumberOfObjects(),
+							compressedSnapshot.getSnapshotInfo().getNumberOfObjects());
+					Assert.assertEquals(plainSnapshot.getSnapshotInfo().getUsedHeapSize(),
+							compressedSnapshot.getSnapshotInfo().getUsedHeapSize());
+
+					for (int i = 0; i < plainSnapshot.getSnapshotInfo().getNumberOfObjects(); i++) {
+						Assert.assertEquals(plainSnapshot.mapIdToAddress(i), compressedSnapshot.mapIdToAddress(i));
+						Assert.assertArrayEquals(plainSnapshot.getOutboundReferentIds(i),
+								compressedSnapshot.getOutboundReferentIds(i));
+
+						// Objects are read from the dump by random reads
+						IObject plainObject = plainSnapshot.getObject(i);
+						IObject compressedObject = compressedSnapshot.getObject(i);
+						Assert.assertEquals(plainObject.getClassSpecificName(),
+								compressedObject.getClassSpecificName());
+
+						List<NamedReference> plainReferences = plainObject.getOutboundReferences();
+						List<NamedReference> compressedReferences = compressedObject.getOutboundReferences();
+						Assert.assertEquals(plainReferences.size(), compressedReferences.size());
+						for (int j = 0; j < plainReferences.size(); j++) {
+							Assert.assertEquals(plainReferences.get(j).getName(),
+									compressedReferences.get(j).getName());
+							Assert.assertEquals(plainReferences.get(j).getObjectAddress(),
+									compressedReferences.get(j).getObjectAddress());
+						}
+					}
+				} finally {
+					SnapshotFactory.dispose(compressedSnapshot);
+				}
+			}
+		} finally {
+			SnapshotFactory.dispose(plainSnapshot);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.eclipse.mat.tests.parser;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.eclipse.mat.parser.index.IIndexReader.IOne2SizeIndex;
+import org.eclipse.mat.parser.internal.SnapshotImpl;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.SnapshotFactory;
+import org.eclipse.mat.snapshot.model.IClass;
+import org.eclipse.mat.tests.HeapDumpTestHelper;
+import org.eclipse.mat.util.VoidProgressListener;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestGarbageCleaner {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRemappedIndexesAreConsistent() throws Exception {
+		// Unreachable objects, to be purged by the GarbageCleaner
+		Object[] garbage = new Object[10000];
+		for (int i = 0; i < garbage.length; i++) {
+			garbage[i] = new int[i % 7];
+		}
+		garbage = null;
+
+		// Not only live objects: the dump keeps the unreachable ones
+		File dump = HeapDumpTestHelper.dumpCurrentJvm(folder.newFolder(), false);
+
+		ISnapshot snapshot =
+				SnapshotFactory.openSnapshot(dump, Collections.<String, String>emptyMap(), new VoidProgressListener());
+		try {
+			for (int i = 0; i < snapshot.getSnapshotInfo().getNumberOfObjects(); i++) {
+				int[] outbounds = snapshot.getOutboundReferentIds(i);
+
+				// The first outbound reference is the class
+				Assert.assertEquals(snapshot.getClassOf(i).getObjectId(), outbounds[0]);
+				Assert.assertEquals(i, snapshot.mapAddressToId(snapshot.mapIdToAddress(i)));
+
+				for (int outbound : outbounds) {
+					int[] inbounds = snapshot.getInboundRefererIds(outbound);
+					Arrays.sort(inbounds);
+					Assert.assertTrue(Arrays.binarySearch(inbounds, i) >= 0);
+				}
+			}
+		} finally {
+			SnapshotFactory.dispose(snapshot);
+		}
+	}
+
+	@Test
+	public void testSameAsSingleThreaded() throws Exception {
+		// Unreachable arrays, so that the array sizes are re-mapped
+		Object[] garbage = new Object[10000];
+		for (int i = 0; i < garbage.length; i++) {
+			garbage[i] = new long[i % 7];
+		}
+		garbage = null;
+
+		File dump = HeapDumpTestHelper.dumpCurrentJvm(folder.newFolder(), false);
+
+		ISnapshot sequential = HeapDumpTestHelper
+				.openCopy(dump, folder.newFolder(), Collections.singletonMap("garbage_cleaner_threads", "1"));
+		try {
+			ISnapshot parallel = HeapDumpTestHelper
+					.openCopy(dump, folder.newFolder(), Collections.singletonMap("garbage_cleaner_threads", "4"));
+			try {
+				Assert.assertEquals(sequential.getSnapshotInfo().getNumberOfObjects(),
+						parallel.getSnapshotInfo().getNumberOfObjects());
+				Assert.assertEquals(sequential.getSnapshotInfo().getUsedHeapSize(),
+						parallel.getSnapshotInfo().getUsedHeapSize());
+
+				IOne2SizeIndex sequentialA2size = ((SnapshotImpl) sequential).getIndexManager().a2size();
+				IOne2SizeIndex parallelA2size = ((SnapshotImpl) parallel).getIndexManager().a2size();
+				for (int i = 0; i < sequential.getSnapshotInfo().getNumberOfObjects(); i++) {
+					Assert.assertEquals(sequential.getClassOf(i).getObjectId(), parallel.getClassOf(i).getObjectId());
+					Assert.assertEquals(sequentialA2size.get(i), parallelA2size.get(i));
+					Assert.assertEquals(sequential.isArray(i), parallel.isArray(i));
+				}
+
+				Collection<IClass> sequentialClasses = sequential.getClasses();
+				Assert.assertEquals(sequentialClasses.size(), parallel.getClasses().size());
+				for (IClass sequentialClass : sequentialClasses) {
+					IClass parallelClass = (IClass) parallel.getObject(sequentialClass.getObjectId());
+					Assert.assertEquals(sequentialClass.getName(), parallelClass.getName());
+					Assert.assertEquals(sequentialClass.getNumberOfObjects(), parallelClass.getNumberOfObjects());
+					Assert.assertEquals(sequentialClass.getUsedHeapSize(), parallelClass.getUsedHeapSize());
+				}
+			} finally {
+				SnapshotFactory.dispose(parallel);
+			}
+		} finally {
+			SnapshotFactory.dispose(sequential);
+		}
+	}
+}
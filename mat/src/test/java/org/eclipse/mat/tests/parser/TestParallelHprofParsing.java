@@ -0,0 +1,90 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.eclipse.mat.tests.parser;
+
+import java.io.File;
+import java.util.Collections;
+
+import org.eclipse.mat.hprof.HprofIndexBuilder;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.snapshot.SnapshotFactory;
+import org.eclipse.mat.tests.HeapDumpTestHelper;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestParallelHprofParsing {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	protected ISnapshot openSnapshot(File dump, int nbThreads) throws Exception {
+		return HeapDumpTestHelper.openCopy(dump,
+				folder.newFolder(),
+				Collections.singletonMap(HprofIndexBuilder.PARSING_THREADS, Integer.toString(nbThreads)));
+	}
+
+	@Test
+	public void testSameSnapshotAsSequential() throws Exception {
+		File dump = HeapDumpTestHelper.dumpCurrentJvm(folder.newFolder());
+
+		// Small chunks so that even this small dump is split in many chunks
+		String previousChunkSize = System.setProperty("mat.hprofChunkSize", "65536");
+		try {
+			ISnapshot sequential = openSnapshot(dump, 1);
+			try {
+				ISnapshot parallel = openSnapshot(dump, 4);
+				try {
+					Assert.assertEquals(sequential.getSnapshotInfo().getNumberOfObjects(),
+							parallel.getSnapshotInfo().getNumberOfObjects());
+					Assert.assertEquals(sequential.getSnapshotInfo().getUsedHeapSize(),
+							parallel.getSnapshotInfo().getUsedHeapSize());
+					Assert.assertEquals(sequential.getSnapshotInfo().getNumberOfClasses(),
+							parallel.getSnapshotInfo().getNumberOfClasses());
+					Assert.assertEquals(sequential.getSnapshotInfo().getIdentifierSize(),
+							parallel.getSnapshotInfo().getIdentifierSize());
+					Assert.assertArrayEquals(sequential.getGCRoots(), parallel.getGCRoots());
+
+					for (int i = 0; i < sequential.getSnapshotInfo().getNumberOfObjects(); i++) {
+						Assert.assertEquals(sequential.mapIdToAddress(i), parallel.mapIdToAddress(i));
+						Assert.assertEquals(sequential.getClassOf(i).getObjectId(),
+								parallel.getClassOf(i).getObjectId());
+						Assert.assertEquals(sequential.getHeapSize(i), parallel.getHeapSize(i));
+						Assert.assertArrayEquals(sequential.getOutboundReferentIds(i),
+								parallel.getOutboundReferentIds(i));
+					}
+				} finally {
+					SnapshotFactory.dispose(parallel);
+				}
+			} finally {
+				SnapshotFactory.dispose(sequential);
+			}
+		} finally {
+			if (previousChunkSize == null) {
+				System.clearProperty("mat.hprofChunkSize");
+			} else {
+				System.setProperty("mat.hprofChunkSize", previousChunkSize);
+			}
+		}
+	}
+}
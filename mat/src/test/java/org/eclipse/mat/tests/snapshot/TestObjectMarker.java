@@ -0,0 +1,140 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.eclipse.mat.tests.snapshot;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.eclipse.mat.parser.index.IIndexReader;
+import org.eclipse.mat.parser.internal.snapshot.ObjectMarker;
+import org.eclipse.mat.util.IProgressListener;
+import org.eclipse.mat.util.VoidProgressListener;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestObjectMarker {
+	protected IIndexReader.IOne2ManyIndex makeRandomGraph(int nbObjects, int nbReferencesPerObject) {
+		Random random = new Random(0);
+
+		int[][] outbounds = new int[nbObjects][];
+		for (int i = 0; i < nbObjects; i++) {
+			outbounds[i] = random.ints(random.nextInt(nbReferencesPerObject + 1), 0, nbObjects).toArray();
+		}
+
+		return new IIndexReader.IOne2ManyIndex() {
+
+			@Override
+			public int size() {
+				return outbounds.length;
+			}
+
+			@Override
+			public void unload() throws IOException {
+				// nothing to unload
+			}
+
+			@Override
+			public void close() throws IOException {
+				// nothing to close
+			}
+
+			@Override
+			public void delete() {
+				// nothing to delete
+			}
+
+			@Override
+			public int[] get(int index) {
+				return outbounds[index];
+			}
+		};
+	}
+
+	@Test
+	public void testMultiThreadedSameAsSingleThreaded() {
+		int nbObjects = 200 * 1000;
+		IIndexReader.IOne2ManyIndex outbound = makeRandomGraph(nbObjects, 2);
+
+		int[] roots = new Random(1).ints(100, 0, nbObjects).toArray();
+
+		boolean[] singleBits = new boolean[nbObjects];
+		// Some objects are already marked: the marking has to stop on them
+		singleBits[roots[0]] = true;
+		singleBits[123] = true;
+		boolean[] multiBits = singleBits.clone();
+
+		int singleCount =
+				new ObjectMarker(roots, singleBits, outbound, new VoidProgressListener()).markSingleThreaded();
+		int multiCount = new ObjectMarker(roots, multiBits, outbound, new VoidProgressListener()).markMultiThreaded(4);
+
+		Assert.assertTrue(singleCount > 0);
+		Assert.assertEquals(singleCount, multiCount);
+		Assert.assertArrayEquals(singleBits, multiBits);
+	}
+
+	@Test
+	public void testPoolIsReused() {
+		int nbObjects = 200 * 1000;
+		IIndexReader.IOne2ManyIndex outbound = makeRandomGraph(nbObjects, 2);
+
+		int[] roots = new Random(1).ints(100, 0, nbObjects).toArray();
+
+		boolean[] singleBits = new boolean[nbObjects];
+		int singleCount =
+				new ObjectMarker(roots, singleBits, outbound, new VoidProgressListener()).markSingleThreaded();
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (int i = 0; i < 3; i++) {
+				boolean[] multiBits = new boolean[nbObjects];
+				Assert.assertEquals(singleCount,
+						new ObjectMarker(roots, multiBits, outbound, new VoidProgressListener())
+								.markMultiThreaded(pool));
+				Assert.assertArrayEquals(singleBits, multiBits);
+
+				// The pool is not shut down by the marking
+				Assert.assertFalse(pool.isShutdown());
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		// The default marking runs in a shared pool
+		boolean[] sharedBits = new boolean[nbObjects];
+		Assert.assertEquals(singleCount,
+				new ObjectMarker(roots, sharedBits, outbound, new VoidProgressListener()).markMultiThreaded());
+		Assert.assertArrayEquals(singleBits, sharedBits);
+	}
+
+	@Test(expected = IProgressListener.OperationCanceledException.class)
+	public void testCanceled() {
+		int nbObjects = 200 * 1000;
+		IIndexReader.IOne2ManyIndex outbound = makeRandomGraph(nbObjects, 2);
+
+		VoidProgressListener listener = new VoidProgressListener();
+		listener.setCanceled(true);
+
+		new ObjectMarker(new int[] { 0 }, new boolean[nbObjects], outbound, listener).markMultiThreaded(4);
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.eclipse.mat.tests.snapshot;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.eclipse.mat.SnapshotException;
+import org.eclipse.mat.parser.internal.DominatorTree;
+import org.eclipse.mat.snapshot.ISnapshot;
+import org.eclipse.mat.tests.TestSnapshots;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+@RunWith(value = Parameterized.class)
+public class TestParallelDominatorTree {
+
+	@Parameters(name = "{0}")
+	public static Collection<Object[]> data() {
+		return Arrays.asList(new Object[][] { { TestSnapshots.SUN_JDK6_32BIT },
+				{ TestSnapshots.SUN_JDK5_64BIT },
+				{ TestSnapshots.SUN_JDK6_18_32BIT },
+				{ TestSnapshots.SUN_JDK6_18_64BIT },
+				{ TestSnapshots.SUN_JDK6_30_64BIT_COMPRESSED_OOPS },
+				{ TestSnapshots.SUN_JDK6_30_64BIT_NOCOMPRESSED_OOPS },
+				{ TestSnapshots.SUN_JDK5_13_32BIT },
+				{ TestSnapshots.ORACLE_JDK7_21_64BIT },
+				{ TestSnapshots.ORACLE_JDK8_05_64BIT }, });
+	}
+
+	protected final String dumpName;
+
+	public TestParallelDominatorTree(String dumpName) {
+		this.dumpName = dumpName;
+	}
+
+	protected ISnapshot openSnapshot(String algorithm) {
+		// A pristine snapshot has its own index files, hence its own dominator tree
+		return TestSnapshots
+				.getSnapshot(dumpName, Collections.singletonMap(DominatorTree.ARG_ALGORITHM, algorithm), true);
+	}
+
+	@Test
+	public void testSameDominatorTreeAsLengauerTarjan() throws SnapshotException {
+		ISnapshot sequential = openSnapshot(DominatorTree.ALGORITHM_LENGAUER_TARJAN);
+		ISnapshot parallel = openSnapshot(DominatorTree.ALGORITHM_PARALLEL_ITERATIVE);
+
+		Assert.assertEquals(sequential.getSnapshotInfo().getNumberOfObjects(),
+				parallel.getSnapshotInfo().getNumberOfObjects());
+
+		for (int i = 0; i < sequential.getSnapshotInfo().getNumberOfObjects(); i++) {
+			Assert.assertEquals(sequential.getImmediateDominatorId(i), parallel.getImmediateDominatorId(i));
+			Assert.assertEquals(sequential.getRetainedHeapSize(i), parallel.getRetainedHeapSize(i));
+
+			int[] sequentialDominated = sequential.getImmediateDominatedIds(i);
+			Arrays.sort(sequentialDominated);
+			int[] parallelDominated = parallel.getImmediateDominatedIds(i);
+			Arrays.sort(parallelDominated);
+			Assert.assertArrayEquals(sequentialDominated, parallelDominated);
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+/**
+ * A block of consecutive rows of a column, filled by a {@link ZeroCopyCSVParser}. The values are held in a primitive
+ * array, and bitmaps hold which rows are missing or invalid. It is reused from one {@link ZeroCopyColumnBatch} to the
+ * next one.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public abstract class AColumnBlock implements IZeroCopyConsumer {
+	protected final int capacity;
+
+	protected final long[] missing;
+	protected final long[] invalid;
+
+	protected int size;
+	protected int nbMissing;
+	protected int nbInvalid;
+
+	// The global index of the first row of the block
+	protected long firstRowIndex;
+
+	// Called after each row. It enables the batch to detect the block is full
+	protected Runnable onRow;
+
+	protected AColumnBlock(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity has to be strictly positive: " + capacity);
+		}
+		this.capacity = capacity;
+
+		int nbWords = (capacity + Long.SIZE - 1) / Long.SIZE;
+		this.missing = new long[nbWords];
+		this.invalid = new long[nbWords];
+	}
+
+	/**
+	 * Set the value at given row to 0, as it is missing or invalid
+	 */
+	protected abstract void clearValue(int rowInBlock);
+
+	@Override
+	public void nextRowIsMissing() {
+		clearValue(size);
+		missing[size / Long.SIZE] |= 1L << size;
+		nbMissing++;
+		endRow();
+	}
+
+	@Override
+	public void nextRowIsInvalid(CharSequence charSequence) {
+		clearValue(size);
+		invalid[size / Long.SIZE] |= 1L << size;
+		nbInvalid++;
+		endRow();
+	}
+
+	protected void endRow() {
+		size++;
+		if (onRow != null) {
+			onRow.run();
+		}
+	}
+
+	public long nextValueRowIndex() {
+		return firstRowIndex + size;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isFull() {
+		return size >= capacity;
+	}
+
+	public long getFirstRowIndex() {
+		return firstRowIndex;
+	}
+
+	/**
+	 * 
+	 * @return true if no row of this block is missing or invalid: the values can be processed without checking the
+	 *         bitmaps
+	 */
+	public boolean isDense() {
+		return nbMissing == 0 && nbInvalid == 0;
+	}
+
+	public int getNbMissing() {
+		return nbMissing;
+	}
+
+	public int getNbInvalid() {
+		return nbInvalid;
+	}
+
+	public boolean isMissing(int rowInBlock) {
+		return (missing[rowInBlock / Long.SIZE] & (1L << rowInBlock)) != 0;
+	}
+
+	public boolean isInvalid(int rowInBlock) {
+		return (invalid[rowInBlock / Long.SIZE] & (1L << rowInBlock)) != 0;
+	}
+
+	/**
+	 * Prepare this block to receive the rows following current rows
+	 */
+	public void clear() {
+		int nbUsedWords = (size + Long.SIZE - 1) / Long.SIZE;
+		for (int i = 0; i < nbUsedWords; i++) {
+			missing[i] = 0L;
+			invalid[i] = 0L;
+		}
+
+		firstRowIndex += size;
+		size = 0;
+		nbMissing = 0;
+		nbInvalid = 0;
+	}
+}
@@ -0,0 +1,288 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import blasd.apex.core.primitive.AsciiByteParsers;
+import blasd.apex.core.primitive.FastDoubleParsers;
+import blasd.apex.core.primitive.UnsafeAsciiSubSequence;
+
+/**
+ * A CSV parser working directly over bytes, typically from a {@link MappedByteBuffer}. It handles ASCII and UTF-8
+ * input: ints, longs and doubles are parsed straight from the bytes, without decoding them into chars, and column
+ * contents are never copied.
+ * 
+ * Columns are provided to {@link Consumer} as a {@link CharSequence} valid only during the call. They are decoded as
+ * UTF-8 only if they hold non-ASCII bytes.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class ByteBufferZeroCopyCSVParser {
+	protected static final Logger LOGGER = LoggerFactory.getLogger(ByteBufferZeroCopyCSVParser.class);
+
+	/**
+	 * A {@link MappedByteBuffer} is limited to Integer.MAX_VALUE bytes
+	 */
+	private static final int DEFAULT_WINDOW_SIZE = Integer.MAX_VALUE;
+
+	private static final int DEFAULT_BUFFER_SIZE = 1024;
+
+	protected final int windowSize;
+
+	// Used only for non-ASCII columns provided as CharSequence
+	protected final CharsetDecoder utf8Decoder =
+			StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(
+					CodingErrorAction.REPLACE);
+	protected CharBuffer decoded = CharBuffer.allocate(DEFAULT_BUFFER_SIZE);
+
+	protected final UnsafeAsciiSubSequence asciiSequence = new UnsafeAsciiSubSequence();
+
+	public ByteBufferZeroCopyCSVParser() {
+		this(DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * 
+	 * @param windowSize
+	 *            the maximum number of bytes mapped at once when parsing a file. A row can not be larger than this
+	 */
+	public ByteBufferZeroCopyCSVParser(int windowSize) {
+		if (windowSize <= 0) {
+			throw new IllegalArgumentException("windowSize has to be strictly positive: " + windowSize);
+		}
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * Parse a file by memory-mapping it, by windows of at most windowSize bytes
+	 */
+	public void parse(Path path, char separator, List<IZeroCopyConsumer> consumers) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+
+			long position = 0;
+			while (position < size) {
+				long currentWindowSize = Math.min(windowSize, size - position);
+				boolean isLastWindow = position + currentWindowSize == size;
+
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, currentWindowSize);
+
+				int nbParsed = parseRows(mapped, separator, consumers, isLastWindow);
+				if (nbParsed == 0 && !isLastWindow) {
+					throw new IllegalStateException(
+							"There is a row larger than " + windowSize + " bytes from position " + position);
+				}
+
+				position += nbParsed;
+			}
+		}
+	}
+
+	/**
+	 * Parse the bytes from the position to the limit of given {@link ByteBuffer}. The position is moved to the limit.
+	 */
+	public void parse(ByteBuffer bytes, char separator, List<IZeroCopyConsumer> consumers) {
+		int nbParsed = parseRows(bytes, separator, consumers, true);
+
+		bytes.position(bytes.position() + nbParsed);
+	}
+
+	/**
+	 * 
+	 * @param isLastWindow
+	 *            if false, the trailing bytes after the last end-of-row are considered as the beginning of a row
+	 *            continuing in next window, and they are not parsed
+	 * @return the number of parsed bytes from the position
+	 */
+	protected int parseRows(ByteBuffer bytes, char separator, List<IZeroCopyConsumer> consumers, boolean isLastWindow) {
+		if (separator >= 0x80) {
+			throw new IllegalArgumentException("The separator has to be an ASCII character: " + separator);
+		}
+		byte separatorAsByte = (byte) separator;
+
+		int from = bytes.position();
+		int to;
+		if (isLastWindow) {
+			to = bytes.limit();
+		} else {
+			to = from;
+			for (int i = bytes.limit() - 1; i >= from; i--) {
+				byte b = bytes.get(i);
+				if (b == '\r' || b == '\n') {
+					to = i + 1;
+					break;
+				}
+			}
+		}
+
+		int nbConsumers = consumers.size();
+
+		int columnIndex = 0;
+		int columnStart = from;
+		// Jump from one separator or end-of-row to the next one
+		int i = CsvScanners.indexOfSeparatorOrEndOfRow(bytes, from, to, separatorAsByte);
+		while (i < to) {
+			byte b = bytes.get(i);
+
+			if (b == separatorAsByte) {
+				// We are closing a column: publish the column content
+				flushColumn(consumers, nbConsumers, columnIndex, bytes, columnStart, i);
+				columnIndex++;
+				columnStart = i + 1;
+			} else if (b == '\r' || b == '\n') {
+				if (columnIndex > 0 || i > columnStart) {
+					// This is not an empty row
+					flushColumn(consumers, nbConsumers, columnIndex, bytes, columnStart, i);
+					warnConsumersWithoutColumn(consumers, nbConsumers, columnIndex + 1);
+				}
+
+				columnIndex = 0;
+				columnStart = i + 1;
+			}
+
+			i = CsvScanners.indexOfSeparatorOrEndOfRow(bytes, i + 1, to, separatorAsByte);
+		}
+
+		if (columnIndex > 0 || to > columnStart) {
+			// We are at the end of the input, without an end-of-row
+			flushColumn(consumers, nbConsumers, columnIndex, bytes, columnStart, to);
+			warnConsumersWithoutColumn(consumers, nbConsumers, columnIndex + 1);
+		}
+
+		return to - from;
+	}
+
+	protected void warnConsumersWithoutColumn(List<IZeroCopyConsumer> consumers, int nbConsumers, int columnIndex) {
+		for (int i = columnIndex; i < nbConsumers; i++) {
+			// Warn the consumers that will not receive any data
+			IZeroCopyConsumer consumer = consumers.get(i);
+			if (consumer != null) {
+				consumer.nextRowIsMissing();
+			}
+		}
+	}
+
+	protected void flushColumn(List<IZeroCopyConsumer> consumers,
+			int nbConsumers,
+			int columnIndex,
+			ByteBuffer bytes,
+			int start,
+			int end) {
+		if (columnIndex >= nbConsumers) {
+			// Nobody is interested in this column
+			return;
+		}
+		IZeroCopyConsumer consumer = consumers.get(columnIndex);
+		if (consumer == null) {
+			return;
+		} else if (start == end) {
+			// No data to flush
+			consumer.nextRowIsMissing();
+			return;
+		}
+
+		try {
+			if (consumer instanceof IntConsumer) {
+				((IntConsumer) consumer).accept(AsciiByteParsers.parseInt(bytes, start, end));
+			} else if (consumer instanceof LongConsumer) {
+				((LongConsumer) consumer).accept(AsciiByteParsers.parseLong(bytes, start, end));
+			} else if (consumer instanceof DoubleConsumer) {
+				((DoubleConsumer) consumer).accept(FastDoubleParsers.parseDouble(bytes, start, end));
+			} else if (consumer instanceof Consumer<?>) {
+				// You have better to be a CharSequence consumer
+				((Consumer) consumer).accept(toCharSequence(bytes, start, end));
+			} else {
+				throw new IllegalArgumentException("Not a consumer ?!");
+			}
+		} catch (NumberFormatException e) {
+			CharSequence invalid = toCharSequence(bytes, start, end);
+			if (LOGGER.isTraceEnabled()) {
+				// check.isTraceEnabled to spare the transient memory of the message
+				LOGGER.trace("Ouch on " + invalid, e);
+			}
+			consumer.nextRowIsInvalid(invalid);
+		}
+	}
+
+	/**
+	 * @return a {@link CharSequence} valid until next call
+	 */
+	protected CharSequence toCharSequence(ByteBuffer bytes, int start, int end) {
+		boolean isAscii = true;
+		for (int i = start; i < end; i++) {
+			if (bytes.get(i) < 0) {
+				isAscii = false;
+				break;
+			}
+		}
+
+		if (isAscii) {
+			asciiSequence.resetWindow(bytes, start, end);
+			return asciiSequence;
+		} else {
+			return decodeUtf8(bytes, start, end);
+		}
+	}
+
+	protected CharSequence decodeUtf8(ByteBuffer bytes, int start, int end) {
+		// UTF-8 never produces more chars than bytes
+		if (decoded.capacity() < end - start) {
+			decoded = CharBuffer.allocate(end - start);
+		}
+		decoded.clear();
+
+		ByteBuffer slice = bytes.duplicate();
+		slice.limit(end).position(start);
+
+		utf8Decoder.reset();
+		CoderResult result = utf8Decoder.decode(slice, decoded, true);
+		if (!result.isUnderflow()) {
+			throw new IllegalStateException(new CharacterCodingException());
+		}
+		utf8Decoder.flush(decoded);
+		decoded.flip();
+
+		return decoded;
+	}
+}
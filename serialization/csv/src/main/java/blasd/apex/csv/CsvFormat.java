@@ -0,0 +1,191 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The format of a CSV, typically inferred by {@link CsvFormatHelper#guessFormat(Reader)}. It can bind typed
+ * {@link AColumnBlock} to each column, so that an unknown file can be parsed in a single pass straight into primitive
+ * arrays.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class CsvFormat {
+	protected final char separator;
+	protected final String lineTerminator;
+	protected final boolean hasHeader;
+	protected final List<String> headers;
+	protected final List<CsvColumnType> columnTypes;
+	protected final List<Boolean> nullables;
+
+	/**
+	 * 
+	 * @param headers
+	 *            the headers, or an empty list if there is no header row
+	 * @param columnTypes
+	 *            the type of each column
+	 * @param nullables
+	 *            for each column, true if it has empty cells
+	 */
+	public CsvFormat(char separator,
+			String lineTerminator,
+			boolean hasHeader,
+			List<String> headers,
+			List<CsvColumnType> columnTypes,
+			List<Boolean> nullables) {
+		if (columnTypes.size() != nullables.size()) {
+			throw new IllegalArgumentException("Inconsistent number of columns: " + columnTypes + " " + nullables);
+		} else if (hasHeader && headers.size() != columnTypes.size()) {
+			throw new IllegalArgumentException("Inconsistent number of columns: " + headers + " " + columnTypes);
+		}
+
+		this.separator = separator;
+		this.lineTerminator = lineTerminator;
+		this.hasHeader = hasHeader;
+		this.headers = ImmutableList.copyOf(headers);
+		this.columnTypes = ImmutableList.copyOf(columnTypes);
+		this.nullables = ImmutableList.copyOf(nullables);
+	}
+
+	public char getSeparator() {
+		return separator;
+	}
+
+	/**
+	 * 
+	 * @return "\n", "\r\n" or "\r"
+	 */
+	public String getLineTerminator() {
+		return lineTerminator;
+	}
+
+	public boolean hasHeader() {
+		return hasHeader;
+	}
+
+	/**
+	 * 
+	 * @return the headers, or an empty list if there is no header row
+	 */
+	public List<String> getHeaders() {
+		return headers;
+	}
+
+	public int getNbColumns() {
+		return columnTypes.size();
+	}
+
+	public List<CsvColumnType> getColumnTypes() {
+		return columnTypes;
+	}
+
+	public CsvColumnType getColumnType(int columnIndex) {
+		return columnTypes.get(columnIndex);
+	}
+
+	/**
+	 * 
+	 * @return true if given column has empty cells, or is missing in some rows
+	 */
+	public boolean isNullable(int columnIndex) {
+		return nullables.get(columnIndex);
+	}
+
+	/**
+	 * 
+	 * @return an {@link AColumnBlock} matching the type of given column
+	 */
+	public AColumnBlock makeBlock(int columnIndex, int capacity) {
+		CsvColumnType type = getColumnType(columnIndex);
+		switch (type) {
+		case INT:
+			return new IntColumnBlock(capacity);
+		case LONG:
+			return new LongColumnBlock(capacity);
+		case DOUBLE:
+			return new DoubleColumnBlock(capacity);
+		case STRING:
+			return new StringColumnBlock(capacity, new StringDictionary());
+		default:
+			throw new IllegalStateException("Not managed: " + type);
+		}
+	}
+
+	/**
+	 * 
+	 * @return a {@link ZeroCopyColumnBatch} with a typed block per column
+	 */
+	public ZeroCopyColumnBatch makeColumnBatch(int capacity, Consumer<? super ZeroCopyColumnBatch> batchConsumer) {
+		List<AColumnBlock> blocks = new ArrayList<>(getNbColumns());
+		for (int i = 0; i < getNbColumns(); i++) {
+			blocks.add(makeBlock(i, capacity));
+		}
+		return new ZeroCopyColumnBatch(blocks, batchConsumer);
+	}
+
+	/**
+	 * Parse the whole reader, from its beginning, into given batch. The header row, if any, is skipped.
+	 * 
+	 * @param batch
+	 *            typically built by {@link #makeColumnBatch(int, Consumer)}
+	 */
+	public void parse(ZeroCopyCSVParser parser, Reader reader, ZeroCopyColumnBatch batch) throws IOException {
+		if (hasHeader) {
+			Map<String, IZeroCopyConsumer> headerToConsumer = new LinkedHashMap<>();
+			for (int i = 0; i < headers.size(); i++) {
+				IZeroCopyConsumer consumer = batch.getBlock(i);
+				if (consumer != null && headerToConsumer.put(headers.get(i), consumer) != null) {
+					throw new IllegalArgumentException("Headers are not unique: " + headers);
+				}
+			}
+
+			parser.parseWithHeader(reader, separator, headerToConsumer);
+			batch.flush();
+		} else {
+			batch.parse(parser, reader, separator);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "separator=" + separator
+				+ " lineTerminator="
+				+ lineTerminator.replace("\r", "\\r").replace("\n", "\\n")
+				+ " headers="
+				+ headers
+				+ " types="
+				+ columnTypes
+				+ " nullables="
+				+ nullables;
+	}
+}
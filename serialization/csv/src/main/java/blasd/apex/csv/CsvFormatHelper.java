@@ -22,11 +22,31 @@
  */
 package blasd.apex.csv;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.OptionalInt;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.CharMatcher;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+
+import blasd.apex.core.primitive.Jdk9CharSequenceParsers;
 
 /**
  * Some helpers for CSV files,typically to help inferring the CSV format
@@ -35,6 +55,19 @@
  *
  */
 public class CsvFormatHelper {
+	protected static final Logger LOGGER = LoggerFactory.getLogger(CsvFormatHelper.class);
+
+	/**
+	 * By default, the format is inferred from the first 64K chars
+	 */
+	public static final int DEFAULT_SAMPLE_SIZE = 64 * 1024;
+
+	private static final char DEFAULT_SEPARATOR = ',';
+	private static final String DEFAULT_LINE_TERMINATOR = "\n";
+
+	// Plain decimal representations, possibly with an exponent
+	private static final Pattern DOUBLE_PATTERN = Pattern.compile("[+-]?(\\d+(\\.\\d*)?|\\.\\d+)([eE][+-]?\\d+)?");
+
 	protected CsvFormatHelper() {
 		// hidden
 	}
@@ -68,4 +101,318 @@ public static OptionalInt guessSeparator(CharMatcher allowedSeparators, String r
 			}
 		}
 	}
+
+	/**
+	 * Infer the format of a CSV from its first {@link #DEFAULT_SAMPLE_SIZE} chars
+	 * 
+	 * @see #guessFormat(String)
+	 */
+	public static CsvFormat guessFormat(Path path, Charset charset) throws IOException {
+		try (Reader reader = Files.newBufferedReader(path, charset)) {
+			return guessFormat(reader);
+		}
+	}
+
+	/**
+	 * Infer the format of a CSV from its first {@link #DEFAULT_SAMPLE_SIZE} chars. The reader is partially consumed:
+	 * the CSV has to be read again from its beginning to be parsed
+	 * 
+	 * @see #guessFormat(String)
+	 */
+	public static CsvFormat guessFormat(Reader reader) throws IOException {
+		return guessFormat(reader, DEFAULT_SAMPLE_SIZE);
+	}
+
+	/**
+	 * 
+	 * @param maxSampleSize
+	 *            the maximum number of chars read from the reader
+	 * @see #guessFormat(String)
+	 */
+	public static CsvFormat guessFormat(Reader reader, int maxSampleSize) throws IOException {
+		char[] sample = new char[maxSampleSize];
+
+		int length = 0;
+		while (length < maxSampleSize) {
+			int nbRead = reader.read(sample, length, maxSampleSize - length);
+			if (nbRead < 0) {
+				break;
+			}
+			length += nbRead;
+		}
+
+		if (length == maxSampleSize && reader.read() >= 0) {
+			// The sample is truncated: drop the last row, as it is probably incomplete
+			for (int i = length - 1; i >= 0; i--) {
+				if (sample[i] == '\r' || sample[i] == '\n') {
+					length = i + 1;
+					break;
+				}
+			}
+		}
+
+		return guessFormat(new String(sample, 0, length));
+	}
+
+	/**
+	 * Infer the separator, the line terminator, the presence of a header row, and the type of each column from the
+	 * first rows of a CSV. Each column is typed with the narrowest {@link CsvColumnType} accepting all its non-empty
+	 * cells.
+	 * 
+	 * @param sample
+	 *            the first rows of a CSV
+	 * @return the inferred {@link CsvFormat}
+	 */
+	public static CsvFormat guessFormat(String sample) {
+		String lineTerminator = guessLineTerminator(sample);
+
+		List<String> lines =
+				Arrays.stream(sample.split("\r\n|\r|\n")).filter(line -> !line.isEmpty()).collect(Collectors.toList());
+		char separator =
+				(char) guessSeparator(CharMatcher.anyOf(defaultSeparatorCandidates()), lines).orElse(DEFAULT_SEPARATOR);
+
+		List<String[]> rows = new ZeroCopyCSVParser().parseAsStringArrays(new StringReader(sample), separator)
+				.collect(Collectors.toList());
+
+		int nbColumns = rows.stream().mapToInt(row -> row.length).max().orElse(0);
+
+		// The types are first computed without the first row, as it may be a header
+		List<String[]> dataRows = rows.subList(Math.min(1, rows.size()), rows.size());
+		List<CsvColumnType> columnTypes = new ArrayList<>();
+		List<Boolean> nullables = new ArrayList<>();
+		for (int i = 0; i < nbColumns; i++) {
+			columnTypes.add(guessType(dataRows, i));
+			nullables.add(isNullable(dataRows, i));
+		}
+
+		boolean hasHeader = guessHasHeader(rows, columnTypes);
+
+		List<String> headers;
+		if (hasHeader) {
+			String[] headerRow = rows.get(0);
+
+			headers = new ArrayList<>();
+			for (int i = 0; i < nbColumns; i++) {
+				if (i < headerRow.length) {
+					headers.add(headerRow[i]);
+				} else {
+					headers.add("");
+				}
+			}
+		} else {
+			headers = new ArrayList<>();
+
+			// The first row is a data row
+			List<String[]> firstRow = rows.subList(0, Math.min(1, rows.size()));
+			for (int i = 0; i < nbColumns; i++) {
+				CsvColumnType firstRowType = guessType(firstRow, i);
+				if (dataRows.isEmpty() || columnTypes.get(i) == null) {
+					columnTypes.set(i, firstRowType);
+				} else {
+					columnTypes.set(i, columnTypes.get(i).widen(firstRowType));
+				}
+				nullables.set(i, nullables.get(i) || isNullable(firstRow, i));
+			}
+		}
+
+		for (int i = 0; i < nbColumns; i++) {
+			if (columnTypes.get(i) == null) {
+				// Only empty cells
+				columnTypes.set(i, CsvColumnType.STRING);
+			}
+		}
+
+		return new CsvFormat(separator, lineTerminator, hasHeader, headers, columnTypes, nullables);
+	}
+
+	/**
+	 * 
+	 * @return the first line terminator of the sample, or "\n" if there is none
+	 */
+	public static String guessLineTerminator(String sample) {
+		for (int i = 0; i < sample.length(); i++) {
+			char c = sample.charAt(i);
+			if (c == '\n') {
+				return "\n";
+			} else if (c == '\r') {
+				if (i + 1 < sample.length() && sample.charAt(i + 1) == '\n') {
+					return "\r\n";
+				} else {
+					return "\r";
+				}
+			}
+		}
+		return DEFAULT_LINE_TERMINATOR;
+	}
+
+	/**
+	 * Given multiple rows, a good separator appears the same number of times in most rows.
+	 * 
+	 * @return the candidate separator appearing the same strictly positive number of times in the most rows. In case of
+	 *         tie, the candidate with the most occurrences per row
+	 */
+	public static OptionalInt guessSeparator(CharMatcher allowedSeparators, List<String> rows) {
+		if (rows.isEmpty()) {
+			return OptionalInt.empty();
+		} else if (rows.size() == 1) {
+			return guessSeparator(allowedSeparators, rows.get(0));
+		}
+
+		Set<Character> candidates = new HashSet<>();
+		rows.forEach(row -> allowedSeparators.retainFrom(row).chars().forEach(c -> candidates.add((char) c)));
+
+		int bestSeparator = -1;
+		int bestNbRows = 0;
+		int bestCount = 0;
+		for (char candidate : candidates) {
+			// For each number of occurrences in a row, the number of rows with this number of occurrences
+			Multiset<Integer> countToNbRows = HashMultiset.create();
+			for (String row : rows) {
+				int count = countOutsideQuotes(row, candidate);
+				if (count > 0) {
+					countToNbRows.add(count);
+				}
+			}
+
+			for (Multiset.Entry<Integer> entry : countToNbRows.entrySet()) {
+				int nbRows = entry.getCount();
+				int count = entry.getElement();
+
+				if (nbRows > bestNbRows || nbRows == bestNbRows && count > bestCount) {
+					bestSeparator = candidate;
+					bestNbRows = nbRows;
+					bestCount = count;
+				}
+			}
+		}
+
+		if (bestSeparator < 0) {
+			return OptionalInt.empty();
+		} else {
+			return OptionalInt.of(bestSeparator);
+		}
+	}
+
+	protected static int countOutsideQuotes(String row, char candidate) {
+		int count = 0;
+		boolean inQuotes = false;
+		for (int i = 0; i < row.length(); i++) {
+			char c = row.charAt(i);
+			if (c == ZeroCopyCSVParser.DEFAULT_QUOTE) {
+				inQuotes = !inQuotes;
+			} else if (c == candidate && !inQuotes) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 
+	 * @return the narrowest type accepting all non-empty cells of given column, or null if there is no such cell
+	 */
+	protected static CsvColumnType guessType(List<String[]> rows, int columnIndex) {
+		CsvColumnType type = null;
+		for (String[] row : rows) {
+			if (columnIndex < row.length && !row[columnIndex].isEmpty()) {
+				type = guessType(row[columnIndex]).widen(type);
+
+				if (type == CsvColumnType.STRING) {
+					// There is no wider type
+					break;
+				}
+			}
+		}
+		return type;
+	}
+
+	/**
+	 * 
+	 * @return the narrowest type accepting given non-empty cell
+	 */
+	public static CsvColumnType guessType(CharSequence cell) {
+		try {
+			Jdk9CharSequenceParsers.parseInt(cell, 0, cell.length(), 10);
+			return CsvColumnType.INT;
+		} catch (NumberFormatException e) {
+			LOGGER.trace("Not an int: {}", cell, e);
+		}
+
+		try {
+			Jdk9CharSequenceParsers.parseLong(cell, 0, cell.length(), 10);
+			return CsvColumnType.LONG;
+		} catch (NumberFormatException e) {
+			LOGGER.trace("Not a long: {}", cell, e);
+		}
+
+		if (isDouble(cell)) {
+			return CsvColumnType.DOUBLE;
+		} else {
+			return CsvColumnType.STRING;
+		}
+	}
+
+	/**
+	 * 
+	 * @return true if given cell is a decimal number, possibly with an exponent. Such cells are accepted by
+	 *         {@link blasd.apex.core.primitive.FastDoubleParsers#parseDouble(CharSequence)}
+	 */
+	public static boolean isDouble(CharSequence cell) {
+		return DOUBLE_PATTERN.matcher(cell).matches();
+	}
+
+	protected static boolean isNullable(List<String[]> rows, int columnIndex) {
+		return rows.stream().anyMatch(row -> columnIndex >= row.length || row[columnIndex].isEmpty());
+	}
+
+	/**
+	 * The first row is voted as a header by each column: a numeric column votes for a header if the first cell is not
+	 * numeric. A text column votes for a header if its other cells have all the same length, but not the first one. Any
+	 * column votes against a header if its first cell is repeated in the next rows.
+	 * 
+	 * @param columnTypes
+	 *            the types of the columns, computed without the first row
+	 * @return true if the first row looks like a header
+	 */
+	protected static boolean guessHasHeader(List<String[]> rows, List<CsvColumnType> columnTypes) {
+		if (rows.size() <= 1) {
+			// A single row is considered as data
+			return false;
+		}
+
+		String[] firstRow = rows.get(0);
+		List<String[]> dataRows = rows.subList(1, rows.size());
+
+		int votes = 0;
+		for (int i = 0; i < columnTypes.size() && i < firstRow.length; i++) {
+			String firstCell = firstRow[i];
+			CsvColumnType dataType = columnTypes.get(i);
+
+			if (firstCell.isEmpty() || dataType == null) {
+				// This column gives no hint
+				continue;
+			}
+
+			int columnIndex = i;
+			if (dataRows.stream().anyMatch(row -> columnIndex < row.length && firstCell.equals(row[columnIndex]))) {
+				votes--;
+			} else if (dataType != CsvColumnType.STRING) {
+				if (guessType(firstCell).widen(dataType) == CsvColumnType.STRING) {
+					votes++;
+				} else {
+					votes--;
+				}
+			} else {
+				Set<Integer> dataLengths = dataRows.stream()
+						.filter(row -> columnIndex < row.length && !row[columnIndex].isEmpty())
+						.map(row -> row[columnIndex].length())
+						.collect(Collectors.toSet());
+				if (dataLengths.size() == 1 && !dataLengths.contains(firstCell.length())) {
+					votes++;
+				}
+			}
+		}
+
+		return votes > 0;
+	}
 }
@@ -0,0 +1,120 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Find the next special character (separator, end-of-row, quote) of a CSV in bulk, so that the characters in-between
+ * can be processed as a slice instead of one by one.
+ * 
+ * Bytes are scanned 8 by 8 with SWAR (SIMD Within A Register) over longs. Chars are scanned with a plain loop over the
+ * char[], which is much cheaper than {@link java.nio.CharBuffer#get()} as there is no position to maintain.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class CsvScanners {
+	// 0x01 in each byte
+	private static final long ONES = 0x0101010101010101L;
+	// 0x7F in each byte
+	private static final long LOW_7_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+	private static final long CR_PATTERN = broadcast((byte) '\r');
+	private static final long LF_PATTERN = broadcast((byte) '\n');
+
+	protected CsvScanners() {
+		// hidden
+	}
+
+	/**
+	 * 
+	 * @param quote
+	 *            the quote character, or {@link ZeroCopyCSVParser#NO_QUOTE}
+	 * @return the index of the first char in [from, to[ which is either the separator, '\r', '\n' or the quote. Else to
+	 */
+	public static int indexOfSpecial(char[] chars, int from, int to, char separator, int quote) {
+		for (int i = from; i < to; i++) {
+			char c = chars[i];
+			if (c == separator || c == '\n' || c == '\r' || c == quote) {
+				return i;
+			}
+		}
+		return to;
+	}
+
+	/**
+	 * Indexes are absolute: the position and the limit of the {@link ByteBuffer} are not considered, nor modified.
+	 * 
+	 * @return the index of the first byte in [from, to[ which is either the separator, '\r' or '\n'. Else to
+	 */
+	public static int indexOfSeparatorOrEndOfRow(ByteBuffer bytes, int from, int to, byte separator) {
+		long separatorPattern = broadcast(separator);
+		boolean bigEndian = bytes.order() == ByteOrder.BIG_ENDIAN;
+
+		int i = from;
+		for (; i + Long.BYTES <= to; i += Long.BYTES) {
+			long word = bytes.getLong(i);
+
+			long matches =
+					zeroBytes(word ^ separatorPattern) | zeroBytes(word ^ LF_PATTERN) | zeroBytes(word ^ CR_PATTERN);
+			if (matches != 0) {
+				// The first byte in memory is the most significant one in big-endian, the least significant one else
+				if (bigEndian) {
+					return i + Long.numberOfLeadingZeros(matches) / Byte.SIZE;
+				} else {
+					return i + Long.numberOfTrailingZeros(matches) / Byte.SIZE;
+				}
+			}
+		}
+
+		// Process the trailing bytes one by one
+		for (; i < to; i++) {
+			byte b = bytes.get(i);
+			if (b == separator || b == '\n' || b == '\r') {
+				return i;
+			}
+		}
+		return to;
+	}
+
+	/**
+	 * 
+	 * @return a long with given byte repeated 8 times
+	 */
+	static long broadcast(byte b) {
+		return (b & 0xFFL) * ONES;
+	}
+
+	/**
+	 * Unlike the classic (v - 0x01..) & ~v & 0x80.., this formula has no false-positive, hence it can be used for both
+	 * endianness
+	 * 
+	 * @return a long with the highest bit of each zero byte of given word set, and all other bits unset
+	 */
+	static long zeroBytes(long word) {
+		long highBitIfNotZeroLow7Bits = (word & LOW_7_BITS) + LOW_7_BITS;
+		return ~(highBitIfNotZeroLow7Bits | word | LOW_7_BITS);
+	}
+}
@@ -0,0 +1,62 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+/**
+ * An {@link AColumnBlock} of longs
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class LongColumnBlock extends AColumnBlock implements IZeroCopyLongConsumer {
+	protected final long[] values;
+
+	public LongColumnBlock(int capacity) {
+		super(capacity);
+
+		this.values = new long[capacity];
+	}
+
+	@Override
+	public void accept(long value) {
+		values[size] = value;
+		endRow();
+	}
+
+	@Override
+	protected void clearValue(int rowInBlock) {
+		values[rowInBlock] = 0;
+	}
+
+	public long getLong(int rowInBlock) {
+		return values[rowInBlock];
+	}
+
+	/**
+	 * 
+	 * @return the underlying array, holding {@link #size()} meaningful values. Missing and invalid rows hold 0
+	 */
+	public long[] values() {
+		return values;
+	}
+}
@@ -0,0 +1,446 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.LongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.primitives.Ints;
+
+import blasd.apex.core.thread.ApexExecutorsHelper;
+
+/**
+ * Parse a CSV file with multiple threads. The file is split in byte ranges aligned on row boundaries, and each range is
+ * parsed by a {@link ZeroCopyCSVParser} in a {@link ForkJoinPool}.
+ * 
+ * As consumers are stateful (e.g. they count rows), a new {@link List} of {@link IZeroCopyConsumer} is requested for
+ * each chunk, given the global index of the first row of the chunk.
+ * 
+ * The charset has to encode '\r' and '\n' as single bytes which can not appear in other characters (e.g. UTF-8 or
+ * ISO-8859-1): this is not compatible with UTF-16. Rows are split on '\n': a file with '\r' as only row separator would
+ * be parsed as a single chunk.
+ * 
+ * If the parser handles quoted columns, a quoted column may hold end-of-rows: the chunks are then computed by a single
+ * scan of the whole file, tracking quoted columns like {@link ZeroCopyCSVParser}. Else, the rows of each chunk are
+ * counted concurrently.
+ *
+ * @author Benoit Lacelle
+ *
+ */
+public class ParallelZeroCopyCSVParser {
+	protected static final Logger LOGGER = LoggerFactory.getLogger(ParallelZeroCopyCSVParser.class);
+
+	// Given a 1GB file and 8 threads, we would have 32 chunks of 32MB
+	private static final int DEFAULT_CHUNKS_PER_THREAD = 4;
+
+	private static final int DEFAULT_MIN_CHUNK_SIZE = 1024 * 1024;
+
+	private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+
+	protected final ZeroCopyCSVParser parser;
+	protected final int nbThreads;
+	protected final int minChunkSize;
+
+	public ParallelZeroCopyCSVParser() {
+		this(ApexExecutorsHelper.getDefaultNbThreads());
+	}
+
+	public ParallelZeroCopyCSVParser(int nbThreads) {
+		this(new ZeroCopyCSVParser(), nbThreads, DEFAULT_MIN_CHUNK_SIZE);
+	}
+
+	/**
+	 * 
+	 * @param parser
+	 *            the parser used for each chunk
+	 * @param nbThreads
+	 *            the number of threads parsing chunks concurrently
+	 * @param minChunkSize
+	 *            the minimum number of bytes in a chunk. It prevents splitting small files in many tiny chunks
+	 */
+	public ParallelZeroCopyCSVParser(ZeroCopyCSVParser parser, int nbThreads, int minChunkSize) {
+		if (nbThreads <= 0) {
+			throw new IllegalArgumentException("nbThreads has to be strictly positive: " + nbThreads);
+		} else if (minChunkSize <= 0) {
+			throw new IllegalArgumentException("minChunkSize has to be strictly positive: " + minChunkSize);
+		}
+		this.parser = parser;
+		this.nbThreads = nbThreads;
+		this.minChunkSize = minChunkSize;
+	}
+
+	/**
+	 * 
+	 * @param path
+	 *            the CSV file to parse
+	 * @param charset
+	 *            an ASCII-compatible charset, like UTF-8
+	 * @param separator
+	 *            the column separator
+	 * @param firstRowIndexToConsumers
+	 *            given the global index of the first row of a chunk, provides the consumers for given chunk. It is
+	 *            called concurrently
+	 * @throws IOException
+	 */
+	public void parse(Path path,
+			Charset charset,
+			char separator,
+			LongFunction<List<IZeroCopyConsumer>> firstRowIndexToConsumers) throws IOException {
+		checkCharset(charset);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			ForkJoinPool pool = ApexExecutorsHelper.newForkJoinPool("apex-csv-parser", nbThreads);
+			try {
+				// First pass: compute the global index of the first row of each chunk
+				long[] chunkStarts;
+				long[] firstRowIndexes;
+				if (parser.quote == ZeroCopyCSVParser.NO_QUOTE) {
+					chunkStarts = computeChunkStarts(channel);
+
+					List<Future<Long>> nbRowsFutures = new ArrayList<>();
+					for (int i = 0; i < chunkStarts.length - 1; i++) {
+						long start = chunkStarts[i];
+						long end = chunkStarts[i + 1];
+						nbRowsFutures.add(pool.submit(() -> countRows(channel, start, end)));
+					}
+
+					firstRowIndexes = new long[nbRowsFutures.size()];
+					for (int i = 1; i < firstRowIndexes.length; i++) {
+						firstRowIndexes[i] = firstRowIndexes[i - 1] + getUnchecked(nbRowsFutures.get(i - 1));
+					}
+				} else {
+					// An end-of-row may be in a quoted column: only a scan from the start of the file knows it
+					long[][] chunkStartsAndFirstRowIndexes = scanQuotedChunks(channel, separator);
+					chunkStarts = chunkStartsAndFirstRowIndexes[0];
+					firstRowIndexes = chunkStartsAndFirstRowIndexes[1];
+				}
+
+				if (LOGGER.isDebugEnabled()) {
+					LOGGER.debug("{} is split in {} chunks", path, chunkStarts.length - 1);
+				}
+
+				// Second pass: actually parse each chunk
+				List<Future<?>> parseFutures = new ArrayList<>();
+				for (int i = 0; i < chunkStarts.length - 1; i++) {
+					long start = chunkStarts[i];
+					long end = chunkStarts[i + 1];
+					long firstRowIndex = firstRowIndexes[i];
+
+					parseFutures.add(pool.submit(() -> {
+						List<IZeroCopyConsumer> consumers = firstRowIndexToConsumers.apply(firstRowIndex);
+
+						try (Reader reader =
+								new InputStreamReader(new FileChannelRangeInputStream(channel, start, end), charset)) {
+							parser.parse(reader, separator, consumers);
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					}));
+				}
+
+				for (Future<?> parseFuture : parseFutures) {
+					getUnchecked(parseFuture);
+				}
+			} finally {
+				pool.shutdownNow();
+			}
+		}
+	}
+
+	protected void checkCharset(Charset charset) {
+		if (!Arrays.equals(new byte[] { '\n' }, "\n".getBytes(charset))
+				|| !Arrays.equals(new byte[] { '\r' }, "\r".getBytes(charset))) {
+			throw new IllegalArgumentException("We need an ASCII-compatible charset. Not: " + charset);
+		}
+	}
+
+	/**
+	 * 
+	 * @return the offsets of the first byte of each chunk, followed by the size of the file
+	 */
+	protected long[] computeChunkStarts(FileChannel channel) throws IOException {
+		long size = channel.size();
+
+		long nbChunks = Math.max(1, Math.min(size / minChunkSize, (long) nbThreads * DEFAULT_CHUNKS_PER_THREAD));
+
+		long[] chunkStarts = new long[Ints.checkedCast(nbChunks + 1)];
+		int nbStarts = 1;
+
+		ByteBuffer scanBuffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+		for (long i = 1; i < nbChunks; i++) {
+			long target = Math.max(chunkStarts[nbStarts - 1], size * i / nbChunks);
+
+			long rowStart = nextRowStart(channel, scanBuffer, target, size);
+			if (rowStart > chunkStarts[nbStarts - 1] && rowStart < size) {
+				chunkStarts[nbStarts++] = rowStart;
+			}
+		}
+		chunkStarts[nbStarts++] = size;
+
+		return Arrays.copyOf(chunkStarts, nbStarts);
+	}
+
+	/**
+	 * 
+	 * @return the offset of the first byte after the first '\n' at or after given position, or size if there is no such
+	 *         '\n'
+	 */
+	protected long nextRowStart(FileChannel channel, ByteBuffer scanBuffer, long position, long size)
+			throws IOException {
+		long offset = position;
+		while (offset < size) {
+			scanBuffer.clear();
+			int nbRead = channel.read(scanBuffer, offset);
+			if (nbRead <= 0) {
+				break;
+			}
+
+			for (int i = 0; i < nbRead; i++) {
+				if (scanBuffer.get(i) == '\n') {
+					return offset + i + 1;
+				}
+			}
+			offset += nbRead;
+		}
+
+		return size;
+	}
+
+	/**
+	 * 
+	 * @return the number of rows between given offsets, consistently with {@link ZeroCopyCSVParser}: empty rows are
+	 *         skipped
+	 */
+	protected long countRows(FileChannel channel, long start, long end) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+
+		long nbRows = 0;
+
+		// Chunks always start on a new row
+		boolean previousIsEndOfRow = true;
+
+		long offset = start;
+		while (offset < end) {
+			buffer.clear();
+			buffer.limit(Ints.checkedCast(Math.min(buffer.capacity(), end - offset)));
+			int nbRead = channel.read(buffer, offset);
+			if (nbRead <= 0) {
+				break;
+			}
+
+			for (int i = 0; i < nbRead; i++) {
+				byte b = buffer.get(i);
+
+				boolean isEndOfRow = b == '\r' || b == '\n';
+				if (previousIsEndOfRow && !isEndOfRow) {
+					nbRows++;
+				}
+				previousIsEndOfRow = isEndOfRow;
+			}
+			offset += nbRead;
+		}
+
+		return nbRows;
+	}
+
+	/**
+	 * Scan the whole file, tracking quoted columns like {@link ZeroCopyCSVParser}, so that chunks start on row
+	 * boundaries out of quoted columns
+	 * 
+	 * @return the offsets of the first byte of each chunk, followed by the size of the file, then the global index of
+	 *         the first row of each chunk
+	 */
+	protected long[][] scanQuotedChunks(FileChannel channel, char separator) throws IOException {
+		int quote = parser.quote;
+		if (quote >= 0x80 || separator >= 0x80) {
+			// In UTF-8, a non-ASCII character is encoded by bytes which may match other characters
+			throw new IllegalArgumentException(
+					"The quote and the separator have to be ASCII characters, not: " + (char) quote
+							+ " and "
+							+ separator);
+		}
+
+		long size = channel.size();
+		long nbChunks = Math.max(1, Math.min(size / minChunkSize, (long) nbThreads * DEFAULT_CHUNKS_PER_THREAD));
+
+		long[] chunkStarts = new long[Ints.checkedCast(nbChunks + 1)];
+		long[] firstRowIndexes = new long[Ints.checkedCast(nbChunks)];
+		int nbStarts = 1;
+		long nextTarget = size / nbChunks;
+
+		long nbRows = 0;
+
+		// Same states as ZeroCopyCSVParser
+		boolean previousIsEndOfRow = true;
+		boolean columnIsEmpty = true;
+		boolean inQuotes = false;
+		boolean afterQuote = false;
+
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+		long offset = 0;
+		while (offset < size) {
+			buffer.clear();
+			int nbRead = channel.read(buffer, offset);
+			if (nbRead <= 0) {
+				break;
+			}
+
+			for (int i = 0; i < nbRead; i++) {
+				byte b = buffer.get(i);
+
+				if (inQuotes) {
+					if (b == quote) {
+						inQuotes = false;
+						afterQuote = true;
+					}
+				} else if (afterQuote && b == quote) {
+					// An escaped quote
+					inQuotes = true;
+					afterQuote = false;
+				} else {
+					afterQuote = false;
+
+					if (b == '\r' || b == '\n') {
+						previousIsEndOfRow = true;
+						columnIsEmpty = true;
+
+						long rowStart = offset + i + 1;
+						if (b == '\n' && rowStart >= nextTarget && rowStart < size && nbStarts < nbChunks) {
+							chunkStarts[nbStarts] = rowStart;
+							firstRowIndexes[nbStarts] = nbRows;
+							nbStarts++;
+							nextTarget = size * nbStarts / nbChunks;
+						}
+					} else {
+						if (previousIsEndOfRow) {
+							nbRows++;
+							previousIsEndOfRow = false;
+						}
+
+						if (b == separator) {
+							columnIsEmpty = true;
+						} else {
+							if (b == quote && columnIsEmpty) {
+								inQuotes = true;
+							}
+							columnIsEmpty = false;
+						}
+					}
+				}
+			}
+			offset += nbRead;
+		}
+		chunkStarts[nbStarts++] = size;
+
+		return new long[][] { Arrays.copyOf(chunkStarts, nbStarts), Arrays.copyOf(firstRowIndexes, nbStarts - 1) };
+	}
+
+	protected <T> T getUnchecked(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e.getCause()).getCause();
+			} else if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			} else if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			} else {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * An {@link InputStream} over a range of a {@link FileChannel}. It relies on positional reads, so that a single
+	 * {@link FileChannel} can be shared by concurrent streams
+	 * 
+	 * @author Benoit Lacelle
+	 *
+	 */
+	protected static class FileChannelRangeInputStream extends InputStream {
+		protected final FileChannel channel;
+		protected final long end;
+
+		protected long position;
+
+		public FileChannelRangeInputStream(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.position = start;
+			this.end = end;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] singleByte = new byte[1];
+			int nbRead = read(singleByte, 0, 1);
+			if (nbRead <= 0) {
+				return -1;
+			} else {
+				return singleByte[0] & 0xFF;
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (position >= end) {
+				return -1;
+			} else if (len == 0) {
+				return 0;
+			}
+
+			int maxLength = Ints.checkedCast(Math.min(len, end - position));
+			int nbRead = channel.read(ByteBuffer.wrap(b, off, maxLength), position);
+			if (nbRead > 0) {
+				position += nbRead;
+			}
+			return nbRead;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return Ints.saturatedCast(end - position);
+		}
+	}
+}
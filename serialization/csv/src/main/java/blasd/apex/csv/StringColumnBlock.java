@@ -0,0 +1,80 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+import java.util.function.Consumer;
+
+/**
+ * An {@link AColumnBlock} of Strings. Repeated values can be interned with a {@link StringDictionary}
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class StringColumnBlock extends AColumnBlock implements Consumer<CharSequence> {
+	protected final String[] values;
+
+	protected final StringDictionary dictionary;
+
+	public StringColumnBlock(int capacity) {
+		this(capacity, null);
+	}
+
+	/**
+	 * 
+	 * @param dictionary
+	 *            if not null, used to intern the values
+	 */
+	public StringColumnBlock(int capacity, StringDictionary dictionary) {
+		super(capacity);
+
+		this.values = new String[capacity];
+		this.dictionary = dictionary;
+	}
+
+	@Override
+	public void accept(CharSequence value) {
+		if (dictionary == null) {
+			values[size] = value.toString();
+		} else {
+			values[size] = dictionary.intern(value);
+		}
+		endRow();
+	}
+
+	@Override
+	protected void clearValue(int rowInBlock) {
+		values[rowInBlock] = null;
+	}
+
+	public String getString(int rowInBlock) {
+		return values[rowInBlock];
+	}
+
+	/**
+	 * 
+	 * @return the underlying array, holding {@link #size()} meaningful values. Missing and invalid rows hold null
+	 */
+	public String[] values() {
+		return values;
+	}
+}
@@ -0,0 +1,158 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+/**
+ * Interns the content of a char range as a {@link String}, without allocating a {@link String} if the content has
+ * already been encountered. It is useful for columns with repeated values (e.g. countries, currencies, ...).
+ * 
+ * The dictionary is bounded: once maxSize distinct values have been encountered, new values are not interned anymore.
+ * 
+ * Not thread-safe.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class StringDictionary {
+	private static final int DEFAULT_MAX_SIZE = 64 * 1024;
+	private static final int INITIAL_CAPACITY = 16;
+
+	protected final int maxSize;
+
+	// Open-addressing with linear probing. The capacity is always a power of 2
+	protected String[] table = new String[INITIAL_CAPACITY];
+	protected int size;
+
+	public StringDictionary() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	public StringDictionary(int maxSize) {
+		if (maxSize < 0) {
+			throw new IllegalArgumentException("maxSize has to be positive: " + maxSize);
+		}
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * 
+	 * @return a {@link String} equal to the chars from start (inclusive) to end (exclusive). The same instance is
+	 *         returned for equal contents, as long as the dictionary is not full
+	 */
+	public String intern(char[] chars, int start, int end) {
+		// Same hash as String.hashCode
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + chars[i];
+		}
+
+		int mask = table.length - 1;
+		int slot = spread(hash) & mask;
+		while (true) {
+			String candidate = table[slot];
+			if (candidate == null) {
+				break;
+			} else if (candidate.hashCode() == hash && contentEquals(candidate, chars, start, end)) {
+				return candidate;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		return addNew(slot, new String(chars, start, end - start));
+	}
+
+	/**
+	 * 
+	 * @return a {@link String} equal to given {@link CharSequence}
+	 * @see #intern(char[], int, int)
+	 */
+	public String intern(CharSequence chars) {
+		int length = chars.length();
+
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + chars.charAt(i);
+		}
+
+		int mask = table.length - 1;
+		int slot = spread(hash) & mask;
+		while (true) {
+			String candidate = table[slot];
+			if (candidate == null) {
+				break;
+			} else if (candidate.hashCode() == hash && candidate.contentEquals(chars)) {
+				return candidate;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		return addNew(slot, chars.toString());
+	}
+
+	protected String addNew(int slot, String newString) {
+		if (size < maxSize) {
+			table[slot] = newString;
+			size++;
+
+			if (size * 2 > table.length) {
+				rehash();
+			}
+		}
+		return newString;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	protected static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	protected static boolean contentEquals(String candidate, char[] chars, int start, int end) {
+		if (candidate.length() != end - start) {
+			return false;
+		}
+		for (int i = start; i < end; i++) {
+			if (candidate.charAt(i - start) != chars[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	protected void rehash() {
+		String[] newTable = new String[table.length * 2];
+		int mask = newTable.length - 1;
+		for (String string : table) {
+			if (string != null) {
+				int slot = spread(string.hashCode()) & mask;
+				while (newTable[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				newTable[slot] = string;
+			}
+		}
+		table = newTable;
+	}
+}
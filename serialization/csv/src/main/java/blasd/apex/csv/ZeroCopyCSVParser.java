@@ -24,14 +24,17 @@
 
 import java.io.IOException;
 import java.io.Reader;
-import java.io.UncheckedIOException;
 import java.nio.CharBuffer;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
 import java.util.Spliterators;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.DoubleConsumer;
 import java.util.function.IntConsumer;
@@ -43,7 +46,9 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import blasd.apex.core.primitive.ApexParserHelper;
+import com.google.common.collect.Sets;
+
+import blasd.apex.core.primitive.FastDoubleParsers;
 import blasd.apex.core.primitive.Jdk9CharSequenceParsers;
 
 /**
@@ -81,19 +86,68 @@ public void accept(CharSequence t) {
 
 	private static final int DEFAULT_BUFFER_SIZE = 1024;
 
+	/**
+	 * The quote character as defined by RFC-4180
+	 */
+	public static final int DEFAULT_QUOTE = '"';
+
+	/**
+	 * Use this as quote to disable the handling of quoted columns
+	 */
+	public static final int NO_QUOTE = -1;
+
 	protected final int bufferSize;
 
+	protected final int quote;
+
 	public ZeroCopyCSVParser() {
-		bufferSize = DEFAULT_BUFFER_SIZE;
+		this(DEFAULT_BUFFER_SIZE);
 	}
 
 	public ZeroCopyCSVParser(int bufferSize) {
+		this(bufferSize, DEFAULT_QUOTE);
+	}
+
+	/**
+	 * 
+	 * @param bufferSize
+	 *            the size of the buffers. An unquoted column can not be longer than this
+	 * @param quote
+	 *            the character used to quote columns (as in RFC-4180), or {@link #NO_QUOTE}. A quote is considered as
+	 *            opening a quoted column only if it is the first character of the column. In a quoted column, a doubled
+	 *            quote is an escaped quote, and separators and end-of-rows are part of the column
+	 */
+	public ZeroCopyCSVParser(int bufferSize, int quote) {
 		this.bufferSize = bufferSize;
+		this.quote = quote;
 	}
 
 	// Minimal memory consumption: bufferSize * (4(CharBuffer) + 4 (char[] buffer))
 	@Override
 	public void parse(Reader reader, char separator, List<IZeroCopyConsumer> consumers) throws IOException {
+		checkConsumers(consumers);
+
+		parse(reader, separator, consumers, null);
+	}
+
+	/**
+	 * The first row is considered as a header: consumers are bound to the columns given their header. Columns without
+	 * consumer are skipped without being copied.
+	 * 
+	 * @param headerToConsumer
+	 *            a {@link Map} from the header of a column to the consumer of this column
+	 * @throws IllegalArgumentException
+	 *             if a header is not present in the first row
+	 */
+	public void parseWithHeader(Reader reader,
+			char separator,
+			Map<String, ? extends IZeroCopyConsumer> headerToConsumer) throws IOException {
+		checkConsumers(headerToConsumer.values());
+
+		parse(reader, separator, Collections.emptyList(), headerToConsumer);
+	}
+
+	protected void checkConsumers(Collection<? extends IZeroCopyConsumer> consumers) {
 		consumers.stream().filter(Objects::nonNull).forEach(consumer -> {
 			if (consumer instanceof IntConsumer) {
 				LOGGER.trace("We like IntConsumer");
@@ -107,14 +161,39 @@ public void parse(Reader reader, char separator, List<IZeroCopyConsumer> consume
 				throw new IllegalArgumentException("You need to be any java.util.function.*Consumer");
 			}
 		});
+	}
 
-		IntFunction<IZeroCopyConsumer> indexToConsumer = index -> {
-			if (index < consumers.size()) {
-				return consumers.get(index);
-			} else {
-				return null;
-			}
-		};
+	/**
+	 * 
+	 * @param consumers
+	 *            the consumers by column index. Ignored if headerToConsumer is not null
+	 * @param headerToConsumer
+	 *            if not null, the first row is considered as a header, and consumers are bound by header
+	 */
+	protected void parse(Reader reader,
+			char separator,
+			List<IZeroCopyConsumer> consumers,
+			Map<String, ? extends IZeroCopyConsumer> headerToConsumer) throws IOException {
+		final List<String> headers;
+		// If true, a column has to be copied in nextValue. null means all columns are copied
+		boolean[] copiedColumns;
+		IntFunction<IZeroCopyConsumer> indexToConsumer;
+		int nbConsumers;
+
+		if (headerToConsumer == null) {
+			headers = null;
+			copiedColumns = toCopiedColumns(consumers);
+			indexToConsumer = toIndexToConsumer(consumers);
+			nbConsumers = consumers.size();
+		} else {
+			// The header row is collected as Strings
+			headers = new ArrayList<>();
+			copiedColumns = null;
+			IZeroCopyConsumer headerConsumer = new Youpi(headers);
+			indexToConsumer = index -> headerConsumer;
+			nbConsumers = 0;
+		}
+		boolean copyCurrentColumn = isCopied(copiedColumns, 0);
 
 		CharBuffer charBuffer = CharBuffer.allocate(bufferSize);
 		CharBuffer nextValue = CharBuffer.allocate(bufferSize);
@@ -128,6 +207,13 @@ public void parse(Reader reader, char separator, List<IZeroCopyConsumer> consume
 		int columnIndex = -1;
 		// int firstValueCharIndex = -1;
 
+		// true if no character has been encountered in current column (even if the column is not copied)
+		boolean columnIsEmpty = true;
+		// true if we are in a quoted column
+		boolean inQuotes = false;
+		// true if previous char was a quote closing a quoted column, or the first quote of an escaped quote
+		boolean afterQuote = false;
+
 		char[] buffer = new char[charBuffer.capacity()];
 
 		while (moreToRead) {
@@ -150,169 +236,232 @@ public void parse(Reader reader, char separator, List<IZeroCopyConsumer> consume
 				moreToRead = false;
 			}
 
+			char[] chars = charBuffer.array();
 			while (charBuffer.hasRemaining()) {
-				// for (int charIndex = leftover; charIndex < charBuffer.limit(); charIndex++) {
+				if (!inQuotes && !afterQuote) {
+					// Fast path: process in bulk the chars up to the next special char
+					int from = charBuffer.position();
+					int special = CsvScanners.indexOfSpecial(chars, from, charBuffer.limit(), separator, quote);
+
+					if (special > from) {
+						if (columnIndex < 0) {
+							// First character of current row
+							columnIndex++;
+						}
+						if (copyCurrentColumn) {
+							nextValue.put(chars, from, special - from);
+						}
+						columnIsEmpty = false;
+
+						charBuffer.position(special);
+						if (!charBuffer.hasRemaining()) {
+							break;
+						}
+					}
+				}
+
 				// Next char is the one not yet processed
-				// int nextChar = charBuffer.get(charIndex);
 				char nextChar = charBuffer.get();
 
-				if (nextChar == separator) {
-					// We are closing a column: publish the column content
-					columnIndex = flushColumn(indexToConsumer, nextValue, columnIndex, true);
-				} else if (nextChar == '\r' || nextChar == '\n') {
-					columnIndex = flushColumn(indexToConsumer, nextValue, columnIndex, false);
-					warnConsumersWithoutColumn(indexToConsumer, columnIndex, consumers.size());
-
-					// Reset the columnIndex
-					columnIndex = -1;
-				} else {
-					// We have an interesting character
-					if (columnIndex < 0 && nextValue.position() == 0) {
-						// First character of current row
-						columnIndex++;
+				if (inQuotes) {
+					// Slow path: we are in a quoted column
+					if (nextChar == quote) {
+						// Either the closing quote, or the first quote of an escaped quote
+						inQuotes = false;
+						afterQuote = true;
+					} else if (copyCurrentColumn) {
+						nextValue = ensureRemaining(nextValue);
+						nextValue.put(nextChar);
 					}
+				} else if (afterQuote && nextChar == quote) {
+					// This is an escaped quote: we are still in the quoted column
+					if (copyCurrentColumn) {
+						nextValue = ensureRemaining(nextValue);
+						nextValue.put(nextChar);
+					}
+					inQuotes = true;
+					afterQuote = false;
+				} else {
+					afterQuote = false;
+
+					if (nextChar == separator) {
+						// We are closing a column: publish the column content
+						columnIndex = flushColumn(indexToConsumer, nextValue, columnIndex, true);
+						copyCurrentColumn = isCopied(copiedColumns, columnIndex);
+						columnIsEmpty = true;
+					} else if (nextChar == '\r' || nextChar == '\n') {
+						columnIndex = flushColumn(indexToConsumer, nextValue, columnIndex, false);
+						warnConsumersWithoutColumn(indexToConsumer, columnIndex, nbConsumers);
+
+						if (headers != null && columnIndex >= 0 && nbConsumers == 0 && copiedColumns == null) {
+							// We have just read the header row: bind the consumers
+							List<IZeroCopyConsumer> boundConsumers = bindHeaders(headers, headerToConsumer);
+
+							copiedColumns = toCopiedColumns(boundConsumers);
+							indexToConsumer = toIndexToConsumer(boundConsumers);
+							nbConsumers = boundConsumers.size();
+						}
 
-					nextValue.put(nextChar);
+						// Reset the columnIndex
+						columnIndex = -1;
+						copyCurrentColumn = isCopied(copiedColumns, 0);
+						columnIsEmpty = true;
+					} else {
+						// We have an interesting character
+						if (columnIndex < 0) {
+							// First character of current row
+							columnIndex++;
+						}
+
+						if (nextChar == quote && columnIsEmpty) {
+							// A quote opening a column: the quote is not part of the value
+							inQuotes = true;
+						} else if (copyCurrentColumn) {
+							nextValue.put(nextChar);
+						}
+						columnIsEmpty = false;
+					}
 				}
 			}
 
 			if (!moreToRead) {
 				// We are at the end of the file
 				columnIndex = flushColumn(indexToConsumer, nextValue, columnIndex, false);
-				warnConsumersWithoutColumn(indexToConsumer, columnIndex, consumers.size());
+				warnConsumersWithoutColumn(indexToConsumer, columnIndex, nbConsumers);
 			}
 		}
 	}
 
-	public Stream<String[]> parseAsStringArrays(Reader reader, char separator) {
-		CharBuffer charBuffer = CharBuffer.allocate(bufferSize);
-
-		// Do like we were at the end of the buffer
-		charBuffer.position(charBuffer.limit());
+	protected IntFunction<IZeroCopyConsumer> toIndexToConsumer(List<IZeroCopyConsumer> consumers) {
+		return index -> {
+			if (index < consumers.size()) {
+				return consumers.get(index);
+			} else {
+				return null;
+			}
+		};
+	}
 
-		// We need to read at least once
-		AtomicBoolean moreToRead = new AtomicBoolean(true);
+	/**
+	 * 
+	 * @return for each column, true if it has a consumer, and then its content has to be copied
+	 */
+	protected boolean[] toCopiedColumns(List<IZeroCopyConsumer> consumers) {
+		boolean[] copiedColumns = new boolean[consumers.size()];
+		for (int i = 0; i < copiedColumns.length; i++) {
+			copiedColumns[i] = consumers.get(i) != null;
+		}
+		return copiedColumns;
+	}
 
-		AtomicInteger columnIndex = new AtomicInteger(0);
+	protected boolean isCopied(boolean[] copiedColumns, int columnIndex) {
+		if (copiedColumns == null) {
+			return true;
+		} else {
+			// columnIndex is -1 before the first char of the first column
+			int currentColumn = Math.max(0, columnIndex);
+			return currentColumn < copiedColumns.length && copiedColumns[currentColumn];
+		}
+	}
 
-		final char[] buffer = new char[charBuffer.capacity()];
+	protected List<IZeroCopyConsumer> bindHeaders(List<String> headers,
+			Map<String, ? extends IZeroCopyConsumer> headerToConsumer) {
+		Set<String> missingHeaders = Sets.difference(headerToConsumer.keySet(), new HashSet<>(headers));
+		if (!missingHeaders.isEmpty()) {
+			throw new IllegalArgumentException("Headers " + missingHeaders + " are not in " + headers);
+		}
 
-		CharBuffer nextValue = CharBuffer.allocate(bufferSize);
+		List<IZeroCopyConsumer> boundConsumers = new ArrayList<>(headers.size());
+		for (String header : headers) {
+			boundConsumers.add(headerToConsumer.get(header));
+		}
 
-		// We have a single ArrayList: its capacity will increase each time we encounter a longest row (which is nice,
-		// at will typically be nearly fully prepared on first row)
-		List<String> pendingStrings = new LinkedList<>();
+		// Trailing columns without consumers are not considered
+		while (!boundConsumers.isEmpty() && boundConsumers.get(boundConsumers.size() - 1) == null) {
+			boundConsumers.remove(boundConsumers.size() - 1);
+		}
 
-		IZeroCopyConsumer consumer = new Youpi(pendingStrings);
+		return boundConsumers;
+	}
 
-		IntFunction<IZeroCopyConsumer> indexToConsumer = index -> consumer;
+	/**
+	 * 
+	 * @return a {@link Stream} of a {@link String} array per row. Prefer {@link #parseAsRows(Reader, char)} to prevent
+	 *         allocating a {@link String} per cell
+	 */
+	public Stream<String[]> parseAsStringArrays(Reader reader, char separator) {
+		return parseAsStringArrays(reader, separator, null);
+	}
 
-		return StreamSupport.stream(new Spliterators.AbstractSpliterator<String[]>(Long.MAX_VALUE, 0) {
+	/**
+	 * 
+	 * @param dictionary
+	 *            if not null, used to intern the cells, which is useful when there is many repeated values. It must not
+	 *            be shared with a concurrent parsing, as it is not thread-safe
+	 * @return a {@link Stream} of a {@link String} array per row. It can be processed in parallel, as each row is
+	 *         copied into a new array before being handed to other threads
+	 */
+	public Stream<String[]> parseAsStringArrays(Reader reader, char separator, StringDictionary dictionary) {
+		Spliterator<ZeroCopyRow> rows = newRowSpliterator(reader, separator, dictionary);
+
+		// The arrays are built in tryAdvance, which is called by a single thread at a time: the reused row and the
+		// dictionary are never accessed concurrently, while the default trySplit batches the fresh arrays
+		Spliterator<String[]> arrays = new Spliterators.AbstractSpliterator<String[]>(Long.MAX_VALUE,
+				Spliterator.ORDERED | Spliterator.NONNULL) {
 
 			@Override
 			public boolean tryAdvance(Consumer<? super String[]> action) {
-				boolean actionHasBeenTriggered = false;
-
-				// Continue until there is bytes to process
-				// Stop if no more bytes, or else if a row have been processed
-				while ((moreToRead.get() || charBuffer.hasRemaining()) && !actionHasBeenTriggered) {
-					fillBuffer(reader, charBuffer, moreToRead, buffer);
-
-					while (charBuffer.hasRemaining() && !actionHasBeenTriggered) {
-						actionHasBeenTriggered = processBuffer(separator,
-								charBuffer,
-								columnIndex,
-								nextValue,
-								pendingStrings,
-								indexToConsumer,
-								action);
-					}
-
-					if (!moreToRead.get() && !charBuffer.hasRemaining() && !actionHasBeenTriggered) {
-						// We are at the end of the file
-						// We have detected the beginning of an input and then encounter EOF: we have to flush the
-						// column
-
-						columnIndex.set(flushColumn(indexToConsumer, nextValue, columnIndex.get(), false));
-						warnConsumersWithoutColumn(indexToConsumer, columnIndex.get(), -1);
-					}
-				}
-
-				return actionHasBeenTriggered;
+				return rows.tryAdvance(row -> action.accept(row.toStringArray()));
 			}
+		};
 
-			protected void fillBuffer(Reader reader,
-					CharBuffer charBuffer,
-					AtomicBoolean moreToRead,
-					final char[] buffer) {
-				if (moreToRead.get() && !charBuffer.hasRemaining()) {
-					charBuffer.compact();
-
-					// We do not use Reader.read(CharBuffer) as it would allocate a transient char[]
-					int nbRead;
-					try {
-						nbRead = reader.read(buffer, 0, Math.min(buffer.length, charBuffer.remaining()));
-					} catch (IOException e) {
-						throw new UncheckedIOException(e);
-					}
-					if (nbRead > 0) {
-						charBuffer.put(buffer, 0, nbRead);
-					}
-
-					if (nbRead == 0) {
-						// Is it legal ? We may have 0 bytes if it is buffered but the buffer is not filled yet
-						// Or is it a bug in our code? Or is it the buffer is too small?
-						throw new IllegalStateException("Unable to read data");
-					}
-					charBuffer.flip();
-
-					if (nbRead < 0) {
-						moreToRead.set(false);
-					}
-				}
-			}
-
-			protected boolean processBuffer(char separator,
-					CharBuffer charBuffer,
-					AtomicInteger columnIndex,
-					CharBuffer nextValue,
-					List<String> pendingStrings,
-					IntFunction<IZeroCopyConsumer> indexToConsumer,
-					Consumer<? super String[]> action) {
-				boolean actionHasBeenTriggered = false;
-
-				// Next char is the one not yet processed
-				char nextChar = charBuffer.get();
+		return StreamSupport.stream(arrays, false);
+	}
 
-				if (nextChar == separator) {
-					// We are closing a column: publish the column content
-					columnIndex.set(flushColumn(indexToConsumer, nextValue, columnIndex.get(), true));
-				} else if (nextChar == '\r' || nextChar == '\n') {
-					columnIndex.set(flushColumn(indexToConsumer, nextValue, columnIndex.get(), false));
+	/**
+	 * 
+	 * @return a {@link Stream} providing the same {@link ZeroCopyRow} instance for each row: a row is valid only until
+	 *         the next one is requested. Then, the rows must not be collected. This {@link Stream} does not split: it
+	 *         is processed by a single thread even if it is parallel
+	 */
+	public Stream<ZeroCopyRow> parseAsRows(Reader reader, char separator) {
+		return parseAsRows(reader, separator, null);
+	}
 
-					warnConsumersWithoutColumn(indexToConsumer, columnIndex.get(), -1);
+	/**
+	 * 
+	 * @param dictionary
+	 *            if not null, used to intern the cells in {@link ZeroCopyRow#getString(int)}. It must not be shared
+	 *            with a concurrent parsing, as it is not thread-safe
+	 * @see #parseAsRows(Reader, char)
+	 */
+	public Stream<ZeroCopyRow> parseAsRows(Reader reader, char separator, StringDictionary dictionary) {
+		return StreamSupport.stream(newRowSpliterator(reader, separator, dictionary), false);
+	}
 
-					if (!pendingStrings.isEmpty()) {
-						if (action != null) {
-							action.accept(pendingStrings.toArray(new String[pendingStrings.size()]));
-						}
-						pendingStrings.clear();
-						actionHasBeenTriggered = true;
-					}
+	/**
+	 * 
+	 * @return a {@link Spliterator} which does not split, as it reuses the same {@link ZeroCopyRow} for each row
+	 */
+	protected Spliterator<ZeroCopyRow> newRowSpliterator(Reader reader, char separator, StringDictionary dictionary) {
+		return new ZeroCopyRowSpliterator(reader, separator, quote, bufferSize, new ZeroCopyRow(dictionary));
+	}
 
-					// Reset the columnIndex
-					columnIndex.set(-1);
-				} else {
-					// We have an interesting character
-					if (columnIndex.get() < 0 && nextValue.position() == 0) {
-						// First character of current row
-						columnIndex.incrementAndGet();
-					}
-					nextValue.put(nextChar);
-				}
-				return actionHasBeenTriggered;
-			}
-		}, false);
+	/**
+	 * Quoted columns may be much longer than unquoted ones (e.g. multi-line columns): we accept to grow the buffer in
+	 * this case
+	 * 
+	 * @return a {@link CharBuffer} with at least one remaining char
+	 */
+	protected CharBuffer ensureRemaining(CharBuffer nextValue) {
+		if (nextValue.hasRemaining()) {
+			return nextValue;
+		} else {
+			CharBuffer bigger = CharBuffer.allocate(Math.max(1, nextValue.capacity() * 2));
+			nextValue.flip();
+			bigger.put(nextValue);
+			return bigger;
+		}
 	}
 
 	protected void warnConsumersWithoutColumn(IntFunction<IZeroCopyConsumer> consumers, int columnIndex, int maxIndex) {
@@ -398,7 +547,7 @@ protected void flushContent(IZeroCopyConsumer consumer, CharSequence charBuffer,
 				if (subSequence.length() == 0) {
 					consumer.nextRowIsMissing();
 				} else {
-					((DoubleConsumer) consumer).accept(ApexParserHelper.parseDouble(subSequence));
+					((DoubleConsumer) consumer).accept(FastDoubleParsers.parseDouble(subSequence));
 				}
 			} else if (consumer instanceof Consumer<?>) {
 				// You have better to be a CharSequence consumer
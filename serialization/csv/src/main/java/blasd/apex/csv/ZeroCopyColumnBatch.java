@@ -0,0 +1,161 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Enable receiving the content of a CSV by blocks of rows, each column being a primitive array. It prevents a call per
+ * cell, and enables vectorizable loops over the blocks.
+ * 
+ * The same {@link AColumnBlock} instances are reused from one batch to the next one: a batch is valid only until the
+ * batch consumer returns.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class ZeroCopyColumnBatch {
+	protected final List<? extends AColumnBlock> blocks;
+	protected final Consumer<? super ZeroCopyColumnBatch> batchConsumer;
+
+	protected final AColumnBlock lastBlock;
+	protected final int nbBlocks;
+
+	// The number of blocks which received the last row fitting in current batch
+	protected int nbFullBlocks;
+
+	/**
+	 * 
+	 * @param blocks
+	 *            the blocks by column index. A null element means the column is skipped
+	 * @param batchConsumer
+	 *            called each time the blocks are full, and once at the end with the leftover rows
+	 */
+	public ZeroCopyColumnBatch(List<? extends AColumnBlock> blocks,
+			Consumer<? super ZeroCopyColumnBatch> batchConsumer) {
+		this.blocks = blocks;
+		this.batchConsumer = batchConsumer;
+
+		AColumnBlock last = null;
+		int nbNotNull = 0;
+		for (AColumnBlock block : blocks) {
+			if (block == null) {
+				continue;
+			} else if (last != null && last.capacity() != block.capacity()) {
+				throw new IllegalArgumentException("All blocks must have the same capacity");
+			}
+			last = block;
+			nbNotNull++;
+		}
+		this.lastBlock = Objects.requireNonNull(last, "We need at least one block");
+		this.nbBlocks = nbNotNull;
+
+		// The parser has no constrain about the order in which consumers are notified for a given row: the batch is
+		// complete once each block received its last row
+		for (AColumnBlock block : blocks) {
+			if (block != null) {
+				block.onRow = () -> {
+					if (block.isFull() && ++nbFullBlocks == nbBlocks) {
+						flush();
+					}
+				};
+			}
+		}
+	}
+
+	public static ZeroCopyColumnBatch of(Consumer<? super ZeroCopyColumnBatch> batchConsumer, AColumnBlock... blocks) {
+		return new ZeroCopyColumnBatch(Arrays.asList(blocks), batchConsumer);
+	}
+
+	/**
+	 * Parse the whole reader, calling the batch consumer for each full batch, and finally for the leftover rows
+	 */
+	public void parse(IZeroCopyCSVParser parser, Reader reader, char separator) throws IOException {
+		parser.parse(reader, separator, asConsumers());
+
+		flush();
+	}
+
+	public List<IZeroCopyConsumer> asConsumers() {
+		return new ArrayList<>(blocks);
+	}
+
+	/**
+	 * Publish the current rows, if any, to the batch consumer, then clear the blocks
+	 */
+	public void flush() {
+		nbFullBlocks = 0;
+
+		if (lastBlock.size() > 0) {
+			batchConsumer.accept(this);
+
+			for (AColumnBlock block : blocks) {
+				if (block != null) {
+					block.clear();
+				}
+			}
+		}
+	}
+
+	/**
+	 * 
+	 * @return the number of rows in current batch
+	 */
+	public int size() {
+		return lastBlock.size();
+	}
+
+	/**
+	 * 
+	 * @return the global index of the first row of current batch
+	 */
+	public long getFirstRowIndex() {
+		return lastBlock.getFirstRowIndex();
+	}
+
+	public AColumnBlock getBlock(int columnIndex) {
+		return blocks.get(columnIndex);
+	}
+
+	public IntColumnBlock getIntBlock(int columnIndex) {
+		return (IntColumnBlock) blocks.get(columnIndex);
+	}
+
+	public LongColumnBlock getLongBlock(int columnIndex) {
+		return (LongColumnBlock) blocks.get(columnIndex);
+	}
+
+	public DoubleColumnBlock getDoubleBlock(int columnIndex) {
+		return (DoubleColumnBlock) blocks.get(columnIndex);
+	}
+
+	public StringColumnBlock getStringBlock(int columnIndex) {
+		return (StringColumnBlock) blocks.get(columnIndex);
+	}
+}
@@ -50,7 +50,19 @@ public static IZeroCopyConsumer intConsumer(IntConsumer intConsumer) {
 	}
 
 	public static IZeroCopyConsumer intBinaryOperator(IntBinaryOperator rowAndValueOperator) {
-		AtomicLong rowIndex = new AtomicLong();
+		return intBinaryOperator(rowAndValueOperator, 0L);
+	}
+
+	/**
+	 * 
+	 * @param rowAndValueOperator
+	 * @param firstRowIndex
+	 *            the index of the first row received by this consumer. Typically not 0 when parsing a chunk of a larger
+	 *            file with {@link ParallelZeroCopyCSVParser}
+	 * @return an {@link IZeroCopyIntConsumer} counting rows from firstRowIndex
+	 */
+	public static IZeroCopyConsumer intBinaryOperator(IntBinaryOperator rowAndValueOperator, long firstRowIndex) {
+		AtomicLong rowIndex = new AtomicLong(firstRowIndex);
 
 		return new IZeroCopyIntConsumer() {
 
@@ -81,7 +93,11 @@ public long nextValueRowIndex() {
 	}
 
 	public static IZeroCopyConsumer longBinaryOperator(LongBinaryOperator intBinaryOperator) {
-		AtomicLong rowIndex = new AtomicLong();
+		return longBinaryOperator(intBinaryOperator, 0L);
+	}
+
+	public static IZeroCopyConsumer longBinaryOperator(LongBinaryOperator intBinaryOperator, long firstRowIndex) {
+		AtomicLong rowIndex = new AtomicLong(firstRowIndex);
 
 		return new IZeroCopyLongConsumer() {
 
@@ -112,7 +128,11 @@ public long nextValueRowIndex() {
 	}
 
 	public static IZeroCopyConsumer doubleBinaryOperator(DoubleBinaryOperator intBinaryOperator) {
-		AtomicLong rowIndex = new AtomicLong();
+		return doubleBinaryOperator(intBinaryOperator, 0L);
+	}
+
+	public static IZeroCopyConsumer doubleBinaryOperator(DoubleBinaryOperator intBinaryOperator, long firstRowIndex) {
+		AtomicLong rowIndex = new AtomicLong(firstRowIndex);
 
 		return new IZeroCopyDoubleConsumer() {
 
@@ -0,0 +1,228 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+import java.util.Arrays;
+
+/**
+ * A row of a CSV, as parsed by {@link ZeroCopyCSVParser#parseAsRows(java.io.Reader, char)}. This is a flyweight: the
+ * same instance, and the same cells, are reused for each row. A row and its cells are valid only until the next row is
+ * parsed.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class ZeroCopyRow {
+	private static final int DEFAULT_CAPACITY = 128;
+
+	// The chars of all the cells of the row, one after the other
+	protected char[] chars = new char[DEFAULT_CAPACITY];
+	protected int length;
+
+	// The end (exclusive) of each cell in chars
+	protected int[] cellEnds = new int[DEFAULT_CAPACITY / 8];
+	protected int nbCells;
+
+	// True once any char, including a separator, has been encountered in current row
+	protected boolean rowStarted;
+	// True once any char, including a quote, has been encountered in current cell
+	protected boolean cellStarted;
+
+	protected long rowIndex = -1;
+
+	protected Cell[] cells = new Cell[0];
+
+	protected final StringDictionary dictionary;
+
+	public ZeroCopyRow() {
+		this(null);
+	}
+
+	/**
+	 * 
+	 * @param dictionary
+	 *            if not null, {@link #getString(int)} interns the values with this {@link StringDictionary}
+	 */
+	public ZeroCopyRow(StringDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * 
+	 * @return the index of this row, not counting empty rows
+	 */
+	public long getRowIndex() {
+		return rowIndex;
+	}
+
+	/**
+	 * 
+	 * @return the number of cells in this row
+	 */
+	public int size() {
+		return nbCells;
+	}
+
+	/**
+	 * 
+	 * @return a view over the content of given cell, valid until the next row is parsed
+	 */
+	public CharSequence get(int cellIndex) {
+		checkCellIndex(cellIndex);
+		return cells[cellIndex];
+	}
+
+	/**
+	 * 
+	 * @return the content of given cell as a {@link String}, interned if this row has a {@link StringDictionary}
+	 */
+	public String getString(int cellIndex) {
+		checkCellIndex(cellIndex);
+
+		int start = cellStart(cellIndex);
+		int end = cellEnds[cellIndex];
+		if (dictionary == null) {
+			return new String(chars, start, end - start);
+		} else {
+			return dictionary.intern(chars, start, end);
+		}
+	}
+
+	public String[] toStringArray() {
+		String[] array = new String[nbCells];
+		for (int i = 0; i < nbCells; i++) {
+			array[i] = getString(i);
+		}
+		return array;
+	}
+
+	protected void checkCellIndex(int cellIndex) {
+		if (cellIndex < 0 || cellIndex >= nbCells) {
+			throw new IndexOutOfBoundsException(cellIndex + " is out of [0, " + nbCells + "[");
+		}
+	}
+
+	protected int cellStart(int cellIndex) {
+		if (cellIndex == 0) {
+			return 0;
+		} else {
+			return cellEnds[cellIndex - 1];
+		}
+	}
+
+	protected void append(char c) {
+		if (length == chars.length) {
+			chars = Arrays.copyOf(chars, chars.length * 2);
+		}
+		chars[length++] = c;
+
+		rowStarted = true;
+		cellStarted = true;
+	}
+
+	protected void append(char[] source, int from, int to) {
+		int nbChars = to - from;
+		if (length + nbChars > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + nbChars));
+		}
+		System.arraycopy(source, from, chars, length, nbChars);
+		length += nbChars;
+
+		rowStarted = true;
+		cellStarted = true;
+	}
+
+	protected void startQuotedCell() {
+		rowStarted = true;
+		cellStarted = true;
+	}
+
+	protected void endCell() {
+		if (nbCells == cellEnds.length) {
+			cellEnds = Arrays.copyOf(cellEnds, cellEnds.length * 2);
+		}
+		cellEnds[nbCells++] = length;
+
+		if (nbCells > cells.length) {
+			// Prepare the flyweights for the new cells
+			int previousLength = cells.length;
+			cells = Arrays.copyOf(cells, cellEnds.length);
+			for (int i = previousLength; i < cells.length; i++) {
+				cells[i] = new Cell(i);
+			}
+		}
+
+		rowStarted = true;
+		cellStarted = false;
+	}
+
+	protected void nextRow() {
+		length = 0;
+		nbCells = 0;
+		rowStarted = false;
+		cellStarted = false;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toStringArray());
+	}
+
+	/**
+	 * A view over a cell of the row
+	 * 
+	 * @author Benoit Lacelle
+	 *
+	 */
+	protected class Cell implements CharSequence {
+		protected final int cellIndex;
+
+		protected Cell(int cellIndex) {
+			this.cellIndex = cellIndex;
+		}
+
+		@Override
+		public int length() {
+			return cellEnds[cellIndex] - cellStart(cellIndex);
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= length()) {
+				throw new IndexOutOfBoundsException(index + " is out of [0, " + length() + "[");
+			}
+			return chars[cellStart(cellIndex) + index];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return toString().subSequence(start, end);
+		}
+
+		@Override
+		public String toString() {
+			int start = cellStart(cellIndex);
+			return new String(chars, start, cellEnds[cellIndex] - start);
+		}
+	}
+}
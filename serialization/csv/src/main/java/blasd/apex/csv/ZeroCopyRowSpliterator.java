@@ -0,0 +1,178 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Parses a CSV row by row into a single {@link ZeroCopyRow}, reused for each row. It never splits: batching the rows
+ * for parallel processing would hand the same reused instance to several threads.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class ZeroCopyRowSpliterator extends Spliterators.AbstractSpliterator<ZeroCopyRow> {
+	protected final Reader reader;
+	protected final char separator;
+	protected final int quote;
+
+	protected final ZeroCopyRow row;
+
+	protected final char[] buffer;
+	protected int bufferPosition;
+	protected int bufferLimit;
+
+	// We need to read at least once
+	protected boolean moreToRead = true;
+
+	// true if we are in a quoted column
+	protected boolean inQuotes = false;
+	// true if previous char was a quote closing a quoted column, or the first quote of an escaped quote
+	protected boolean afterQuote = false;
+
+	protected long nextRowIndex = 0;
+
+	public ZeroCopyRowSpliterator(Reader reader, char separator, int quote, int bufferSize, ZeroCopyRow row) {
+		super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+
+		this.reader = reader;
+		this.separator = separator;
+		this.quote = quote;
+		this.row = row;
+
+		this.buffer = new char[bufferSize];
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super ZeroCopyRow> action) {
+		row.nextRow();
+
+		while (true) {
+			if (bufferPosition >= bufferLimit) {
+				if (moreToRead) {
+					fillBuffer();
+					continue;
+				} else {
+					// We are at the end of the file
+					break;
+				}
+			}
+
+			if (!inQuotes && !afterQuote) {
+				// Fast path: append in bulk the chars up to the next special char
+				int special = CsvScanners.indexOfSpecial(buffer, bufferPosition, bufferLimit, separator, quote);
+				if (special > bufferPosition) {
+					row.append(buffer, bufferPosition, special);
+					bufferPosition = special;
+					continue;
+				}
+			}
+
+			char nextChar = buffer[bufferPosition++];
+
+			if (inQuotes) {
+				if (nextChar == quote) {
+					// Either the closing quote, or the first quote of an escaped quote
+					inQuotes = false;
+					afterQuote = true;
+				} else {
+					row.append(nextChar);
+				}
+			} else if (afterQuote && nextChar == quote) {
+				// This is an escaped quote: we are still in the quoted column
+				row.append(nextChar);
+				inQuotes = true;
+				afterQuote = false;
+			} else {
+				afterQuote = false;
+
+				if (nextChar == separator) {
+					row.endCell();
+				} else if (nextChar == '\r' || nextChar == '\n') {
+					if (row.rowStarted) {
+						return publishRow(action);
+					}
+					// else this is an empty row: skip it
+				} else if (nextChar == quote && !row.cellStarted) {
+					// A quote opening a column: the quote is not part of the value
+					row.startQuotedCell();
+					inQuotes = true;
+				} else {
+					row.append(nextChar);
+				}
+			}
+		}
+
+		if (row.rowStarted) {
+			// The last row has no end-of-row
+			return publishRow(action);
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * The same {@link ZeroCopyRow} is provided for each row: it can not be buffered into batches processed by other
+	 * threads. A parallel {@link java.util.stream.Stream} over this {@link Spliterator} is then processed by a single
+	 * thread.
+	 */
+	@Override
+	public Spliterator<ZeroCopyRow> trySplit() {
+		return null;
+	}
+
+	protected boolean publishRow(Consumer<? super ZeroCopyRow> action) {
+		row.endCell();
+		row.rowIndex = nextRowIndex++;
+
+		action.accept(row);
+
+		return true;
+	}
+
+	protected void fillBuffer() {
+		int nbRead;
+		try {
+			nbRead = reader.read(buffer, 0, buffer.length);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		if (nbRead == 0) {
+			// Is it legal ? We may have 0 bytes if it is buffered but the buffer is not filled yet
+			// Or is it a bug in our code? Or is it the buffer is too small?
+			throw new IllegalStateException("Unable to read data");
+		} else if (nbRead < 0) {
+			moreToRead = false;
+			bufferLimit = 0;
+		} else {
+			bufferLimit = nbRead;
+		}
+		bufferPosition = 0;
+	}
+}
@@ -22,6 +22,12 @@
  */
 package blasd.apex.csv;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -62,4 +68,74 @@ public void testGuessSeparator_CustomWordChare() {
 
 		Assert.assertEquals('A', CsvFormatHelper.guessSeparator(CharMatcher.anyOf("abAB"), row).getAsInt());
 	}
+
+	@Test
+	public void testGuessFormat_headerAndTypes() {
+		String csv = "id;amount;price;name;comment\r\n" + "1;10000000000;1.5;Benoit;\r\n"
+				+ "2;20000000000;-2;Lacelle;something\r\n"
+				+ "3;3;.5e3;\"Lou;ise\";\r\n";
+
+		CsvFormat format = CsvFormatHelper.guessFormat(csv);
+
+		Assert.assertEquals(';', format.getSeparator());
+		Assert.assertEquals("\r\n", format.getLineTerminator());
+		Assert.assertTrue(format.hasHeader());
+		Assert.assertEquals(Arrays.asList("id", "amount", "price", "name", "comment"), format.getHeaders());
+		Assert.assertEquals(Arrays.asList(CsvColumnType.INT,
+				CsvColumnType.LONG,
+				CsvColumnType.DOUBLE,
+				CsvColumnType.STRING,
+				CsvColumnType.STRING), format.getColumnTypes());
+		Assert.assertFalse(format.isNullable(0));
+		Assert.assertTrue(format.isNullable(4));
+	}
+
+	@Test
+	public void testGuessFormat_noHeader() {
+		CsvFormat format = CsvFormatHelper.guessFormat("1,a\n2,b\n3,c");
+
+		Assert.assertEquals(',', format.getSeparator());
+		Assert.assertEquals("\n", format.getLineTerminator());
+		Assert.assertFalse(format.hasHeader());
+		Assert.assertEquals(Arrays.asList(), format.getHeaders());
+		Assert.assertEquals(Arrays.asList(CsvColumnType.INT, CsvColumnType.STRING), format.getColumnTypes());
+	}
+
+	@Test
+	public void testGuessFormat_onlyStrings() {
+		CsvFormat format = CsvFormatHelper.guessFormat("country|currency\rFR|EUR\rUS|USD\r");
+
+		Assert.assertEquals('|', format.getSeparator());
+		Assert.assertEquals("\r", format.getLineTerminator());
+		Assert.assertTrue(format.hasHeader());
+		Assert.assertEquals(Arrays.asList(CsvColumnType.STRING, CsvColumnType.STRING), format.getColumnTypes());
+	}
+
+	@Test
+	public void testGuessFormat_truncatedSample() throws IOException {
+		// The sample ends in the middle of '12345678901', which would be considered as an int
+		CsvFormat format = CsvFormatHelper.guessFormat(new StringReader("a\n1\n12345678901"), 8);
+
+		Assert.assertEquals(Arrays.asList(CsvColumnType.INT), format.getColumnTypes());
+	}
+
+	@Test
+	public void testGuessFormat_thenParse() throws IOException {
+		String csv = "id,value,label\n1,1.5,a\n2,,b\n3,3,a";
+
+		CsvFormat format = CsvFormatHelper.guessFormat(csv);
+
+		List<String> parsed = new ArrayList<>();
+		ZeroCopyColumnBatch batch = format.makeColumnBatch(2, b -> {
+			for (int i = 0; i < b.size(); i++) {
+				parsed.add(b.getIntBlock(0).getInt(i) + "|"
+						+ (b.getDoubleBlock(1).isMissing(i) ? "missing" : b.getDoubleBlock(1).getDouble(i))
+						+ "|"
+						+ b.getStringBlock(2).getString(i));
+			}
+		});
+		format.parse(new ZeroCopyCSVParser(), new StringReader(csv), batch);
+
+		Assert.assertEquals(Arrays.asList("1|1.5|a", "2|missing|b", "3|3.0|a"), parsed);
+	}
 }
@@ -0,0 +1,150 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestByteBufferZeroCopyCSVParser {
+	ByteBufferZeroCopyCSVParser parser = new ByteBufferZeroCopyCSVParser();
+
+	AtomicLong nbMissing = new AtomicLong();
+	AtomicLong nbInvalid = new AtomicLong();
+
+	/**
+	 * Collects the column as {@link String}
+	 */
+	private class StringCollector implements IZeroCopyConsumer, Consumer<CharSequence> {
+		final List<String> values = new ArrayList<>();
+
+		@Override
+		public void nextRowIsMissing() {
+			nbMissing.incrementAndGet();
+			values.add(null);
+		}
+
+		@Override
+		public void nextRowIsInvalid(CharSequence charSequence) {
+			nbInvalid.incrementAndGet();
+		}
+
+		@Override
+		public void accept(CharSequence t) {
+			values.add(t.toString());
+		}
+	}
+
+	protected ByteBuffer toBytes(String string) {
+		return ByteBuffer.wrap(string.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testIntLongDouble() {
+		int[] ints = new int[2];
+		long[] longs = new long[2];
+		double[] doubles = new double[2];
+
+		ByteBuffer bytes = toBytes("123,-9876543210,1.5\r\n-45,+3,0.25");
+		parser.parse(bytes,
+				',',
+				Arrays.asList(ZeroCopyConsumers.intBinaryOperator((rowIndex, value) -> ints[rowIndex] = value),
+						ZeroCopyConsumers.longBinaryOperator((rowIndex, value) -> longs[(int) rowIndex] = value),
+						ZeroCopyConsumers.doubleBinaryOperator((rowIndex, value) -> doubles[(int) rowIndex] = value)));
+
+		Assert.assertArrayEquals(new int[] { 123, -45 }, ints);
+		Assert.assertArrayEquals(new long[] { -9876543210L, 3 }, longs);
+		Assert.assertArrayEquals(new double[] { 1.5D, 0.25D }, doubles, 0.0001D);
+
+		Assert.assertFalse(bytes.hasRemaining());
+	}
+
+	@Test
+	public void testMissingAndInvalid() {
+		StringCollector strings = new StringCollector();
+		IZeroCopyConsumer ints = ZeroCopyConsumers.intConsumer(i -> Assert.assertEquals(7, i));
+
+		parser.parse(toBytes("\n,7\n\r\nabc,notAnInt,3\n\n"), ',', Arrays.asList(strings, ints, null));
+
+		Assert.assertEquals(Arrays.asList(null, "abc"), strings.values);
+		Assert.assertEquals(1, nbMissing.get());
+	}
+
+	@Test
+	public void testUtf8String() {
+		StringCollector strings = new StringCollector();
+
+		parser.parse(toBytes("Beno\u00EEt;1\nascii;2"), ';', Arrays.asList(strings));
+
+		Assert.assertEquals(Arrays.asList("Beno\u00EEt", "ascii"), strings.values);
+	}
+
+	@Test
+	public void testMappedFile_rowsOverWindows() throws IOException {
+		int problemSize = 1000;
+
+		Path tmpFile = Files.createTempFile("TestByteBufferZeroCopyCSVParser", ".csv");
+		tmpFile.toFile().deleteOnExit();
+		Files.write(tmpFile,
+				IntStream.range(0, problemSize)
+						.mapToObj(i -> i + "," + i * 2)
+						.collect(Collectors.joining("\n"))
+						.getBytes(StandardCharsets.UTF_8));
+
+		int[] firstColumn = new int[problemSize];
+		long[] secondColumn = new long[problemSize];
+
+		// Small windows to ensure rows are split over windows
+		new ByteBufferZeroCopyCSVParser(64).parse(tmpFile,
+				',',
+				Arrays.asList(ZeroCopyConsumers.intBinaryOperator((rowIndex, value) -> firstColumn[rowIndex] = value),
+						ZeroCopyConsumers
+								.longBinaryOperator((rowIndex, value) -> secondColumn[(int) rowIndex] = value)));
+
+		for (int i = 0; i < problemSize; i++) {
+			Assert.assertEquals(i, firstColumn[i]);
+			Assert.assertEquals(i * 2, secondColumn[i]);
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testMappedFile_rowLargerThanWindow() throws IOException {
+		Path tmpFile = Files.createTempFile("TestByteBufferZeroCopyCSVParser", ".csv");
+		tmpFile.toFile().deleteOnExit();
+		Files.write(tmpFile, "123456789\n1".getBytes(StandardCharsets.UTF_8));
+
+		new ByteBufferZeroCopyCSVParser(4).parse(tmpFile, ',', Arrays.asList());
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCsvScanners {
+	@Test
+	public void testChars() {
+		char[] chars = "abc,def\"g\r\nh".toCharArray();
+
+		Assert.assertEquals(3, CsvScanners.indexOfSpecial(chars, 0, chars.length, ',', '"'));
+		Assert.assertEquals(7, CsvScanners.indexOfSpecial(chars, 4, chars.length, ',', '"'));
+		Assert.assertEquals(9, CsvScanners.indexOfSpecial(chars, 4, chars.length, ',', ZeroCopyCSVParser.NO_QUOTE));
+		Assert.assertEquals(10, CsvScanners.indexOfSpecial(chars, 10, chars.length, ',', '"'));
+		Assert.assertEquals(chars.length, CsvScanners.indexOfSpecial(chars, 11, chars.length, ',', '"'));
+	}
+
+	@Test
+	public void testBytes_shorterThanLong() {
+		ByteBuffer bytes = ByteBuffer.wrap("ab;c".getBytes(StandardCharsets.US_ASCII));
+
+		Assert.assertEquals(2, CsvScanners.indexOfSeparatorOrEndOfRow(bytes, 0, 4, (byte) ';'));
+		Assert.assertEquals(4, CsvScanners.indexOfSeparatorOrEndOfRow(bytes, 3, 4, (byte) ';'));
+	}
+
+	@Test
+	public void testBytes_nonAscii() {
+		// 0xAC (as in the UTF-8 encoding of the euro sign) has the same low 7 bits as ','
+		ByteBuffer bytes = ByteBuffer.wrap("\u20AC\u20AC\u20AC,".getBytes(StandardCharsets.UTF_8));
+
+		Assert.assertEquals(9, CsvScanners.indexOfSeparatorOrEndOfRow(bytes, 0, bytes.limit(), (byte) ','));
+	}
+
+	@Test
+	public void testBytes_compareWithNaive() {
+		Random r = new Random(0);
+		byte[] alphabet = "a,\r\n0\u00FF".getBytes(StandardCharsets.ISO_8859_1);
+
+		for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+			for (int iteration = 0; iteration < 1000; iteration++) {
+				byte[] array = new byte[r.nextInt(40)];
+				for (int i = 0; i < array.length; i++) {
+					// Mostly regular bytes, with some special ones
+					if (r.nextInt(8) == 0) {
+						array[i] = alphabet[r.nextInt(alphabet.length)];
+					} else {
+						array[i] = 'x';
+					}
+				}
+				ByteBuffer bytes = ByteBuffer.wrap(array).order(order);
+
+				int from = array.length == 0 ? 0 : r.nextInt(array.length);
+				int expected = from;
+				while (expected < array.length && array[expected] != ','
+						&& array[expected] != '\r'
+						&& array[expected] != '\n') {
+					expected++;
+				}
+
+				Assert.assertEquals(expected,
+						CsvScanners.indexOfSeparatorOrEndOfRow(bytes, from, array.length, (byte) ','));
+			}
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestParallelZeroCopyCSVParser {
+
+	// Small chunks to force many chunks on a small file
+	ParallelZeroCopyCSVParser parser = new ParallelZeroCopyCSVParser(new ZeroCopyCSVParser(), 4, 16);
+
+	protected Path writeTmpFile(String content) throws IOException {
+		Path tmpFile = Files.createTempFile("TestParallelZeroCopyCSVParser", ".csv");
+		tmpFile.toFile().deleteOnExit();
+
+		Files.write(tmpFile, content.getBytes(StandardCharsets.UTF_8));
+
+		return tmpFile;
+	}
+
+	@Test
+	public void testEmptyFile() throws IOException {
+		Path path = writeTmpFile("");
+
+		AtomicLong nbChunks = new AtomicLong();
+		parser.parse(path, StandardCharsets.UTF_8, ',', firstRowIndex -> {
+			nbChunks.incrementAndGet();
+			return Collections.emptyList();
+		});
+
+		Assert.assertEquals(1, nbChunks.get());
+	}
+
+	@Test
+	public void testGlobalRowIndexes() throws IOException {
+		int problemSize = 10000;
+
+		// Mix the end-of-rows, and add some empty rows
+		String content = IntStream.range(0, problemSize)
+				.mapToObj(i -> i + "," + (-i) + (i % 3 == 0 ? "\r\n" : "\n") + (i % 100 == 0 ? "\n" : ""))
+				.collect(Collectors.joining());
+		Path path = writeTmpFile(content);
+
+		int[] firstColumn = new int[problemSize];
+		long[] secondColumn = new long[problemSize];
+
+		AtomicLong nbChunks = new AtomicLong();
+		parser.parse(path, StandardCharsets.UTF_8, ',', firstRowIndex -> {
+			nbChunks.incrementAndGet();
+			return Arrays.asList(
+					ZeroCopyConsumers.intBinaryOperator((rowIndex, value) -> firstColumn[rowIndex] = value,
+							firstRowIndex),
+					ZeroCopyConsumers.longBinaryOperator((rowIndex, value) -> secondColumn[(int) rowIndex] = value,
+							firstRowIndex));
+		});
+
+		Assert.assertTrue(nbChunks.get() > 1);
+		for (int i = 0; i < problemSize; i++) {
+			Assert.assertEquals(i, firstColumn[i]);
+			Assert.assertEquals(-i, secondColumn[i]);
+		}
+	}
+
+	@Test
+	public void testQuotedEndOfRows() throws IOException {
+		int problemSize = 1000;
+
+		// Quoted columns holding end-of-rows and escaped quotes, so that chunk targets fall in quoted columns
+		String content = IntStream.range(0, problemSize)
+				.mapToObj(i -> i + ",\"multi\nline\r\n,\"\"quoted\"\"\n"
+						+ (i % 7 == 0 ? "\n\n\n" : "")
+						+ "\","
+						+ (-i)
+						+ "\n")
+				.collect(Collectors.joining());
+		Path path = writeTmpFile(content);
+
+		int[] firstColumn = new int[problemSize];
+		long[] thirdColumn = new long[problemSize];
+
+		AtomicLong nbChunks = new AtomicLong();
+		parser.parse(path, StandardCharsets.UTF_8, ',', firstRowIndex -> {
+			nbChunks.incrementAndGet();
+			return Arrays.asList(
+					ZeroCopyConsumers.intBinaryOperator((rowIndex, value) -> firstColumn[rowIndex] = value,
+							firstRowIndex),
+					null,
+					ZeroCopyConsumers.longBinaryOperator((rowIndex, value) -> thirdColumn[(int) rowIndex] = value,
+							firstRowIndex));
+		});
+
+		Assert.assertTrue(nbChunks.get() > 1);
+		for (int i = 0; i < problemSize; i++) {
+			Assert.assertEquals(i, firstColumn[i]);
+			Assert.assertEquals(-i, thirdColumn[i]);
+		}
+	}
+
+	@Test
+	public void testNoEndOfRow() throws IOException {
+		Path path = writeTmpFile(IntStream.range(0, 1000).mapToObj(Integer::toString).collect(Collectors.joining(",")));
+
+		AtomicLong nbChunks = new AtomicLong();
+		AtomicLong sum = new AtomicLong();
+		parser.parse(path, StandardCharsets.UTF_8, ',', firstRowIndex -> {
+			nbChunks.incrementAndGet();
+			return Collections.singletonList(ZeroCopyConsumers.intConsumer(sum::addAndGet));
+		});
+
+		// No '\n': we can not split the file
+		Assert.assertEquals(1, nbChunks.get());
+		Assert.assertEquals(0, sum.get());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUTF16() throws IOException {
+		parser.parse(writeTmpFile(""), StandardCharsets.UTF_16, ',', firstRowIndex -> Collections.emptyList());
+	}
+}
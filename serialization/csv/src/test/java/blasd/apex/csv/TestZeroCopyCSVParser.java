@@ -24,15 +24,21 @@
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import org.junit.Assert;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.primitives.Ints;
 
 import blasd.apex.csv.IZeroCopyIntConsumer;
@@ -411,4 +417,126 @@ public long nextValueRowIndex() {
 		Assert.assertArrayEquals(new int[] { 123, 345 }, firstColumn);
 		Assert.assertArrayEquals(new long[] { 234, 456 }, secondColumn);
 	}
+
+	/**
+	 * Collects the column as {@link String}
+	 */
+	private class StringCollector implements IZeroCopyConsumer, Consumer<CharSequence> {
+		final List<String> values = new ArrayList<>();
+
+		@Override
+		public void nextRowIsMissing() {
+			nbMissing.incrementAndGet();
+			values.add(null);
+		}
+
+		@Override
+		public void nextRowIsInvalid(CharSequence charSequence) {
+			nbInvalid.incrementAndGet();
+		}
+
+		@Override
+		public void accept(CharSequence t) {
+			nbEvents.incrementAndGet();
+			values.add(t.toString());
+		}
+	}
+
+	@Test
+	public void testQuoted_SeparatorAndEndOfRowsInQuotes() throws IOException {
+		StringCollector firstColumn = new StringCollector();
+		StringCollector secondColumn = new StringCollector();
+
+		parser.parse(new StringReader("\"a,b\",c\r\n\"multi\r\nline\",\"\"\n"), ',', firstColumn, secondColumn);
+
+		Assert.assertEquals(Arrays.asList("a,b", "multi\r\nline"), firstColumn.values);
+		Assert.assertEquals(Arrays.asList("c", null), secondColumn.values);
+	}
+
+	@Test
+	public void testQuoted_EscapedQuotes() throws IOException {
+		StringCollector firstColumn = new StringCollector();
+
+		parser.parse(new StringReader("\"say \"\"hello\"\"\"\n\"\"\"\"\"\""), ',', firstColumn);
+
+		Assert.assertEquals(Arrays.asList("say \"hello\"", "\"\""), firstColumn.values);
+	}
+
+	@Test
+	public void testQuoted_QuoteInUnquotedColumnIsPlainChar() throws IOException {
+		StringCollector firstColumn = new StringCollector();
+
+		parser.parse(new StringReader("12\"3,\"4\n"), ',', firstColumn);
+
+		Assert.assertEquals(Arrays.asList("12\"3"), firstColumn.values);
+	}
+
+	@Test
+	public void testQuoted_Int() throws IOException {
+		int[] firstColumn = new int[2];
+
+		parser.parse(new StringReader("\"123\"\n\"-4\""),
+				',',
+				ZeroCopyConsumers.intBinaryOperator((rowIndex, value) -> firstColumn[rowIndex] = value));
+
+		Assert.assertArrayEquals(new int[] { 123, -4 }, firstColumn);
+	}
+
+	@Test
+	public void testQuoted_LongerThanBuffer() throws IOException {
+		StringCollector firstColumn = new StringCollector();
+
+		String longValue = Strings.repeat("a,\n", 100);
+		new ZeroCopyCSVParser(16).parse(new StringReader("\"" + longValue + "\",b"), ',', firstColumn);
+
+		Assert.assertEquals(Arrays.asList(longValue), firstColumn.values);
+	}
+
+	@Test
+	public void testNoQuote() throws IOException {
+		StringCollector firstColumn = new StringCollector();
+		StringCollector secondColumn = new StringCollector();
+
+		new ZeroCopyCSVParser(1024, ZeroCopyCSVParser.NO_QUOTE)
+				.parse(new StringReader("\"a,b\""), ',', firstColumn, secondColumn);
+
+		Assert.assertEquals(Arrays.asList("\"a"), firstColumn.values);
+		Assert.assertEquals(Arrays.asList("b\""), secondColumn.values);
+	}
+
+	@Test
+	public void testHeader() throws IOException {
+		StringCollector nameColumn = new StringCollector();
+		long[] idColumn = new long[2];
+
+		Map<String, IZeroCopyConsumer> headerToConsumer = ImmutableMap.of("name",
+				nameColumn,
+				"id",
+				ZeroCopyConsumers.longBinaryOperator((rowIndex, value) -> idColumn[(int) rowIndex] = value));
+		parser.parseWithHeader(new StringReader("id,ignored,\"name\"\r\n12,abc,Joe\r\n34,def,\"Doe, Jane\""),
+				',',
+				headerToConsumer);
+
+		Assert.assertArrayEquals(new long[] { 12, 34 }, idColumn);
+		Assert.assertEquals(Arrays.asList("Joe", "Doe, Jane"), nameColumn.values);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testHeader_unknownHeader() throws IOException {
+		parser.parseWithHeader(new StringReader("id,name\n12,Joe"),
+				',',
+				ImmutableMap.of("unknown", new StringCollector()));
+	}
+
+	@Test
+	public void testProjection_skippedColumnLongerThanBuffer() throws IOException {
+		StringCollector secondColumn = new StringCollector();
+
+		// The first column would overflow the buffer if it was copied
+		String longValue = Strings.repeat("a", 100);
+		new ZeroCopyCSVParser(16)
+				.parse(new StringReader(longValue + ",b\n\"" + longValue + "\",c\n"), ',', null, secondColumn);
+
+		Assert.assertEquals(Arrays.asList("b", "c"), secondColumn.values);
+	}
 }
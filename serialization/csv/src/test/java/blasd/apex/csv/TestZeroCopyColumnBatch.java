@@ -0,0 +1,147 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestZeroCopyColumnBatch {
+	ZeroCopyCSVParser parser = new ZeroCopyCSVParser();
+
+	@Test
+	public void testBatches() throws IOException {
+		String csv = IntStream.range(0, 10).mapToObj(i -> i + ",skipped," + i * 10L + "," + i / 2D).collect(
+				Collectors.joining("\n"));
+
+		List<Integer> sizes = new ArrayList<>();
+		List<Long> firstRowIndexes = new ArrayList<>();
+		long[] sums = new long[2];
+		double[] doubleSum = new double[1];
+
+		ZeroCopyColumnBatch batch = new ZeroCopyColumnBatch(
+				Arrays.asList(new IntColumnBlock(4), null, new LongColumnBlock(4), new DoubleColumnBlock(4)),
+				b -> {
+					sizes.add(b.size());
+					firstRowIndexes.add(b.getFirstRowIndex());
+
+					Assert.assertTrue(b.getIntBlock(0).isDense());
+
+					int[] ints = b.getIntBlock(0).values();
+					long[] longs = b.getLongBlock(2).values();
+					double[] doubles = b.getDoubleBlock(3).values();
+					for (int i = 0; i < b.size(); i++) {
+						sums[0] += ints[i];
+						sums[1] += longs[i];
+						doubleSum[0] += doubles[i];
+					}
+				});
+		batch.parse(parser, new StringReader(csv), ',');
+
+		Assert.assertEquals(Arrays.asList(4, 4, 2), sizes);
+		Assert.assertEquals(Arrays.asList(0L, 4L, 8L), firstRowIndexes);
+		Assert.assertEquals(45, sums[0]);
+		Assert.assertEquals(450, sums[1]);
+		Assert.assertEquals(22.5D, doubleSum[0], 0.0001D);
+	}
+
+	@Test
+	public void testMissingAndInvalid() throws IOException {
+		List<String> events = new ArrayList<>();
+
+		ZeroCopyColumnBatch batch = ZeroCopyColumnBatch.of(b -> {
+			IntColumnBlock block = b.getIntBlock(0);
+
+			Assert.assertFalse(block.isDense());
+			Assert.assertEquals(1, block.getNbMissing());
+			Assert.assertEquals(1, block.getNbInvalid());
+
+			for (int i = 0; i < b.size(); i++) {
+				if (block.isMissing(i)) {
+					events.add("missing");
+				} else if (block.isInvalid(i)) {
+					events.add("invalid");
+				} else {
+					events.add(Integer.toString(block.getInt(i)));
+				}
+			}
+		}, new IntColumnBlock(100));
+		batch.parse(parser, new StringReader("1\n,\nabc\n4"), ',');
+
+		Assert.assertEquals(Arrays.asList("1", "missing", "invalid", "4"), events);
+	}
+
+	@Test
+	public void testConsumersNotifiedInReverseOrder() {
+		List<String> batches = new ArrayList<>();
+
+		IntColumnBlock first = new IntColumnBlock(2);
+		IntColumnBlock second = new IntColumnBlock(2);
+		ZeroCopyColumnBatch batch = ZeroCopyColumnBatch.of(b -> {
+			Assert.assertEquals(b.size(), b.getIntBlock(0).size());
+			Assert.assertEquals(b.size(), b.getIntBlock(1).size());
+
+			for (int i = 0; i < b.size(); i++) {
+				batches.add(b.getIntBlock(0).getInt(i) + "-" + b.getIntBlock(1).getInt(i));
+			}
+		}, first, second);
+
+		for (int i = 0; i < 5; i++) {
+			second.accept(i * 10);
+			first.accept(i);
+		}
+		batch.flush();
+
+		Assert.assertEquals(Arrays.asList("0-0", "1-10", "2-20", "3-30", "4-40"), batches);
+	}
+
+	@Test
+	public void testBitmapOverManyWords() {
+		LongColumnBlock block = new LongColumnBlock(200);
+
+		for (int i = 0; i < 200; i++) {
+			if (i % 3 == 0) {
+				block.nextRowIsMissing();
+			} else {
+				block.accept(i);
+			}
+		}
+
+		for (int i = 0; i < 200; i++) {
+			Assert.assertEquals(i % 3 == 0, block.isMissing(i));
+			Assert.assertFalse(block.isInvalid(i));
+		}
+
+		block.clear();
+		Assert.assertEquals(0, block.size());
+		Assert.assertEquals(200, block.nextValueRowIndex());
+		Assert.assertFalse(block.isMissing(0));
+	}
+}
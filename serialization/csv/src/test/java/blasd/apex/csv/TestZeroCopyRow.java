@@ -0,0 +1,138 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.csv;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestZeroCopyRow {
+	ZeroCopyCSVParser parser = new ZeroCopyCSVParser();
+
+	@Test
+	public void testFlyweightIsReused() {
+		List<ZeroCopyRow> rows = new ArrayList<>();
+		List<String> contents = new ArrayList<>();
+		parser.parseAsRows(new StringReader("a,b\r\n\r\nc,,d\n"), ',').forEach(row -> {
+			rows.add(row);
+			contents.add(row.getRowIndex() + "=" + row);
+		});
+
+		Assert.assertEquals(2, rows.size());
+		Assert.assertSame(rows.get(0), rows.get(1));
+		Assert.assertEquals(Arrays.asList("0=[a, b]", "1=[c, , d]"), contents);
+	}
+
+	@Test
+	public void testCellAsCharSequence() {
+		parser.parseAsRows(new StringReader("abc,de"), ',').forEach(row -> {
+			Assert.assertEquals(2, row.size());
+			Assert.assertEquals(3, row.get(0).length());
+			Assert.assertEquals('e', row.get(1).charAt(1));
+			Assert.assertEquals("bc", row.get(0).subSequence(1, 3).toString());
+		});
+	}
+
+	@Test
+	public void testQuotedAndTrailingSeparator() {
+		List<String[]> rows = parser.parseAsStringArrays(new StringReader("\"a,\"\"b\"\"\",c,\n\"\",d"), ',')
+				.collect(Collectors.toList());
+
+		Assert.assertEquals(2, rows.size());
+		Assert.assertArrayEquals(new String[] { "a,\"b\"", "c", "" }, rows.get(0));
+		Assert.assertArrayEquals(new String[] { "", "d" }, rows.get(1));
+	}
+
+	@Test
+	public void testParallelStringArrays() {
+		String csv = IntStream.range(0, 100000).mapToObj(i -> i + ",v" + i % 7).collect(Collectors.joining("\n"));
+
+		List<String[]> sequential = parser.parseAsStringArrays(new StringReader(csv), ',', new StringDictionary())
+				.collect(Collectors.toList());
+		List<String[]> parallel =
+				parser.parseAsStringArrays(new StringReader(csv), ',', new StringDictionary()).parallel().collect(
+						Collectors.toList());
+
+		Assert.assertEquals(100000, parallel.size());
+		for (int i = 0; i < sequential.size(); i++) {
+			Assert.assertArrayEquals(new String[] { Integer.toString(i), "v" + i % 7 }, parallel.get(i));
+			Assert.assertArrayEquals(sequential.get(i), parallel.get(i));
+		}
+	}
+
+	@Test
+	public void testParallelRows() {
+		String csv = IntStream.range(0, 100000).mapToObj(i -> i + ",a").collect(Collectors.joining("\n"));
+
+		// The reused row is consistent as the rows are not split between threads
+		long nbConsistent = parser.parseAsRows(new StringReader(csv), ',')
+				.parallel()
+				.filter(row -> row.getString(0).equals(Long.toString(row.getRowIndex())))
+				.count();
+
+		Assert.assertEquals(100000, nbConsistent);
+	}
+
+	@Test
+	public void testLongRow() {
+		String longCell = String.join("", java.util.Collections.nCopies(1000, "x"));
+		String csv = longCell + "," + longCell + "\n" + String.join(",", java.util.Collections.nCopies(100, "y"));
+
+		List<String[]> rows = parser.parseAsStringArrays(new StringReader(csv), ',').collect(Collectors.toList());
+
+		Assert.assertArrayEquals(new String[] { longCell, longCell }, rows.get(0));
+		Assert.assertEquals(100, rows.get(1).length);
+	}
+
+	@Test
+	public void testDictionary() {
+		StringDictionary dictionary = new StringDictionary();
+		List<String[]> rows = parser.parseAsStringArrays(new StringReader("FR,EUR\nUS,USD\nFR,EUR"), ',', dictionary)
+				.collect(Collectors.toList());
+
+		Assert.assertEquals(4, dictionary.size());
+		Assert.assertEquals("FR", rows.get(0)[0]);
+		Assert.assertSame(rows.get(0)[0], rows.get(2)[0]);
+		Assert.assertSame(rows.get(0)[1], rows.get(2)[1]);
+	}
+
+	@Test
+	public void testDictionary_full() {
+		StringDictionary dictionary = new StringDictionary(1);
+
+		char[] chars = "abab".toCharArray();
+		String a = dictionary.intern(chars, 0, 1);
+		Assert.assertSame(a, dictionary.intern(chars, 2, 3));
+
+		String b = dictionary.intern(chars, 1, 2);
+		Assert.assertEquals("b", b);
+		Assert.assertNotSame(b, dictionary.intern(chars, 3, 4));
+		Assert.assertEquals(1, dictionary.size());
+	}
+}
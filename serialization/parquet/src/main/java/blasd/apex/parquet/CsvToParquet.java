@@ -0,0 +1,314 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.parquet;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.parquet.avro.AvroParquetWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import blasd.apex.core.memory.IApexMemoryConstants;
+import blasd.apex.core.primitive.FastDoubleParsers;
+import blasd.apex.core.primitive.Jdk9CharSequenceParsers;
+import blasd.apex.csv.CsvColumnType;
+import blasd.apex.csv.CsvFormat;
+import blasd.apex.csv.CsvFormatHelper;
+import blasd.apex.csv.ZeroCopyCSVParser;
+import blasd.apex.csv.ZeroCopyRow;
+import blasd.apex.serialization.avro.AvroSchemaHelper;
+
+/**
+ * Convert a CSV file into a Parquet file, without Spark. The CSV format and the column types are inferred from the
+ * first rows by {@link CsvFormatHelper}, then rows are streamed from a {@link ZeroCopyCSVParser} into a
+ * {@link ParquetWriter}: the memory is bounded by the row group size.
+ * 
+ * Integer columns are written as longs, as the first rows may hold only small values. A cell which can not be parsed
+ * given the inferred type (e.g. a column typed as number from the first rows, holding a label later) fails the
+ * conversion, unless the converter is built to write such cells as null.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class CsvToParquet {
+	protected static final Logger LOGGER = LoggerFactory.getLogger(CsvToParquet.class);
+
+	/**
+	 * Smaller than the Parquet default (128MB), as the row group is buffered in memory until flushed
+	 */
+	public static final int DEFAULT_ROW_GROUP_SIZE = 32 * IApexMemoryConstants.MB_INT;
+
+	protected final ZeroCopyCSVParser parser;
+	protected final int rowGroupSize;
+	protected final boolean nullInvalidCells;
+
+	public CsvToParquet() {
+		this(new ZeroCopyCSVParser(), DEFAULT_ROW_GROUP_SIZE);
+	}
+
+	/**
+	 * 
+	 * @param rowGroupSize
+	 *            the number of bytes buffered in memory before a row group is written
+	 */
+	public CsvToParquet(ZeroCopyCSVParser parser, int rowGroupSize) {
+		this(parser, rowGroupSize, false);
+	}
+
+	/**
+	 * 
+	 * @param rowGroupSize
+	 *            the number of bytes buffered in memory before a row group is written
+	 * @param nullInvalidCells
+	 *            if true, a cell which does not match the type inferred for its column is written as null. Else, the
+	 *            conversion fails on such a cell
+	 */
+	public CsvToParquet(ZeroCopyCSVParser parser, int rowGroupSize, boolean nullInvalidCells) {
+		if (rowGroupSize <= 0) {
+			throw new IllegalArgumentException("rowGroupSize has to be strictly positive: " + rowGroupSize);
+		}
+		this.parser = parser;
+		this.rowGroupSize = rowGroupSize;
+		this.nullInvalidCells = nullInvalidCells;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args == null || args.length != 2) {
+			throw new IllegalArgumentException(
+					"We expected 2 arguments: path to CSV file and path to the .parquet file to write");
+		}
+
+		long nbRows = new CsvToParquet().convert(Paths.get(args[0]), StandardCharsets.UTF_8, Paths.get(args[1]));
+		LOGGER.info("{} rows have been written into {}", nbRows, args[1]);
+	}
+
+	/**
+	 * 
+	 * @param csvPath
+	 *            the CSV file to convert
+	 * @param charset
+	 *            the {@link Charset} of the CSV file
+	 * @param parquetPath
+	 *            the Parquet file to write. It must not exist
+	 * @return the number of written rows
+	 * @throws IOException
+	 * @throws IllegalArgumentException
+	 *             if a cell does not match the type inferred for its column, and invalid cells are not written as null.
+	 *             The partially written Parquet file is then deleted
+	 */
+	public long convert(Path csvPath, Charset charset, Path parquetPath) throws IOException {
+		if (parquetPath.toFile().exists()) {
+			throw new IllegalArgumentException("Can not write to an existing file:" + parquetPath);
+		}
+
+		CsvFormat format = CsvFormatHelper.guessFormat(csvPath, charset);
+		LOGGER.info("{} has been inferred as {}", csvPath, format);
+
+		Schema schema = proposeSchema(format);
+
+		AtomicLong nbInvalid = new AtomicLong();
+		long nbRows;
+		try (Reader reader = Files.newBufferedReader(csvPath, charset);
+				Stream<ZeroCopyRow> rows = parser.parseAsRows(reader, format.getSeparator())) {
+			Stream<ZeroCopyRow> dataRows;
+			if (format.hasHeader()) {
+				dataRows = rows.skip(1);
+			} else {
+				dataRows = rows;
+			}
+
+			// The writer consumes each record before requesting the next one: the record is reused
+			GenericRecord record = new GenericData.Record(schema);
+			nbRows = makeParquetStreamFactory().writeToPath(parquetPath,
+					dataRows.map(row -> fillRecord(format, row, record, nbInvalid)));
+		} catch (IllegalArgumentException e) {
+			// Do not leave a truncated file behind
+			Files.deleteIfExists(parquetPath);
+			throw e;
+		}
+
+		if (nbInvalid.get() > 0) {
+			LOGGER.warn("{} cells of {} have been written as null as they do not match {}",
+					nbInvalid,
+					csvPath,
+					format.getColumnTypes());
+		}
+
+		return nbRows;
+	}
+
+	protected ParquetStreamFactory makeParquetStreamFactory() {
+		return new ParquetStreamFactory() {
+			@Override
+			protected ParquetWriter<GenericRecord> makeWriter(Path javaPathOnDisk, Schema schema) throws IOException {
+				return AvroParquetWriter.<GenericRecord>builder(toHadoopPath(javaPathOnDisk))
+						.withSchema(schema)
+						.withConf(getConfiguration())
+						.withRowGroupSize(rowGroupSize)
+						.build();
+			}
+		};
+	}
+
+	/**
+	 * 
+	 * @return an Avro {@link Schema} with a nullable field per column. Columns are named after the headers, or _c0,
+	 *         _c1, ... like Spark if there is no header
+	 */
+	public static Schema proposeSchema(CsvFormat format) {
+		Map<String, Object> exampleRow = new LinkedHashMap<>();
+
+		Set<String> names = new HashSet<>();
+		for (int i = 0; i < format.getNbColumns(); i++) {
+			String name;
+			if (format.hasHeader()) {
+				name = toAvroName(format.getHeaders().get(i), i);
+			} else {
+				name = "_c" + i;
+			}
+
+			if (!names.add(name)) {
+				// Prevent conflicting names
+				name = name + "_" + i;
+				names.add(name);
+			}
+
+			exampleRow.put(name, exampleValue(format.getColumnType(i)));
+		}
+
+		return AvroSchemaHelper.proposeSimpleSchema(exampleRow);
+	}
+
+	/**
+	 * 
+	 * @return given header, modified to be a valid Avro name: [A-Za-z_][A-Za-z0-9_]*
+	 */
+	protected static String toAvroName(String header, int columnIndex) {
+		if (header.isEmpty()) {
+			return "_c" + columnIndex;
+		}
+
+		StringBuilder sb = new StringBuilder(header.length() + 1);
+		if (!Character.isLetter(header.charAt(0)) && header.charAt(0) != '_') {
+			sb.append('_');
+		}
+		for (int i = 0; i < header.length(); i++) {
+			char c = header.charAt(i);
+			if (c < 0x80 && (Character.isLetterOrDigit(c) || c == '_')) {
+				sb.append(c);
+			} else {
+				sb.append('_');
+			}
+		}
+		return sb.toString();
+	}
+
+	protected static Object exampleValue(CsvColumnType type) {
+		switch (type) {
+		case INT:
+			// Later rows may not fit in an int
+		case LONG:
+			return 0L;
+		case DOUBLE:
+			return 0D;
+		case STRING:
+			return "";
+		default:
+			throw new IllegalStateException("Not managed: " + type);
+		}
+	}
+
+	protected GenericRecord fillRecord(CsvFormat format, ZeroCopyRow row, GenericRecord record, AtomicLong nbInvalid) {
+		for (int i = 0; i < format.getNbColumns(); i++) {
+			if (i >= row.size() || row.get(i).length() == 0) {
+				record.put(i, null);
+			} else {
+				CharSequence cell = row.get(i);
+
+				Object value = parseCell(format.getColumnType(i), cell);
+				if (value == null) {
+					if (!nullInvalidCells) {
+						throw new IllegalArgumentException("The cell '" + cell
+								+ "' on row #"
+								+ row.getRowIndex()
+								+ " does not match the type "
+								+ format.getColumnType(i)
+								+ " inferred for column #"
+								+ i
+								+ " from the first rows. Invalid cells can be written as null with nullInvalidCells");
+					}
+					nbInvalid.incrementAndGet();
+					if (LOGGER.isTraceEnabled()) {
+						LOGGER.trace("Invalid cell: {} on row #{}", cell, row.getRowIndex());
+					}
+				}
+				record.put(i, value);
+			}
+		}
+
+		return record;
+	}
+
+	/**
+	 * 
+	 * @return the value of given non-empty cell, or null if it is not valid given the type
+	 */
+	protected Object parseCell(CsvColumnType type, CharSequence cell) {
+		switch (type) {
+		case INT:
+			// INT columns are written as long
+		case LONG:
+			try {
+				return Jdk9CharSequenceParsers.parseLong(cell, 0, cell.length(), 10);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		case DOUBLE:
+			try {
+				return FastDoubleParsers.parseDouble(cell);
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		case STRING:
+			return cell.toString();
+		default:
+			throw new IllegalStateException("Not managed: " + type);
+		}
+	}
+}
@@ -33,6 +33,7 @@
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
+import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.parquet.avro.AvroParquetReader;
@@ -154,9 +155,7 @@ public long writeToPath(Path javaPathOnDisk, Stream<? extends GenericRecord> row
 
 			if (nbRows.get() == 0) {
 				try {
-					writer.set(AvroParquetWriter.<GenericRecord>builder(toHadoopPath(javaPathOnDisk))
-							.withSchema(m.getSchema())
-							.build());
+					writer.set(makeWriter(javaPathOnDisk, m.getSchema()));
 				} catch (NullPointerException e) {
 					throw new IllegalStateException("Are you missing Hadoop binaries?", e);
 				} catch (IOException e) {
@@ -180,6 +179,15 @@ public long writeToPath(Path javaPathOnDisk, Stream<? extends GenericRecord> row
 		return nbRows.get();
 	}
 
+	/**
+	 * 
+	 * @return the {@link ParquetWriter} used by {@link #writeToPath(Path, Stream)}. It can be overridden to customize
+	 *         the row group size, the compression, ...
+	 */
+	protected ParquetWriter<GenericRecord> makeWriter(Path javaPathOnDisk, Schema schema) throws IOException {
+		return AvroParquetWriter.<GenericRecord>builder(toHadoopPath(javaPathOnDisk)).withSchema(schema).build();
+	}
+
 	protected org.apache.hadoop.fs.Path toHadoopPath(Path javaPathOnDisk) {
 		return new org.apache.hadoop.fs.Path(javaPathOnDisk.toUri());
 	}
@@ -0,0 +1,160 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.server.spark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.avro.Schema;
+import org.apache.avro.Schema.Field;
+import org.apache.avro.generic.GenericRecord;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import blasd.apex.core.io.ApexFileHelper;
+import blasd.apex.csv.CsvFormatHelper;
+import blasd.apex.csv.ZeroCopyCSVParser;
+import blasd.apex.hadoop.ApexHadoopHelper;
+import blasd.apex.parquet.CsvToParquet;
+import blasd.apex.parquet.ParquetStreamFactory;
+
+public class TestCsvToParquet {
+	@Test
+	public void testProposeSchema() {
+		Schema schema = CsvToParquet.proposeSchema(CsvFormatHelper.guessFormat("id,my price,1st\n1,1.5,a\n2,2.5,b"));
+
+		Assert.assertEquals(Arrays.asList("id", "my_price", "_1st"),
+				schema.getFields().stream().map(Field::name).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void testProposeSchema_noHeader() {
+		Schema schema = CsvToParquet.proposeSchema(CsvFormatHelper.guessFormat("1,a\n2,b"));
+
+		Assert.assertEquals(Arrays.asList("_c0", "_c1"),
+				schema.getFields().stream().map(Field::name).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void testConvert() throws IOException {
+		Assume.assumeTrue(ApexHadoopHelper.isHadoopReady());
+
+		Path csvPath = ApexFileHelper.createTempPath("TestCsvToParquet", ".csv", true);
+		Path parquetPath = ApexFileHelper.createTempPath("TestCsvToParquet", ".parquet", true);
+		// Ensure the file does not exist, as we can not write into an existing file
+		parquetPath.toFile().delete();
+
+		try (BufferedWriter writer = Files.newBufferedWriter(csvPath, StandardCharsets.UTF_8)) {
+			writer.write("id|label|price\n");
+			writer.write("1|A|1.5\n");
+			writer.write("2||\n");
+			writer.write("3|C|3\n");
+		}
+
+		long nbRows = new CsvToParquet().convert(csvPath, StandardCharsets.UTF_8, parquetPath);
+		Assert.assertEquals(3, nbRows);
+
+		List<GenericRecord> records = new ParquetStreamFactory().toStream(parquetPath).collect(Collectors.toList());
+		Assert.assertEquals(3, records.size());
+
+		// Integer columns are written as long
+		Assert.assertEquals(1L, records.get(0).get("id"));
+		Assert.assertEquals("A", records.get(0).get("label").toString());
+		Assert.assertEquals(1.5D, records.get(0).get("price"));
+
+		Assert.assertEquals(2L, records.get(1).get("id"));
+		Assert.assertNull(records.get(1).get("label"));
+		Assert.assertNull(records.get(1).get("price"));
+
+		Assert.assertEquals(3D, records.get(2).get("price"));
+	}
+
+	protected Path writeBeyondSample(String lastRow) throws IOException {
+		Path csvPath = ApexFileHelper.createTempPath("TestCsvToParquet", ".csv", true);
+
+		try (BufferedWriter writer = Files.newBufferedWriter(csvPath, StandardCharsets.UTF_8)) {
+			writer.write("id|label\n");
+			// Small ints on more rows than the sample used to infer the types
+			for (int i = 0; i < CsvFormatHelper.DEFAULT_SAMPLE_SIZE; i++) {
+				writer.write(i + "|A\n");
+			}
+			writer.write(lastRow);
+		}
+
+		return csvPath;
+	}
+
+	protected Path makeParquetPath() throws IOException {
+		Path parquetPath = ApexFileHelper.createTempPath("TestCsvToParquet", ".parquet", true);
+		// Ensure the file does not exist, as we can not write into an existing file
+		parquetPath.toFile().delete();
+		return parquetPath;
+	}
+
+	@Test
+	public void testConvert_longBeyondSample() throws IOException {
+		Assume.assumeTrue(ApexHadoopHelper.isHadoopReady());
+
+		Path csvPath = writeBeyondSample(Long.MAX_VALUE + "|B\n");
+		Path parquetPath = makeParquetPath();
+
+		long nbRows = new CsvToParquet().convert(csvPath, StandardCharsets.UTF_8, parquetPath);
+		Assert.assertEquals(CsvFormatHelper.DEFAULT_SAMPLE_SIZE + 1, nbRows);
+
+		GenericRecord last = new ParquetStreamFactory().toStream(parquetPath).reduce((left, right) -> right).get();
+		Assert.assertEquals(Long.MAX_VALUE, last.get("id"));
+	}
+
+	@Test
+	public void testConvert_invalidBeyondSample() throws IOException {
+		Assume.assumeTrue(ApexHadoopHelper.isHadoopReady());
+
+		Path csvPath = writeBeyondSample("notANumber|B\n");
+		Path parquetPath = makeParquetPath();
+
+		try {
+			new CsvToParquet().convert(csvPath, StandardCharsets.UTF_8, parquetPath);
+			Assert.fail("The last id does not match the inferred type");
+		} catch (IllegalArgumentException e) {
+			Assert.assertTrue(e.getMessage().contains("notANumber"));
+		}
+		// No truncated file is left behind
+		Assert.assertFalse(parquetPath.toFile().exists());
+
+		// Invalid cells are written as null only if requested
+		long nbRows = new CsvToParquet(new ZeroCopyCSVParser(), CsvToParquet.DEFAULT_ROW_GROUP_SIZE, true)
+				.convert(csvPath, StandardCharsets.UTF_8, parquetPath);
+		Assert.assertEquals(CsvFormatHelper.DEFAULT_SAMPLE_SIZE + 1, nbRows);
+
+		GenericRecord last = new ParquetStreamFactory().toStream(parquetPath).reduce((left, right) -> right).get();
+		Assert.assertNull(last.get("id"));
+		Assert.assertEquals("B", last.get("label").toString());
+	}
+}
@@ -61,14 +61,12 @@ public static void main(String[] args) throws Exception {
 		csvToParquet(tmpPath, tmpParquetPath);
 	}
 
-	public static void csvToParquet(Path csvPath, Path parquetTargetPath) throws FileNotFoundException, IOException {
-		LOGGER.info("About to convert {} into folder {}", csvPath, parquetTargetPath);
-
-		if (parquetTargetPath.toFile().isFile()) {
-			throw new IllegalArgumentException(
-					"Can not write parquet files in folder which is already a file: " + parquetTargetPath);
-		}
-
+	/**
+	 * Convert the CSV into a folder of .parquet files with a local Spark session
+	 * 
+	 * @see blasd.apex.parquet.CsvToParquet to convert without Spark
+	 */
+	public static void sparkCsvToParquet(Path csvPath, Path parquetTargetPath) {
 		// http://stackoverflow.com/questions/38008330/spark-error-a-master-url-must-be-set-in-your-configuration-when-submitting-a
 		// https://jaceklaskowski.gitbooks.io/mastering-apache-spark/spark-local.html
 		try (SparkSession spark =
@@ -82,6 +80,17 @@ public static void csvToParquet(Path csvPath, Path parquetTargetPath) throws Fil
 				inputDf.write().parquet(parquetTargetPath.toAbsolutePath().toString());
 			}
 		}
+	}
+
+	public static void csvToParquet(Path csvPath, Path parquetTargetPath) throws FileNotFoundException, IOException {
+		LOGGER.info("About to convert {} into folder {}", csvPath, parquetTargetPath);
+
+		if (parquetTargetPath.toFile().isFile()) {
+			throw new IllegalArgumentException(
+					"Can not write parquet files in folder which is already a file: " + parquetTargetPath);
+		}
+
+		sparkCsvToParquet(csvPath, parquetTargetPath);
 
 		Arrays.stream(
 				parquetTargetPath.toFile().listFiles(file -> file.isFile() && file.getName().endsWith(".parquet")))
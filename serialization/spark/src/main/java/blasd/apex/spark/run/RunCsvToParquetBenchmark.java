@@ -0,0 +1,159 @@
+/**
+ * The MIT License
+ * Copyright (c) 2014 Benoit Lacelle
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package blasd.apex.spark.run;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import blasd.apex.core.io.ApexFileHelper;
+import blasd.apex.core.memory.ApexMemoryHelper;
+import blasd.apex.core.util.ApexProcessHelper;
+import blasd.apex.parquet.CsvToParquet;
+
+/**
+ * Compare the wall time and the peak resident memory of {@link RunCsvToParquet} (Spark) and {@link CsvToParquet}
+ * (streaming, without Spark). Each conversion runs in its own JVM, so that the resident memory is not shared.
+ * 
+ * @author Benoit Lacelle
+ *
+ */
+public class RunCsvToParquetBenchmark {
+	protected static final Logger LOGGER = LoggerFactory.getLogger(RunCsvToParquetBenchmark.class);
+
+	private static final int DEFAULT_NB_ROWS = 10_000_000;
+
+	private static final String MODE_SPARK = "spark";
+	private static final String MODE_DIRECT = "direct";
+
+	private static final long POLL_PERIOD_MS = 100;
+
+	public static void main(String[] args) throws Exception {
+		if (args != null && args.length == 3) {
+			// We are in a child JVM
+			convert(args[0], Paths.get(args[1]), Paths.get(args[2]));
+			return;
+		}
+
+		int nbRows;
+		if (args != null && args.length == 1) {
+			nbRows = Integer.parseInt(args[0]);
+		} else {
+			nbRows = DEFAULT_NB_ROWS;
+		}
+
+		Path csvPath = ApexFileHelper.createTempPath("RunCsvToParquetBenchmark", ".csv", true);
+		writeCsv(csvPath, nbRows);
+		LOGGER.info("{} rows have been written in {} ({} bytes)", nbRows, csvPath, csvPath.toFile().length());
+
+		for (String mode : Arrays.asList(MODE_DIRECT, MODE_SPARK)) {
+			Path parquetPath = ApexFileHelper.createTempPath("RunCsvToParquetBenchmark", ".parquet", true);
+			// The output must not exist
+			parquetPath.toFile().delete();
+
+			runInChildJvm(mode, csvPath, parquetPath);
+		}
+	}
+
+	protected static void writeCsv(Path csvPath, int nbRows) throws IOException {
+		Random r = new Random(0);
+
+		String[] countries = { "FR", "US", "DE", "JP", "BR" };
+		try (BufferedWriter writer = Files.newBufferedWriter(csvPath, StandardCharsets.UTF_8)) {
+			writer.write("id,country,quantity,price");
+			writer.newLine();
+
+			for (int i = 0; i < nbRows; i++) {
+				writer.write(Integer.toString(i));
+				writer.write(',');
+				writer.write(countries[r.nextInt(countries.length)]);
+				writer.write(',');
+				writer.write(Long.toString(r.nextLong()));
+				writer.write(',');
+				writer.write(Double.toString(r.nextDouble()));
+				writer.newLine();
+			}
+		}
+	}
+
+	protected static void runInChildJvm(String mode, Path csvPath, Path parquetPath)
+			throws IOException, InterruptedException {
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		List<String> command = Arrays.asList(java,
+				"-cp",
+				System.getProperty("java.class.path"),
+				RunCsvToParquetBenchmark.class.getName(),
+				mode,
+				csvPath.toString(),
+				parquetPath.toString());
+
+		long start = System.nanoTime();
+		Process process = new ProcessBuilder(command).inheritIO().start();
+
+		long pid = ApexProcessHelper.getPidOfProcess(process);
+
+		long peakRss = -1;
+		while (!process.waitFor(POLL_PERIOD_MS, TimeUnit.MILLISECONDS)) {
+			if (pid >= 0) {
+				OptionalLong rss = ApexProcessHelper.getProcessResidentMemory(pid);
+				if (rss.isPresent()) {
+					peakRss = Math.max(peakRss, rss.getAsLong());
+				}
+			}
+		}
+		long wallTimeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		if (process.exitValue() != 0) {
+			throw new IllegalStateException(mode + " failed with exit code " + process.exitValue());
+		}
+
+		String peakRssAsString;
+		if (peakRss >= 0) {
+			peakRssAsString = ApexMemoryHelper.memoryAsString(peakRss);
+		} else {
+			peakRssAsString = "unknown";
+		}
+		LOGGER.info("{}: wall time={}ms peak RSS={}", mode, wallTimeMs, peakRssAsString);
+	}
+
+	protected static void convert(String mode, Path csvPath, Path parquetPath) throws IOException {
+		if (MODE_SPARK.equals(mode)) {
+			RunCsvToParquet.sparkCsvToParquet(csvPath, parquetPath);
+		} else if (MODE_DIRECT.equals(mode)) {
+			new CsvToParquet().convert(csvPath, StandardCharsets.UTF_8, parquetPath);
+		} else {
+			throw new IllegalArgumentException("Unknown mode: " + mode);
+		}
+	}
+}